@@ -0,0 +1,258 @@
+package uk.ac.ebi.pride.spectracluster.cdf;
+
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.util.CountedString;
+import uk.ac.ebi.pride.spectracluster.util.SpectrumUtilities;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.cdf.CumulativeDistributionFunctionBuilder
+ * Estimates a cumulative distribution function from the comparisons performed
+ * while clustering. Only comparisons between clusters that are both annotated
+ * with a peptide (KnownProperties.IDENTIFIED_PEPTIDE_KEY of their spectra) are
+ * used. Comparisons between clusters of different peptides are counted in a
+ * score histogram, comparisons between clusters of the same peptide are only
+ * counted in total.
+ *
+ * The histogram is striped: every thread increments the counters of its own
+ * stripe in an AtomicLongArray so that concurrent engines sharing one builder
+ * rarely contend on the same counter. The stripes are only summed up when the
+ * function is written or built. The result is written in the same TSV format
+ * as the bundled CDF resources (see CumulativeDistributionFunction.HEADER_LINE).
+ *
+ * @author jg
+ */
+public class CumulativeDistributionFunctionBuilder {
+    private final double scoreIncrements;
+    private final int nBins;
+    private final int nStripes;
+    /**
+     * counters of stripe s for bin b are stored at s * nBins + b
+     */
+    private final AtomicLongArray histogram;
+    private final AtomicLongArray samePeptideComparisons;
+    private final AtomicLongArray unannotatedComparisons;
+
+    /**
+     * @param scoreIncrements width of every score bin
+     * @param maximumScore    highest expected score, higher scores are counted in the last bin
+     */
+    public CumulativeDistributionFunctionBuilder(double scoreIncrements, double maximumScore) {
+        this(scoreIncrements, maximumScore, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param scoreIncrements width of every score bin
+     * @param maximumScore    highest expected score, higher scores are counted in the last bin
+     * @param nStripes        number of counter stripes, should be around the number of threads
+     */
+    public CumulativeDistributionFunctionBuilder(double scoreIncrements, double maximumScore, int nStripes) {
+        if (scoreIncrements <= 0 || maximumScore < scoreIncrements)
+            throw new IllegalArgumentException("Score increments must be positive and not larger than the maximum score");
+        if (nStripes < 1)
+            throw new IllegalArgumentException("Number of stripes must be positive");
+
+        this.scoreIncrements = scoreIncrements;
+        this.nBins = (int) Math.ceil(maximumScore / scoreIncrements);
+        this.nStripes = nStripes;
+        this.histogram = new AtomicLongArray(nStripes * nBins);
+        this.samePeptideComparisons = new AtomicLongArray(nStripes);
+        this.unannotatedComparisons = new AtomicLongArray(nStripes);
+    }
+
+    /**
+     * Records the result of one comparison. Comparisons where either cluster is not
+     * annotated with a peptide are only counted.
+     *
+     * @param cluster1 first compared cluster
+     * @param cluster2 second compared cluster
+     * @param score    similarity of the two clusters
+     */
+    public void addComparison(ICluster cluster1, ICluster cluster2, double score) {
+        String peptide1 = getMajorPeptide(cluster1);
+        String peptide2 = (peptide1 != null) ? getMajorPeptide(cluster2) : null;
+        addComparison(peptide1, peptide2, score);
+    }
+
+    /**
+     * Records the result of one comparison between two peptide annotations.
+     *
+     * @param peptide1 peptide of the first compared spectrum, null if not annotated
+     * @param peptide2 peptide of the second compared spectrum, null if not annotated
+     * @param score    similarity of the two spectra
+     */
+    public void addComparison(String peptide1, String peptide2, double score) {
+        int stripe = getStripe();
+
+        if (peptide1 == null || peptide2 == null) {
+            unannotatedComparisons.incrementAndGet(stripe);
+            return;
+        }
+        if (peptide1.equals(peptide2)) {
+            samePeptideComparisons.incrementAndGet(stripe);
+            return;
+        }
+
+        histogram.incrementAndGet(stripe * nBins + getBinForScore(score));
+    }
+
+    /**
+     * @return the most common peptide of the cluster's spectra, null if none is annotated
+     */
+    public static String getMajorPeptide(ICluster cluster) {
+        List<String> peptides = SpectrumUtilities.getPeptideList(cluster.getClusteredSpectra());
+        if (peptides.isEmpty())
+            return null;
+
+        return CountedString.getStringsByOccurance(peptides)[0];
+    }
+
+    /**
+     * Bin i holds the scores in ( i * scoreIncrements, (i + 1) * scoreIncrements ]
+     */
+    protected int getBinForScore(double score) {
+        int bin = (int) Math.ceil(score / scoreIncrements) - 1;
+
+        if (bin < 0)
+            return 0;
+        if (bin >= nBins)
+            return nBins - 1;
+
+        return bin;
+    }
+
+    private int getStripe() {
+        return (int) (Thread.currentThread().getId() % nStripes);
+    }
+
+    /**
+     * @return the number of comparisons between different peptides per score bin
+     */
+    public long[] getHistogram() {
+        long[] ret = new long[nBins];
+        for (int stripe = 0; stripe < nStripes; stripe++) {
+            int offset = stripe * nBins;
+            for (int bin = 0; bin < nBins; bin++) {
+                ret[bin] += histogram.get(offset + bin);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the number of comparisons between clusters of different peptides
+     */
+    public long getDifferentPeptideComparisons() {
+        long ret = 0;
+        for (long count : getHistogram()) {
+            ret += count;
+        }
+        return ret;
+    }
+
+    public long getSamePeptideComparisons() {
+        return sum(samePeptideComparisons);
+    }
+
+    public long getUnannotatedComparisons() {
+        return sum(unannotatedComparisons);
+    }
+
+    private static long sum(AtomicLongArray counters) {
+        long ret = 0;
+        for (int i = 0; i < counters.length(); i++) {
+            ret += counters.get(i);
+        }
+        return ret;
+    }
+
+    public double getScoreIncrements() {
+        return scoreIncrements;
+    }
+
+    public int getBinCount() {
+        return nBins;
+    }
+
+    /**
+     * Builds the cumulative distribution function from the comparisons recorded so far.
+     *
+     * @return the function, null if no comparison between different peptides was recorded
+     */
+    public CumulativeDistributionFunction buildCumulativeDistributionFunction() {
+        long[] counts = getHistogram();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0)
+            return null;
+
+        List<Double> proportionPeptidesBelowScore = new ArrayList<Double>(nBins);
+        long cumulative = 0;
+        for (long count : counts) {
+            cumulative += count;
+            proportionPeptidesBelowScore.add((double) cumulative / total);
+        }
+
+        return new CumulativeDistributionFunction(total, scoreIncrements, proportionPeptidesBelowScore);
+    }
+
+    /**
+     * Writes the comparisons recorded so far in the format read by
+     * CumulativeDistributionFunction.fromString.
+     *
+     * @param out where to write the function
+     */
+    public void appendTsv(Appendable out) throws IOException {
+        long[] counts = getHistogram();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+
+        BigDecimal increment = BigDecimal.valueOf(scoreIncrements);
+        out.append(CumulativeDistributionFunction.HEADER_LINE).append("\n");
+
+        long cumulative = 0;
+        for (int bin = 0; bin < nBins; bin++) {
+            cumulative += counts[bin];
+            double relative = (total > 0) ? (double) cumulative / total : 0;
+            String maxScore = increment.multiply(BigDecimal.valueOf(bin + 1)).stripTrailingZeros().toPlainString();
+
+            out.append(maxScore).append("\t")
+                    .append(String.valueOf(counts[bin])).append("\t")
+                    .append(String.valueOf(cumulative)).append("\t")
+                    .append(String.valueOf(relative)).append("\t")
+                    .append(String.valueOf(total)).append("\n");
+        }
+    }
+
+    /**
+     * @return the recorded function in the TSV format
+     */
+    public String toTsv() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            appendTsv(sb);
+        } catch (IOException e) {
+            // cannot happen for a StringBuilder
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "CumulativeDistributionFunctionBuilder{" +
+                "differentPeptides=" + getDifferentPeptideComparisons() +
+                ", samePeptides=" + getSamePeptideComparisons() +
+                ", unannotated=" + getUnannotatedComparisons() +
+                '}';
+    }
+}
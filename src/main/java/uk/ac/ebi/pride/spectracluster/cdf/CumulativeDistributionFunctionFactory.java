@@ -1,8 +1,11 @@
 package uk.ac.ebi.pride.spectracluster.cdf;
 
+import uk.ac.ebi.pride.spectracluster.similarity.BinnedDotProduct;
 import uk.ac.ebi.pride.spectracluster.similarity.CombinedFisherIntensityTest;
 import uk.ac.ebi.pride.spectracluster.similarity.FrankEtAlDotProduct;
 import uk.ac.ebi.pride.spectracluster.similarity.ISimilarityChecker;
+import uk.ac.ebi.pride.spectracluster.similarity.OverlappingBinnedDotProduct;
+import uk.ac.ebi.pride.spectracluster.similarity.ThreadLocalSimilarityChecker;
 import uk.ac.ebi.pride.spectracluster.util.Defaults;
 
 import java.io.BufferedReader;
@@ -33,6 +36,42 @@ public class CumulativeDistributionFunctionFactory {
         }
     }
 
+    /**
+     * Same as getDefaultCumlativeDistributionFunctionForSimilarityMetric but also
+     * takes the algorithm version of the similarity checker into consideration.
+     * @param similarityChecker
+     * @return
+     * @throws Exception
+     */
+    public static CumulativeDistributionFunction getDefaultCumulativeDistributionFunctionForSimilarityChecker(ISimilarityChecker similarityChecker) throws Exception {
+        if (Defaults.getCumulativeDistributionFunction() != null) {
+            return Defaults.getCumulativeDistributionFunction();
+        }
+        else {
+            return getCumulativeDistributionFunctionForSimilarityChecker(similarityChecker);
+        }
+    }
+
+    /**
+     * Returns the cumulative distribution function matching the similarity checker's
+     * class and algorithm version. ThreadLocalSimilarityCheckers are resolved to the
+     * checker they wrap.
+     * @param similarityChecker
+     * @return
+     * @throws Exception Thrown if no CDF resource exists for the passed similarity checker.
+     */
+    public static CumulativeDistributionFunction getCumulativeDistributionFunctionForSimilarityChecker(ISimilarityChecker similarityChecker) throws Exception {
+        if (similarityChecker instanceof ThreadLocalSimilarityChecker) {
+            similarityChecker = ((ThreadLocalSimilarityChecker) similarityChecker).forThread();
+        }
+        if (similarityChecker.getClass() == CombinedFisherIntensityTest.class &&
+                ((CombinedFisherIntensityTest) similarityChecker).getVersion() == CombinedFisherIntensityTest.AlgorithmVersion.SURVIVAL_FUNCTION_0_2) {
+            return getCumulativeDistributionFunctionForResource("cumulative_survival.cdf.tsv");
+        }
+
+        return getCumulativeDistributionFunctionForSimilarityMetric(similarityChecker.getClass());
+    }
+
     /**
      * Returns the matching cumulative distribution function from the matching
      * resource file. If no resource file exists for the passed similarity
@@ -48,6 +87,10 @@ public class CumulativeDistributionFunctionFactory {
         if (similarityCheckerClass == FrankEtAlDotProduct.class) {
             return getCumulativeDistributionFunctionForResource("dot.cdf.tsv");
         }
+        // provisional, estimated from the BinnedDotProduct scores of a small test set
+        if (similarityCheckerClass == BinnedDotProduct.class || similarityCheckerClass == OverlappingBinnedDotProduct.class) {
+            return getCumulativeDistributionFunctionForResource("binned.cdf.tsv");
+        }
 
         throw new Exception("No cumulative distribution function defined for " + similarityCheckerClass);
     }
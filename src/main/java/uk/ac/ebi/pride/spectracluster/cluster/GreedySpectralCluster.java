@@ -6,6 +6,7 @@ import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
 import uk.ac.ebi.pride.spectracluster.spectrum.Spectrum;
 import uk.ac.ebi.pride.spectracluster.util.CompareTo;
 import uk.ac.ebi.pride.spectracluster.util.ComparisonMatch;
+import uk.ac.ebi.pride.spectracluster.util.ComparisonMatchHeap;
 import uk.ac.ebi.pride.spectracluster.util.MZIntensityUtilities;
 import uk.ac.ebi.pride.spectracluster.util.SpectrumUtilities;
 
@@ -26,9 +27,7 @@ public class GreedySpectralCluster implements ICluster {
      * saved
      */
     public static final int SAVED_COMPARISON_MATCHES = 30;
-    private final List<ComparisonMatch> bestComparisonMatches = new ArrayList<ComparisonMatch>(SAVED_COMPARISON_MATCHES);
-    private float lowestBestComparisonSimilarity = 0;
-    private Set<String> bestComparisonMatchIds = null;
+    private final ComparisonMatchHeap bestComparisonMatches;
 
     private String id;
     private final Set<String> spectraIds = new HashSet<String>();
@@ -43,12 +42,30 @@ public class GreedySpectralCluster implements ICluster {
     private final GreedyConsensusSpectrum consensusSpectrumBuilder;
 
     public GreedySpectralCluster(String id) {
+        this(id, GreedyConsensusSpectrum.FACTORY);
+    }
+
+    /**
+     * @param id                       the cluster's id
+     * @param consensusSpectrumFactory creates the cluster's consensus spectrum
+     */
+    public GreedySpectralCluster(String id, GreedyConsensusSpectrum.ConsensusSpectrumFactory consensusSpectrumFactory) {
         this.id = id;
-        this.consensusSpectrumBuilder = GreedyConsensusSpectrum.FACTORY.getGreedyConsensusSpectrumBuilder(id);
+        this.bestComparisonMatches = new ComparisonMatchHeap(SAVED_COMPARISON_MATCHES);
+        this.consensusSpectrumBuilder = consensusSpectrumFactory.getGreedyConsensusSpectrumBuilder(id);
         addSpectrumHolderListener(this.consensusSpectrumBuilder);
     }
 
     public GreedySpectralCluster(ICluster cluster) {
+        this(cluster, GreedyConsensusSpectrum.FACTORY);
+    }
+
+    /**
+     * @param cluster                  the cluster to copy
+     * @param consensusSpectrumFactory creates the consensus spectrum if the cluster is not
+     *                                 a GreedySpectralCluster
+     */
+    public GreedySpectralCluster(ICluster cluster, GreedyConsensusSpectrum.ConsensusSpectrumFactory consensusSpectrumFactory) {
         this.id = cluster.getId();
 
         // copy the basic parameters
@@ -59,9 +76,7 @@ public class GreedySpectralCluster implements ICluster {
             GreedySpectralCluster existingCluster = (GreedySpectralCluster) cluster;
 
             // copy the comparison matches
-            this.bestComparisonMatches.addAll(existingCluster.bestComparisonMatches);
-            this.lowestBestComparisonSimilarity = existingCluster.lowestBestComparisonSimilarity;
-            this.bestComparisonMatchIds = existingCluster.bestComparisonMatchIds;
+            this.bestComparisonMatches = new ComparisonMatchHeap(existingCluster.bestComparisonMatches);
             // for greedy clusters the consensus spectrum must be copied since it cannot be derived from the actual spectra
             this.consensusSpectrumBuilder = (GreedyConsensusSpectrum) existingCluster.getConsensusSpectrumBuilder();
             addSpectrumHolderListener(this.consensusSpectrumBuilder);
@@ -72,8 +87,9 @@ public class GreedySpectralCluster implements ICluster {
                 spectraIds.add(spectrum.getId());
             }
         } else {
+            this.bestComparisonMatches = new ComparisonMatchHeap(SAVED_COMPARISON_MATCHES);
             // rebuild with a GreedyConsensusSpectrum
-            this.consensusSpectrumBuilder = GreedyConsensusSpectrum.FACTORY.getGreedyConsensusSpectrumBuilder(id);
+            this.consensusSpectrumBuilder = consensusSpectrumFactory.getGreedyConsensusSpectrumBuilder(id);
             addSpectrumHolderListener(this.consensusSpectrumBuilder);
 
             if (!cluster.storesPeakLists())
@@ -87,6 +103,7 @@ public class GreedySpectralCluster implements ICluster {
 
     public GreedySpectralCluster(String id, List<ISpectrum> clusteredSpectra, GreedyConsensusSpectrum consensusSpectrumBuilder, List<ComparisonMatch> bestComparisonMatches) {
         this.id = id;
+        this.bestComparisonMatches = new ComparisonMatchHeap(SAVED_COMPARISON_MATCHES);
         this.clusteredSpectra = clusteredSpectra;
         this.consensusSpectrumBuilder = consensusSpectrumBuilder;
 
@@ -458,28 +475,8 @@ public class GreedySpectralCluster implements ICluster {
      * @param similarity The similarity score to store for this comparison
      */
     public void saveComparisonResult(String id, float similarity) {
-        if (bestComparisonMatches.size() >= SAVED_COMPARISON_MATCHES && similarity < lowestBestComparisonSimilarity)
-            return;
-
-        ComparisonMatch comparisonMatch = new ComparisonMatch(id, similarity);
-        bestComparisonMatches.add(comparisonMatch);
-
-        // remove the lowest matches if necessary
-        if (bestComparisonMatches.size() >= SAVED_COMPARISON_MATCHES) {
-            Collections.sort(bestComparisonMatches);
-            int tooManyMatches = bestComparisonMatches.size() - SAVED_COMPARISON_MATCHES;
-            for (int i = 0; i < tooManyMatches; i++)
-                bestComparisonMatches.remove(0); // natural order is lowest to highest, remove lowest
-
-            lowestBestComparisonSimilarity = bestComparisonMatches.get(0).getSimilarity();
-        }
-        // if nothing is removed check whether the new lowest similarity is the lowest
-        else if (similarity < lowestBestComparisonSimilarity) {
-            lowestBestComparisonSimilarity = similarity;
-
-        }
-
-        bestComparisonMatchIds = null; // delete to mark as dirty
+        // the lowest match is replaced once the N best matches are stored
+        bestComparisonMatches.offer(id, similarity);
     }
 
     /**
@@ -490,14 +487,7 @@ public class GreedySpectralCluster implements ICluster {
      * @return Boolean indicating whether the comparison scored among the top N
      */
     public boolean isInBestComparisonResults(String id) {
-        if (bestComparisonMatchIds == null) {
-            bestComparisonMatchIds = new HashSet<String>(bestComparisonMatches.size());
-
-            for (ComparisonMatch comparisonMatch : bestComparisonMatches)
-                bestComparisonMatchIds.add(comparisonMatch.getSpectrumId());
-        }
-
-        return bestComparisonMatchIds.contains(id);
+        return bestComparisonMatches.contains(id);
     }
 
     @Override
@@ -507,34 +497,19 @@ public class GreedySpectralCluster implements ICluster {
 
     @Override
     public List<ComparisonMatch> getComparisonMatches() {
-        return Collections.unmodifiableList(bestComparisonMatches);
+        // sorted from the lowest to the highest similarity
+        return bestComparisonMatches.asList();
     }
 
     @Override
     public void setComparisonMatches(List<ComparisonMatch> comparisonMatches) {
         this.bestComparisonMatches.clear();
-        if (comparisonMatches != null && comparisonMatches.size() > 0) {
+        if (comparisonMatches != null)
             this.bestComparisonMatches.addAll(comparisonMatches);
-
-            Collections.sort(bestComparisonMatches);
-            lowestBestComparisonSimilarity = bestComparisonMatches.get(0).getSimilarity();
-        } else {
-            lowestBestComparisonSimilarity = 0;
-        }
-
-        bestComparisonMatchIds = null; // delete to mark as dirty
     }
 
     @Override
     public boolean isKnownComparisonMatch(String clusterId) {
-        if (bestComparisonMatches.size() == 0)
-            return false;
-
-        for (ComparisonMatch comparisonMatch : bestComparisonMatches) {
-            if (comparisonMatch.getSpectrumId().equals(clusterId))
-                return true;
-        }
-
-        return false;
+        return bestComparisonMatches.contains(clusterId);
     }
 }
@@ -58,6 +58,7 @@ public class ConsensusSpectrum implements IConsensusSpectrumBuilder {
     private final String id;
     protected int nSpectra;
     protected boolean isDirty;
+    private long versionStamp = ConsensusVersionStamps.next();
     protected float averagePrecursorMz;
     protected float sumPrecursorMz;
     protected float averagePrecursorIntens;
@@ -199,9 +200,9 @@ public class ConsensusSpectrum implements IConsensusSpectrumBuilder {
         if (removed.length < 1)
             return;
 
+        List<List<IPeak>> peakLists = new ArrayList<List<IPeak>>(removed.length);
         for (ISpectrum spectrum : removed) {
-            List<IPeak> spectrumPeaks = spectrum.getPeaks();
-            removePeaks(spectrumPeaks);
+            peakLists.add(spectrum.getPeaks());
 
             sumCharge -= spectrum.getPrecursorCharge();
             sumPrecursorMz -= spectrum.getPrecursorMz();
@@ -210,6 +211,9 @@ public class ConsensusSpectrum implements IConsensusSpectrumBuilder {
             nSpectra--;
         }
 
+        // all peaks are removed in one pass
+        removePeakLists(peakLists);
+
         setIsDirty(true);
 
         for (SpectrumHolderListener listener : listeners)
@@ -233,44 +237,131 @@ public class ConsensusSpectrum implements IConsensusSpectrumBuilder {
      * @param peaksToRemove
      */
     protected void removePeaks(List<IPeak> peaksToRemove) {
-        int posAllPeaks = 0;
-        //noinspection ForLoopReplaceableByForEach
-        for (int i = 0; i < peaksToRemove.size(); i++) {
-            IPeak peakToRemove = peaksToRemove.get(i);
-            double mzToRemove = peakToRemove.getMz();
+        removePeakLists(Collections.singletonList(peaksToRemove));
+    }
 
-            if (USE_ROUNDING)
-                mzToRemove = MZIntensityUtilities.round(mzToRemove, MZ_PRECISION);
+    /**
+     * Removes the peaks of several spectra from the "crowded" spectrum allPeaks
+     * in a single pass. The m/z values are rounded the same way as when the peaks
+     * were added. All peaks are merged into one sorted array which is then
+     * subtracted from allPeaks. Peaks with a count < 1 are dropped in place.
+     *
+     * @param peakLists the peak lists to remove
+     */
+    protected void removePeakLists(List<List<IPeak>> peakLists) {
+        int nPeaksToRemove = 0;
+        for (List<IPeak> peakList : peakLists)
+            nPeaksToRemove += peakList.size();
+
+        // the rounded m/z values as positive floats keep their order as int bits,
+        // the lower 32 bits hold the position in removedIntensities
+        long[] removedPeaks = new long[nPeaksToRemove];
+        float[] removedIntensities = new float[nPeaksToRemove];
+        int index = 0;
+        for (List<IPeak> peakList : peakLists) {
+            //noinspection ForLoopReplaceableByForEach
+            for (int i = 0; i < peakList.size(); i++) {
+                IPeak peakToRemove = peakList.get(i);
+                float mzToRemove = peakToRemove.getMz();
+
+                if (USE_ROUNDING)
+                    mzToRemove = (float) MZIntensityUtilities.round(mzToRemove, MZ_PRECISION);
+
+                removedPeaks[index] = ((long) Float.floatToIntBits(mzToRemove) << 32) | index;
+                removedIntensities[index] = peakToRemove.getIntensity();
+                index++;
+            }
+        }
+        Arrays.sort(removedPeaks);
+
+        int posRemoved = 0;
+        int nRetained = 0;
+        int nPeaks = allPeaks.size();
+        int groupStart = 0;
+        while (groupStart < nPeaks) {
+            // allPeaks may contain several peaks with the same m/z value
+            float groupMz = allPeaks.get(groupStart).getMz();
+            int groupEnd = groupStart + 1;
+            while (groupEnd < nPeaks && allPeaks.get(groupEnd).getMz() == groupMz)
+                groupEnd++;
+
+            // skip removed peaks that are not part of the consensus spectrum
+            while (posRemoved < nPeaksToRemove && getRemovedMz(removedPeaks[posRemoved]) < groupMz)
+                posRemoved++;
+            int removedStart = posRemoved;
+            while (posRemoved < nPeaksToRemove && getRemovedMz(removedPeaks[posRemoved]) == groupMz)
+                posRemoved++;
+
+            if (removedStart == posRemoved) {
+                for (int j = groupStart; j < groupEnd; j++) {
+                    IPeak currentExistingPeak = allPeaks.get(j);
+                    if (currentExistingPeak.getCount() > 0)
+                        allPeaks.set(nRetained++, currentExistingPeak);
+                }
+            } else {
+                nRetained = subtractPeaks(groupStart, groupEnd, removedPeaks, removedIntensities, removedStart, posRemoved, nRetained);
+            }
 
-            for (int j = posAllPeaks; j < allPeaks.size(); j++) {
-                IPeak currentExistingPeak = allPeaks.get(j);
+            groupStart = groupEnd;
+        }
 
-                if (mzToRemove < currentExistingPeak.getMz()) {
-                    posAllPeaks = j;
-                    break;
-                }
+        allPeaks.subList(nRetained, allPeaks.size()).clear();
+    }
 
-                if (mzToRemove == currentExistingPeak.getMz()) {
-                    allPeaks.set(j, new Peak(
-                                    currentExistingPeak.getMz(),
-                                    currentExistingPeak.getIntensity() - peakToRemove.getIntensity(),
-                                    currentExistingPeak.getCount() - 1)
-                    );
+    /**
+     * Subtracts the removed peaks from the peaks in allPeaks that share their m/z value
+     * and writes the retained peaks to position nRetained. Every removed peak decreases
+     * the count by one. A removed peak is preferably taken from a single peak with the
+     * identical intensity, otherwise from the first peak that is left.
+     *
+     * @return the new number of retained peaks
+     */
+    private int subtractPeaks(int groupStart, int groupEnd, long[] removedPeaks, float[] removedIntensities,
+                              int removedStart, int removedEnd, int nRetained) {
+        int groupSize = groupEnd - groupStart;
+        int[] counts = new int[groupSize];
+        float[] intensities = new float[groupSize];
+        for (int k = 0; k < groupSize; k++) {
+            IPeak peak = allPeaks.get(groupStart + k);
+            counts[k] = peak.getCount();
+            intensities[k] = peak.getIntensity();
+        }
 
-                    posAllPeaks = j;
+        for (int r = removedStart; r < removedEnd; r++) {
+            float removedIntensity = removedIntensities[(int) removedPeaks[r]];
+            int target = -1;
+            for (int k = 0; k < groupSize; k++) {
+                if (counts[k] == 1 && intensities[k] == removedIntensity) {
+                    target = k;
                     break;
                 }
+                if (target < 0 && counts[k] > 0)
+                    target = k;
             }
+            if (target < 0)
+                break;
+
+            counts[target]--;
+            intensities[target] -= removedIntensity;
         }
 
         // clear all peaks with count < 1
-        List<IPeak> tmp = new ArrayList<IPeak>();
-        for (IPeak p : allPeaks) {
-            if (p.getCount() > 0)
-                tmp.add(p);
+        for (int k = 0; k < groupSize; k++) {
+            if (counts[k] < 1)
+                continue;
+
+            IPeak currentExistingPeak = allPeaks.get(groupStart + k);
+            if (counts[k] == currentExistingPeak.getCount())
+                allPeaks.set(nRetained++, currentExistingPeak);
+            else
+                allPeaks.set(nRetained++, new Peak(currentExistingPeak.getMz(), intensities[k], counts[k]));
         }
-        allPeaks.clear();
-        allPeaks.addAll(tmp);
+
+        return nRetained;
+    }
+
+    private static float getRemovedMz(long removedPeak) {
+        return Float.intBitsToFloat((int) (removedPeak >>> 32));
     }
 
     @Override
@@ -401,6 +492,14 @@ public class ConsensusSpectrum implements IConsensusSpectrumBuilder {
 
     protected void setIsDirty(boolean isDirty) {
         this.isDirty = isDirty;
+        // every change of the consensus spectrum marks it as dirty
+        if (isDirty)
+            versionStamp = ConsensusVersionStamps.next();
+    }
+
+    @Override
+    public long getVersionStamp() {
+        return versionStamp;
     }
 
     /**
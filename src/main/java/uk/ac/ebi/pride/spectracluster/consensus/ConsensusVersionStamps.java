@@ -0,0 +1,25 @@
+package uk.ac.ebi.pride.spectracluster.consensus;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.consensus.ConsensusVersionStamps
+ * Source of the version stamps returned by IConsensusSpectrumBuilder.getVersionStamp.
+ * Stamps are increasing and unique across all builders so that a stamp
+ * identifies one state of one consensus spectrum even if cluster ids are reused.
+ *
+ * @author jg
+ */
+public final class ConsensusVersionStamps {
+    private static final AtomicLong lastStamp = new AtomicLong();
+
+    private ConsensusVersionStamps() {
+    }
+
+    /**
+     * @return a new stamp, always larger than all earlier ones
+     */
+    public static long next() {
+        return lastStamp.incrementAndGet();
+    }
+}
@@ -2,6 +2,7 @@ package uk.ac.ebi.pride.spectracluster.consensus;
 
 import uk.ac.ebi.pride.spectracluster.cluster.ISpectrumHolder;
 import uk.ac.ebi.pride.spectracluster.cluster.SpectrumHolderListener;
+import uk.ac.ebi.pride.spectracluster.quality.IQualityScorer;
 import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
 import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
 import uk.ac.ebi.pride.spectracluster.spectrum.Peak;
@@ -12,6 +13,8 @@ import uk.ac.ebi.pride.spectracluster.util.PeakUtilities;
 import uk.ac.ebi.pride.spectracluster.util.comparator.PeakMzComparator;
 import uk.ac.ebi.pride.spectracluster.util.function.IFunction;
 import uk.ac.ebi.pride.spectracluster.util.function.peak.BinnedHighestNPeakFunction;
+import uk.ac.ebi.pride.spectracluster.util.tracing.TracePhase;
+import uk.ac.ebi.pride.spectracluster.util.tracing.Tracing;
 
 import java.util.*;
 
@@ -40,6 +43,10 @@ public class GreedyConsensusSpectrum implements IConsensusSpectrumBuilder {
      * The m/z threshold to consider two peaks identical
      */
     protected final float fragmentTolerance;
+    /**
+     * The quality scorer of the consensus spectrum, the default one is used if this is null
+     */
+    protected final IQualityScorer qualityScorer;
 
     private static final PeakMzComparator peakMzComparator = new PeakMzComparator();
     private final String id;
@@ -54,6 +61,7 @@ public class GreedyConsensusSpectrum implements IConsensusSpectrumBuilder {
     protected final List<SpectrumHolderListener> listeners = new ArrayList<SpectrumHolderListener>();
 
     private boolean isDirty = true;
+    private long versionStamp = ConsensusVersionStamps.next();
 
     protected final String methodName = "Greedy Consensus Spectrum Builder";
     protected final String methodVersion = "0.1";
@@ -69,11 +77,38 @@ public class GreedyConsensusSpectrum implements IConsensusSpectrumBuilder {
         return new ConsensusSpectrumFactory();
     }
 
+    /**
+     * Builds a factory that does not depend on the Defaults.
+     *
+     * @param fragmentTolerance the fragment tolerance of all built consensus spectra
+     * @param qualityScorer     the quality scorer of all built consensus spectra
+     * @return !null factory
+     */
+    public static ConsensusSpectrumFactory buildFactory(float fragmentTolerance, IQualityScorer qualityScorer) {
+        return new ConsensusSpectrumFactory(fragmentTolerance, qualityScorer);
+    }
+
     /**
      * always use the factory to get an instance
      */
     public static class ConsensusSpectrumFactory implements ConcensusSpectrumBuilderFactory {
+        /**
+         * the Defaults are used if these are not set
+         */
+        private final Float fragmentTolerance;
+        private final IQualityScorer qualityScorer;
+
         private ConsensusSpectrumFactory() {
+            this(null, null);
+        }
+
+        private ConsensusSpectrumFactory(Float fragmentTolerance, IQualityScorer qualityScorer) {
+            this.fragmentTolerance = fragmentTolerance;
+            this.qualityScorer = qualityScorer;
+        }
+
+        private float getFragmentTolerance() {
+            return (fragmentTolerance != null) ? fragmentTolerance : Defaults.getFragmentIonTolerance();
         }
 
         /**
@@ -83,40 +118,42 @@ public class GreedyConsensusSpectrum implements IConsensusSpectrumBuilder {
          */
         @Override
         public IConsensusSpectrumBuilder getConsensusSpectrumBuilder() {
-            return new GreedyConsensusSpectrum(Defaults.getFragmentIonTolerance());
+            return new GreedyConsensusSpectrum(getFragmentTolerance(), null, qualityScorer);
         }
 
         public GreedyConsensusSpectrum getGreedyConsensusSpectrumBuilder() {
-            return new GreedyConsensusSpectrum(Defaults.getFragmentIonTolerance());
+            return new GreedyConsensusSpectrum(getFragmentTolerance(), null, qualityScorer);
         }
 
         public IConsensusSpectrumBuilder getConsensusSpectrumBuilder(String id) {
-            return new GreedyConsensusSpectrum(Defaults.getFragmentIonTolerance(), id);
+            return new GreedyConsensusSpectrum(getFragmentTolerance(), id, qualityScorer);
         }
 
         public GreedyConsensusSpectrum getGreedyConsensusSpectrumBuilder(String id) {
-            return new GreedyConsensusSpectrum(Defaults.getFragmentIonTolerance(), id);
+            return new GreedyConsensusSpectrum(getFragmentTolerance(), id, qualityScorer);
         }
     }
 
     /**
      * private to force use of the factory
      */
-    private GreedyConsensusSpectrum(float fragmentTolerance) {
-        this(fragmentTolerance, null);
-    }
-
-    /**
-     * private to force use of the factory
-     */
-    private GreedyConsensusSpectrum(float fragmentTolerance, String id) {
+    private GreedyConsensusSpectrum(float fragmentTolerance, String id, IQualityScorer qualityScorer) {
         this.fragmentTolerance = fragmentTolerance;
         this.id = id;
+        this.qualityScorer = qualityScorer;
     }
 
     public GreedyConsensusSpectrum(float fragmentTolerance, String id, int nSpectra, double sumPrecursorMz, double sumPrecursorIntens, int sumCharge, List<IPeak> peaks) {
+        this(fragmentTolerance, id, nSpectra, sumPrecursorMz, sumPrecursorIntens, sumCharge, peaks, null);
+    }
+
+    /**
+     * @param qualityScorer the consensus spectrum's quality scorer, null to use the default one
+     */
+    public GreedyConsensusSpectrum(float fragmentTolerance, String id, int nSpectra, double sumPrecursorMz, double sumPrecursorIntens, int sumCharge, List<IPeak> peaks, IQualityScorer qualityScorer) {
         this.fragmentTolerance = fragmentTolerance;
         this.id = id;
+        this.qualityScorer = qualityScorer;
         this.nSpectra = nSpectra;
         this.sumPrecursorMz = sumPrecursorMz;
         this.sumPrecursorIntens = sumPrecursorIntens;
@@ -135,6 +172,23 @@ public class GreedyConsensusSpectrum implements IConsensusSpectrumBuilder {
         if (newSpectra.length < 1)
             return;
 
+        if (!Tracing.ENABLED) {
+            addSpectraToConsensus(newSpectra);
+        }
+        else {
+            long token = Tracing.begin(TracePhase.CONSENSUS_UPDATE);
+            try {
+                addSpectraToConsensus(newSpectra);
+            } finally {
+                Tracing.end(TracePhase.CONSENSUS_UPDATE, token);
+            }
+        }
+
+        for (SpectrumHolderListener listener : listeners)
+            listener.onSpectraAdd(this, newSpectra);
+    }
+
+    private void addSpectraToConsensus(ISpectrum... newSpectra) {
         for (ISpectrum spectrum : newSpectra) {
             List<IPeak> spectrumPeaks = spectrum.getPeaks();
             addPeaksToConsensus(spectrumPeaks); // peaks are added but not additional transformation is done
@@ -155,15 +209,30 @@ public class GreedyConsensusSpectrum implements IConsensusSpectrumBuilder {
         updateProperties();
 
         setIsDirty(true);
-
-        for (SpectrumHolderListener listener : listeners)
-            listener.onSpectraAdd(this, newSpectra);
     }
 
     public void addConsensusSpectrum(IConsensusSpectrumBuilder consensusSpectrumToAdd) {
         if (consensusSpectrumToAdd == null || consensusSpectrumToAdd.getSpectraCount() < 1)
             return;
 
+        if (!Tracing.ENABLED) {
+            addConsensusSpectrumToConsensus(consensusSpectrumToAdd);
+        }
+        else {
+            long token = Tracing.begin(TracePhase.CONSENSUS_UPDATE);
+            try {
+                addConsensusSpectrumToConsensus(consensusSpectrumToAdd);
+            } finally {
+                Tracing.end(TracePhase.CONSENSUS_UPDATE, token);
+            }
+        }
+
+        // this is not working correctly
+        for (SpectrumHolderListener listener : listeners)
+            listener.onSpectraAdd(this, consensusSpectrumToAdd.getConsensusSpectrum());
+    }
+
+    private void addConsensusSpectrumToConsensus(IConsensusSpectrumBuilder consensusSpectrumToAdd) {
         // add the peaks like in a "normal" spectrum - the peak count's are preserved
         addPeaksToConsensus(consensusSpectrumToAdd.getConsensusSpectrum().getPeaks());
 
@@ -182,20 +251,31 @@ public class GreedyConsensusSpectrum implements IConsensusSpectrumBuilder {
         updateProperties();
 
         setIsDirty(true);
-
-        // this is not working correctly
-        for (SpectrumHolderListener listener : listeners)
-            listener.onSpectraAdd(this, consensusSpectrumToAdd.getConsensusSpectrum());
     }
 
     protected void updateConsensusSpectrum() {
-        if (isDirty()) {
+        if (!isDirty())
+            return;
 
-            // update the actual consensus spectrum
-            List<IPeak> processedConsensusPeaks = findConsensusPeaks(consensusPeaks, nSpectra);
-            consensusSpectrum = new Spectrum(id, averageCharge, averagePrecursorMz, Defaults.getDefaultQualityScorer(), processedConsensusPeaks);
-            setIsDirty(false);
+        if (!Tracing.ENABLED) {
+            generateConsensusSpectrum();
         }
+        else {
+            long token = Tracing.begin(TracePhase.CONSENSUS_GENERATION);
+            try {
+                generateConsensusSpectrum();
+            } finally {
+                Tracing.end(TracePhase.CONSENSUS_GENERATION, token);
+            }
+        }
+    }
+
+    private void generateConsensusSpectrum() {
+        // update the actual consensus spectrum
+        List<IPeak> processedConsensusPeaks = findConsensusPeaks(consensusPeaks, nSpectra);
+        IQualityScorer scorer = (qualityScorer != null) ? qualityScorer : Defaults.getDefaultQualityScorer();
+        consensusSpectrum = new Spectrum(id, averageCharge, averagePrecursorMz, scorer, processedConsensusPeaks);
+        setIsDirty(false);
     }
 
     @Override
@@ -440,6 +520,14 @@ public class GreedyConsensusSpectrum implements IConsensusSpectrumBuilder {
 
     protected void setIsDirty(boolean isDirty) {
         this.isDirty = isDirty;
+        // every change of the consensus spectrum marks it as dirty
+        if (isDirty)
+            versionStamp = ConsensusVersionStamps.next();
+    }
+
+    @Override
+    public long getVersionStamp() {
+        return versionStamp;
     }
 
     @Override
@@ -65,4 +65,13 @@ public interface IConsensusSpectrumBuilder extends ISpectrumHolder, SpectrumHold
      * @return
      */
     public List<IPeak> getRawConsensusPeaks();
+
+    /**
+     * Returns a stamp identifying the current state of the consensus spectrum. A new,
+     * larger stamp is taken from ConsensusVersionStamps whenever spectra are added or
+     * removed, so scores calculated for an unchanged stamp can be reused.
+     *
+     * @return the current version stamp
+     */
+    public long getVersionStamp();
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.engine.CandidateRecallStatistics
+ * Summarizes how a IClusterCandidateIndex performed during a clustering run.
+ * Brute force matches are only counted if the engine was asked to measure
+ * the recall, since this requires all comparisons to be performed.
+ *
+ * @author jg
+ */
+public class CandidateRecallStatistics {
+    private long queries;
+    private long candidates;
+    private long windowClusters;
+    private long bruteForceMatches;
+    private long foundMatches;
+
+    /**
+     * Records one query against the index.
+     *
+     * @param nCandidates     number of candidates returned by the index within the current window
+     * @param nWindowClusters number of clusters brute force would have compared against
+     */
+    public void addQuery(int nCandidates, int nWindowClusters) {
+        queries++;
+        candidates += nCandidates;
+        windowClusters += nWindowClusters;
+    }
+
+    /**
+     * Records a match found by the brute force search.
+     *
+     * @param foundByIndex whether the matching cluster was also returned by the index
+     */
+    public void addBruteForceMatch(boolean foundByIndex) {
+        bruteForceMatches++;
+        if (foundByIndex)
+            foundMatches++;
+    }
+
+    public long getQueries() {
+        return queries;
+    }
+
+    public long getCandidates() {
+        return candidates;
+    }
+
+    public long getWindowClusters() {
+        return windowClusters;
+    }
+
+    public long getBruteForceMatches() {
+        return bruteForceMatches;
+    }
+
+    public long getFoundMatches() {
+        return foundMatches;
+    }
+
+    /**
+     * @return fraction of brute force matches that were also found using the index, 1 if no matches were recorded
+     */
+    public double getRecall() {
+        if (bruteForceMatches == 0)
+            return 1;
+        return (double) foundMatches / bruteForceMatches;
+    }
+
+    /**
+     * @return fraction of the comparisons brute force would have performed that were still performed
+     */
+    public double getCandidateFraction() {
+        if (windowClusters == 0)
+            return 0;
+        return (double) candidates / windowClusters;
+    }
+
+    public void reset() {
+        queries = 0;
+        candidates = 0;
+        windowClusters = 0;
+        bruteForceMatches = 0;
+        foundMatches = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "queries: " + queries +
+                ", candidates: " + candidates + " of " + windowClusters +
+                String.format(" (%.3f)", getCandidateFraction()) +
+                ", recall: " + foundMatches + " of " + bruteForceMatches +
+                String.format(" (%.3f)", getRecall());
+    }
+}
@@ -0,0 +1,329 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.similarity.ISimilarityChecker;
+import uk.ac.ebi.pride.spectracluster.util.IDefaultingFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.engine.ChargePartitionedClusteringEngine
+ * Incremental clustering engine that keeps one IIncrementalClusteringEngine per
+ * precursor charge (or group of charges) so that clusters of different charge
+ * states are never compared. The input is a single stream sorted by precursor m/z.
+ *
+ * Every partition is processed by its own thread. Clusters returned by the partitions
+ * are merged back in m/z order: a cluster is only returned once no partition can
+ * return a cluster with a lower m/z anymore. If a partition did not receive any
+ * cluster within the last windowSize m/z its whole window can no longer change,
+ * its clusters are then returned and its engine is replaced by a new one.
+ *
+ * Since clusters are processed asynchronously, addClusterIncremental returns clusters
+ * with a delay. getClusters waits for all partitions and returns the clusters that
+ * were not returned yet including the partitions' current windows.
+ *
+ * @author jg
+ */
+public class ChargePartitionedClusteringEngine implements IIncrementalClusteringEngine {
+    public static final int DEFAULT_MAX_QUEUED_CLUSTERS = 1000;
+
+    private static final Comparator<ICluster> MZ_COMPARATOR = new Comparator<ICluster>() {
+        @Override
+        public int compare(ICluster o1, ICluster o2) {
+            return Float.compare(o1.getPrecursorMz(), o2.getPrecursorMz());
+        }
+    };
+
+    private final IDefaultingFactory<IIncrementalClusteringEngine> engineFactory;
+    private final double windowSize;
+    private final int maxQueuedClusters;
+    private final IIncrementalClusteringEngine prototypeEngine;
+
+    private final Map<Integer, Partition> partitionsByCharge = new HashMap<Integer, Partition>();
+    private final List<Partition> partitions = new ArrayList<Partition>();
+    /**
+     * clusters returned by the partitions that were not yet returned
+     */
+    private final PriorityQueue<ICluster> removedClusters = new PriorityQueue<ICluster>(11, MZ_COMPARATOR);
+
+    private volatile Throwable failure;
+
+    /**
+     * Creates an engine that uses one partition per charge state.
+     *
+     * @param engineFactory creates the engine of every partition
+     * @param windowSize    the window size of the created engines
+     */
+    public ChargePartitionedClusteringEngine(IDefaultingFactory<IIncrementalClusteringEngine> engineFactory, double windowSize) {
+        this(engineFactory, windowSize, DEFAULT_MAX_QUEUED_CLUSTERS);
+    }
+
+    /**
+     * @param engineFactory     creates the engine of every partition
+     * @param windowSize        the window size of the created engines, a larger value only delays the returned clusters
+     * @param maxQueuedClusters maximum number of clusters waiting to be processed per partition
+     * @param chargeGroups      charges that share one partition, charges not listed get a partition of their own
+     */
+    public ChargePartitionedClusteringEngine(IDefaultingFactory<IIncrementalClusteringEngine> engineFactory, double windowSize,
+                                             int maxQueuedClusters, int[]... chargeGroups) {
+        if (maxQueuedClusters < 1)
+            throw new IllegalArgumentException("Max queued clusters must be positive");
+
+        this.engineFactory = engineFactory;
+        this.windowSize = windowSize;
+        this.maxQueuedClusters = maxQueuedClusters;
+        this.prototypeEngine = engineFactory.buildInstance();
+
+        for (int[] chargeGroup : chargeGroups) {
+            Partition partition = new Partition();
+            for (int charge : chargeGroup) {
+                if (partitionsByCharge.containsKey(charge))
+                    throw new IllegalArgumentException("Charge " + charge + " is part of multiple groups");
+                partitionsByCharge.put(charge, partition);
+            }
+            partitions.add(partition);
+        }
+    }
+
+    /**
+     * add one cluster and return any clusters which are too far in mz from further consideration
+     * NOTE clusters MUST be added in ascending MZ order
+     *
+     * @return !null list of clusters sorted by m/z
+     */
+    @Override
+    public Collection<ICluster> addClusterIncremental(ICluster added) {
+        checkFailure();
+
+        double precursorMz = added.getPrecursorMz();
+        Partition partition = getPartition(added.getPrecursorCharge());
+        partition.add(added);
+
+        // the windows of partitions without recent clusters are final
+        for (Partition otherPartition : partitions) {
+            if (otherPartition != partition)
+                otherPartition.retireIfOutOfWindow(precursorMz);
+        }
+
+        return pollRemovedClusters(getLowestPossibleMz());
+    }
+
+    private Partition getPartition(int charge) {
+        Partition partition = partitionsByCharge.get(charge);
+        if (partition == null) {
+            partition = new Partition();
+            partitionsByCharge.put(charge, partition);
+            partitions.add(partition);
+        }
+        return partition;
+    }
+
+    /**
+     * @return the lowest m/z a cluster that is not yet in removedClusters may have
+     */
+    private double getLowestPossibleMz() {
+        double lowestMz = Double.POSITIVE_INFINITY;
+        for (Partition partition : partitions) {
+            lowestMz = Math.min(lowestMz, partition.getLowestPossibleMz());
+        }
+        return lowestMz;
+    }
+
+    private List<ICluster> pollRemovedClusters(double maximumMz) {
+        List<ICluster> ret = new ArrayList<ICluster>();
+        synchronized (removedClusters) {
+            while (!removedClusters.isEmpty() && removedClusters.peek().getPrecursorMz() < maximumMz) {
+                ret.add(removedClusters.poll());
+            }
+        }
+        return ret;
+    }
+
+    private void addRemovedClusters(Collection<ICluster> clusters) {
+        if (clusters.isEmpty())
+            return;
+        synchronized (removedClusters) {
+            removedClusters.addAll(clusters);
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null)
+            throw new IllegalStateException("Clustering failed", failure);
+    }
+
+    /**
+     * Waits for all partitions and returns all clusters that were not returned by
+     * addClusterIncremental yet.
+     *
+     * @return clusters sorted by m/z
+     */
+    @Override
+    public List<ICluster> getClusters() {
+        List<ICluster> ret = new ArrayList<ICluster>();
+        for (Partition partition : partitions) {
+            ret.addAll(partition.getWindowClusters());
+        }
+        checkFailure();
+
+        synchronized (removedClusters) {
+            ret.addAll(removedClusters);
+        }
+        Collections.sort(ret, MZ_COMPARATOR);
+
+        return ret;
+    }
+
+    @Override
+    public void addClusters(ICluster... cluster) {
+        throw new UnsupportedOperationException("Use addClusterIncremental instead");
+    }
+
+    @Override
+    public boolean processClusters() {
+        throw new UnsupportedOperationException("Don\'t do this using an IncrementalClusteringEngine use a WrappedIncrementalClusteringEngine");
+    }
+
+    @Override
+    public ISimilarityChecker getSimilarityChecker() {
+        return prototypeEngine.getSimilarityChecker();
+    }
+
+    @Override
+    public double getSimilarityThreshold() {
+        return prototypeEngine.getSimilarityThreshold();
+    }
+
+    /**
+     * total number of clusters in all windows and not yet returned
+     */
+    @Override
+    public int size() {
+        return getClusters().size();
+    }
+
+    /**
+     * @return number of partitions created so far
+     */
+    public int getPartitionCount() {
+        return partitions.size();
+    }
+
+    /**
+     * Stops the partitions' threads. The engine must not be used afterwards.
+     */
+    public void shutdown() {
+        for (Partition partition : partitions) {
+            partition.executor.shutdown();
+        }
+    }
+
+    /**
+     * One engine with its own thread. All access to the engine happens
+     * in that thread.
+     */
+    private class Partition {
+        private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "charge-partition");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        private final Semaphore queuedClusters = new Semaphore(maxQueuedClusters);
+        private IIncrementalClusteringEngine engine = engineFactory.buildInstance();
+
+        /**
+         * whether the engine's window may contain clusters, only accessed by the calling thread
+         */
+        private boolean active;
+        private double lastAddedMz;
+        /**
+         * m/z of the last cluster processed by the engine, no cluster in the window can be below
+         * this m/z minus the window size
+         */
+        private volatile double lastProcessedMz;
+        private volatile boolean retirePending;
+
+        private void add(final ICluster cluster) {
+            final double precursorMz = cluster.getPrecursorMz();
+
+            // an empty window cannot return clusters below the new one
+            if (!active && !retirePending)
+                lastProcessedMz = precursorMz;
+            active = true;
+            lastAddedMz = precursorMz;
+
+            try {
+                queuedClusters.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        addRemovedClusters(engine.addClusterIncremental(cluster));
+                        lastProcessedMz = precursorMz;
+                    } catch (Throwable t) {
+                        failure = t;
+                    } finally {
+                        queuedClusters.release();
+                    }
+                }
+            });
+        }
+
+        private void retireIfOutOfWindow(double precursorMz) {
+            if (!active || precursorMz - lastAddedMz <= windowSize)
+                return;
+
+            active = false;
+            retirePending = true;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        addRemovedClusters(engine.getClusters());
+                        engine = engineFactory.buildInstance();
+                    } catch (Throwable t) {
+                        failure = t;
+                    } finally {
+                        retirePending = false;
+                    }
+                }
+            });
+        }
+
+        private double getLowestPossibleMz() {
+            if (!active && !retirePending)
+                return Double.POSITIVE_INFINITY;
+            return lastProcessedMz - windowSize;
+        }
+
+        /**
+         * waits for all queued clusters to be processed
+         */
+        private Collection<ICluster> getWindowClusters() {
+            Future<Collection<ICluster>> windowClusters = executor.submit(new Callable<Collection<ICluster>>() {
+                @Override
+                public Collection<ICluster> call() {
+                    return engine.getClusters();
+                }
+            });
+
+            try {
+                return windowClusters.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+}
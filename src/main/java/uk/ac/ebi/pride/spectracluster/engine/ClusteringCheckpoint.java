@@ -0,0 +1,55 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.engine.ClusteringCheckpoint
+ * The state a GreedyIncrementalClusteringEngine was resumed from. The
+ * offsets are the values that were passed to ClusteringCheckpointer.writeCheckpoint.
+ *
+ * @author jg
+ */
+public class ClusteringCheckpoint {
+    private final int currentMZ;
+    private final long inputOffset;
+    private final long outputOffset;
+    private final List<ICluster> clusters;
+
+    public ClusteringCheckpoint(int currentMZ, long inputOffset, long outputOffset, List<ICluster> clusters) {
+        this.currentMZ = currentMZ;
+        this.inputOffset = inputOffset;
+        this.outputOffset = outputOffset;
+        this.clusters = Collections.unmodifiableList(clusters);
+    }
+
+    /**
+     * @return the engine's current m/z as int (see MZIntensityUtilities.mzToInt)
+     */
+    public int getCurrentMZ() {
+        return currentMZ;
+    }
+
+    /**
+     * @return position in the input to continue reading from
+     */
+    public long getInputOffset() {
+        return inputOffset;
+    }
+
+    /**
+     * @return position in the output that everything written afterwards has to be discarded from
+     */
+    public long getOutputOffset() {
+        return outputOffset;
+    }
+
+    /**
+     * @return the clusters of the restored window
+     */
+    public List<ICluster> getClusters() {
+        return clusters;
+    }
+}
@@ -0,0 +1,262 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+import uk.ac.ebi.pride.spectracluster.cluster.GreedySpectralCluster;
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.io.BinaryClusterAppender;
+import uk.ac.ebi.pride.spectracluster.io.BinaryClusterParser;
+import uk.ac.ebi.pride.spectracluster.util.MZIntensityUtilities;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.engine.ClusteringCheckpointer
+ * Writes checkpoints of a GreedyIncrementalClusteringEngine's window so that a
+ * long clustering pass can be resumed after a failure.
+ *
+ * The checkpoint file is append-only. Every checkpoint is stored as one record
+ * that only contains the clusters that were created or changed since the previous
+ * checkpoint (in the binary cluster format) followed by the list of clusters that
+ * make up the current window. A record that was not written completely (f.e. because
+ * the process was killed) is ignored and removed when resuming.
+ *
+ * Usage: create the checkpointer, call resume to restore the engine from an existing
+ * checkpoint file and skip the input up to the returned input offset. Call
+ * checkpointIfDue after every addClusterIncremental. Clusters returned by the engine
+ * have to be written to the output before the checkpoint, the output offset is
+ * returned on resume so that the output can be truncated to the checkpoint's state.
+ *
+ * @author jg
+ */
+public class ClusteringCheckpointer {
+    public static final double DEFAULT_MZ_INTERVAL = 10;
+
+    /**
+     * marks the beginning of every record ("CHKP")
+     */
+    private static final int RECORD_MARKER = 0x43484b50;
+
+    private final GreedyIncrementalClusteringEngine engine;
+    private final File checkpointFile;
+    private final int mzIntervalAsInt;
+
+    /**
+     * every cluster is referenced through a slot number that stays the same while the
+     * cluster is in the window - the cluster ids may change when clusters are merged
+     */
+    private Map<GreedySpectralCluster, Integer> clusterSlots = new IdentityHashMap<GreedySpectralCluster, Integer>();
+    private int nextSlot;
+    private int lastCheckpointMZ = Integer.MIN_VALUE;
+    private boolean fileInitialized;
+    private int nCheckpoints;
+
+    public ClusteringCheckpointer(GreedyIncrementalClusteringEngine engine, File checkpointFile) {
+        this(engine, checkpointFile, DEFAULT_MZ_INTERVAL);
+    }
+
+    /**
+     * @param engine         the engine to checkpoint
+     * @param checkpointFile file to write the checkpoints to
+     * @param mzInterval     minimal precursor m/z difference between two checkpoints
+     */
+    public ClusteringCheckpointer(GreedyIncrementalClusteringEngine engine, File checkpointFile, double mzInterval) {
+        if (mzInterval < 0)
+            throw new IllegalArgumentException("M/z interval must not be negative");
+
+        this.engine = engine;
+        this.checkpointFile = checkpointFile;
+        this.mzIntervalAsInt = MZIntensityUtilities.mzToInt(mzInterval);
+
+        engine.setTrackModifiedClusters(true);
+    }
+
+    /**
+     * Restores the engine from the last complete checkpoint in the checkpoint file.
+     * Incomplete records are removed from the file so that new checkpoints can be appended.
+     *
+     * @return the restored checkpoint, null if the file does not contain a checkpoint
+     * @throws IOException if the file cannot be read
+     */
+    public ClusteringCheckpoint resume() throws IOException {
+        fileInitialized = true;
+        if (!checkpointFile.exists())
+            return null;
+
+        Map<Integer, GreedySpectralCluster> slots = new HashMap<Integer, GreedySpectralCluster>();
+        int[] windowSlots = null;
+        int currentMZ = 0;
+        long inputOffset = 0;
+        long outputOffset = 0;
+        long validLength = 0;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile)));
+        try {
+            while (true) {
+                byte[] record;
+                try {
+                    if (in.readInt() != RECORD_MARKER)
+                        break;
+                    record = new byte[in.readInt()];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break; // the last record is incomplete
+                }
+
+                ObjectInputStream recordIn = new ObjectInputStream(new ByteArrayInputStream(record));
+                currentMZ = recordIn.readInt();
+                inputOffset = recordIn.readLong();
+                outputOffset = recordIn.readLong();
+
+                int nChanged = recordIn.readInt();
+                for (int i = 0; i < nChanged; i++) {
+                    int slot = recordIn.readInt();
+                    slots.put(slot, (GreedySpectralCluster) BinaryClusterParser.INSTANCE.parseNextCluster(recordIn, null));
+                }
+
+                windowSlots = new int[recordIn.readInt()];
+                for (int i = 0; i < windowSlots.length; i++) {
+                    windowSlots[i] = recordIn.readInt();
+                }
+
+                // clusters that left the window are never referenced again
+                slots.keySet().retainAll(asSet(windowSlots));
+                validLength += 8 + record.length;
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Invalid checkpoint file " + checkpointFile, e);
+        } finally {
+            in.close();
+        }
+
+        // remove any incomplete record
+        RandomAccessFile file = new RandomAccessFile(checkpointFile, "rw");
+        try {
+            file.setLength(validLength);
+        } finally {
+            file.close();
+        }
+
+        if (windowSlots == null)
+            return null;
+
+        List<GreedySpectralCluster> window = new ArrayList<GreedySpectralCluster>(windowSlots.length);
+        clusterSlots = new IdentityHashMap<GreedySpectralCluster, Integer>();
+        nextSlot = 0;
+        for (int slot : windowSlots) {
+            GreedySpectralCluster cluster = slots.get(slot);
+            if (cluster == null)
+                throw new IOException("Invalid checkpoint file " + checkpointFile + ": missing cluster " + slot);
+            window.add(cluster);
+            clusterSlots.put(cluster, slot);
+            nextSlot = Math.max(nextSlot, slot + 1);
+        }
+
+        engine.restoreWindow(window, currentMZ);
+        engine.pollModifiedClusters();
+        lastCheckpointMZ = currentMZ;
+
+        return new ClusteringCheckpoint(currentMZ, inputOffset, outputOffset, new ArrayList<ICluster>(window));
+    }
+
+    /**
+     * Writes a checkpoint if the engine's current m/z moved at least the m/z interval
+     * since the last checkpoint.
+     *
+     * @param inputOffset  position in the input after the last cluster added to the engine
+     * @param outputOffset position in the output after the last cluster returned by the engine
+     * @return whether a checkpoint was written
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public boolean checkpointIfDue(long inputOffset, long outputOffset) throws IOException {
+        if (lastCheckpointMZ != Integer.MIN_VALUE && engine.getCurrentMZ() - lastCheckpointMZ < mzIntervalAsInt)
+            return false;
+
+        writeCheckpoint(inputOffset, outputOffset);
+        return true;
+    }
+
+    /**
+     * Appends a checkpoint of the engine's current window to the checkpoint file. If resume
+     * was not called before, any existing checkpoint file is replaced.
+     *
+     * @param inputOffset  position in the input after the last cluster added to the engine
+     * @param outputOffset position in the output after the last cluster returned by the engine
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public void writeCheckpoint(long inputOffset, long outputOffset) throws IOException {
+        List<GreedySpectralCluster> window = engine.getWindowClusters();
+        Set<GreedySpectralCluster> modifiedClusters = engine.pollModifiedClusters();
+        Map<GreedySpectralCluster, Integer> newClusterSlots = new IdentityHashMap<GreedySpectralCluster, Integer>();
+
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(recordBytes);
+        out.writeInt(engine.getCurrentMZ());
+        out.writeLong(inputOffset);
+        out.writeLong(outputOffset);
+
+        // only write new and changed clusters
+        List<GreedySpectralCluster> changedClusters = new ArrayList<GreedySpectralCluster>();
+        int[] windowSlots = new int[window.size()];
+        for (int i = 0; i < window.size(); i++) {
+            GreedySpectralCluster cluster = window.get(i);
+            Integer slot = clusterSlots.get(cluster);
+            if (slot == null) {
+                slot = nextSlot++;
+                changedClusters.add(cluster);
+            } else if (modifiedClusters.contains(cluster)) {
+                changedClusters.add(cluster);
+            }
+            newClusterSlots.put(cluster, slot);
+            windowSlots[i] = slot;
+        }
+
+        out.writeInt(changedClusters.size());
+        for (GreedySpectralCluster cluster : changedClusters) {
+            out.writeInt(newClusterSlots.get(cluster));
+            BinaryClusterAppender.INSTANCE.appendCluster(out, cluster);
+        }
+
+        out.writeInt(windowSlots.length);
+        for (int slot : windowSlots) {
+            out.writeInt(slot);
+        }
+        out.close();
+
+        // append the record, the marker and length allow incomplete records to be detected
+        FileOutputStream fileOut = new FileOutputStream(checkpointFile, fileInitialized);
+        try {
+            DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(fileOut));
+            dataOut.writeInt(RECORD_MARKER);
+            dataOut.writeInt(recordBytes.size());
+            recordBytes.writeTo(dataOut);
+            dataOut.flush();
+            fileOut.getFD().sync();
+        } finally {
+            fileOut.close();
+        }
+
+        fileInitialized = true;
+        clusterSlots = newClusterSlots;
+        lastCheckpointMZ = engine.getCurrentMZ();
+        nCheckpoints++;
+    }
+
+    /**
+     * @return number of checkpoints written by this object
+     */
+    public int getCheckpointCount() {
+        return nCheckpoints;
+    }
+
+    public File getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    private static Set<Integer> asSet(int[] values) {
+        Set<Integer> ret = new HashSet<Integer>(values.length);
+        for (int value : values) {
+            ret.add(value);
+        }
+        return ret;
+    }
+}
@@ -3,6 +3,7 @@ package uk.ac.ebi.pride.spectracluster.engine;
 import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
 import uk.ac.ebi.pride.spectracluster.cluster.SpectralCluster;
 import uk.ac.ebi.pride.spectracluster.similarity.ISimilarityChecker;
+import uk.ac.ebi.pride.spectracluster.similarity.SimilarityScoreCache;
 import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
 import uk.ac.ebi.pride.spectracluster.util.ClusterUtilities;
 import uk.ac.ebi.pride.spectracluster.util.Defaults;
@@ -16,7 +17,7 @@ import java.util.*;
  * @author Rui Wang
  * @version $Id$
  */
-public class ClusteringEngine implements IClusteringEngine {
+public class ClusteringEngine implements IClusteringEngine, IEngineMetricsProvider {
 
     private boolean dirty;
     private final List<ICluster> clusters = new ArrayList<ICluster>();
@@ -31,15 +32,38 @@ public class ClusteringEngine implements IClusteringEngine {
      * Similarity threshold below which spectra are removed from a cluster
      */
     private final double retainThreshold;
+    /**
+     * Only clusters within this precursor tolerance are merged
+     */
+    private final double precursorTolerance;
+    /**
+     * Number of threads used to find the none fitting spectra
+     */
+    private int demergeThreads = 1;
+    private IEngineMetrics metrics = new EngineMetrics();
+    /**
+     * optional cache of the scores of unchanged pairs, null to always compare
+     */
+    private SimilarityScoreCache similarityScoreCache;
 
     public ClusteringEngine(ISimilarityChecker similarityChecker,
                             Comparator<ICluster> spectrumComparator,
                             double similarityThreshold,
                             double retainThreshold) {
+        this(similarityChecker, spectrumComparator, similarityThreshold, retainThreshold,
+                Defaults.getDefaultPrecursorIonTolerance());
+    }
+
+    public ClusteringEngine(ISimilarityChecker similarityChecker,
+                            Comparator<ICluster> spectrumComparator,
+                            double similarityThreshold,
+                            double retainThreshold,
+                            double precursorTolerance) {
         this.similarityChecker = similarityChecker;
         this.spectrumComparator = spectrumComparator;
         this.similarityThreshold = similarityThreshold;
         this.retainThreshold = retainThreshold;
+        this.precursorTolerance = precursorTolerance;
     }
 
     protected void guaranteeClean() {
@@ -94,6 +118,8 @@ public class ClusteringEngine implements IClusteringEngine {
         List<ICluster> myClustersToAdd = getClustersToAdd();
         if (cluster != null) {
             myClustersToAdd.addAll(Arrays.asList(cluster));
+            for (int i = 0; i < cluster.length; i++)
+                metrics.clusterAdded();
             setDirty(true);
         }
 
@@ -118,7 +144,7 @@ public class ClusteringEngine implements IClusteringEngine {
                 ISpectrum consensusSpectrum = cluster.getConsensusSpectrum();
                 ISpectrum consensusSpectrum1 = clusterToAdd.getConsensusSpectrum();  // subspectra are really only one spectrum clusters
 
-                double similarityScore = sCheck.assessSimilarity(consensusSpectrum, consensusSpectrum1);
+                double similarityScore = assessSimilarity(sCheck, cluster, consensusSpectrum, clusterToAdd, consensusSpectrum1);
 
                 if (similarityScore >= similarityThreshold && similarityScore > highestSimilarityScore) {
                     highestSimilarityScore = similarityScore;
@@ -129,7 +155,12 @@ public class ClusteringEngine implements IClusteringEngine {
             // add to cluster
             if (mostSimilarCluster != null) {
                 ISpectrum[] clusteredSpectra = new ISpectrum[clusterToAdd.getClusteredSpectra().size()];
+                long start = System.nanoTime();
                 mostSimilarCluster.addSpectra(clusterToAdd.getClusteredSpectra().toArray(clusteredSpectra));
+                // adding only marks the consensus spectrum as changed, it is rebuilt when it is read
+                mostSimilarCluster.getConsensusSpectrum();
+                metrics.consensusUpdated(System.nanoTime() - start);
+                metrics.mergeAccepted();
 
                 // Preserve the cluster id from the bigger cluster, in terms of number of spectra
                 // This is used to facilitate incremental clustering
@@ -138,10 +169,12 @@ public class ClusteringEngine implements IClusteringEngine {
                 }
             } else {
                 myClusters.add(new SpectralCluster(clusterToAdd, Defaults.getDefaultConsensusSpectrumBuilder()));
+                metrics.clusterCreated();
             }
         }
 
         myClustersToAdd.clear();
+        metrics.setWindowSize(myClusters.size());
     }
 
     /**
@@ -171,39 +204,164 @@ public class ClusteringEngine implements IClusteringEngine {
 
     /**
      * Merge the clusters only, all the merged cluster
+     * <p/>
+     * Only clusters within the precursor tolerance are compared. All pairs above the
+     * similarity threshold are kept in a priority queue and the most similar pair is
+     * merged first. After a merge only the pairs involving the changed cluster are
+     * rescored, pairs involving a cluster that changed since they were scored are
+     * skipped. Ties are resolved by the clusters' precursor m/z order so that the
+     * result is deterministic.
      *
      * @return true if clusters have been merged
      */
     public boolean mergeAllClusters() {
-        boolean modified = false;
-        boolean toMerge = true;
         List<ICluster> myClusters = internalGetClusters();
+        if (myClusters.size() < 2)
+            return false;
+
         ISimilarityChecker sCheck = getSimilarityChecker();
 
-        while (toMerge) {
-            toMerge = false;
-            List<ICluster> clustersToRemove = new ArrayList<ICluster>();
-            for (int i = 0; i < myClusters.size(); i++) {
-                for (int j = i + 1; j < myClusters.size(); j++) {
-                    ICluster clusterI = myClusters.get(i);
-                    ICluster clusterJ = myClusters.get(j);
-                    double similarityScore = sCheck.assessSimilarity(clusterI.getConsensusSpectrum(), clusterJ.getConsensusSpectrum());
-                    if (similarityScore >= similarityThreshold) {
-                        toMerge = true;
-                        modified = true;
-                        ISpectrum[] clusteredSpectra = new ISpectrum[clusterI.getClusteredSpectra().size()];
-                        clusterJ.addSpectra(clusterI.getClusteredSpectra().toArray(clusteredSpectra));
-                        clustersToRemove.add(clusterI);
-                        break;
-                    }
-                }
+        // stable sort by precursor m/z
+        ICluster[] sortedClusters = myClusters.toArray(new ICluster[myClusters.size()]);
+        Arrays.sort(sortedClusters, new Comparator<ICluster>() {
+            @Override
+            public int compare(ICluster o1, ICluster o2) {
+                return Float.compare(o1.getPrecursorMz(), o2.getPrecursorMz());
+            }
+        });
+
+        int nClusters = sortedClusters.length;
+        float[] precursorMzs = new float[nClusters];
+        ISpectrum[] consensusSpectra = new ISpectrum[nClusters];
+        for (int i = 0; i < nClusters; i++) {
+            precursorMzs[i] = sortedClusters[i].getPrecursorMz();
+            consensusSpectra[i] = sortedClusters[i].getConsensusSpectrum();
+        }
+
+        boolean[] merged = new boolean[nClusters];
+        int[] versions = new int[nClusters];
+        PriorityQueue<MergeCandidate> candidates = new PriorityQueue<MergeCandidate>();
+
+        // initial scores - the clusters are sorted so the window can be left early
+        for (int i = 0; i < nClusters; i++) {
+            for (int j = i + 1; j < nClusters; j++) {
+                if (precursorMzs[j] - precursorMzs[i] > precursorTolerance)
+                    break;
+                double similarityScore = assessSimilarity(sCheck, sortedClusters[i], consensusSpectra[i], sortedClusters[j], consensusSpectra[j]);
+                if (similarityScore >= similarityThreshold)
+                    candidates.add(new MergeCandidate(similarityScore, i, j, 0, 0));
+            }
+        }
+
+        boolean modified = false;
+        while (!candidates.isEmpty()) {
+            MergeCandidate candidate = candidates.poll();
+            int i = candidate.indexI;
+            int j = candidate.indexJ;
+
+            // one of the clusters was merged or changed since this pair was scored
+            if (merged[i] || merged[j] || versions[i] != candidate.versionI || versions[j] != candidate.versionJ)
+                continue;
+
+            // merge cluster i into cluster j
+            ICluster clusterI = sortedClusters[i];
+            ICluster clusterJ = sortedClusters[j];
+            ISpectrum[] clusteredSpectra = new ISpectrum[clusterI.getClusteredSpectra().size()];
+            long start = System.nanoTime();
+            clusterJ.addSpectra(clusterI.getClusteredSpectra().toArray(clusteredSpectra));
+            modified = true;
+
+            merged[i] = true;
+            versions[j]++;
+            precursorMzs[j] = clusterJ.getPrecursorMz();
+            consensusSpectra[j] = clusterJ.getConsensusSpectrum();
+            metrics.consensusUpdated(System.nanoTime() - start);
+            metrics.mergeAccepted();
+
+            // rescore all pairs involving the changed cluster
+            for (int k = 0; k < nClusters; k++) {
+                if (k == j || merged[k] || Math.abs(precursorMzs[k] - precursorMzs[j]) > precursorTolerance)
+                    continue;
+                int lower = Math.min(j, k);
+                int upper = Math.max(j, k);
+                double similarityScore = assessSimilarity(sCheck, sortedClusters[lower], consensusSpectra[lower], sortedClusters[upper], consensusSpectra[upper]);
+                if (similarityScore >= similarityThreshold)
+                    candidates.add(new MergeCandidate(similarityScore, lower, upper, versions[lower], versions[upper]));
+            }
+        }
+
+        if (modified) {
+            List<ICluster> remainingClusters = new ArrayList<ICluster>();
+            for (int i = 0; i < nClusters; i++) {
+                if (!merged[i])
+                    remainingClusters.add(sortedClusters[i]);
             }
-            clusters.removeAll(clustersToRemove);
+            myClusters.clear();
+            myClusters.addAll(remainingClusters);
+            metrics.setWindowSize(myClusters.size());
         }
 
         return modified;
     }
 
+    /**
+     * Compares the consensus spectra of two clusters, the score is taken from the
+     * similarity score cache if neither cluster changed since it was calculated.
+     */
+    private double assessSimilarity(ISimilarityChecker sCheck, ICluster cluster1, ISpectrum consensusSpectrum1,
+                                    ICluster cluster2, ISpectrum consensusSpectrum2) {
+        SimilarityScoreCache cache = similarityScoreCache;
+        if (cache != null) {
+            Double cachedScore = cache.get(cluster1, cluster2);
+            if (cachedScore != null) {
+                metrics.similarityCacheHit();
+                return cachedScore;
+            }
+        }
+
+        long start = System.nanoTime();
+        double similarityScore = sCheck.assessSimilarity(consensusSpectrum1, consensusSpectrum2);
+        metrics.comparisonPerformed(System.nanoTime() - start);
+
+        if (cache != null) {
+            cache.put(cluster1, cluster2, similarityScore);
+            metrics.similarityCacheMiss();
+        }
+        return similarityScore;
+    }
+
+    /**
+     * A pair of clusters to merge. Pairs are ordered by descending similarity,
+     * followed by the clusters' position in the precursor m/z order.
+     */
+    private static final class MergeCandidate implements Comparable<MergeCandidate> {
+        private final double similarity;
+        private final int indexI;
+        private final int indexJ;
+        private final int versionI;
+        private final int versionJ;
+
+        private MergeCandidate(double similarity, int indexI, int indexJ, int versionI, int versionJ) {
+            this.similarity = similarity;
+            this.indexI = indexI;
+            this.indexJ = indexJ;
+            this.versionI = versionI;
+            this.versionJ = versionJ;
+        }
+
+        @Override
+        public int compareTo(MergeCandidate o) {
+            int result = Double.compare(o.similarity, similarity);
+            if (result != 0)
+                return result;
+            if (indexI != o.indexI)
+                return indexI < o.indexI ? -1 : 1;
+            if (indexJ != o.indexJ)
+                return indexJ < o.indexJ ? -1 : 1;
+            return 0;
+        }
+    }
+
     /**
      * Remove none fitting spectra and the none fitting spectra
      * back in as new clusters
@@ -216,8 +374,13 @@ public class ClusteringEngine implements IClusteringEngine {
         List<ICluster> emptyClusters = new ArrayList<ICluster>(); // holder for any empty clusters
         List<ICluster> myClusters = internalGetClusters();
 
-        for (ICluster cluster : myClusters) {
-            List<ICluster> noneFittingSpectra = ClusterUtilities.findNoneFittingSpectra(cluster, similarityChecker, retainThreshold);
+        // the clusters are scored in parallel, the removals are applied in the clusters' order
+        List<List<ICluster>> allNoneFittingSpectra = ClusterUtilities.findNoneFittingSpectra(myClusters, similarityChecker, retainThreshold, demergeThreads,
+                similarityScoreCache, metrics);
+
+        for (int i = 0; i < myClusters.size(); i++) {
+            ICluster cluster = myClusters.get(i);
+            List<ICluster> noneFittingSpectra = allNoneFittingSpectra.get(i);
             if (!noneFittingSpectra.isEmpty()) {
                 noneFittingSpectraFound = true;
 
@@ -261,6 +424,49 @@ public class ClusteringEngine implements IClusteringEngine {
         return similarityThreshold;
     }
 
+    public double getPrecursorTolerance() {
+        return precursorTolerance;
+    }
+
+    @Override
+    public IEngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void setMetrics(IEngineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public SimilarityScoreCache getSimilarityScoreCache() {
+        return similarityScoreCache;
+    }
+
+    /**
+     * Sets the cache used to reuse the scores of pairs that did not change between the
+     * iterations of processClusters. The cache must only be shared with engines using
+     * the same similarity checker settings.
+     *
+     * @param similarityScoreCache the cache to use, null to always compare the spectra
+     */
+    public void setSimilarityScoreCache(SimilarityScoreCache similarityScoreCache) {
+        this.similarityScoreCache = similarityScoreCache;
+    }
+
+    public int getDemergeThreads() {
+        return demergeThreads;
+    }
+
+    /**
+     * Sets the number of threads used to find the none fitting spectra. The
+     * result does not depend on the number of threads.
+     *
+     * @param demergeThreads number of threads, 1 to process the clusters sequentially
+     */
+    public void setDemergeThreads(int demergeThreads) {
+        this.demergeThreads = demergeThreads;
+    }
+
     /**
      * used to expose internals for overridig classes only
      *
@@ -0,0 +1,344 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.io.ParserUtilities;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.util.ClusterCreateListener;
+import uk.ac.ebi.pride.spectracluster.util.ClusterUtilities;
+import uk.ac.ebi.pride.spectracluster.util.Defaults;
+import uk.ac.ebi.pride.spectracluster.util.function.IFunction;
+
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.engine.ClusteringPipeline
+ * Runs an incremental clustering pass as a pipeline of four stages that are
+ * connected through bounded queues:
+ *
+ * read:    a single thread reads the input and splits it into single spectra
+ * parse:   a thread pool parses and filters the spectra
+ * cluster: the calling thread adds the spectra to the engine in input order
+ * write:   a single thread passes the clusters returned by the engine to the listeners
+ *
+ * Since the parsed spectra are passed to the engine in input order, the input must
+ * be sorted by precursor m/z. Full queues block the upstream stage so that memory
+ * use is limited by the queue size. Any IIncrementalClusteringEngine can be used,
+ * including engines that partition the input internally.
+ *
+ * @author jg
+ */
+public class ClusteringPipeline {
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    private static final long POLL_INTERVAL_MS = 100;
+    private static final Future<ICluster> END_OF_INPUT = new FutureTask<ICluster>(new Callable<ICluster>() {
+        @Override
+        public ICluster call() {
+            return null;
+        }
+    });
+    private static final Collection<ICluster> END_OF_CLUSTERS = new ArrayList<ICluster>();
+
+    private final IIncrementalClusteringEngine engine;
+    private final IFunction<ISpectrum, ISpectrum> peakFilter;
+    private final int nParseThreads;
+    private final int queueSize;
+
+    private final PipelineStageMetrics readMetrics = new PipelineStageMetrics("read");
+    private final PipelineStageMetrics parseMetrics = new PipelineStageMetrics("parse");
+    private final PipelineStageMetrics clusterMetrics = new PipelineStageMetrics("cluster");
+    private final PipelineStageMetrics writeMetrics = new PipelineStageMetrics("write");
+
+    private volatile boolean aborted;
+
+    public ClusteringPipeline(IIncrementalClusteringEngine engine) {
+        this(engine, Defaults.getDefaultPeakFilter(), Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * @param engine        the engine to add the spectra to
+     * @param peakFilter    filter applied to every spectrum before clustering, may be null
+     * @param nParseThreads number of threads used to parse and filter spectra
+     * @param queueSize     capacity of the queues between the stages
+     */
+    public ClusteringPipeline(IIncrementalClusteringEngine engine, IFunction<ISpectrum, ISpectrum> peakFilter,
+                              int nParseThreads, int queueSize) {
+        if (nParseThreads < 1 || queueSize < 1)
+            throw new IllegalArgumentException("Number of threads and queue size must be positive");
+
+        this.engine = engine;
+        this.peakFilter = peakFilter;
+        this.nParseThreads = nParseThreads;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Clusters all spectra of the passed MGF file. The file is split into single
+     * spectra by the read stage, parsing happens in the parse stage.
+     *
+     * @param mgfReader !null reader of a MGF file sorted by precursor m/z
+     * @param listeners receive all clusters
+     */
+    public void process(LineNumberReader mgfReader, ClusterCreateListener... listeners) {
+        process(new MGFChunkIterator(mgfReader), listeners);
+    }
+
+    /**
+     * Clusters already parsed spectra. Only the filtering is done in the parse stage.
+     *
+     * @param spectra   !null spectra sorted by precursor m/z
+     * @param listeners receive all clusters
+     */
+    public void process(Iterable<ISpectrum> spectra, ClusterCreateListener... listeners) {
+        final Iterator<ISpectrum> spectrumIterator = spectra.iterator();
+
+        process(new Iterator<Callable<ICluster>>() {
+            @Override
+            public boolean hasNext() {
+                return spectrumIterator.hasNext();
+            }
+
+            @Override
+            public Callable<ICluster> next() {
+                final ISpectrum spectrum = spectrumIterator.next();
+                return new Callable<ICluster>() {
+                    @Override
+                    public ICluster call() {
+                        return processSpectrum(spectrum);
+                    }
+                };
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }, listeners);
+    }
+
+    private void process(final Iterator<Callable<ICluster>> input, final ClusterCreateListener... listeners) {
+        aborted = false;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final ExecutorService parseService = Executors.newFixedThreadPool(nParseThreads);
+        final BlockingQueue<Future<ICluster>> clusterQueue = new ArrayBlockingQueue<Future<ICluster>>(queueSize);
+        final BlockingQueue<Collection<ICluster>> writeQueue = new ArrayBlockingQueue<Collection<ICluster>>(queueSize);
+        clusterMetrics.setInputQueue(clusterQueue);
+        writeMetrics.setInputQueue(writeQueue);
+
+        Thread readThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        long start = System.nanoTime();
+                        if (!input.hasNext())
+                            break;
+                        final Callable<ICluster> task = input.next();
+                        readMetrics.itemProcessed(System.nanoTime() - start);
+
+                        Future<ICluster> parsedCluster = parseService.submit(new Callable<ICluster>() {
+                            @Override
+                            public ICluster call() throws Exception {
+                                long start = System.nanoTime();
+                                ICluster cluster = task.call();
+                                parseMetrics.itemProcessed(System.nanoTime() - start);
+                                return cluster;
+                            }
+                        });
+                        put(clusterQueue, parsedCluster, readMetrics);
+                    }
+                    put(clusterQueue, END_OF_INPUT, readMetrics);
+                } catch (Throwable t) {
+                    abort(failure, t);
+                }
+            }
+        }, "clustering-pipeline-read");
+
+        Thread writeThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (ClusterCreateListener listener : listeners)
+                        listener.onClusterStarted();
+
+                    while (true) {
+                        Collection<ICluster> clusters = take(writeQueue, writeMetrics);
+                        if (clusters == END_OF_CLUSTERS)
+                            break;
+
+                        for (ICluster cluster : clusters) {
+                            long start = System.nanoTime();
+                            for (ClusterCreateListener listener : listeners)
+                                listener.onClusterCreate(cluster);
+                            writeMetrics.itemProcessed(System.nanoTime() - start);
+                        }
+                    }
+
+                    for (ClusterCreateListener listener : listeners)
+                        listener.onClusterCreateFinished();
+                } catch (Throwable t) {
+                    abort(failure, t);
+                }
+            }
+        }, "clustering-pipeline-write");
+
+        readThread.setDaemon(true);
+        writeThread.setDaemon(true);
+        readThread.start();
+        writeThread.start();
+
+        try {
+            while (true) {
+                Future<ICluster> parsedCluster = take(clusterQueue, clusterMetrics);
+                if (parsedCluster == END_OF_INPUT)
+                    break;
+
+                long blockedStart = System.nanoTime();
+                ICluster cluster = parsedCluster.get();
+                clusterMetrics.blocked(System.nanoTime() - blockedStart);
+                if (cluster == null)
+                    continue;
+
+                long start = System.nanoTime();
+                Collection<ICluster> removedClusters = engine.addClusterIncremental(cluster);
+                clusterMetrics.itemProcessed(System.nanoTime() - start);
+
+                if (!removedClusters.isEmpty())
+                    put(writeQueue, removedClusters, clusterMetrics);
+            }
+
+            Collection<ICluster> remainingClusters = engine.getClusters();
+            if (!remainingClusters.isEmpty())
+                put(writeQueue, remainingClusters, clusterMetrics);
+            put(writeQueue, END_OF_CLUSTERS, clusterMetrics);
+
+            writeThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(failure, e);
+        } catch (ExecutionException e) {
+            abort(failure, e.getCause());
+        } catch (Throwable t) {
+            abort(failure, t);
+        } finally {
+            parseService.shutdownNow();
+        }
+
+        if (failure.get() != null)
+            throw new IllegalStateException("Clustering pipeline failed", failure.get());
+    }
+
+    private ICluster processSpectrum(ISpectrum spectrum) {
+        if (peakFilter != null)
+            spectrum = peakFilter.apply(spectrum);
+        return ClusterUtilities.asCluster(spectrum);
+    }
+
+    /**
+     * stops all stages, only the first failure is kept
+     */
+    private void abort(AtomicReference<Throwable> failure, Throwable cause) {
+        failure.compareAndSet(null, cause);
+        aborted = true;
+    }
+
+    private <T> void put(BlockingQueue<T> queue, T item, PipelineStageMetrics blockedStage) throws InterruptedException {
+        long start = System.nanoTime();
+        while (!queue.offer(item, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+            if (aborted)
+                throw new CancellationException("Clustering pipeline aborted");
+        }
+        blockedStage.blocked(System.nanoTime() - start);
+    }
+
+    private <T> T take(BlockingQueue<T> queue, PipelineStageMetrics stage) throws InterruptedException {
+        stage.sampleQueueDepth();
+        long start = System.nanoTime();
+        T item = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        while (item == null) {
+            if (aborted)
+                throw new CancellationException("Clustering pipeline aborted");
+            item = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+        stage.blocked(System.nanoTime() - start);
+        return item;
+    }
+
+    /**
+     * @return the metrics of the read, parse, cluster and write stage
+     */
+    public List<PipelineStageMetrics> getStageMetrics() {
+        return Arrays.asList(readMetrics, parseMetrics, clusterMetrics, writeMetrics);
+    }
+
+    public IIncrementalClusteringEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Splits a MGF file into the text of single spectra which is parsed by the returned tasks.
+     */
+    private class MGFChunkIterator implements Iterator<Callable<ICluster>> {
+        private final LineNumberReader reader;
+        private String nextChunk;
+
+        private MGFChunkIterator(LineNumberReader reader) {
+            this.reader = reader;
+            nextChunk = readChunk();
+        }
+
+        private String readChunk() {
+            try {
+                StringBuilder chunk = null;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(ParserUtilities.BEGIN_IONS))
+                        chunk = new StringBuilder();
+                    if (chunk == null)
+                        continue;
+
+                    chunk.append(line).append('\n');
+                    if (line.startsWith(ParserUtilities.END_IONS))
+                        return chunk.toString();
+                }
+                return null;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextChunk != null;
+        }
+
+        @Override
+        public Callable<ICluster> next() {
+            if (nextChunk == null)
+                throw new NoSuchElementException();
+
+            final String chunk = nextChunk;
+            nextChunk = readChunk();
+
+            return new Callable<ICluster>() {
+                @Override
+                public ICluster call() {
+                    ISpectrum spectrum = ParserUtilities.readMGFScan(new LineNumberReader(new StringReader(chunk)));
+                    if (spectrum == null)
+                        return null;
+                    return processSpectrum(spectrum);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -4,6 +4,7 @@ import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
 import uk.ac.ebi.pride.spectracluster.similarity.ISimilarityChecker;
 import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
 import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.util.ClusteringConfig;
 import uk.ac.ebi.pride.spectracluster.util.Defaults;
 import uk.ac.ebi.pride.spectracluster.util.IDefaultingFactory;
 import uk.ac.ebi.pride.spectracluster.util.comparator.ClusterComparator;
@@ -41,6 +42,10 @@ public class EngineFactories {
     }
 
 
+    /**
+     * Every engine built by the factories uses its own copy of the similarity
+     * checker so that engines can run in different threads.
+     */
     protected static class ClusteringEngineFactory implements IDefaultingFactory<IClusteringEngine> {
         private final ISimilarityChecker similarityChecker;
         private final ClusterComparator spectrumComparator;
@@ -65,7 +70,7 @@ public class EngineFactories {
          */
         @Override
         public IClusteringEngine buildInstance(Object... otherdata) {
-            return new ClusteringEngine(similarityChecker, spectrumComparator, similarityThreshold, retainThreshold);
+            return new ClusteringEngine(similarityChecker.copy(), spectrumComparator, similarityThreshold, retainThreshold);
         }
     }
 
@@ -119,7 +124,7 @@ public class EngineFactories {
          * @return
          */
         public IIncrementalClusteringEngine getIncrementalClusteringEngine(float ws) {
-            return new IncrementalClusteringEngine(similarityChecker, spectrumComparator, ws, similarityThreshold);
+            return new IncrementalClusteringEngine(similarityChecker.copy(), spectrumComparator, ws, similarityThreshold);
         }
 
         /**
@@ -129,7 +134,7 @@ public class EngineFactories {
          */
         @Override
         public IIncrementalClusteringEngine buildInstance(Object... otherdata) {
-            return new IncrementalClusteringEngine(similarityChecker, spectrumComparator, windowSize, similarityThreshold);
+            return new IncrementalClusteringEngine(similarityChecker.copy(), spectrumComparator, windowSize, similarityThreshold);
         }
     }
 
@@ -143,6 +148,19 @@ public class EngineFactories {
         return new GreedyIncrementalClusteringEngineFactory(pSimilarityChecker, pSpectrumComparator, threshold, windowSize, peakFilterFunction, comparisonPredicate);
     }
 
+    /**
+     * Builds a factory of engines that only use the values of the passed configuration,
+     * they are not affected by later changes of the Defaults.
+     *
+     * @param config              the configuration to use
+     * @param comparisonPredicate limits the compared clusters, may be null
+     * @return !null factory
+     */
+    public static IDefaultingFactory<IIncrementalClusteringEngine> buildGreedyIncrementalClusteringEngineFactory(ClusteringConfig config,
+                                                                                                                 IComparisonPredicate<ICluster> comparisonPredicate) {
+        return new GreedyIncrementalClusteringEngineFactory(config, comparisonPredicate);
+    }
+
     public static IDefaultingFactory<IIncrementalClusteringEngine> buildDefaultGreedyIncrementalClusteringEngineFactory() {
         return buildGreedyIncrementalClusteringEngineFactory(Defaults.getDefaultSimilarityChecker(), Defaults.getDefaultSpectrumComparator(), Defaults.getSimilarityThreshold(), Defaults.getDefaultPrecursorIonTolerance(), Defaults.getDefaultComparisonPeakFilter(), null);
     }
@@ -154,6 +172,10 @@ public class EngineFactories {
         private final float windowSize;
         private final IFunction<List<IPeak>, List<IPeak>> peakFilterFunction;
         private final IComparisonPredicate<ICluster> comparisonPredicate;
+        /**
+         * if set, the engines only use the configuration's values
+         */
+        private final ClusteringConfig config;
 
         public GreedyIncrementalClusteringEngineFactory(ISimilarityChecker similarityChecker, ClusterComparator spectrumComparator, double similarityThreshold, float windowSize, IFunction<List<IPeak>, List<IPeak>> peakFilterFunction, IComparisonPredicate<ICluster> comparisonPredicate) {
             this.similarityChecker = similarityChecker;
@@ -162,18 +184,37 @@ public class EngineFactories {
             this.windowSize = windowSize;
             this.peakFilterFunction = peakFilterFunction;
             this.comparisonPredicate = comparisonPredicate;
+            this.config = null;
+        }
+
+        public GreedyIncrementalClusteringEngineFactory(ClusteringConfig config, IComparisonPredicate<ICluster> comparisonPredicate) {
+            this.similarityChecker = config.getSimilarityChecker();
+            this.spectrumComparator = config.getSpectrumComparator();
+            this.similarityThreshold = config.getSimilarityThreshold();
+            this.windowSize = config.getPrecursorIonTolerance();
+            this.peakFilterFunction = config.getComparisonPeakFilter();
+            this.comparisonPredicate = comparisonPredicate;
+            this.config = config;
         }
 
         public IIncrementalClusteringEngine getGreedyIncrementalClusteringEngine(float windowSize) {
-            return new GreedyIncrementalClusteringEngine(similarityChecker, spectrumComparator, windowSize, similarityThreshold, peakFilterFunction, comparisonPredicate);
+            return getGreedyIncrementalClusteringEngine(windowSize, comparisonPredicate);
         }
 
         public IIncrementalClusteringEngine getGreedyIncrementalClusteringEngine(float windowSize, IComparisonPredicate<ICluster> comparisonPredicate) {
-            return new GreedyIncrementalClusteringEngine(similarityChecker, spectrumComparator, windowSize, similarityThreshold, peakFilterFunction, comparisonPredicate);
+            if (config != null)
+                return new GreedyIncrementalClusteringEngine(config, windowSize, comparisonPredicate);
+            return new GreedyIncrementalClusteringEngine(similarityChecker.copy(), spectrumComparator, windowSize, similarityThreshold, peakFilterFunction, comparisonPredicate);
         }
 
         public IIncrementalClusteringEngine getGreedyIncrementalClusteringEngine(float windowSize, IComparisonPredicate<ICluster> comparisonPredicate, int minNumberOfComparisons) {
-            return new GreedyIncrementalClusteringEngine(similarityChecker, spectrumComparator, windowSize, similarityThreshold, peakFilterFunction, comparisonPredicate, minNumberOfComparisons);
+            if (config != null)
+                return new GreedyIncrementalClusteringEngine(config.toBuilder().setMinNumberComparisons(minNumberOfComparisons).build(), windowSize, comparisonPredicate);
+            return new GreedyIncrementalClusteringEngine(similarityChecker.copy(), spectrumComparator, windowSize, similarityThreshold, peakFilterFunction, comparisonPredicate, minNumberOfComparisons);
+        }
+
+        public ClusteringConfig getConfig() {
+            return config;
         }
 
         @Override
@@ -183,7 +224,7 @@ public class EngineFactories {
                 theWindowSize = (Float) input[0];
             }
 
-            return new GreedyIncrementalClusteringEngine(similarityChecker, spectrumComparator, theWindowSize, similarityThreshold, peakFilterFunction, comparisonPredicate);
+            return getGreedyIncrementalClusteringEngine(theWindowSize, comparisonPredicate);
         }
     }
 
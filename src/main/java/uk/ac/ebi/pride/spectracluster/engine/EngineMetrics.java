@@ -0,0 +1,127 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+import uk.ac.ebi.pride.spectracluster.util.Log2Histogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.engine.EngineMetrics
+ * Default thread-safe implementation of IEngineMetrics based on atomic
+ * counters. Timings are additionally recorded in power of two histograms.
+ *
+ * @author jg
+ */
+public class EngineMetrics implements IEngineMetrics {
+    private final AtomicLong addedClusters = new AtomicLong();
+    private final AtomicLong skippedComparisons = new AtomicLong();
+    private final AtomicLong similarityCacheHits = new AtomicLong();
+    private final AtomicLong similarityCacheMisses = new AtomicLong();
+    private final AtomicLong acceptedMerges = new AtomicLong();
+    private final AtomicLong createdClusters = new AtomicLong();
+    private final AtomicLong evictedClusters = new AtomicLong();
+    private final AtomicLong capacityEvictedClusters = new AtomicLong();
+    private final AtomicLong windowSize = new AtomicLong();
+    private final AtomicLong maximumWindowSize = new AtomicLong();
+    private final Log2Histogram comparisonTimes = new Log2Histogram();
+    private final Log2Histogram consensusUpdateTimes = new Log2Histogram();
+
+    @Override
+    public void clusterAdded() {
+        addedClusters.incrementAndGet();
+    }
+
+    @Override
+    public void comparisonPerformed(long nanos) {
+        comparisonTimes.record(nanos);
+    }
+
+    @Override
+    public void comparisonSkipped() {
+        skippedComparisons.incrementAndGet();
+    }
+
+    @Override
+    public void similarityCacheHit() {
+        similarityCacheHits.incrementAndGet();
+    }
+
+    @Override
+    public void similarityCacheMiss() {
+        similarityCacheMisses.incrementAndGet();
+    }
+
+    @Override
+    public void mergeAccepted() {
+        acceptedMerges.incrementAndGet();
+    }
+
+    @Override
+    public void clusterCreated() {
+        createdClusters.incrementAndGet();
+    }
+
+    @Override
+    public void consensusUpdated(long nanos) {
+        consensusUpdateTimes.record(nanos);
+    }
+
+    @Override
+    public void clustersEvicted(int nClusters) {
+        evictedClusters.addAndGet(nClusters);
+    }
+
+    @Override
+    public void clustersEvictedByCapacity(int nClusters) {
+        capacityEvictedClusters.addAndGet(nClusters);
+    }
+
+    @Override
+    public void setWindowSize(int nClusters) {
+        windowSize.set(nClusters);
+
+        long currentMaximum = maximumWindowSize.get();
+        while (nClusters > currentMaximum) {
+            if (maximumWindowSize.compareAndSet(currentMaximum, nClusters))
+                break;
+            currentMaximum = maximumWindowSize.get();
+        }
+    }
+
+    @Override
+    public EngineMetricsSnapshot getSnapshot() {
+        return new EngineMetricsSnapshot(
+                addedClusters.get(),
+                skippedComparisons.get(),
+                similarityCacheHits.get(),
+                similarityCacheMisses.get(),
+                acceptedMerges.get(),
+                createdClusters.get(),
+                evictedClusters.get(),
+                capacityEvictedClusters.get(),
+                windowSize.get(),
+                maximumWindowSize.get(),
+                new EngineMetricsSnapshot.Timing(comparisonTimes),
+                new EngineMetricsSnapshot.Timing(consensusUpdateTimes));
+    }
+
+    @Override
+    public void reset() {
+        addedClusters.set(0);
+        skippedComparisons.set(0);
+        similarityCacheHits.set(0);
+        similarityCacheMisses.set(0);
+        acceptedMerges.set(0);
+        createdClusters.set(0);
+        evictedClusters.set(0);
+        capacityEvictedClusters.set(0);
+        windowSize.set(0);
+        maximumWindowSize.set(0);
+        comparisonTimes.reset();
+        consensusUpdateTimes.reset();
+    }
+
+    @Override
+    public String toString() {
+        return getSnapshot().toString();
+    }
+}
@@ -0,0 +1,212 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+import uk.ac.ebi.pride.spectracluster.util.Log2Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.engine.EngineMetricsSnapshot
+ * Immutable copy of an engine's metrics at a certain point in time.
+ *
+ * @author jg
+ */
+public class EngineMetricsSnapshot {
+    /**
+     * Summary of a recorded duration
+     */
+    public static class Timing {
+        private final long count;
+        private final long totalNanos;
+        private final long[] buckets;
+
+        public Timing(Log2Histogram histogram) {
+            this.buckets = histogram.getBuckets();
+            this.totalNanos = histogram.getTotal();
+            long nValues = 0;
+            for (long bucketCount : buckets) {
+                nValues += bucketCount;
+            }
+            this.count = nValues;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public double getMeanNanos() {
+            if (count == 0)
+                return 0;
+            return (double) totalNanos / count;
+        }
+
+        /**
+         * @param quantile quantile between 0 and 1
+         * @return approximate quantile in nanoseconds, see Log2Histogram
+         */
+        public long getQuantileNanos(double quantile) {
+            return Log2Histogram.getQuantile(buckets, quantile);
+        }
+
+        /**
+         * @return copy of the power of two histogram
+         */
+        public long[] getBuckets() {
+            return buckets.clone();
+        }
+    }
+
+    private final long addedClusters;
+    private final long skippedComparisons;
+    private final long similarityCacheHits;
+    private final long similarityCacheMisses;
+    private final long acceptedMerges;
+    private final long createdClusters;
+    private final long evictedClusters;
+    private final long capacityEvictedClusters;
+    private final long windowSize;
+    private final long maximumWindowSize;
+    private final Timing comparisonTiming;
+    private final Timing consensusUpdateTiming;
+
+    public EngineMetricsSnapshot(long addedClusters, long skippedComparisons, long similarityCacheHits,
+                                 long similarityCacheMisses, long acceptedMerges, long createdClusters,
+                                 long evictedClusters, long capacityEvictedClusters, long windowSize,
+                                 long maximumWindowSize, Timing comparisonTiming, Timing consensusUpdateTiming) {
+        this.addedClusters = addedClusters;
+        this.skippedComparisons = skippedComparisons;
+        this.similarityCacheHits = similarityCacheHits;
+        this.similarityCacheMisses = similarityCacheMisses;
+        this.acceptedMerges = acceptedMerges;
+        this.createdClusters = createdClusters;
+        this.evictedClusters = evictedClusters;
+        this.capacityEvictedClusters = capacityEvictedClusters;
+        this.windowSize = windowSize;
+        this.maximumWindowSize = maximumWindowSize;
+        this.comparisonTiming = comparisonTiming;
+        this.consensusUpdateTiming = consensusUpdateTiming;
+    }
+
+    public long getAddedClusters() {
+        return addedClusters;
+    }
+
+    public long getComparisons() {
+        return comparisonTiming.getCount();
+    }
+
+    public long getSkippedComparisons() {
+        return skippedComparisons;
+    }
+
+    /**
+     * @return comparisons whose score was taken from the SimilarityScoreCache
+     */
+    public long getSimilarityCacheHits() {
+        return similarityCacheHits;
+    }
+
+    public long getSimilarityCacheMisses() {
+        return similarityCacheMisses;
+    }
+
+    /**
+     * @return fraction of the cache lookups that found a score
+     */
+    public double getSimilarityCacheHitRate() {
+        long lookups = similarityCacheHits + similarityCacheMisses;
+        if (lookups == 0)
+            return 0;
+        return (double) similarityCacheHits / lookups;
+    }
+
+    public long getAcceptedMerges() {
+        return acceptedMerges;
+    }
+
+    public long getCreatedClusters() {
+        return createdClusters;
+    }
+
+    public long getEvictedClusters() {
+        return evictedClusters;
+    }
+
+    /**
+     * @return clusters evicted before leaving the window since the window's capacity was exceeded
+     */
+    public long getCapacityEvictedClusters() {
+        return capacityEvictedClusters;
+    }
+
+    public long getWindowSize() {
+        return windowSize;
+    }
+
+    public long getMaximumWindowSize() {
+        return maximumWindowSize;
+    }
+
+    /**
+     * @return fraction of the added clusters that were merged into an existing one
+     */
+    public double getAcceptRate() {
+        if (addedClusters == 0)
+            return 0;
+        return (double) acceptedMerges / addedClusters;
+    }
+
+    /**
+     * @return time spent in the similarity checker - peak matching and scoring
+     */
+    public Timing getComparisonTiming() {
+        return comparisonTiming;
+    }
+
+    public Timing getConsensusUpdateTiming() {
+        return consensusUpdateTiming;
+    }
+
+    /**
+     * Flat representation intended to be exported to monitoring systems.
+     *
+     * @return !null map of metric name to value in a fixed order
+     */
+    public Map<String, Long> asMap() {
+        Map<String, Long> ret = new LinkedHashMap<String, Long>();
+        ret.put("added_clusters", addedClusters);
+        ret.put("comparisons", getComparisons());
+        ret.put("skipped_comparisons", skippedComparisons);
+        ret.put("similarity_cache_hits", similarityCacheHits);
+        ret.put("similarity_cache_misses", similarityCacheMisses);
+        ret.put("accepted_merges", acceptedMerges);
+        ret.put("created_clusters", createdClusters);
+        ret.put("evicted_clusters", evictedClusters);
+        ret.put("capacity_evicted_clusters", capacityEvictedClusters);
+        ret.put("window_size", windowSize);
+        ret.put("max_window_size", maximumWindowSize);
+        ret.put("comparison_nanos", comparisonTiming.getTotalNanos());
+        ret.put("comparison_p50_nanos", comparisonTiming.getQuantileNanos(0.5));
+        ret.put("comparison_p99_nanos", comparisonTiming.getQuantileNanos(0.99));
+        ret.put("consensus_updates", consensusUpdateTiming.getCount());
+        ret.put("consensus_update_nanos", consensusUpdateTiming.getTotalNanos());
+        ret.put("consensus_update_p50_nanos", consensusUpdateTiming.getQuantileNanos(0.5));
+        ret.put("consensus_update_p99_nanos", consensusUpdateTiming.getQuantileNanos(0.99));
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : asMap().entrySet()) {
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+        return sb.toString();
+    }
+}
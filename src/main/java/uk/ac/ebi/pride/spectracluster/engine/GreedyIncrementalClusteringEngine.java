@@ -1,14 +1,18 @@
 package uk.ac.ebi.pride.spectracluster.engine;
 
 import uk.ac.ebi.pride.spectracluster.cdf.CumulativeDistributionFunction;
+import uk.ac.ebi.pride.spectracluster.cdf.CumulativeDistributionFunctionBuilder;
 import uk.ac.ebi.pride.spectracluster.cdf.CumulativeDistributionFunctionFactory;
 import uk.ac.ebi.pride.spectracluster.cluster.GreedySpectralCluster;
 import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.consensus.GreedyConsensusSpectrum;
 import uk.ac.ebi.pride.spectracluster.similarity.ISimilarityChecker;
+import uk.ac.ebi.pride.spectracluster.similarity.SimilarityScoreCache;
 import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
 import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
 import uk.ac.ebi.pride.spectracluster.spectrum.KnownProperties;
 import uk.ac.ebi.pride.spectracluster.spectrum.Spectrum;
+import uk.ac.ebi.pride.spectracluster.util.ClusteringConfig;
 import uk.ac.ebi.pride.spectracluster.util.Defaults;
 import uk.ac.ebi.pride.spectracluster.util.MZIntensityUtilities;
 import uk.ac.ebi.pride.spectracluster.util.NumberUtilities;
@@ -24,7 +28,29 @@ import java.util.*;
  * User: Steve
  * Date: 7/5/13
  */
-public class GreedyIncrementalClusteringEngine implements IIncrementalClusteringEngine {
+public class GreedyIncrementalClusteringEngine implements IIncrementalClusteringEngine, IEngineMetricsProvider {
+    /**
+     * rough estimates of the memory held by a cluster in the window, only used
+     * to enforce the maximum window memory
+     */
+    public static final int CLUSTER_OVERHEAD_BYTES = 512;
+    public static final int PEAK_BYTES = 32;
+    public static final int SPECTRUM_BYTES = 128;
+
+    /**
+     * Defines which cluster is evicted once the window's capacity is exceeded.
+     */
+    public enum CapacityEvictionPolicy {
+        /**
+         * evict the cluster that was created first
+         */
+        OLDEST,
+        /**
+         * evict the cluster that was created or merged with the longest time ago
+         */
+        LEAST_RECENTLY_MATCHED
+    }
+
     private final List<GreedySpectralCluster> clusters = new ArrayList<GreedySpectralCluster>();
     private final List<ISpectrum> filteredConsensusSpectra = new ArrayList<ISpectrum>();
 
@@ -35,10 +61,50 @@ public class GreedyIncrementalClusteringEngine implements IIncrementalClustering
     private final CumulativeDistributionFunction cumulativeDistributionFunction;
     private final IFunction<List<IPeak>, List<IPeak>> spectrumFilterFunction;
     private final IComparisonPredicate<ICluster> clusterComparisonPredicate;
+    private final GreedyConsensusSpectrum.ConsensusSpectrumFactory consensusSpectrumFactory;
 
     private int currentMZAsInt;
     private int minNumberOfComparisons;
 
+    private IClusterCandidateIndex candidateIndex;
+    private boolean measureCandidateRecall;
+    private final CandidateRecallStatistics candidateRecallStatistics = new CandidateRecallStatistics();
+
+    private IEngineMetrics metrics = new EngineMetrics();
+    private CumulativeDistributionFunctionBuilder cumulativeDistributionFunctionBuilder;
+    /**
+     * major peptides of the window's clusters, only used with a CumulativeDistributionFunctionBuilder
+     */
+    private final Map<GreedySpectralCluster, StampedPeptide> majorPeptides = new IdentityHashMap<GreedySpectralCluster, StampedPeptide>();
+    private SimilarityScoreCache similarityScoreCache;
+
+    /**
+     * limits of the window besides its m/z width, 0 means no limit
+     */
+    private int maximumWindowClusters;
+    private long maximumWindowMemory;
+    private CapacityEvictionPolicy capacityEvictionPolicy = CapacityEvictionPolicy.OLDEST;
+    private final WindowCapacityStatistics windowCapacityStatistics = new WindowCapacityStatistics();
+    /**
+     * the window's clusters ordered by the time they were last created or merged, the
+     * least recently matched one first. GreedySpectralClusters are compared by identity.
+     */
+    private final Set<GreedySpectralCluster> matchOrder = Collections.newSetFromMap(new LinkedHashMap<GreedySpectralCluster, Boolean>());
+    /**
+     * running total of estimateMemory of all clusters in the window
+     */
+    private long windowMemory;
+    /**
+     * precursor m/z of clusters evicted due to the capacity that may still be within the window
+     */
+    private final PriorityQueue<Float> capacityEvictedMzs = new PriorityQueue<Float>();
+
+    /**
+     * clusters that were created or changed since the last call to pollModifiedClusters.
+     * This is only tracked if a ClusteringCheckpointer is attached.
+     */
+    private Set<GreedySpectralCluster> modifiedClusters;
+
     public GreedyIncrementalClusteringEngine(ISimilarityChecker sck,
                                              Comparator<ICluster> scm,
                                              float windowSize,
@@ -46,6 +112,46 @@ public class GreedyIncrementalClusteringEngine implements IIncrementalClustering
                                              IFunction<List<IPeak>, List<IPeak>> spectrumFilterFunction,
                                              IComparisonPredicate<ICluster> clusterComparisonPredicate,
                                              int minNumberOfComparisons) {
+        this(sck, scm, windowSize, clusteringPrecision, spectrumFilterFunction, clusterComparisonPredicate,
+                minNumberOfComparisons, loadDefaultCumulativeDistributionFunction(sck), GreedyConsensusSpectrum.FACTORY);
+    }
+
+    /**
+     * Creates an engine that only uses the values of the passed configuration. The
+     * precursor tolerance is used as window size.
+     *
+     * @param config the configuration to use
+     */
+    public GreedyIncrementalClusteringEngine(ClusteringConfig config) {
+        this(config, config.getPrecursorIonTolerance(), null);
+    }
+
+    /**
+     * Creates an engine that only uses the values of the passed configuration, it
+     * is not affected by later changes of the Defaults. The engine uses its own
+     * copy of the configuration's similarity checker.
+     *
+     * @param config                     the configuration to use
+     * @param windowSize                 the m/z window size
+     * @param clusterComparisonPredicate limits the compared clusters, may be null
+     */
+    public GreedyIncrementalClusteringEngine(ClusteringConfig config,
+                                             float windowSize,
+                                             IComparisonPredicate<ICluster> clusterComparisonPredicate) {
+        this(config.getSimilarityChecker().copy(), config.getSpectrumComparator(), windowSize, config.getSimilarityThreshold(),
+                config.getComparisonPeakFilter(), clusterComparisonPredicate, config.getMinNumberComparisons(),
+                config.loadCumulativeDistributionFunction(), config.getGreedyConsensusSpectrumFactory());
+    }
+
+    private GreedyIncrementalClusteringEngine(ISimilarityChecker sck,
+                                              Comparator<ICluster> scm,
+                                              float windowSize,
+                                              double clusteringPrecision,
+                                              IFunction<List<IPeak>, List<IPeak>> spectrumFilterFunction,
+                                              IComparisonPredicate<ICluster> clusterComparisonPredicate,
+                                              int minNumberOfComparisons,
+                                              CumulativeDistributionFunction cumulativeDistributionFunction,
+                                              GreedyConsensusSpectrum.ConsensusSpectrumFactory consensusSpectrumFactory) {
         this.similarityChecker = sck;
         this.spectrumComparator = scm;
         this.windowSize = windowSize;
@@ -54,9 +160,13 @@ public class GreedyIncrementalClusteringEngine implements IIncrementalClustering
         this.spectrumFilterFunction = spectrumFilterFunction;
         this.clusterComparisonPredicate = clusterComparisonPredicate;
         this.minNumberOfComparisons = minNumberOfComparisons;
+        this.cumulativeDistributionFunction = cumulativeDistributionFunction;
+        this.consensusSpectrumFactory = consensusSpectrumFactory;
+    }
 
+    private static CumulativeDistributionFunction loadDefaultCumulativeDistributionFunction(ISimilarityChecker sck) {
         try {
-            this.cumulativeDistributionFunction = CumulativeDistributionFunctionFactory.getDefaultCumlativeDistributionFunctionForSimilarityMetric(sck.getClass());
+            return CumulativeDistributionFunctionFactory.getDefaultCumulativeDistributionFunctionForSimilarityChecker(sck);
         }
         catch(Exception e) {
             throw new IllegalStateException(e);
@@ -85,11 +195,231 @@ public class GreedyIncrementalClusteringEngine implements IIncrementalClustering
         return windowSize;
     }
 
+    /**
+     * Sets an index used to limit the comparisons to the candidate neighbours of every
+     * added cluster. The index is maintained by the engine as clusters are added, merged
+     * and evicted. If measureRecall is set, all clusters within the window are still
+     * compared to record the recall of the index against the brute force result. The
+     * clustering result is the same in both cases.
+     *
+     * @param candidateIndex the index to use, null to compare against all clusters
+     * @param measureRecall  whether to measure the recall against brute force
+     */
+    public void setCandidateIndex(IClusterCandidateIndex candidateIndex, boolean measureRecall) {
+        this.candidateIndex = candidateIndex;
+        this.measureCandidateRecall = measureRecall;
+        candidateRecallStatistics.reset();
+
+        if (candidateIndex != null) {
+            candidateIndex.clear();
+            for (GreedySpectralCluster cluster : clusters) {
+                candidateIndex.add(cluster);
+            }
+        }
+    }
+
+    public IClusterCandidateIndex getCandidateIndex() {
+        return candidateIndex;
+    }
+
+    @Override
+    public IEngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void setMetrics(IEngineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records the similarity of every performed comparison to estimate a new
+     * cumulative distribution function from the peptide annotated clusters.
+     * The builder may be shared between several engines.
+     *
+     * @param cumulativeDistributionFunctionBuilder the builder to use, null to not record comparisons
+     */
+    public void setCumulativeDistributionFunctionBuilder(CumulativeDistributionFunctionBuilder cumulativeDistributionFunctionBuilder) {
+        this.cumulativeDistributionFunctionBuilder = cumulativeDistributionFunctionBuilder;
+    }
+
+    public CumulativeDistributionFunctionBuilder getCumulativeDistributionFunctionBuilder() {
+        return cumulativeDistributionFunctionBuilder;
+    }
+
+    /**
+     * Reuses the scores of cluster pairs that did not change since they were last
+     * compared, for example when the GreedySpectralClusters returned by an earlier
+     * pass are clustered again. Only passed GreedySpectralClusters can produce hits,
+     * all other clusters are converted into new GreedySpectralClusters with a new
+     * consensus spectrum builder and are therefore always compared. The filtered
+     * consensus spectra are compared, so the cache must only be shared between
+     * engines using the same similarity checker and spectrum filter.
+     *
+     * @param similarityScoreCache the cache to use, null to always compare the spectra
+     */
+    public void setSimilarityScoreCache(SimilarityScoreCache similarityScoreCache) {
+        this.similarityScoreCache = similarityScoreCache;
+    }
+
+    public SimilarityScoreCache getSimilarityScoreCache() {
+        return similarityScoreCache;
+    }
+
+    /**
+     * Limits the number of clusters held in the window. Once the limit is exceeded
+     * clusters are evicted according to the CapacityEvictionPolicy even if they are
+     * still within the m/z window. This bounds the number of comparisons per added
+     * cluster in dense m/z regions at the cost of missed merges, which are reported
+     * through getWindowCapacityStatistics.
+     *
+     * @param maximumWindowClusters the maximum number of clusters, 0 for no limit
+     */
+    public void setMaximumWindowClusters(int maximumWindowClusters) {
+        if (maximumWindowClusters < 0)
+            throw new IllegalArgumentException("Maximum window clusters must not be negative");
+        this.maximumWindowClusters = maximumWindowClusters;
+    }
+
+    public int getMaximumWindowClusters() {
+        return maximumWindowClusters;
+    }
+
+    /**
+     * Limits the estimated memory held by the clusters in the window. The estimate is
+     * based on the number of consensus peaks and clustered spectra of every cluster.
+     *
+     * @param maximumWindowMemory the maximum memory in bytes, 0 for no limit
+     * @see #setMaximumWindowClusters(int)
+     */
+    public void setMaximumWindowMemory(long maximumWindowMemory) {
+        if (maximumWindowMemory < 0)
+            throw new IllegalArgumentException("Maximum window memory must not be negative");
+        this.maximumWindowMemory = maximumWindowMemory;
+    }
+
+    public long getMaximumWindowMemory() {
+        return maximumWindowMemory;
+    }
+
+    public void setCapacityEvictionPolicy(CapacityEvictionPolicy capacityEvictionPolicy) {
+        if (capacityEvictionPolicy == null)
+            throw new IllegalArgumentException("Eviction policy must not be null");
+        this.capacityEvictionPolicy = capacityEvictionPolicy;
+    }
+
+    public CapacityEvictionPolicy getCapacityEvictionPolicy() {
+        return capacityEvictionPolicy;
+    }
+
+    /**
+     * @return how often the window's capacity limits affected clusters within the tolerance
+     */
+    public WindowCapacityStatistics getWindowCapacityStatistics() {
+        return windowCapacityStatistics;
+    }
+
+    private boolean isWindowCapped() {
+        return maximumWindowClusters > 0 || maximumWindowMemory > 0;
+    }
+
+    /**
+     * @return the estimated memory held by the clusters in the window in bytes
+     */
+    public long estimateWindowMemory() {
+        return windowMemory;
+    }
+
+    /**
+     * Rough estimate of the memory held by a cluster in the window.
+     *
+     * @param cluster                   the cluster
+     * @param filteredConsensusSpectrum the cluster's filtered consensus spectrum held by the engine
+     * @return the estimated memory in bytes
+     */
+    protected long estimateMemory(GreedySpectralCluster cluster, ISpectrum filteredConsensusSpectrum) {
+        int nPeaks = cluster.getConsensusSpectrumBuilder().getRawConsensusPeaks().size() +
+                filteredConsensusSpectrum.getPeaksCount();
+        return CLUSTER_OVERHEAD_BYTES + (long) PEAK_BYTES * nPeaks +
+                (long) SPECTRUM_BYTES * cluster.getClusteredSpectraCount();
+    }
+
+    /**
+     * @return the candidate index' statistics of this run
+     */
+    public CandidateRecallStatistics getCandidateRecallStatistics() {
+        return candidateRecallStatistics;
+    }
+
 
     public int getCurrentMZ() {
         return currentMZAsInt;
     }
 
+    /**
+     * @return the clusters currently in the window, used by the ClusteringCheckpointer
+     */
+    List<GreedySpectralCluster> getWindowClusters() {
+        return Collections.unmodifiableList(clusters);
+    }
+
+    void setTrackModifiedClusters(boolean trackModifiedClusters) {
+        if (trackModifiedClusters)
+            modifiedClusters = Collections.newSetFromMap(new IdentityHashMap<GreedySpectralCluster, Boolean>());
+        else
+            modifiedClusters = null;
+    }
+
+    /**
+     * Returns all clusters that were created or changed since the last call and resets the
+     * set. The returned set may contain clusters that are no longer part of the window.
+     *
+     * @return !null set of modified clusters
+     */
+    Set<GreedySpectralCluster> pollModifiedClusters() {
+        if (modifiedClusters == null)
+            throw new IllegalStateException("Modified clusters are not tracked");
+
+        Set<GreedySpectralCluster> ret = modifiedClusters;
+        setTrackModifiedClusters(true);
+        return ret;
+    }
+
+    /**
+     * Replaces the current window with the passed clusters, used to resume
+     * from a checkpoint.
+     *
+     * @param window         the clusters of the window in their original order
+     * @param currentMZAsInt the current m/z of the checkpoint
+     */
+    void restoreWindow(List<GreedySpectralCluster> window, int currentMZAsInt) {
+        clusters.clear();
+        filteredConsensusSpectra.clear();
+        matchOrder.clear();
+        majorPeptides.clear();
+        capacityEvictedMzs.clear();
+        windowMemory = 0;
+
+        // the match order is not stored, the oldest clusters are treated as least recently matched
+        for (GreedySpectralCluster cluster : window) {
+            ISpectrum filteredConsensusSpectrum = filterSpectrum(cluster.getConsensusSpectrum());
+            clusters.add(cluster);
+            filteredConsensusSpectra.add(filteredConsensusSpectrum);
+            matchOrder.add(cluster);
+            windowMemory += estimateMemory(cluster, filteredConsensusSpectrum);
+        }
+
+        if (candidateIndex != null) {
+            candidateIndex.clear();
+            for (GreedySpectralCluster cluster : clusters) {
+                candidateIndex.add(cluster);
+            }
+        }
+
+        this.currentMZAsInt = currentMZAsInt;
+        metrics.setWindowSize(clusters.size());
+    }
+
 
     public void setCurrentMZ(final double pCurrentMZ) {
         int test = MZIntensityUtilities.mzToInt(pCurrentMZ);
@@ -140,11 +470,92 @@ public class GreedyIncrementalClusteringEngine implements IIncrementalClustering
     public List<ICluster> addClusterIncremental(final ICluster added) {
         double precursorMz = added.getPrecursorMz();
         List<ICluster> clustersToremove = findClustersTooLow(precursorMz);
+        metrics.clusterAdded();
+        if (isWindowCapped())
+            windowCapacityStatistics.addCluster(countMissedComparisons(precursorMz));
         // either add as an existing cluster if make a new cluster
         addToClusters(added);
+        if (isWindowCapped())
+            clustersToremove.addAll(evictToCapacity());
+        metrics.clustersEvicted(clustersToremove.size());
+        metrics.setWindowSize(clusters.size());
         return clustersToremove;
     }
 
+    /**
+     * Counts the clusters that were evicted due to the window's capacity but would
+     * still be within the window of the passed precursor m/z.
+     *
+     * @param precursorMz precursor m/z of the added cluster
+     * @return number of comparisons that could not be performed
+     */
+    private int countMissedComparisons(double precursorMz) {
+        double lowestMZ = precursorMz - getWindowSize();
+        while (!capacityEvictedMzs.isEmpty() && lowestMZ > capacityEvictedMzs.peek()) {
+            capacityEvictedMzs.poll();
+        }
+        return capacityEvictedMzs.size();
+    }
+
+    /**
+     * Evicts clusters from the window until neither the maximum number of clusters
+     * nor the maximum memory are exceeded. The most recently added cluster is never
+     * evicted.
+     *
+     * @return !null list of evicted clusters
+     */
+    private List<ICluster> evictToCapacity() {
+        List<ICluster> evictedClusters = new ArrayList<ICluster>();
+
+        while (clusters.size() > 1 &&
+                ((maximumWindowClusters > 0 && clusters.size() > maximumWindowClusters) ||
+                        (maximumWindowMemory > 0 && windowMemory > maximumWindowMemory))) {
+            int index = selectClusterToEvict();
+            GreedySpectralCluster evictedCluster = clusters.remove(index);
+            ISpectrum evictedConsensusSpectrum = filteredConsensusSpectra.remove(index);
+
+            windowMemory -= estimateMemory(evictedCluster, evictedConsensusSpectrum);
+            matchOrder.remove(evictedCluster);
+            majorPeptides.remove(evictedCluster);
+            if (candidateIndex != null)
+                candidateIndex.remove(evictedCluster);
+
+            capacityEvictedMzs.add(evictedCluster.getPrecursorMz());
+            evictedClusters.add(evictedCluster);
+        }
+
+        if (!evictedClusters.isEmpty()) {
+            windowCapacityStatistics.addEvictions(evictedClusters.size());
+            metrics.clustersEvictedByCapacity(evictedClusters.size());
+        }
+
+        return evictedClusters;
+    }
+
+    /**
+     * @return the index of the cluster to evict according to the CapacityEvictionPolicy
+     */
+    private int selectClusterToEvict() {
+        if (capacityEvictionPolicy == CapacityEvictionPolicy.OLDEST)
+            return 0; // clusters are kept in the order they were created
+
+        GreedySpectralCluster leastRecentlyMatched = matchOrder.iterator().next();
+        for (int i = 0; i < clusters.size(); i++) {
+            if (clusters.get(i) == leastRecentlyMatched)
+                return i;
+        }
+
+        throw new IllegalStateException("Least recently matched cluster is not part of the window");
+    }
+
+    /**
+     * Moves the cluster to the end of the match order
+     */
+    private void markMatched(GreedySpectralCluster cluster) {
+        matchOrder.remove(cluster);
+        matchOrder.add(cluster);
+    }
+
     /**
      * return a list of clusters whose mz is too low to merge with the current cluster
      * these are dropped and will be handled as never modifies this pass
@@ -168,11 +579,24 @@ public class GreedyIncrementalClusteringEngine implements IIncrementalClustering
             if (lowestMZ > testPrecursorMz) {
                 clustersToremove.add(currentCluster);
                 consensusSpectraToRemove.add(currentConsensusSpec);
+                windowMemory -= estimateMemory(clusters.get(i), currentConsensusSpec);
             }
         }
         if (!clustersToremove.isEmpty()) {
             clusters.removeAll(clustersToremove);
             filteredConsensusSpectra.removeAll(consensusSpectraToRemove);
+
+            if (candidateIndex != null) {
+                for (ICluster removedCluster : clustersToremove) {
+                    candidateIndex.remove(removedCluster);
+                }
+            }
+            matchOrder.removeAll(clustersToremove);
+            if (!majorPeptides.isEmpty()) {
+                for (ICluster removedCluster : clustersToremove) {
+                    majorPeptides.remove(removedCluster);
+                }
+            }
         }
 
         return clustersToremove;
@@ -188,7 +612,17 @@ public class GreedyIncrementalClusteringEngine implements IIncrementalClustering
         // if there are no clusters yet, just save it
         if (clusters.isEmpty()) {
             clusters.add(greedySpectralCluster);
-            filteredConsensusSpectra.add(filterSpectrum(greedySpectralCluster.getConsensusSpectrum()));
+            long start = System.nanoTime();
+            ISpectrum filteredConsensusSpectrum = filterSpectrum(greedySpectralCluster.getConsensusSpectrum());
+            filteredConsensusSpectra.add(filteredConsensusSpectrum);
+            metrics.consensusUpdated(System.nanoTime() - start);
+            windowMemory += estimateMemory(greedySpectralCluster, filteredConsensusSpectrum);
+            metrics.clusterCreated();
+            if (candidateIndex != null)
+                candidateIndex.add(greedySpectralCluster);
+            if (modifiedClusters != null)
+                modifiedClusters.add(greedySpectralCluster);
+            markMatched(greedySpectralCluster);
             return;
         }
 
@@ -204,20 +638,73 @@ public class GreedyIncrementalClusteringEngine implements IIncrementalClustering
         if (nComparisons < minNumberOfComparisons)
             nComparisons = minNumberOfComparisons;
 
+        // only compare against the candidate neighbours if an index is set
+        Set<ICluster> candidates = null;
+        boolean bruteForceMatchFound = false;
+        if (candidateIndex != null) {
+            candidates = candidateIndex.getCandidates(greedySpectralCluster);
+            candidateRecallStatistics.addQuery(candidates.size(), clusters.size());
+        }
+
+        // the peptide of the added cluster is only looked up once
+        String peptideToAdd = null;
+        if (cumulativeDistributionFunctionBuilder != null)
+            peptideToAdd = CumulativeDistributionFunctionBuilder.getMajorPeptide(clusterToAdd);
+
         for (int i = 0; i < clusters.size(); i++) {
             GreedySpectralCluster existingCluster = clusters.get(i);
 
+            boolean isCandidate = candidates == null || candidates.contains(existingCluster);
+            if (!isCandidate && !measureCandidateRecall) {
+                metrics.comparisonSkipped();
+                continue;
+            }
+
             // apply the predicate if needed
             if (clusterComparisonPredicate != null) {
-                if (!clusterComparisonPredicate.apply(clusterToAdd, existingCluster))
+                if (!clusterComparisonPredicate.apply(clusterToAdd, existingCluster)) {
+                    metrics.comparisonSkipped();
                     continue;
+                }
             }
 
             ISpectrum filteredConsensusSpectrum = filteredConsensusSpectra.get(i);
 
-            double similarityScore = sCheck.assessSimilarity(filteredConsensusSpectrum, filteredConsensusSpectrumToAdd);
+            // the score belongs to the passed cluster's consensus spectrum, which is only kept
+            // by later passes if the cluster already is a GreedySpectralCluster
+            long start;
+            Double cachedScore = (similarityScoreCache != null) ? similarityScoreCache.get(existingCluster, clusterToAdd) : null;
+            double similarityScore;
+            if (cachedScore != null) {
+                similarityScore = cachedScore;
+                metrics.similarityCacheHit();
+            }
+            else {
+                start = System.nanoTime();
+                similarityScore = sCheck.assessSimilarity(filteredConsensusSpectrum, filteredConsensusSpectrumToAdd);
+                metrics.comparisonPerformed(System.nanoTime() - start);
+                if (similarityScoreCache != null) {
+                    similarityScoreCache.put(existingCluster, clusterToAdd, similarityScore);
+                    metrics.similarityCacheMiss();
+                }
+            }
+            if (cumulativeDistributionFunctionBuilder != null) {
+                String existingPeptide = (peptideToAdd != null) ? getMajorPeptide(existingCluster) : null;
+                cumulativeDistributionFunctionBuilder.addComparison(peptideToAdd, existingPeptide, similarityScore);
+            }
+            boolean isMatch = cumulativeDistributionFunction.isSaveMatch(similarityScore, nComparisons, mixtureProbability);
+
+            // the first match is the one brute force would have merged with
+            if (candidates != null && measureCandidateRecall && isMatch && !bruteForceMatchFound) {
+                bruteForceMatchFound = true;
+                candidateRecallStatistics.addBruteForceMatch(isCandidate);
+            }
+
+            // comparisons to non-candidates are only performed to measure the recall
+            if (!isCandidate)
+                continue;
 
-            if (cumulativeDistributionFunction.isSaveMatch(similarityScore, nComparisons, mixtureProbability)) {
+            if (isMatch) {
                 // use the originally passed cluster object for this, the greedy version is only used
                 // to track comparison results and used if added internally
 
@@ -226,10 +713,21 @@ public class GreedyIncrementalClusteringEngine implements IIncrementalClustering
                     existingCluster.setId(clusterToAdd.getId());
 
                 // add to cluster
+                windowMemory -= estimateMemory(existingCluster, filteredConsensusSpectrum);
+                start = System.nanoTime();
                 existingCluster.addCluster(clusterToAdd);
 
                 // update the existing consensus spectrum
-                filteredConsensusSpectra.set(i, filterSpectrum(existingCluster.getConsensusSpectrum()));
+                ISpectrum updatedConsensusSpectrum = filterSpectrum(existingCluster.getConsensusSpectrum());
+                filteredConsensusSpectra.set(i, updatedConsensusSpectrum);
+                metrics.consensusUpdated(System.nanoTime() - start);
+                windowMemory += estimateMemory(existingCluster, updatedConsensusSpectrum);
+                metrics.mergeAccepted();
+                if (candidateIndex != null)
+                    candidateIndex.update(existingCluster);
+                if (modifiedClusters != null)
+                    modifiedClusters.add(existingCluster);
+                markMatched(existingCluster);
 
                 // since the cluster was added we're done
                 return;
@@ -238,13 +736,38 @@ public class GreedyIncrementalClusteringEngine implements IIncrementalClustering
             // save the comparison result for the next round of clustering
             greedySpectralCluster.saveComparisonResult(existingCluster.getId(), (float) similarityScore);
             existingCluster.saveComparisonResult(greedySpectralCluster.getId(), (float) similarityScore);
+            if (modifiedClusters != null)
+                modifiedClusters.add(existingCluster);
         }
 
         // since the cluster wasn't merged, add it as new
         clusters.add(greedySpectralCluster);
         // process the consensus spectrum
+        long start = System.nanoTime();
         ISpectrum filteredConsensusSpectrum = filterSpectrum(greedySpectralCluster.getConsensusSpectrum());
         filteredConsensusSpectra.add(filteredConsensusSpectrum);
+        metrics.consensusUpdated(System.nanoTime() - start);
+        windowMemory += estimateMemory(greedySpectralCluster, filteredConsensusSpectrum);
+        metrics.clusterCreated();
+        if (candidateIndex != null)
+            candidateIndex.add(greedySpectralCluster);
+        if (modifiedClusters != null)
+            modifiedClusters.add(greedySpectralCluster);
+        markMatched(greedySpectralCluster);
+    }
+
+    /**
+     * Looks up the major peptide of a cluster in the window. It is only determined
+     * again once spectra were added to or removed from the cluster.
+     */
+    private String getMajorPeptide(GreedySpectralCluster cluster) {
+        long versionStamp = cluster.getConsensusSpectrumBuilder().getVersionStamp();
+        StampedPeptide stampedPeptide = majorPeptides.get(cluster);
+        if (stampedPeptide == null || stampedPeptide.versionStamp != versionStamp) {
+            stampedPeptide = new StampedPeptide(versionStamp, CumulativeDistributionFunctionBuilder.getMajorPeptide(cluster));
+            majorPeptides.put(cluster, stampedPeptide);
+        }
+        return stampedPeptide.peptide;
     }
 
     private ISpectrum filterSpectrum(ISpectrum spectrumToFilter) {
@@ -272,7 +795,7 @@ public class GreedyIncrementalClusteringEngine implements IIncrementalClustering
             greedyCluster = (GreedySpectralCluster) cluster;
         }
         else {
-            greedyCluster = new GreedySpectralCluster(cluster);
+            greedyCluster = new GreedySpectralCluster(cluster, consensusSpectrumFactory);
         }
 
         return greedyCluster;
@@ -341,4 +864,17 @@ public class GreedyIncrementalClusteringEngine implements IIncrementalClustering
     public int size() {
         return clusters.size();
     }
+
+    /**
+     * major peptide of a cluster when its consensus spectrum builder had the version stamp
+     */
+    private static final class StampedPeptide {
+        private final long versionStamp;
+        private final String peptide;
+
+        private StampedPeptide(long versionStamp, String peptide) {
+            this.versionStamp = versionStamp;
+            this.peptide = peptide;
+        }
+    }
 }
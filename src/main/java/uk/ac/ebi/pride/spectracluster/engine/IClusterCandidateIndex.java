@@ -0,0 +1,58 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+
+import java.util.Set;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.engine.IClusterCandidateIndex
+ * An index that returns the clusters which are likely to be similar to a query cluster.
+ * Engines use it to only compare clusters that are potential neighbours instead of
+ * every cluster they currently hold. The index is approximate - clusters that would
+ * have been merged may be missed.
+ *
+ * Clusters are identified by object identity, not by their id.
+ *
+ * @author jg
+ */
+public interface IClusterCandidateIndex {
+    /**
+     * Adds the cluster to the index.
+     *
+     * @param cluster !null cluster
+     */
+    public void add(ICluster cluster);
+
+    /**
+     * Removes the cluster from the index. Unknown clusters are ignored.
+     *
+     * @param cluster !null cluster
+     */
+    public void remove(ICluster cluster);
+
+    /**
+     * Re-indexes the cluster after its consensus spectrum changed.
+     *
+     * @param cluster !null cluster
+     */
+    public void update(ICluster cluster);
+
+    /**
+     * Returns all indexed clusters that are candidate neighbours of the passed cluster.
+     * The query cluster does not have to be part of the index.
+     *
+     * @param query !null cluster
+     * @return !null set of candidates, compared by identity
+     */
+    public Set<ICluster> getCandidates(ICluster query);
+
+    /**
+     * @return number of indexed clusters
+     */
+    public int size();
+
+    /**
+     * Removes all clusters from the index
+     */
+    public void clear();
+}
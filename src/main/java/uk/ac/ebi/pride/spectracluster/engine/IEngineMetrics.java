@@ -0,0 +1,90 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.engine.IEngineMetrics
+ * Collects the runtime metrics of a single clustering engine. Implementations
+ * must be thread-safe and cheap to update since they are called for every
+ * comparison.
+ *
+ * @author jg
+ */
+public interface IEngineMetrics {
+    /**
+     * A cluster was passed to the engine
+     */
+    public void clusterAdded();
+
+    /**
+     * Two spectra were compared. The time includes the peak matching and the
+     * scoring since both are performed by the ISimilarityChecker.
+     *
+     * @param nanos time spent in the similarity checker
+     */
+    public void comparisonPerformed(long nanos);
+
+    /**
+     * A comparison was skipped, for example by a predicate or a candidate index
+     */
+    public void comparisonSkipped();
+
+    /**
+     * The score of a pair was found in the SimilarityScoreCache so the comparison was not performed
+     */
+    public void similarityCacheHit();
+
+    /**
+     * The score of a pair was not found in the SimilarityScoreCache, the comparison is
+     * reported through comparisonPerformed
+     */
+    public void similarityCacheMiss();
+
+    /**
+     * Two clusters were merged
+     */
+    public void mergeAccepted();
+
+    /**
+     * A new cluster was created since no match was found
+     */
+    public void clusterCreated();
+
+    /**
+     * The consensus spectrum of a cluster was updated
+     *
+     * @param nanos time spent updating the consensus spectrum
+     */
+    public void consensusUpdated(long nanos);
+
+    /**
+     * Clusters were evicted from the engine's window
+     *
+     * @param nClusters number of evicted clusters
+     */
+    public void clustersEvicted(int nClusters);
+
+    /**
+     * Clusters were evicted before leaving the engine's window since the
+     * window's capacity was exceeded. These are also reported through
+     * clustersEvicted.
+     *
+     * @param nClusters number of evicted clusters
+     */
+    public void clustersEvictedByCapacity(int nClusters);
+
+    /**
+     * Sets the current number of clusters held by the engine
+     *
+     * @param nClusters current number of clusters
+     */
+    public void setWindowSize(int nClusters);
+
+    /**
+     * @return !null copy of the current metrics
+     */
+    public EngineMetricsSnapshot getSnapshot();
+
+    /**
+     * Resets all metrics
+     */
+    public void reset();
+}
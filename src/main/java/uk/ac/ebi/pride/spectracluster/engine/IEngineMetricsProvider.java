@@ -0,0 +1,22 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.engine.IEngineMetricsProvider
+ * Implemented by engines that report their runtime metrics.
+ *
+ * @author jg
+ */
+public interface IEngineMetricsProvider {
+    /**
+     * @return !null the metrics of this engine instance
+     */
+    public IEngineMetrics getMetrics();
+
+    /**
+     * Replaces the metrics, for example to let several engines report to
+     * the same metrics.
+     *
+     * @param metrics !null metrics to use
+     */
+    public void setMetrics(IEngineMetrics metrics);
+}
@@ -18,7 +18,7 @@ import java.util.*;
  * @author Johannes Griss
  * @author Steve
  */
-public class IncrementalClusteringEngine implements IIncrementalClusteringEngine {
+public class IncrementalClusteringEngine implements IIncrementalClusteringEngine, IEngineMetricsProvider {
     /**
      * Defines the proportion of spectra that must be shared between two clusters
      * to define these two clusters as identical. Comparison is performed based
@@ -30,9 +30,14 @@ public class IncrementalClusteringEngine implements IIncrementalClusteringEngine
 
     /**
      * These are mainly for debugging
+     *
+     * @deprecated these counters are shared by all instances, use getMetrics instead
      */
+    @Deprecated
     public static int numberNotMerge = 0;
+    @Deprecated
     public static int numberGoodMerge = 0;
+    @Deprecated
     public static int numberLessGoodMerge = 0;
 
     private final List<ICluster> clusters = new ArrayList<ICluster>();
@@ -41,6 +46,7 @@ public class IncrementalClusteringEngine implements IIncrementalClusteringEngine
     private final double windowSize;
     private final double similarityThreshold;
     private int currentMZAsInt;
+    private IEngineMetrics metrics = new EngineMetrics();
 
     public IncrementalClusteringEngine(ISimilarityChecker sck,
                                        Comparator<ICluster> scm,
@@ -56,6 +62,16 @@ public class IncrementalClusteringEngine implements IIncrementalClusteringEngine
         return windowSize;
     }
 
+    @Override
+    public IEngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void setMetrics(IEngineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
 
     public int getCurrentMZ() {
         return currentMZAsInt;
@@ -111,8 +127,11 @@ public class IncrementalClusteringEngine implements IIncrementalClusteringEngine
     public List<ICluster> addClusterIncremental(final ICluster added) {
         double precursorMz = added.getPrecursorMz();
         List<ICluster> clustersToremove = findClustersTooLow(precursorMz);
+        metrics.clusterAdded();
+        metrics.clustersEvicted(clustersToremove.size());
         // either add as an existing cluster if make a new cluster
         addToClusters(added);
+        metrics.setWindowSize(clusters.size());
         return clustersToremove;
     }
 
@@ -154,6 +173,7 @@ public class IncrementalClusteringEngine implements IIncrementalClusteringEngine
         if (myClusters.isEmpty()) {   // no checks just add
             myClusters.add(new SpectralCluster(clusterToAdd, Defaults.getDefaultConsensusSpectrumBuilder()));
             numberNotMerge++;
+            metrics.clusterCreated();
             return;
         }
 
@@ -173,7 +193,9 @@ public class IncrementalClusteringEngine implements IIncrementalClusteringEngine
         for (ICluster cluster : myClusters) {
             ISpectrum consensusSpectrum = cluster.getConsensusSpectrum();
 
+            long start = System.nanoTime();
             double similarityScore = sCheck.assessSimilarity(consensusSpectrum, consensusSpectrum1);
+            metrics.comparisonPerformed(System.nanoTime() - start);
 
             if (similarityScore > highestSimilarityScore && similarityScore >= similarityThreshold) {
                 highestSimilarityScore = similarityScore;
@@ -191,13 +213,19 @@ public class IncrementalClusteringEngine implements IIncrementalClusteringEngine
             // add to cluster
             ISpectrum[] clusteredSpectra = new ISpectrum[clusteredSpectra1.size()];
             final ISpectrum[] merged = clusteredSpectra1.toArray(clusteredSpectra);
+            long start = System.nanoTime();
             mostSimilarCluster.addSpectra(merged);
+            // adding only marks the consensus spectrum as changed, it is rebuilt when it is read
+            mostSimilarCluster.getConsensusSpectrum();
+            metrics.consensusUpdated(System.nanoTime() - start);
 
             numberGoodMerge++;
+            metrics.mergeAccepted();
         } else {
             // create a new cluster
             myClusters.add(new SpectralCluster(clusterToAdd, Defaults.getDefaultConsensusSpectrumBuilder()));
             numberNotMerge++;
+            metrics.clusterCreated();
         }
     }
 
@@ -258,8 +286,11 @@ public class IncrementalClusteringEngine implements IIncrementalClusteringEngine
         List<ISpectrum> clusteredSpectra1 = mergeFrom.getClusteredSpectra();
         ISpectrum[] clusteredSpectra = new ISpectrum[clusteredSpectra1.size()];
         final ISpectrum[] merged = clusteredSpectra1.toArray(clusteredSpectra);
+        long start = System.nanoTime();
         mergeInto.addSpectra(merged);
+        metrics.consensusUpdated(System.nanoTime() - start);
         numberLessGoodMerge++;
+        metrics.mergeAccepted();
     }
 
     /**
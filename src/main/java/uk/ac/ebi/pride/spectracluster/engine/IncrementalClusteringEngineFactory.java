@@ -20,7 +20,7 @@ public class IncrementalClusteringEngineFactory {
      * @return the created IncrementalClusteringEngine object.
      */
     public IIncrementalClusteringEngine getIncrementalClusteringEngine(float windowSize) {
-        final ISimilarityChecker similarityChecker = Defaults.getDefaultSimilarityChecker();
+        final ISimilarityChecker similarityChecker = Defaults.getDefaultSimilarityChecker().copy();
         final ClusterComparator comparator = Defaults.getDefaultSpectrumComparator();
         final double similarityThreshold = Defaults.getSimilarityThreshold();
         return new IncrementalClusteringEngine(similarityChecker, comparator, windowSize, similarityThreshold);
@@ -0,0 +1,197 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+
+import java.util.*;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.engine.MinHashClusterIndex
+ * Locality-sensitive hashing index over the major peaks of the clusters'
+ * consensus spectra. Every consensus spectrum is represented by the set of its
+ * N highest peaks binned to integer m/z values (ISpectrum.asMajorPeakMZs). A
+ * MinHash signature of nBands * nRows values is calculated for this set and
+ * two clusters become candidates as soon as all rows of at least one band
+ * are identical.
+ *
+ * The probability that two clusters with a Jaccard similarity s of their major
+ * peaks are reported as candidates is 1 - (1 - s^nRows)^nBands. More bands
+ * increase the recall, more rows reduce the number of candidates.
+ *
+ * The hash functions are created using a fixed seed so that results are reproducible.
+ *
+ * @author jg
+ */
+public class MinHashClusterIndex implements IClusterCandidateIndex {
+    public static final int DEFAULT_BANDS = 20;
+    public static final int DEFAULT_ROWS = 2;
+    public static final int DEFAULT_MAJOR_PEAKS = 20;
+    public static final long DEFAULT_SEED = 42L;
+
+    private final int nBands;
+    private final int nRows;
+    private final int nMajorPeaks;
+    /**
+     * factors and offsets of the nBands * nRows hash functions
+     */
+    private final long[] hashFactors;
+    private final long[] hashOffsets;
+    /**
+     * one bucket map per band
+     */
+    private final List<Map<Long, Set<ICluster>>> bandBuckets;
+    /**
+     * the band keys every cluster was indexed under
+     */
+    private final Map<ICluster, long[]> clusterKeys = new IdentityHashMap<ICluster, long[]>();
+
+    public MinHashClusterIndex() {
+        this(DEFAULT_BANDS, DEFAULT_ROWS, DEFAULT_MAJOR_PEAKS, DEFAULT_SEED);
+    }
+
+    public MinHashClusterIndex(int nBands, int nRows) {
+        this(nBands, nRows, DEFAULT_MAJOR_PEAKS, DEFAULT_SEED);
+    }
+
+    public MinHashClusterIndex(int nBands, int nRows, int nMajorPeaks, long seed) {
+        if (nBands < 1 || nRows < 1 || nMajorPeaks < 1)
+            throw new IllegalArgumentException("Bands, rows and major peaks must be positive");
+
+        this.nBands = nBands;
+        this.nRows = nRows;
+        this.nMajorPeaks = nMajorPeaks;
+
+        Random random = new Random(seed);
+        int nHashes = nBands * nRows;
+        hashFactors = new long[nHashes];
+        hashOffsets = new long[nHashes];
+        for (int i = 0; i < nHashes; i++) {
+            hashFactors[i] = random.nextLong() | 1L; // multiply-shift hashing requires odd factors
+            hashOffsets[i] = random.nextLong();
+        }
+
+        bandBuckets = new ArrayList<Map<Long, Set<ICluster>>>(nBands);
+        for (int i = 0; i < nBands; i++) {
+            bandBuckets.add(new HashMap<Long, Set<ICluster>>());
+        }
+    }
+
+    @Override
+    public void add(ICluster cluster) {
+        if (clusterKeys.containsKey(cluster))
+            remove(cluster);
+
+        long[] keys = calculateBandKeys(cluster);
+        clusterKeys.put(cluster, keys);
+
+        for (int band = 0; band < nBands; band++) {
+            Map<Long, Set<ICluster>> buckets = bandBuckets.get(band);
+            Set<ICluster> bucket = buckets.get(keys[band]);
+            if (bucket == null) {
+                bucket = Collections.newSetFromMap(new IdentityHashMap<ICluster, Boolean>());
+                buckets.put(keys[band], bucket);
+            }
+            bucket.add(cluster);
+        }
+    }
+
+    @Override
+    public void remove(ICluster cluster) {
+        long[] keys = clusterKeys.remove(cluster);
+        if (keys == null)
+            return;
+
+        for (int band = 0; band < nBands; band++) {
+            Map<Long, Set<ICluster>> buckets = bandBuckets.get(band);
+            Set<ICluster> bucket = buckets.get(keys[band]);
+            if (bucket == null)
+                continue;
+            bucket.remove(cluster);
+            if (bucket.isEmpty())
+                buckets.remove(keys[band]);
+        }
+    }
+
+    @Override
+    public void update(ICluster cluster) {
+        remove(cluster);
+        add(cluster);
+    }
+
+    @Override
+    public Set<ICluster> getCandidates(ICluster query) {
+        long[] keys = clusterKeys.get(query);
+        if (keys == null)
+            keys = calculateBandKeys(query);
+
+        Set<ICluster> candidates = Collections.newSetFromMap(new IdentityHashMap<ICluster, Boolean>());
+        for (int band = 0; band < nBands; band++) {
+            Set<ICluster> bucket = bandBuckets.get(band).get(keys[band]);
+            if (bucket != null)
+                candidates.addAll(bucket);
+        }
+        candidates.remove(query);
+
+        return candidates;
+    }
+
+    @Override
+    public int size() {
+        return clusterKeys.size();
+    }
+
+    @Override
+    public void clear() {
+        clusterKeys.clear();
+        for (Map<Long, Set<ICluster>> buckets : bandBuckets) {
+            buckets.clear();
+        }
+    }
+
+    /**
+     * Calculates the MinHash signature of the passed major peaks.
+     *
+     * @param majorPeakMzs the binned major peaks
+     * @return the signature containing nBands * nRows values
+     */
+    public long[] calculateSignature(int[] majorPeakMzs) {
+        long[] signature = new long[hashFactors.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+
+        for (int mz : majorPeakMzs) {
+            for (int i = 0; i < signature.length; i++) {
+                long hash = (hashFactors[i] * mz + hashOffsets[i]) >>> 32;
+                if (hash < signature[i])
+                    signature[i] = hash;
+            }
+        }
+
+        return signature;
+    }
+
+    private long[] calculateBandKeys(ICluster cluster) {
+        long[] signature = calculateSignature(cluster.getConsensusSpectrum().asMajorPeakMZs(nMajorPeaks));
+        long[] keys = new long[nBands];
+
+        for (int band = 0; band < nBands; band++) {
+            long key = band;
+            for (int row = 0; row < nRows; row++) {
+                key = 31 * key + signature[band * nRows + row];
+            }
+            keys[band] = key;
+        }
+
+        return keys;
+    }
+
+    public int getBands() {
+        return nBands;
+    }
+
+    public int getRows() {
+        return nRows;
+    }
+
+    public int getMajorPeaks() {
+        return nMajorPeaks;
+    }
+}
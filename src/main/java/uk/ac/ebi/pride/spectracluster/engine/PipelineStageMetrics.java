@@ -0,0 +1,101 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.engine.PipelineStageMetrics
+ * Throughput and queue metrics of one ClusteringPipeline stage. Busy time is
+ * the time spent processing items (summed over all threads of the stage),
+ * blocked time the time spent waiting for input or for space in the output
+ * queue. The queue depth refers to the stage's input queue.
+ *
+ * @author jg
+ */
+public class PipelineStageMetrics {
+    private final String name;
+    private final AtomicLong processedItems = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+    private final AtomicInteger maximumQueueDepth = new AtomicInteger();
+    private volatile BlockingQueue<?> inputQueue;
+
+    public PipelineStageMetrics(String name) {
+        this.name = name;
+    }
+
+    void itemProcessed(long nanos) {
+        processedItems.incrementAndGet();
+        busyNanos.addAndGet(nanos);
+    }
+
+    void blocked(long nanos) {
+        blockedNanos.addAndGet(nanos);
+    }
+
+    void setInputQueue(BlockingQueue<?> inputQueue) {
+        this.inputQueue = inputQueue;
+    }
+
+    /**
+     * records the current depth of the input queue
+     */
+    void sampleQueueDepth() {
+        int depth = getQueueDepth();
+        int max = maximumQueueDepth.get();
+        while (depth > max && !maximumQueueDepth.compareAndSet(max, depth)) {
+            max = maximumQueueDepth.get();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getProcessedItems() {
+        return processedItems.get();
+    }
+
+    public long getBusyNanos() {
+        return busyNanos.get();
+    }
+
+    public long getBlockedNanos() {
+        return blockedNanos.get();
+    }
+
+    /**
+     * @return current number of items waiting in the input queue, 0 if the stage has no input queue
+     */
+    public int getQueueDepth() {
+        BlockingQueue<?> queue = inputQueue;
+        if (queue == null)
+            return 0;
+        return queue.size();
+    }
+
+    public int getMaximumQueueDepth() {
+        return maximumQueueDepth.get();
+    }
+
+    /**
+     * @return processed items per second of busy time, 0 if nothing was processed
+     */
+    public double getThroughput() {
+        long nanos = busyNanos.get();
+        if (nanos == 0)
+            return 0;
+        return processedItems.get() / (nanos / 1000000000.0);
+    }
+
+    @Override
+    public String toString() {
+        return name + ": items=" + getProcessedItems() +
+                String.format(", items_per_second=%.1f", getThroughput()) +
+                ", busy_ms=" + getBusyNanos() / 1000000 +
+                ", blocked_ms=" + getBlockedNanos() / 1000000 +
+                ", queue_depth=" + getQueueDepth() +
+                ", max_queue_depth=" + getMaximumQueueDepth();
+    }
+}
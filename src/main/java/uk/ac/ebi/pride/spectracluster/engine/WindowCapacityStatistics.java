@@ -0,0 +1,84 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.engine.WindowCapacityStatistics
+ * Summarizes how often a capped GreedyIncrementalClusteringEngine had to evict
+ * clusters before they left the m/z window. Every such cluster could still have
+ * been compared against the clusters added afterwards within its precursor
+ * tolerance. These missed comparisons are counted to quantify the accuracy that
+ * is traded for the bounded window.
+ *
+ * @author jg
+ */
+public class WindowCapacityStatistics {
+    private long addedClusters;
+    private long affectedAdditions;
+    private long evictedClusters;
+    private long missedComparisons;
+
+    /**
+     * Records one cluster added to the engine.
+     *
+     * @param nMissedComparisons number of clusters evicted due to the capacity that were still within the window
+     */
+    public void addCluster(int nMissedComparisons) {
+        addedClusters++;
+        if (nMissedComparisons > 0) {
+            affectedAdditions++;
+            missedComparisons += nMissedComparisons;
+        }
+    }
+
+    /**
+     * Records clusters evicted due to the capacity limits
+     *
+     * @param nClusters number of evicted clusters
+     */
+    public void addEvictions(int nClusters) {
+        evictedClusters += nClusters;
+    }
+
+    public long getAddedClusters() {
+        return addedClusters;
+    }
+
+    /**
+     * @return number of added clusters that could not be compared to at least one cluster within the tolerance
+     */
+    public long getAffectedAdditions() {
+        return affectedAdditions;
+    }
+
+    public long getEvictedClusters() {
+        return evictedClusters;
+    }
+
+    public long getMissedComparisons() {
+        return missedComparisons;
+    }
+
+    /**
+     * @return fraction of added clusters that missed at least one comparison, 0 if nothing was added
+     */
+    public double getAffectedFraction() {
+        if (addedClusters == 0)
+            return 0;
+        return (double) affectedAdditions / addedClusters;
+    }
+
+    public void reset() {
+        addedClusters = 0;
+        affectedAdditions = 0;
+        evictedClusters = 0;
+        missedComparisons = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "added: " + addedClusters +
+                ", capacity evictions: " + evictedClusters +
+                ", affected: " + affectedAdditions +
+                String.format(" (%.3f)", getAffectedFraction()) +
+                ", missed comparisons: " + missedComparisons;
+    }
+}
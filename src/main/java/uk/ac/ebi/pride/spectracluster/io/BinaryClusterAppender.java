@@ -96,20 +96,30 @@ public class BinaryClusterAppender {
         out.writeInt(clusteredSpectra.size());
 
         for (ISpectrum cs : clusteredSpectra) {
-            // default properties
-            out.writeObject(cs.getId());
-            out.writeInt(cs.getPrecursorCharge());
-            out.writeFloat(cs.getPrecursorMz());
-
-            // additional properties
-            Properties properties = cs.getProperties();
-            out.writeObject(properties);
-
-            // peak list
-            appendPeaklist(out, cs.getPeaks());
+            appendSpectrum(out, cs);
         }
     }
 
+    /**
+     * Writes a single spectrum in the format used for the clustered spectra.
+     *
+     * @param out      !null open ObjectOutputStream
+     * @param spectrum !null spectrum
+     */
+    public void appendSpectrum(ObjectOutputStream out, ISpectrum spectrum) throws IOException {
+        // default properties
+        out.writeObject(spectrum.getId());
+        out.writeInt(spectrum.getPrecursorCharge());
+        out.writeFloat(spectrum.getPrecursorMz());
+
+        // additional properties
+        Properties properties = spectrum.getProperties();
+        out.writeObject(properties);
+
+        // peak list
+        appendPeaklist(out, spectrum.getPeaks());
+    }
+
     public void appendEnd(ObjectOutputStream out) throws IOException {
         out.writeObject(new String("END"));
     }
@@ -68,24 +68,31 @@ public class BinaryClusterParser {
         List<ISpectrum> spectra = new ArrayList<ISpectrum>(nSpectra);
 
         for (int i = 0; i < nSpectra; i++) {
-            String id = (String) inputStream.readObject();
-            int charge = inputStream.readInt();
-            float precursorMz = inputStream.readFloat();
-            Properties properties = (Properties) inputStream.readObject();
-            List<IPeak> peakList = parsePeakList(inputStream);
+            spectra.add(parseSpectrum(inputStream));
+        }
+
+        return spectra;
+    }
 
-            // create the spectrum
-            ISpectrum spectrum = new Spectrum(id, charge, precursorMz, Defaults.getDefaultQualityScorer(), peakList);
+    /**
+     * Reads a single spectrum written by BinaryClusterAppender.appendSpectrum
+     */
+    public ISpectrum parseSpectrum(ObjectInputStream inputStream) throws IOException, ClassNotFoundException {
+        String id = (String) inputStream.readObject();
+        int charge = inputStream.readInt();
+        float precursorMz = inputStream.readFloat();
+        Properties properties = (Properties) inputStream.readObject();
+        List<IPeak> peakList = parsePeakList(inputStream);
 
-            // set the properties
-            for (String propertyName : properties.stringPropertyNames()) {
-                spectrum.setProperty(propertyName, properties.getProperty(propertyName));
-            }
+        // create the spectrum
+        ISpectrum spectrum = new Spectrum(id, charge, precursorMz, Defaults.getDefaultQualityScorer(), peakList);
 
-            spectra.add(spectrum);
+        // set the properties
+        for (String propertyName : properties.stringPropertyNames()) {
+            spectrum.setProperty(propertyName, properties.getProperty(propertyName));
         }
 
-        return spectra;
+        return spectrum;
     }
 
     private IConsensusSpectrumBuilder parseConsensusSpectrumBuilder(ObjectInputStream inputStream) throws IOException, ClassNotFoundException {
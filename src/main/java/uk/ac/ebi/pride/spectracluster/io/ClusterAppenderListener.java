@@ -0,0 +1,35 @@
+package uk.ac.ebi.pride.spectracluster.io;
+
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.util.ClusterCreateListener;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.io.ClusterAppenderListener
+ * Writes all created clusters to an Appendable using an IClusterAppender.
+ *
+ * @author jg
+ */
+public class ClusterAppenderListener implements ClusterCreateListener {
+    private final Appendable out;
+    private final IClusterAppender appender;
+
+    public ClusterAppenderListener(Appendable out, IClusterAppender appender) {
+        this.out = out;
+        this.appender = appender;
+    }
+
+    @Override
+    public void onClusterStarted(Object... otherData) {
+        appender.appendStart(out, otherData);
+    }
+
+    @Override
+    public void onClusterCreate(ICluster cluster, Object... otherData) {
+        appender.appendCluster(out, cluster, otherData);
+    }
+
+    @Override
+    public void onClusterCreateFinished(Object... otherData) {
+        appender.appendEnd(out, otherData);
+    }
+}
@@ -0,0 +1,33 @@
+package uk.ac.ebi.pride.spectracluster.io;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.io.ClusterColumn
+ * The columns written by the ColumnarClusterAppender. The ordinal is
+ * stored in the file, new columns must therefore only be appended.
+ *
+ * @author jg
+ */
+public enum ClusterColumn {
+    /**
+     * the cluster's id
+     */
+    ID,
+    PRECURSOR_MZ,
+    PRECURSOR_CHARGE,
+    /**
+     * number of clustered spectra
+     */
+    SIZE,
+    /**
+     * the cluster's KnownProperties.PEPTIDE_PURITY_STRING property, may be null
+     */
+    PURITY,
+    /**
+     * consensus peaks stored as per cluster offsets followed by all m/z values and all intensities
+     */
+    CONSENSUS_PEAKS,
+    /**
+     * ids of the clustered spectra stored as per cluster offsets followed by all ids
+     */
+    MEMBER_IDS
+}
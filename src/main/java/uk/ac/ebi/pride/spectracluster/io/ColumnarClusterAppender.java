@@ -0,0 +1,269 @@
+package uk.ac.ebi.pride.spectracluster.io;
+
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.spectrum.KnownProperties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.io.ColumnarClusterAppender
+ * Writes clusters in a column oriented binary format intended for analytics.
+ * Clusters are collected into chunks of a fixed number of clusters. Every
+ * chunk is written column by column (see ClusterColumn) and the footer
+ * stores the position of every column chunk together with the chunk's
+ * minimum and maximum precursor m/z, charge and size. The
+ * ColumnarClusterReader uses this to only read the required columns of
+ * the chunks within an m/z range.
+ *
+ * File layout:
+ * <pre>
+ * int MAGIC, int VERSION
+ * chunks: one block of bytes per column
+ * footer: int nChunks, per chunk: int nRows, float minMz, float maxMz, int minCharge, int maxCharge,
+ *         int minSize, int maxSize, int nColumns, per column: byte column, long offset, int length
+ * long footer offset, int MAGIC
+ * </pre>
+ *
+ * Since the format is binary the clusters are written to the OutputStream
+ * passed to the constructor, the Appendable passed to the IClusterAppender
+ * methods is ignored and may be null. appendEnd must be called to write
+ * the footer.
+ *
+ * @author jg
+ */
+public class ColumnarClusterAppender implements IClusterAppender {
+    public static final int MAGIC = 0x53434331; // "SCC1"
+    public static final int VERSION = 1;
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    private final OutputStream out;
+    private final int chunkSize;
+    private final List<Row> currentChunk = new ArrayList<Row>();
+    private final List<ColumnarClusterReader.ChunkMetadata> chunks = new ArrayList<ColumnarClusterReader.ChunkMetadata>();
+    private long position;
+    private boolean headerWritten;
+    private boolean finished;
+
+    public ColumnarClusterAppender(OutputStream out) {
+        this(out, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param out       stream to write to, it is not closed by the appender
+     * @param chunkSize number of clusters per chunk
+     */
+    public ColumnarClusterAppender(OutputStream out, int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("Chunk size must be positive");
+
+        this.out = out;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void appendStart(Appendable ignored, Object... otherData) {
+        try {
+            writeHeader();
+        } catch (IOException e) {
+            throw new AppenderException(e);
+        }
+    }
+
+    @Override
+    public void appendCluster(Appendable ignored, ICluster cluster, Object... otherData) {
+        if (finished)
+            throw new IllegalStateException("Cannot append clusters after appendEnd was called");
+
+        try {
+            writeHeader();
+
+            currentChunk.add(new Row(cluster));
+            if (currentChunk.size() >= chunkSize)
+                writeChunk();
+        } catch (IOException e) {
+            throw new AppenderException(e);
+        }
+    }
+
+    @Override
+    public void appendEnd(Appendable ignored, Object... otherData) {
+        if (finished)
+            return;
+
+        try {
+            writeHeader();
+            if (!currentChunk.isEmpty())
+                writeChunk();
+            writeFooter();
+            out.flush();
+            finished = true;
+        } catch (IOException e) {
+            throw new AppenderException(e);
+        }
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    private void writeHeader() throws IOException {
+        if (headerWritten)
+            return;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8);
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        write(bytes);
+        headerWritten = true;
+    }
+
+    private void writeChunk() throws IOException {
+        ColumnarClusterReader.ChunkMetadata chunk = new ColumnarClusterReader.ChunkMetadata(currentChunk.size());
+
+        for (ClusterColumn column : ClusterColumn.values()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writeColumn(column, new DataOutputStream(bytes));
+            chunk.setColumn(column, position, bytes.size());
+            write(bytes);
+        }
+
+        for (Row row : currentChunk) {
+            chunk.addStatistics(row.precursorMz, row.charge, row.size);
+        }
+
+        chunks.add(chunk);
+        currentChunk.clear();
+    }
+
+    private void writeColumn(ClusterColumn column, DataOutputStream data) throws IOException {
+        switch (column) {
+            case ID:
+                for (Row row : currentChunk) {
+                    data.writeUTF(row.id);
+                }
+                break;
+            case PRECURSOR_MZ:
+                for (Row row : currentChunk) {
+                    data.writeFloat(row.precursorMz);
+                }
+                break;
+            case PRECURSOR_CHARGE:
+                for (Row row : currentChunk) {
+                    data.writeInt(row.charge);
+                }
+                break;
+            case SIZE:
+                for (Row row : currentChunk) {
+                    data.writeInt(row.size);
+                }
+                break;
+            case PURITY:
+                for (Row row : currentChunk) {
+                    data.writeBoolean(row.purity != null);
+                    if (row.purity != null)
+                        data.writeUTF(row.purity);
+                }
+                break;
+            case CONSENSUS_PEAKS:
+                int peakOffset = 0;
+                data.writeInt(peakOffset);
+                for (Row row : currentChunk) {
+                    peakOffset += row.consensusMzs.length;
+                    data.writeInt(peakOffset);
+                }
+                for (Row row : currentChunk) {
+                    for (float mz : row.consensusMzs) {
+                        data.writeFloat(mz);
+                    }
+                }
+                for (Row row : currentChunk) {
+                    for (float intensity : row.consensusIntensities) {
+                        data.writeFloat(intensity);
+                    }
+                }
+                break;
+            case MEMBER_IDS:
+                int memberOffset = 0;
+                data.writeInt(memberOffset);
+                for (Row row : currentChunk) {
+                    memberOffset += row.memberIds.length;
+                    data.writeInt(memberOffset);
+                }
+                for (Row row : currentChunk) {
+                    for (String memberId : row.memberIds) {
+                        data.writeUTF(memberId);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unsupported column " + column);
+        }
+        data.flush();
+    }
+
+    private void writeFooter() throws IOException {
+        long footerOffset = position;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream footer = new DataOutputStream(bytes);
+
+        footer.writeInt(chunks.size());
+        for (ColumnarClusterReader.ChunkMetadata chunk : chunks) {
+            chunk.write(footer);
+        }
+        footer.writeLong(footerOffset);
+        footer.writeInt(MAGIC);
+        footer.flush();
+
+        write(bytes);
+    }
+
+    private void write(ByteArrayOutputStream bytes) throws IOException {
+        bytes.writeTo(out);
+        position += bytes.size();
+    }
+
+    /**
+     * the values of a cluster that are written
+     */
+    private static class Row {
+        private final String id;
+        private final float precursorMz;
+        private final int charge;
+        private final int size;
+        private final String purity;
+        private final float[] consensusMzs;
+        private final float[] consensusIntensities;
+        private final String[] memberIds;
+
+        private Row(ICluster cluster) {
+            id = (cluster.getId() != null) ? cluster.getId() : "";
+            precursorMz = cluster.getPrecursorMz();
+            charge = cluster.getPrecursorCharge();
+            size = cluster.getClusteredSpectraCount();
+            purity = cluster.getProperty(KnownProperties.PEPTIDE_PURITY_STRING);
+
+            List<IPeak> peaks = cluster.getConsensusSpectrum().getPeaks();
+            consensusMzs = new float[peaks.size()];
+            consensusIntensities = new float[peaks.size()];
+            for (int i = 0; i < peaks.size(); i++) {
+                consensusMzs[i] = peaks.get(i).getMz();
+                consensusIntensities[i] = peaks.get(i).getIntensity();
+            }
+
+            List<ISpectrum> clusteredSpectra = cluster.getClusteredSpectra();
+            memberIds = new String[clusteredSpectra.size()];
+            for (int i = 0; i < memberIds.length; i++) {
+                String memberId = clusteredSpectra.get(i).getId();
+                memberIds[i] = (memberId != null) ? memberId : "";
+            }
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package uk.ac.ebi.pride.spectracluster.io;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.io.ColumnarClusterReader
+ * Reads files written by the ColumnarClusterAppender. Only the footer is
+ * read when the file is opened. Chunks whose precursor m/z range does not
+ * overlap the requested range are skipped and only the requested columns
+ * are read from the remaining chunks.
+ *
+ * @author jg
+ */
+public class ColumnarClusterReader implements Closeable {
+    private final RandomAccessFile file;
+    private final List<ChunkMetadata> chunks;
+    private long bytesRead;
+
+    public ColumnarClusterReader(File inputFile) throws IOException {
+        this.file = new RandomAccessFile(inputFile, "r");
+
+        try {
+            this.chunks = Collections.unmodifiableList(readFooter());
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        } catch (RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private List<ChunkMetadata> readFooter() throws IOException {
+        long trailerOffset = file.length() - 12;
+        if (trailerOffset < 8)
+            throw new IllegalStateException("File is too short to be a columnar cluster file");
+
+        file.seek(0);
+        if (file.readInt() != ColumnarClusterAppender.MAGIC)
+            throw new IllegalStateException("Not a columnar cluster file");
+        int version = file.readInt();
+        if (version != ColumnarClusterAppender.VERSION)
+            throw new IllegalStateException("Unsupported columnar cluster file version " + version);
+
+        file.seek(trailerOffset);
+        long footerOffset = file.readLong();
+        if (file.readInt() != ColumnarClusterAppender.MAGIC)
+            throw new IllegalStateException("Columnar cluster file was not terminated correctly");
+
+        DataInputStream footer = readBytes(footerOffset, (int) (trailerOffset - footerOffset));
+        int nChunks = footer.readInt();
+        List<ChunkMetadata> ret = new ArrayList<ChunkMetadata>(nChunks);
+        for (int i = 0; i < nChunks; i++) {
+            ret.add(ChunkMetadata.read(footer));
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return !null metadata of all chunks in the file
+     */
+    public List<ChunkMetadata> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return number of bytes read from the file so far, including the footer
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Reads the passed columns of all chunks that may contain clusters within
+     * the m/z range. The returned chunks may also contain clusters outside the
+     * range.
+     *
+     * @param minMz   minimum precursor m/z
+     * @param maxMz   maximum precursor m/z
+     * @param columns the columns to read, all columns if none are passed
+     * @return !null list of chunks
+     */
+    public List<Chunk> readChunks(float minMz, float maxMz, ClusterColumn... columns) throws IOException {
+        List<Chunk> ret = new ArrayList<Chunk>();
+        for (ChunkMetadata chunk : chunks) {
+            if (chunk.overlaps(minMz, maxMz))
+                ret.add(readChunk(chunk, columns));
+        }
+        return ret;
+    }
+
+    /**
+     * Reads the passed columns of one chunk.
+     *
+     * @param metadata the chunk to read
+     * @param columns  the columns to read, all columns if none are passed
+     * @return the chunk
+     */
+    public Chunk readChunk(ChunkMetadata metadata, ClusterColumn... columns) throws IOException {
+        if (columns.length == 0)
+            columns = ClusterColumn.values();
+
+        Chunk chunk = new Chunk(metadata.getRowCount());
+        for (ClusterColumn column : columns) {
+            DataInputStream data = readBytes(metadata.getColumnOffset(column), metadata.getColumnLength(column));
+            chunk.readColumn(column, data);
+        }
+
+        return chunk;
+    }
+
+    private DataInputStream readBytes(long offset, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        file.seek(offset);
+        file.readFully(bytes);
+        bytesRead += length;
+
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Position and statistics of one chunk as stored in the footer
+     */
+    public static class ChunkMetadata {
+        private final int nRows;
+        private float minMz = Float.MAX_VALUE;
+        private float maxMz = -Float.MAX_VALUE;
+        private int minCharge = Integer.MAX_VALUE;
+        private int maxCharge = Integer.MIN_VALUE;
+        private int minSize = Integer.MAX_VALUE;
+        private int maxSize = Integer.MIN_VALUE;
+        private final long[] columnOffsets = new long[ClusterColumn.values().length];
+        private final int[] columnLengths = new int[ClusterColumn.values().length];
+
+        ChunkMetadata(int nRows) {
+            this.nRows = nRows;
+            Arrays.fill(columnOffsets, -1);
+        }
+
+        void setColumn(ClusterColumn column, long offset, int length) {
+            columnOffsets[column.ordinal()] = offset;
+            columnLengths[column.ordinal()] = length;
+        }
+
+        void addStatistics(float precursorMz, int charge, int size) {
+            minMz = Math.min(minMz, precursorMz);
+            maxMz = Math.max(maxMz, precursorMz);
+            minCharge = Math.min(minCharge, charge);
+            maxCharge = Math.max(maxCharge, charge);
+            minSize = Math.min(minSize, size);
+            maxSize = Math.max(maxSize, size);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(nRows);
+            out.writeFloat(minMz);
+            out.writeFloat(maxMz);
+            out.writeInt(minCharge);
+            out.writeInt(maxCharge);
+            out.writeInt(minSize);
+            out.writeInt(maxSize);
+
+            int nColumns = 0;
+            for (long offset : columnOffsets) {
+                if (offset >= 0)
+                    nColumns++;
+            }
+            out.writeInt(nColumns);
+            for (ClusterColumn column : ClusterColumn.values()) {
+                if (columnOffsets[column.ordinal()] < 0)
+                    continue;
+                out.writeByte(column.ordinal());
+                out.writeLong(columnOffsets[column.ordinal()]);
+                out.writeInt(columnLengths[column.ordinal()]);
+            }
+        }
+
+        static ChunkMetadata read(DataInputStream in) throws IOException {
+            ChunkMetadata chunk = new ChunkMetadata(in.readInt());
+            chunk.minMz = in.readFloat();
+            chunk.maxMz = in.readFloat();
+            chunk.minCharge = in.readInt();
+            chunk.maxCharge = in.readInt();
+            chunk.minSize = in.readInt();
+            chunk.maxSize = in.readInt();
+
+            int nColumns = in.readInt();
+            ClusterColumn[] columns = ClusterColumn.values();
+            for (int i = 0; i < nColumns; i++) {
+                int ordinal = in.readByte();
+                long offset = in.readLong();
+                int length = in.readInt();
+                // columns added by later versions are ignored
+                if (ordinal < columns.length)
+                    chunk.setColumn(columns[ordinal], offset, length);
+            }
+
+            return chunk;
+        }
+
+        public boolean overlaps(float lowMz, float highMz) {
+            return nRows > 0 && minMz <= highMz && maxMz >= lowMz;
+        }
+
+        public int getRowCount() {
+            return nRows;
+        }
+
+        public float getMinMz() {
+            return minMz;
+        }
+
+        public float getMaxMz() {
+            return maxMz;
+        }
+
+        public int getMinCharge() {
+            return minCharge;
+        }
+
+        public int getMaxCharge() {
+            return maxCharge;
+        }
+
+        public int getMinSize() {
+            return minSize;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public long getColumnOffset(ClusterColumn column) {
+            long offset = columnOffsets[column.ordinal()];
+            if (offset < 0)
+                throw new IllegalStateException("Column " + column + " is not stored");
+            return offset;
+        }
+
+        public int getColumnLength(ClusterColumn column) {
+            return columnLengths[column.ordinal()];
+        }
+    }
+
+    /**
+     * The projected columns of one chunk. Accessing a column that was not
+     * read causes an IllegalStateException.
+     */
+    public static class Chunk {
+        private final int nRows;
+        private final Set<ClusterColumn> columns = EnumSet.noneOf(ClusterColumn.class);
+        private String[] ids;
+        private float[] precursorMzs;
+        private int[] charges;
+        private int[] sizes;
+        private String[] purities;
+        private int[] peakOffsets;
+        private float[] peakMzs;
+        private float[] peakIntensities;
+        private int[] memberOffsets;
+        private String[] memberIds;
+
+        private Chunk(int nRows) {
+            this.nRows = nRows;
+        }
+
+        private void readColumn(ClusterColumn column, DataInputStream data) throws IOException {
+            switch (column) {
+                case ID:
+                    ids = new String[nRows];
+                    for (int i = 0; i < nRows; i++) {
+                        ids[i] = data.readUTF();
+                    }
+                    break;
+                case PRECURSOR_MZ:
+                    precursorMzs = new float[nRows];
+                    for (int i = 0; i < nRows; i++) {
+                        precursorMzs[i] = data.readFloat();
+                    }
+                    break;
+                case PRECURSOR_CHARGE:
+                    charges = readInts(data, nRows);
+                    break;
+                case SIZE:
+                    sizes = readInts(data, nRows);
+                    break;
+                case PURITY:
+                    purities = new String[nRows];
+                    for (int i = 0; i < nRows; i++) {
+                        if (data.readBoolean())
+                            purities[i] = data.readUTF();
+                    }
+                    break;
+                case CONSENSUS_PEAKS:
+                    peakOffsets = readInts(data, nRows + 1);
+                    int nPeaks = peakOffsets[nRows];
+                    peakMzs = new float[nPeaks];
+                    for (int i = 0; i < nPeaks; i++) {
+                        peakMzs[i] = data.readFloat();
+                    }
+                    peakIntensities = new float[nPeaks];
+                    for (int i = 0; i < nPeaks; i++) {
+                        peakIntensities[i] = data.readFloat();
+                    }
+                    break;
+                case MEMBER_IDS:
+                    memberOffsets = readInts(data, nRows + 1);
+                    memberIds = new String[memberOffsets[nRows]];
+                    for (int i = 0; i < memberIds.length; i++) {
+                        memberIds[i] = data.readUTF();
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported column " + column);
+            }
+            columns.add(column);
+        }
+
+        private static int[] readInts(DataInputStream data, int n) throws IOException {
+            int[] values = new int[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = data.readInt();
+            }
+            return values;
+        }
+
+        private void checkColumn(ClusterColumn column) {
+            if (!columns.contains(column))
+                throw new IllegalStateException("Column " + column + " was not read");
+        }
+
+        public int getRowCount() {
+            return nRows;
+        }
+
+        public boolean hasColumn(ClusterColumn column) {
+            return columns.contains(column);
+        }
+
+        public String[] getIds() {
+            checkColumn(ClusterColumn.ID);
+            return ids;
+        }
+
+        public float[] getPrecursorMzs() {
+            checkColumn(ClusterColumn.PRECURSOR_MZ);
+            return precursorMzs;
+        }
+
+        public int[] getCharges() {
+            checkColumn(ClusterColumn.PRECURSOR_CHARGE);
+            return charges;
+        }
+
+        public int[] getSizes() {
+            checkColumn(ClusterColumn.SIZE);
+            return sizes;
+        }
+
+        /**
+         * @return the purity strings, null entries if the property was not set
+         */
+        public String[] getPurities() {
+            checkColumn(ClusterColumn.PURITY);
+            return purities;
+        }
+
+        public float[] getConsensusMzs(int row) {
+            checkColumn(ClusterColumn.CONSENSUS_PEAKS);
+            return Arrays.copyOfRange(peakMzs, peakOffsets[row], peakOffsets[row + 1]);
+        }
+
+        public float[] getConsensusIntensities(int row) {
+            checkColumn(ClusterColumn.CONSENSUS_PEAKS);
+            return Arrays.copyOfRange(peakIntensities, peakOffsets[row], peakOffsets[row + 1]);
+        }
+
+        public String[] getMemberIds(int row) {
+            checkColumn(ClusterColumn.MEMBER_IDS);
+            return Arrays.copyOfRange(memberIds, memberOffsets[row], memberOffsets[row + 1]);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package uk.ac.ebi.pride.spectracluster.io;
+
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.io.ExternalSpectrumSorter
+ * Sorts spectra that do not fit into memory by precursor charge and m/z, the
+ * order the incremental clustering engines require.
+ *
+ * Spectra are collected until the estimated memory budget is reached. Every
+ * such batch is sorted and written to a temporary run file using the spectrum
+ * format of the BinaryClusterAppender. The runs are then merged into a single
+ * ordered iterator. Every run is read by its own thread so that reading and
+ * deserializing overlaps with the merge. If there are more runs than the merge
+ * fan-in, groups of runs are first merged into larger runs.
+ *
+ * Clusters (f.e. from a CGFSpectrumIterable or BinaryClusterIterable) can be
+ * sorted through clusteredSpectra.
+ *
+ * @author jg
+ */
+public class ExternalSpectrumSorter {
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+    public static final int DEFAULT_MERGE_FAN_IN = 64;
+    /**
+     * rough estimates of the heap used by a spectrum and every peak
+     */
+    public static final int ESTIMATED_BYTES_PER_SPECTRUM = 512;
+    public static final int ESTIMATED_BYTES_PER_PEAK = 40;
+
+    private static final int PREFETCH_BATCH_SIZE = 256;
+    private static final int PREFETCH_BATCHES = 4;
+    /**
+     * the ObjectOutputStream's back references are reset regularly to limit its memory usage
+     */
+    private static final int RESET_INTERVAL = 1000;
+
+    /**
+     * orders spectra by precursor charge and then by precursor m/z
+     */
+    public static final Comparator<ISpectrum> CHARGE_MZ_COMPARATOR = new Comparator<ISpectrum>() {
+        @Override
+        public int compare(ISpectrum o1, ISpectrum o2) {
+            if (o1.getPrecursorCharge() != o2.getPrecursorCharge())
+                return o1.getPrecursorCharge() < o2.getPrecursorCharge() ? -1 : 1;
+            return Float.compare(o1.getPrecursorMz(), o2.getPrecursorMz());
+        }
+    };
+
+    private final File tempDirectory;
+    private final long memoryBudget;
+    private final int mergeFanIn;
+    private final Comparator<ISpectrum> comparator;
+
+    public ExternalSpectrumSorter() {
+        this(null, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * @param tempDirectory directory to store the runs in, null to use the system's default
+     * @param memoryBudget  estimated number of bytes of spectra to keep in memory per run
+     */
+    public ExternalSpectrumSorter(File tempDirectory, long memoryBudget) {
+        this(tempDirectory, memoryBudget, DEFAULT_MERGE_FAN_IN, CHARGE_MZ_COMPARATOR);
+    }
+
+    public ExternalSpectrumSorter(File tempDirectory, long memoryBudget, int mergeFanIn, Comparator<ISpectrum> comparator) {
+        if (memoryBudget < 1)
+            throw new IllegalArgumentException("Memory budget must be positive");
+        if (mergeFanIn < 2)
+            throw new IllegalArgumentException("Merge fan-in must be at least 2");
+
+        this.tempDirectory = tempDirectory;
+        this.memoryBudget = memoryBudget;
+        this.mergeFanIn = mergeFanIn;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Sorts the passed spectra. The returned iterator must be closed if it is not read
+     * completely to remove the temporary files.
+     *
+     * @param spectra !null spectra to sort
+     * @return iterator returning the spectra in sorted order
+     * @throws IOException if the temporary runs cannot be written
+     */
+    public SortedSpectrumIterator sort(Iterable<? extends ISpectrum> spectra) throws IOException {
+        List<File> runs = new ArrayList<File>();
+        List<ISpectrum> buffer = new ArrayList<ISpectrum>();
+        long bufferSize = 0;
+
+        try {
+            for (ISpectrum spectrum : spectra) {
+                buffer.add(spectrum);
+                bufferSize += estimateSize(spectrum);
+
+                if (bufferSize >= memoryBudget) {
+                    runs.add(writeRun(buffer));
+                    buffer.clear();
+                    bufferSize = 0;
+                }
+            }
+
+            // everything fit into memory
+            if (runs.isEmpty()) {
+                Collections.sort(buffer, comparator);
+                return new SortedSpectrumIterator(buffer.iterator());
+            }
+
+            if (!buffer.isEmpty()) {
+                runs.add(writeRun(buffer));
+                buffer.clear();
+            }
+
+            // merge groups of runs until they can be merged at once
+            while (runs.size() > mergeFanIn) {
+                List<File> mergedRuns = new ArrayList<File>();
+                for (int i = 0; i < runs.size(); i += mergeFanIn) {
+                    List<File> group = runs.subList(i, Math.min(i + mergeFanIn, runs.size()));
+                    mergedRuns.add(mergeRuns(new ArrayList<File>(group)));
+                }
+                runs = mergedRuns;
+            }
+
+            return new SortedSpectrumIterator(runs, comparator);
+        } catch (IOException e) {
+            deleteRuns(runs);
+            throw e;
+        }
+    }
+
+    /**
+     * @param clusters clusters f.e. read from a CGFSpectrumIterable or BinaryClusterIterable
+     * @return all spectra of the clusters
+     */
+    public static Iterable<ISpectrum> clusteredSpectra(final Iterable<ICluster> clusters) {
+        return new Iterable<ISpectrum>() {
+            @Override
+            public Iterator<ISpectrum> iterator() {
+                final Iterator<ICluster> clusterIterator = clusters.iterator();
+
+                return new Iterator<ISpectrum>() {
+                    private Iterator<ISpectrum> spectrumIterator = Collections.<ISpectrum>emptyList().iterator();
+
+                    @Override
+                    public boolean hasNext() {
+                        while (!spectrumIterator.hasNext() && clusterIterator.hasNext()) {
+                            spectrumIterator = clusterIterator.next().getClusteredSpectra().iterator();
+                        }
+                        return spectrumIterator.hasNext();
+                    }
+
+                    @Override
+                    public ISpectrum next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        return spectrumIterator.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    private static long estimateSize(ISpectrum spectrum) {
+        return ESTIMATED_BYTES_PER_SPECTRUM + (long) ESTIMATED_BYTES_PER_PEAK * spectrum.getPeaksCount();
+    }
+
+    private File writeRun(List<ISpectrum> spectra) throws IOException {
+        Collections.sort(spectra, comparator);
+        return writeRun(spectra.iterator(), spectra.size());
+    }
+
+    private File writeRun(Iterator<ISpectrum> spectra, int nSpectra) throws IOException {
+        File run = File.createTempFile("spectra", ".run", tempDirectory);
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+
+        try {
+            out.writeInt(nSpectra);
+            for (int i = 0; i < nSpectra; i++) {
+                BinaryClusterAppender.INSTANCE.appendSpectrum(out, spectra.next());
+                if (i % RESET_INTERVAL == RESET_INTERVAL - 1)
+                    out.reset();
+            }
+        } catch (IOException e) {
+            out.close();
+            run.delete();
+            throw e;
+        }
+        out.close();
+
+        return run;
+    }
+
+    private File mergeRuns(List<File> runs) throws IOException {
+        int nSpectra = 0;
+        for (File run : runs) {
+            nSpectra += readRunSize(run);
+        }
+
+        SortedSpectrumIterator iterator = new SortedSpectrumIterator(runs, comparator);
+        try {
+            return writeRun(iterator, nSpectra);
+        } finally {
+            iterator.close();
+        }
+    }
+
+    private static int readRunSize(File run) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(run)));
+        try {
+            return in.readInt();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void deleteRuns(List<File> runs) {
+        for (File run : runs) {
+            run.delete();
+        }
+    }
+
+    /**
+     * Returns the sorted spectra by merging the runs. The temporary run files are deleted
+     * once all spectra were read or the iterator is closed.
+     */
+    public static class SortedSpectrumIterator implements Iterator<ISpectrum>, Closeable {
+        private final Iterator<ISpectrum> inMemorySpectra;
+        private final List<File> runs;
+        private final List<RunReader> readers = new ArrayList<RunReader>();
+        private final PriorityQueue<RunHead> heads;
+        private boolean closed;
+
+        private SortedSpectrumIterator(Iterator<ISpectrum> inMemorySpectra) {
+            this.inMemorySpectra = inMemorySpectra;
+            this.runs = Collections.emptyList();
+            this.heads = null;
+        }
+
+        private SortedSpectrumIterator(List<File> runs, final Comparator<ISpectrum> comparator) {
+            this.inMemorySpectra = null;
+            this.runs = runs;
+            // equal spectra are returned in the order of the runs to keep the sort stable
+            this.heads = new PriorityQueue<RunHead>(Math.max(1, runs.size()), new Comparator<RunHead>() {
+                @Override
+                public int compare(RunHead o1, RunHead o2) {
+                    int result = comparator.compare(o1.spectrum, o2.spectrum);
+                    if (result != 0)
+                        return result;
+                    return o1.runIndex < o2.runIndex ? -1 : (o1.runIndex == o2.runIndex ? 0 : 1);
+                }
+            });
+
+            for (int i = 0; i < runs.size(); i++) {
+                RunReader reader = new RunReader(runs.get(i));
+                readers.add(reader);
+                Thread thread = new Thread(reader, "spectrum-run-reader-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            for (int i = 0; i < readers.size(); i++) {
+                RunHead head = new RunHead(i, readers.get(i));
+                if (head.advance())
+                    heads.add(head);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (inMemorySpectra != null)
+                return inMemorySpectra.hasNext();
+
+            if (heads.isEmpty()) {
+                close();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public ISpectrum next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            if (inMemorySpectra != null)
+                return inMemorySpectra.next();
+
+            RunHead head = heads.poll();
+            ISpectrum ret = head.spectrum;
+            if (head.advance())
+                heads.add(head);
+
+            return ret;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            if (closed)
+                return;
+            closed = true;
+
+            for (RunReader reader : readers) {
+                reader.stop();
+            }
+            deleteRuns(runs);
+        }
+    }
+
+    /**
+     * the current spectrum of a run during the merge
+     */
+    private static class RunHead {
+        private final int runIndex;
+        private final RunReader reader;
+        private Iterator<ISpectrum> batch = Collections.<ISpectrum>emptyList().iterator();
+        private ISpectrum spectrum;
+
+        private RunHead(int runIndex, RunReader reader) {
+            this.runIndex = runIndex;
+            this.reader = reader;
+        }
+
+        /**
+         * @return false if the run is exhausted
+         */
+        private boolean advance() {
+            if (!batch.hasNext()) {
+                List<ISpectrum> nextBatch = reader.nextBatch();
+                if (nextBatch.isEmpty())
+                    return false;
+                batch = nextBatch.iterator();
+            }
+
+            spectrum = batch.next();
+            return true;
+        }
+    }
+
+    /**
+     * Reads a run in a separate thread and passes the spectra in batches
+     * through a bounded queue. An empty batch marks the end of the run.
+     */
+    private static class RunReader implements Runnable {
+        private static final long POLL_INTERVAL_MS = 100;
+
+        private final File run;
+        private final BlockingQueue<List<ISpectrum>> batches = new ArrayBlockingQueue<List<ISpectrum>>(PREFETCH_BATCHES);
+        private volatile boolean stopped;
+        private volatile Throwable failure;
+
+        private RunReader(File run) {
+            this.run = run;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(run)));
+                try {
+                    int nSpectra = in.readInt();
+                    List<ISpectrum> batch = new ArrayList<ISpectrum>(PREFETCH_BATCH_SIZE);
+
+                    for (int i = 0; i < nSpectra; i++) {
+                        batch.add(BinaryClusterParser.INSTANCE.parseSpectrum(in));
+                        if (batch.size() == PREFETCH_BATCH_SIZE) {
+                            if (!offer(batch))
+                                return;
+                            batch = new ArrayList<ISpectrum>(PREFETCH_BATCH_SIZE);
+                        }
+                    }
+
+                    if (!batch.isEmpty() && !offer(batch))
+                        return;
+                    offer(Collections.<ISpectrum>emptyList());
+                } finally {
+                    in.close();
+                }
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+
+        /**
+         * @return false if the reader was stopped
+         */
+        private boolean offer(List<ISpectrum> batch) throws InterruptedException {
+            while (!batches.offer(batch, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                if (stopped)
+                    return false;
+            }
+            return true;
+        }
+
+        private List<ISpectrum> nextBatch() {
+            try {
+                while (true) {
+                    List<ISpectrum> batch = batches.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    if (batch != null)
+                        return batch;
+                    if (failure != null)
+                        throw new IllegalStateException("Failed to read " + run, failure);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void stop() {
+            stopped = true;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package uk.ac.ebi.pride.spectracluster.io;
+
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.util.ClusterCreateListener;
+import uk.ac.ebi.pride.spectracluster.util.ClusteringConfig;
+import uk.ac.ebi.pride.spectracluster.util.Defaults;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.io.ParallelClusterParser
+ * Parses files of clusters in the BEGIN CLUSTER format written by the
+ * CGFClusterAppender using several threads. The file is split into byte
+ * ranges of roughly the same size that always start at a BEGIN CLUSTER
+ * line. Finding the boundaries only requires reading the bytes between
+ * the approximate split position and the next BEGIN CLUSTER line. Every
+ * range is then read and parsed independently using
+ * ParserUtilities.readSpectralCluster. The clusters are passed to the
+ * listeners in their original order on the calling thread.
+ *
+ * The file's encoding must use single '\n' bytes for line breaks, which
+ * is true for ASCII, ISO-8859-1 and UTF-8.
+ *
+ * @author jg
+ */
+public class ParallelClusterParser {
+    public static final int DEFAULT_RANGE_SIZE = 4 * 1024 * 1024;
+
+    private static final byte[] RANGE_START = ("\n" + ParserUtilities.BEGIN_CLUSTER).getBytes();
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private final int nThreads;
+    private final int rangeSize;
+    private final Charset charset;
+    private final ClusteringConfig config;
+
+    public ParallelClusterParser() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_RANGE_SIZE, Charset.defaultCharset());
+    }
+
+    /**
+     * @param nThreads  number of parser threads
+     * @param rangeSize approximate size of the byte ranges parsed by one task
+     * @param charset   the file's encoding
+     */
+    public ParallelClusterParser(int nThreads, int rangeSize, Charset charset) {
+        this(nThreads, rangeSize, charset, null);
+    }
+
+    /**
+     * @param nThreads  number of parser threads
+     * @param rangeSize approximate size of the byte ranges parsed by one task
+     * @param charset   the file's encoding
+     * @param config    configuration used to create the clusters, null to use the
+     *                  Defaults at the time parse is called
+     */
+    public ParallelClusterParser(int nThreads, int rangeSize, Charset charset, ClusteringConfig config) {
+        if (nThreads < 1 || rangeSize < 1)
+            throw new IllegalArgumentException("Threads and range size must be positive");
+
+        this.nThreads = nThreads;
+        this.rangeSize = rangeSize;
+        this.charset = charset;
+        this.config = config;
+    }
+
+    /**
+     * Parses all clusters of the file.
+     *
+     * @param file !null file to parse
+     * @return the clusters in their original order
+     */
+    public List<ICluster> parse(File file) {
+        final List<ICluster> clusters = new ArrayList<ICluster>();
+        parse(file, new ClusterCreateListener() {
+            @Override
+            public void onClusterStarted(Object... otherData) {
+            }
+
+            @Override
+            public void onClusterCreate(ICluster cluster, Object... otherData) {
+                clusters.add(cluster);
+            }
+
+            @Override
+            public void onClusterCreateFinished(Object... otherData) {
+            }
+        });
+        return clusters;
+    }
+
+    /**
+     * Parses all clusters of the file and passes them to the listeners in their
+     * original order.
+     *
+     * @param file      !null file to parse
+     * @param listeners interested listeners
+     */
+    public void parse(File file, ClusterCreateListener... listeners) {
+        FileInputStream inputStream;
+        try {
+            inputStream = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+
+        // all ranges are parsed with the same configuration
+        final ClusteringConfig parseConfig = (config != null) ? config : Defaults.getConfig();
+        ExecutorService parseService = Executors.newFixedThreadPool(nThreads);
+        try {
+            final FileChannel channel = inputStream.getChannel();
+            long[] boundaries = findRangeBoundaries(channel);
+
+            for (ClusterCreateListener listener : listeners)
+                listener.onClusterStarted();
+
+            // limit the number of parsed ranges held in memory
+            int maxRangesInFlight = 2 * nThreads;
+            Queue<Future<List<ICluster>>> parsedRanges = new LinkedList<Future<List<ICluster>>>();
+            int nextRange = 0;
+
+            while (nextRange < boundaries.length - 1 || !parsedRanges.isEmpty()) {
+                while (nextRange < boundaries.length - 1 && parsedRanges.size() < maxRangesInFlight) {
+                    final long start = boundaries[nextRange];
+                    final long end = boundaries[nextRange + 1];
+                    parsedRanges.add(parseService.submit(new Callable<List<ICluster>>() {
+                        @Override
+                        public List<ICluster> call() throws Exception {
+                            return parseRange(channel, start, end, parseConfig);
+                        }
+                    }));
+                    nextRange++;
+                }
+
+                for (ICluster cluster : parsedRanges.poll().get()) {
+                    for (ClusterCreateListener listener : listeners)
+                        listener.onClusterCreate(cluster);
+                }
+            }
+
+            for (ClusterCreateListener listener : listeners)
+                listener.onClusterCreateFinished();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            parseService.shutdownNow();
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    /**
+     * Splits the file into ranges that all start with a BEGIN CLUSTER line,
+     * except for the first one which starts at the beginning of the file.
+     *
+     * @param channel the file to split
+     * @return the boundaries of the ranges including 0 and the file's size
+     */
+    protected long[] findRangeBoundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Long> boundaries = new ArrayList<Long>();
+        boundaries.add(0L);
+
+        long lastBoundary = 0;
+        while (lastBoundary + rangeSize < size) {
+            long boundary = findRangeStart(channel, lastBoundary + rangeSize, size);
+            if (boundary >= size)
+                break;
+            boundaries.add(boundary);
+            lastBoundary = boundary;
+        }
+        boundaries.add(size);
+
+        long[] ret = new long[boundaries.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = boundaries.get(i);
+        }
+        return ret;
+    }
+
+    /**
+     * @return the position of the first BEGIN CLUSTER line starting at or after
+     * position, the file's size if there is none
+     */
+    private long findRangeStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        // start one byte earlier so that a line starting at position is found
+        long readPosition = position - 1;
+        int matched = 0;
+
+        while (readPosition < size) {
+            buffer.clear();
+            int nRead = channel.read(buffer, readPosition);
+            if (nRead <= 0)
+                break;
+
+            for (int i = 0; i < nRead; i++) {
+                byte b = buffer.get(i);
+                if (b == RANGE_START[matched]) {
+                    matched++;
+                    if (matched == RANGE_START.length)
+                        return readPosition + i - RANGE_START.length + 2; // position after the '\n'
+                }
+                else {
+                    // the line break is not repeated within the pattern
+                    matched = (b == RANGE_START[0]) ? 1 : 0;
+                }
+            }
+            readPosition += nRead;
+        }
+
+        return size;
+    }
+
+    private List<ICluster> parseRange(FileChannel channel, long start, long end, ClusteringConfig parseConfig) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining()) {
+            int nRead = channel.read(buffer, start + buffer.position());
+            if (nRead < 0)
+                throw new EOFException("File ended before position " + end);
+        }
+
+        String text = new String(buffer.array(), 0, buffer.position(), charset);
+        LineNumberReader reader = new LineNumberReader(new StringReader(text));
+
+        List<ICluster> clusters = new ArrayList<ICluster>();
+        ICluster cluster = ParserUtilities.readSpectralCluster(reader, null, parseConfig);
+        while (cluster != null) {
+            clusters.add(cluster);
+            cluster = ParserUtilities.readSpectralCluster(reader, null, parseConfig);
+        }
+
+        return clusters;
+    }
+
+    public int getThreads() {
+        return nThreads;
+    }
+
+    public int getRangeSize() {
+        return rangeSize;
+    }
+
+    /**
+     * @return the configuration used to create the clusters, null if the Defaults are used
+     */
+    public ClusteringConfig getConfig() {
+        return config;
+    }
+}
@@ -9,12 +9,15 @@ import uk.ac.ebi.pride.spectracluster.consensus.GreedyConsensusSpectrum;
 import uk.ac.ebi.pride.spectracluster.consensus.IConsensusSpectrumBuilder;
 import uk.ac.ebi.pride.spectracluster.spectrum.*;
 import uk.ac.ebi.pride.spectracluster.util.*;
+import uk.ac.ebi.pride.spectracluster.util.tracing.TracePhase;
+import uk.ac.ebi.pride.spectracluster.util.tracing.Tracing;
 
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * uk.ac.ebi.pride.spectracluster.util.ParserUtilities
@@ -138,6 +141,31 @@ public class ParserUtilities {
      * @return The parsed ICluster object or null of all have been read.
      */
     public static ICluster readSpectralCluster(LineNumberReader inp, String line) {
+        return readSpectralCluster(inp, line, Defaults.getConfig());
+    }
+
+    /**
+     * Reads a cluster using the peak filter, consensus spectrum factory, fragment tolerance
+     * and quality scorer of the passed configuration instead of the Defaults.
+     *
+     * @param inp    LineNumberReader object as input
+     * @param line   The last read line.
+     * @param config the configuration to use
+     * @return The parsed ICluster object or null of all have been read.
+     */
+    public static ICluster readSpectralCluster(LineNumberReader inp, String line, ClusteringConfig config) {
+        if (!Tracing.ENABLED)
+            return parseSpectralCluster(inp, line, config);
+
+        long token = Tracing.begin(TracePhase.CLUSTER_PARSING);
+        try {
+            return parseSpectralCluster(inp, line, config);
+        } finally {
+            Tracing.end(TracePhase.CLUSTER_PARSING, token);
+        }
+    }
+
+    private static ICluster parseSpectralCluster(LineNumberReader inp, String line, ClusteringConfig config) {
         String currentId = null;
         boolean storesPeakLists = false;
         List<ISpectrum> spectra = new ArrayList<ISpectrum>();
@@ -155,14 +183,14 @@ public class ParserUtilities {
                 }
                 // naked spectrum
                 if (line.startsWith(BEGIN_IONS)) {
-                    ISpectrum internalComplete = readMGFScan(inp, line);
+                    ISpectrum internalComplete = readMGFScan(inp, line, config);
                     final List<IPeak> peaks = internalComplete.getPeaks();
                     ISpectrum internal = new Spectrum(internalComplete, peaks);
 
                     // perform default peak filtering
-                    ISpectrum internalFiltered = Defaults.getDefaultPeakFilter().apply(internal);
+                    ISpectrum internalFiltered = config.getPeakFilter().apply(internal);
 
-                    ICluster ret = new SpectralCluster(internalFiltered.getId(), Defaults.getDefaultConsensusSpectrumBuilder());
+                    ICluster ret = new SpectralCluster(internalFiltered.getId(), config.getConsensusSpectrumBuilder());
                     ret.addSpectra(internalFiltered);
                     return ret;
                 }
@@ -193,11 +221,11 @@ public class ParserUtilities {
                 line = inp.readLine();
 
             if (line != null && line.startsWith("BEGIN CONSENSUS")) {
-                consensusSpectrumBuilder = parseConsensusSpectrumBuilder(inp, line);
+                consensusSpectrumBuilder = parseConsensusSpectrumBuilder(inp, line, config);
             }
 
             while (line != null) {
-                ISpectrum internal = readMGFScan(inp, line);
+                ISpectrum internal = readMGFScan(inp, line, config);
                 if (internal != null)
                     spectra.add(internal);
 
@@ -210,7 +238,7 @@ public class ParserUtilities {
 
                     // create the cluster
                     if (storesPeakLists) {
-                        ret = new SpectralCluster(currentId, Defaults.getDefaultConsensusSpectrumBuilder());
+                        ret = new SpectralCluster(currentId, config.getConsensusSpectrumBuilder());
                         ISpectrum[] spectraArray = new ISpectrum[spectra.size()];
                         ret.addSpectra(spectra.toArray(spectraArray));
                     }
@@ -234,25 +262,29 @@ public class ParserUtilities {
 
     private static Properties parseProperties(String line) {
         line = line.substring("Properties=".length()).trim();
-
-        String[] propertyFields = line.split("#");
         Properties properties = new Properties();
 
-        for (String propertyDef : propertyFields) {
-            int index = propertyDef.indexOf('=');
-            if (index < 1)
-                continue;
+        // fields are separated by '#'
+        int start = 0;
+        while (start < line.length()) {
+            int end = line.indexOf('#', start);
+            if (end < 0)
+                end = line.length();
 
-            String name = propertyDef.substring(0, index);
-            String value = propertyDef.substring(index + 1);
+            int index = line.indexOf('=', start);
+            if (index > start && index < end) {
+                String name = line.substring(start, index);
+                String value = line.substring(index + 1, end);
 
-            properties.setProperty(name, value);
+                properties.setProperty(name, value);
+            }
+            start = end + 1;
         }
 
         return properties;
     }
 
-    private static IConsensusSpectrumBuilder parseConsensusSpectrumBuilder(LineNumberReader inp, String line) throws Exception {
+    private static IConsensusSpectrumBuilder parseConsensusSpectrumBuilder(LineNumberReader inp, String line, ClusteringConfig config) throws Exception {
         line = line.substring("BEGIN CONSENSUS ".length()).trim();
 
         // load the header fields
@@ -298,13 +330,18 @@ public class ParserUtilities {
             if ("END CONSENSUS".equals(line.trim()))
                 break;
 
-            String[] peakFields = line.split("\t");
-            if (peakFields.length != 3)
+            // mz, intensity and count separated by tabs
+            int firstTab = line.indexOf('\t');
+            int secondTab = (firstTab < 0) ? -1 : line.indexOf('\t', firstTab + 1);
+            int end = (secondTab < 0) ? -1 : line.indexOf('\t', secondTab + 1);
+            if (end < 0)
+                end = line.length();
+            if (secondTab < 0 || !containsOnly(line, end, '\t'))
                 throw new Exception("Invalid consensus peak definition encountered: " + line);
 
-            float mz = Float.parseFloat(peakFields[0]);
-            float intens = Float.parseFloat(peakFields[1]);
-            int count = Integer.parseInt(peakFields[2]);
+            float mz = Float.parseFloat(line.substring(0, firstTab));
+            float intens = Float.parseFloat(line.substring(firstTab + 1, secondTab));
+            int count = Integer.parseInt(line.substring(secondTab + 1, end));
 
             Peak peak = new Peak(mz, intens, count);
             peaks.add(peak);
@@ -315,7 +352,7 @@ public class ParserUtilities {
         if (className.equals(ConsensusSpectrum.class.getCanonicalName()))
             consensusSpectrumBuilder = new ConsensusSpectrum(id, nSpec, sumPrecMz, sumPrecIntens, sumCharge, peaks);
         else if (className.equals(GreedyConsensusSpectrum.class.getCanonicalName()))
-            consensusSpectrumBuilder = new GreedyConsensusSpectrum(Defaults.getFragmentIonTolerance(), id, nSpec, sumPrecMz, sumPrecIntens, sumCharge, peaks);
+            consensusSpectrumBuilder = new GreedyConsensusSpectrum(config.getFragmentIonTolerance(), id, nSpec, sumPrecMz, sumPrecIntens, sumCharge, peaks, config.getQualityScorer());
         else
             throw new IllegalStateException("Cannot recover consensus spectrum of class " + className);
 
@@ -323,26 +360,67 @@ public class ParserUtilities {
     }
 
     protected static List<ComparisonMatch> parseComparisonMatches(String line) {
-        String matchesString = line.substring("ComparisonMatches=".length());
-        String[] comparisonStrings = matchesString.split("#");
-        List<ComparisonMatch> comparisonMatches = new ArrayList<ComparisonMatch>(comparisonStrings.length);
+        int start = "ComparisonMatches=".length();
+        List<ComparisonMatch> comparisonMatches = new ArrayList<ComparisonMatch>(GreedySpectralCluster.SAVED_COMPARISON_MATCHES);
 
-        for (String comparisonString : comparisonStrings) {
-            int index = comparisonString.indexOf(':');
+        // matches are separated by '#', trailing empty matches are ignored
+        while (start < line.length() && !containsOnly(line, start, '#')) {
+            int end = line.indexOf('#', start);
+            if (end < 0)
+                end = line.length();
 
-            if (index < 0)
+            int index = line.indexOf(':', start);
+            if (index < 0 || index > end)
                 throw new IllegalStateException("ComparisonMatchesString does not contain expected separator ':': " + line);
 
-            String similarityString = comparisonString.substring(0, index);
-            String idString = comparisonString.substring(index + 1);
+            String similarityString = line.substring(start, index);
+            String idString = line.substring(index + 1, end);
 
             ComparisonMatch comparisonMatch = new ComparisonMatch(idString, Float.parseFloat(similarityString));
             comparisonMatches.add(comparisonMatch);
+            start = end + 1;
         }
 
         return comparisonMatches;
     }
 
+    /**
+     * @return true if the line only contains the passed character from start on
+     */
+    private static boolean containsOnly(String line, int start, char c) {
+        for (int i = start; i < line.length(); i++) {
+            if (line.charAt(i) != c)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the line only contains spaces and tabs from start on
+     */
+    private static boolean isBlank(String line, int start) {
+        for (int i = start; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c != ' ' && c != '\t')
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the end of the token starting at start, tokens are separated by single spaces or tabs
+     */
+    private static int tokenEnd(String line, int start) {
+        int end = start;
+        while (end < line.length()) {
+            char c = line.charAt(end);
+            if (c == ' ' || c == '\t')
+                break;
+            end++;
+        }
+        return end;
+    }
+
     /**
      * See ParserTests for an example
      *
@@ -539,8 +617,33 @@ public class ParserUtilities {
      * @param line if non null the firat line of the stricture
      * @return The parsed ISpetrum object
      */
-    @SuppressWarnings("ConstantConditions")
     public static ISpectrum readMGFScan(LineNumberReader inp, String line) {
+        return readMGFScan(inp, line, Defaults.getConfig());
+    }
+
+    /**
+     * Reads a spectrum using the peak filter and quality scorer of the passed
+     * configuration instead of the Defaults.
+     *
+     * @param inp    !null reader
+     * @param line   if non null the firat line of the stricture
+     * @param config the configuration to use
+     * @return The parsed ISpetrum object
+     */
+    public static ISpectrum readMGFScan(LineNumberReader inp, String line, ClusteringConfig config) {
+        if (!Tracing.ENABLED)
+            return parseMGFScan(inp, line, config);
+
+        long token = Tracing.begin(TracePhase.MGF_PARSING);
+        try {
+            return parseMGFScan(inp, line, config);
+        } finally {
+            Tracing.end(TracePhase.MGF_PARSING, token);
+        }
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    private static ISpectrum parseMGFScan(LineNumberReader inp, String line, ClusteringConfig config) {
         String titleLine = null;
         String sequence = null;
         String protein = null;
@@ -684,11 +787,11 @@ public class ParserUtilities {
                             title,
                             dcharge,
                             (float) mz,
-                            Defaults.getDefaultQualityScorer(),
+                            config.getQualityScorer(),
                             holder
                     );
 
-                    spectrum = Defaults.getDefaultPeakFilter().apply(spectrum);
+                    spectrum = config.getPeakFilter().apply(spectrum);
 
                     // add any properties we find
                     for (String s : props.stringPropertyNames()) {
@@ -710,13 +813,13 @@ public class ParserUtilities {
                         handleTitleLine(spectrum, titleLine);
                     return spectrum;
                 } else {
-                    line = line.replace("\t", " ");
-                    String[] items = line.split(" ");
+                    int massEnd = tokenEnd(line, 0);
                     // not sure we should let other ceses go but this is safer
-                    if (items.length >= 2) {
+                    // a single value followed by whitespace only is not a peak, as with the former split
+                    if (!isBlank(line, massEnd)) {
                         try {
-                            float peakMass = Float.parseFloat(items[0].trim());
-                            float peakIntensity = Float.parseFloat(items[1].trim());
+                            float peakMass = Float.parseFloat(line.substring(0, massEnd));
+                            float peakIntensity = Float.parseFloat(line.substring(massEnd + 1, tokenEnd(line, massEnd + 1)));
                             Peak added = new Peak(peakMass, peakIntensity);
                             holder.add(added);
                         } catch (NumberFormatException e) {
@@ -757,7 +860,7 @@ public class ParserUtilities {
      * *******************************
      */
     public static final int MAX_NUMBER_BAD_MGF_LINES = 2000;
-    private static int gNumberBadMGFLines = 0;
+    private static final AtomicInteger gNumberBadMGFLines = new AtomicInteger();
 
     /**
      * we cannot parse a line of the form mass peak i.e.  370.2438965 3.906023979 in an
@@ -768,9 +871,10 @@ public class ParserUtilities {
      * @throws IllegalStateException after  MAX_NUMBER_BAD_MGF_LINES are seen
      */
     protected static void handleBadMGFData(String line) throws IllegalStateException {
-        if (gNumberBadMGFLines++ > MAX_NUMBER_BAD_MGF_LINES)
+        int numberBadMGFLines = gNumberBadMGFLines.getAndIncrement();
+        if (numberBadMGFLines > MAX_NUMBER_BAD_MGF_LINES)
             throw new IllegalStateException("cannot read MGF data line " + line +
-                    " failing after " + gNumberBadMGFLines + " errors");
+                    " failing after " + (numberBadMGFLines + 1) + " errors");
     }
 
     /**
@@ -0,0 +1,563 @@
+package uk.ac.ebi.pride.spectracluster.io;
+
+import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
+import uk.ac.ebi.pride.spectracluster.spectrum.Peak;
+import uk.ac.ebi.pride.spectracluster.util.IAlgorithm;
+
+import java.io.*;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.io.PreprocessedPeakCache
+ * Disk backed cache of preprocessed peak lists. Entries are keyed by the
+ * spectrum's id and a fingerprint of the preprocessing chain (see
+ * fingerprint) so that reclustering passes and parameter sweeps can reuse
+ * the peaks instead of filtering and normalising the same spectra again.
+ * Spectrum ids must therefore be unique within the cached input.
+ *
+ * Entries are appended to segment files which are memory mapped once. Every
+ * entry holds its key, the number of peaks and two float arrays (m/z and
+ * intensity), an in memory index points to the entry's offset within its
+ * segment. Once the total size of the segments exceeds the maximum size the
+ * oldest segment is deleted. Entries that were read since they were stored
+ * get a second chance and are copied to the newest segment first, all others
+ * are evicted. Replaced entries only free their space with their segment.
+ *
+ * Segments left in the directory by earlier runs are reused, new entries
+ * are always written to new segments. The cache may be used by several threads.
+ *
+ * @author jg
+ */
+public class PreprocessedPeakCache {
+    public static final long DEFAULT_MAXIMUM_SIZE = 1024L * 1024 * 1024;
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    /**
+     * the maximum size is split into at least this many segments so that
+     * evicting a segment does not drop most of the cache
+     */
+    public static final int MINIMUM_SEGMENTS = 4;
+    public static final String SEGMENT_PREFIX = "segment-";
+    public static final String SEGMENT_EXTENSION = ".peaks";
+
+    private static final int MAGIC = 0x50504332; // "PPC2"
+    private static final int MAXIMUM_FINGERPRINT_DEPTH = 8;
+
+    private final File directory;
+    private final long maximumSize;
+    private final int segmentSize;
+
+    /**
+     * key to the entry's location, everything below is guarded by the index
+     */
+    private final Map<String, EntryLocation> index = new HashMap<String, EntryLocation>();
+    /**
+     * segments from the oldest to the newest one, the last one is written to
+     */
+    private final LinkedList<Segment> segments = new LinkedList<Segment>();
+    private int nextSegmentNumber;
+    private long currentSize;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public PreprocessedPeakCache(File directory) {
+        this(directory, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param directory   directory to store the segments in, created if it does not exist
+     * @param maximumSize maximum total size of all segments in bytes
+     */
+    public PreprocessedPeakCache(File directory, long maximumSize) {
+        if (maximumSize < 1)
+            throw new IllegalArgumentException("Maximum size must be positive");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IllegalStateException("Cannot create cache directory " + directory);
+
+        this.directory = directory;
+        this.maximumSize = maximumSize;
+        this.segmentSize = (int) Math.max(1, Math.min(DEFAULT_SEGMENT_SIZE, maximumSize / MINIMUM_SEGMENTS));
+
+        try {
+            indexExistingSegments();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void indexExistingSegments() throws IOException {
+        List<Integer> segmentNumbers = new ArrayList<Integer>();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_EXTENSION))
+                    continue;
+                try {
+                    segmentNumbers.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_EXTENSION.length())));
+                } catch (NumberFormatException e) {
+                    // not one of our segments
+                }
+            }
+        }
+        // later segments replace the entries of earlier ones
+        Collections.sort(segmentNumbers);
+
+        synchronized (index) {
+            for (int segmentNumber : segmentNumbers) {
+                File file = getSegmentFile(segmentNumber);
+                Segment segment = new Segment(file, (int) file.length());
+                segment.used = scanSegment(segment);
+                // segments of earlier runs are not written to
+                segment.sealed = true;
+
+                segments.add(segment);
+                currentSize += segment.used;
+                nextSegmentNumber = segmentNumber + 1;
+            }
+            evictToMaximumSize();
+        }
+    }
+
+    /**
+     * Adds all complete entries of the segment to the index.
+     *
+     * @return the number of bytes used by the entries
+     */
+    private int scanSegment(Segment segment) throws IOException {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int offset = 0;
+
+        while (offset + 4 <= segment.capacity && buffer.getInt(offset) == MAGIC) {
+            buffer.position(offset + 4);
+            String fingerprint = readUTF(buffer);
+            String spectrumId = readUTF(buffer);
+            int peaksOffset = align(buffer.position());
+            if (peaksOffset + 4 > segment.capacity)
+                break;
+            int nPeaks = buffer.getInt(peaksOffset);
+            int length = peaksOffset + 4 + 8 * nPeaks - offset;
+            if (nPeaks < 0 || offset + length > segment.capacity)
+                break;
+
+            EntryLocation location = new EntryLocation(segment, offset, length, peaksOffset + 4, nPeaks);
+            String key = getKey(spectrumId, fingerprint);
+            index.put(key, location);
+            segment.keys.add(key);
+            offset += length;
+        }
+
+        return offset;
+    }
+
+    /**
+     * @param spectrumId  id of the spectrum
+     * @param fingerprint fingerprint of the preprocessing chain
+     * @return the cached peaks, null if the spectrum is not cached
+     */
+    public List<IPeak> get(String spectrumId, String fingerprint) {
+        ByteBuffer buffer;
+        EntryLocation location;
+        synchronized (index) {
+            location = index.get(getKey(spectrumId, fingerprint));
+            if (location == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            location.read = true;
+            // the mapping stays valid even if the segment is evicted in the meantime
+            buffer = location.segment.buffer.duplicate();
+        }
+        hits.incrementAndGet();
+
+        buffer.position(location.peaksOffset);
+        FloatBuffer values = buffer.asFloatBuffer();
+        float[] mzValues = new float[location.nPeaks];
+        float[] intensities = new float[location.nPeaks];
+        values.get(mzValues);
+        values.get(intensities);
+
+        List<IPeak> peaks = new ArrayList<IPeak>(location.nPeaks);
+        for (int i = 0; i < location.nPeaks; i++) {
+            peaks.add(new Peak(mzValues[i], intensities[i]));
+        }
+        return peaks;
+    }
+
+    /**
+     * Stores the preprocessed peaks of a spectrum, replacing any earlier entry.
+     *
+     * @param spectrumId  id of the spectrum
+     * @param fingerprint fingerprint of the preprocessing chain
+     * @param peaks       the preprocessed peaks
+     */
+    public void put(String spectrumId, String fingerprint, List<IPeak> peaks) {
+        byte[] entry = createEntry(spectrumId, fingerprint, peaks);
+
+        synchronized (index) {
+            try {
+                append(getKey(spectrumId, fingerprint), entry, peaks.size());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            evictToMaximumSize();
+        }
+    }
+
+    /**
+     * Writes the entry to the newest segment, must be called holding the index' lock
+     */
+    private void append(String key, byte[] entry, int nPeaks) throws IOException {
+        Segment segment = segments.isEmpty() ? null : segments.getLast();
+        if (segment == null || segment.sealed || segment.used + entry.length > segment.capacity) {
+            if (segment != null)
+                segment.sealed = true;
+            int segmentNumber = nextSegmentNumber++;
+            segment = new Segment(getSegmentFile(segmentNumber), Math.max(segmentSize, entry.length));
+            segments.add(segment);
+        }
+
+        int offset = segment.used;
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset + 4);
+        buffer.put(entry, 4, entry.length - 4);
+        // the magic number is written last so that incomplete entries are never read
+        buffer.putInt(offset, MAGIC);
+
+        segment.used += entry.length;
+        segment.keys.add(key);
+        currentSize += entry.length;
+        index.put(key, new EntryLocation(segment, offset, entry.length, offset + entry.length - 8 * nPeaks, nPeaks));
+    }
+
+    /**
+     * removes the oldest segments, must be called holding the index' lock
+     */
+    private void evictToMaximumSize() {
+        while (currentSize > maximumSize && !segments.isEmpty()) {
+            Segment oldest = segments.removeFirst();
+            currentSize -= oldest.used;
+            // entries of the only segment cannot be kept
+            boolean keepReadEntries = !segments.isEmpty();
+
+            for (String key : oldest.keys) {
+                EntryLocation location = index.get(key);
+                // the entry may have been replaced by a newer one
+                if (location == null || location.segment != oldest)
+                    continue;
+
+                if (keepReadEntries && location.read) {
+                    try {
+                        byte[] entry = new byte[location.length];
+                        ByteBuffer buffer = oldest.buffer.duplicate();
+                        buffer.position(location.offset);
+                        buffer.get(entry);
+                        append(key, entry, location.nPeaks);
+                        continue;
+                    } catch (IOException e) {
+                        // evict the entry instead
+                    }
+                }
+
+                index.remove(key);
+                evictions.incrementAndGet();
+            }
+
+            oldest.file.delete();
+        }
+    }
+
+    /**
+     * Deletes all entries.
+     */
+    public void clear() {
+        synchronized (index) {
+            for (Segment segment : segments) {
+                segment.file.delete();
+            }
+            segments.clear();
+            index.clear();
+            currentSize = 0;
+        }
+    }
+
+    /**
+     * @return the entry consisting of the magic number, the key, padding, the number of peaks and
+     *         the m/z and intensity values
+     */
+    private static byte[] createEntry(String spectrumId, String fingerprint, List<IPeak> peaks) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 8 * peaks.size());
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeUTF(fingerprint);
+            out.writeUTF(spectrumId);
+            // pad the header so that the floats are aligned
+            while (out.size() % 4 != 0) {
+                out.writeByte(0);
+            }
+            out.writeInt(peaks.size());
+            for (IPeak peak : peaks) {
+                out.writeFloat(peak.getMz());
+            }
+            for (IPeak peak : peaks) {
+                out.writeFloat(peak.getIntensity());
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String readUTF(ByteBuffer buffer) throws IOException {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length + 2];
+        bytes[0] = (byte) (length >>> 8);
+        bytes[1] = (byte) length;
+        buffer.get(bytes, 2, length);
+        return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+    }
+
+    private static int align(int offset) {
+        return (offset + 3) & ~3;
+    }
+
+    private static String getKey(String spectrumId, String fingerprint) {
+        return fingerprint + "\n" + spectrumId;
+    }
+
+    private File getSegmentFile(int segmentNumber) {
+        return new File(directory, SEGMENT_PREFIX + String.format("%08d", segmentNumber) + SEGMENT_EXTENSION);
+    }
+
+    /**
+     * Creates a stable fingerprint of a preprocessing chain, f.e. the peak filter,
+     * the intensity normalizer and the comparison peak filter. IAlgorithms contribute
+     * their name and version. All steps contribute their class and the values of
+     * their instance fields, including the functions joined through Functions.join.
+     *
+     * @param steps the parts of the preprocessing chain
+     * @return !null fingerprint
+     */
+    public static String fingerprint(Object... steps) {
+        StringBuilder sb = new StringBuilder();
+        for (Object step : steps) {
+            appendFingerprint(sb, step, 0, new IdentityHashMap<Object, Boolean>());
+            sb.append(";");
+        }
+        return sha1(sb.toString());
+    }
+
+    private static void appendFingerprint(StringBuilder sb, Object value, int depth, Map<Object, Boolean> visited) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof String) {
+            sb.append(value);
+            return;
+        }
+        if (value instanceof Enum) {
+            sb.append(((Enum<?>) value).name());
+            return;
+        }
+        if (value instanceof Class) {
+            sb.append(((Class<?>) value).getName());
+            return;
+        }
+
+        Class<?> cls = value.getClass();
+        if (visited.containsKey(value) || depth > MAXIMUM_FINGERPRINT_DEPTH) {
+            sb.append(cls.getName());
+            return;
+        }
+        visited.put(value, Boolean.TRUE);
+
+        if (cls.isArray()) {
+            sb.append("[");
+            for (int i = 0; i < Array.getLength(value); i++) {
+                appendFingerprint(sb, Array.get(value, i), depth + 1, visited);
+                sb.append(",");
+            }
+            sb.append("]");
+            return;
+        }
+        if (value instanceof Iterable) {
+            sb.append("[");
+            for (Object item : (Iterable<?>) value) {
+                appendFingerprint(sb, item, depth + 1, visited);
+                sb.append(",");
+            }
+            sb.append("]");
+            return;
+        }
+        if (value instanceof Map) {
+            sb.append("{");
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                appendFingerprint(sb, entry.getKey(), depth + 1, visited);
+                sb.append("=");
+                appendFingerprint(sb, entry.getValue(), depth + 1, visited);
+                sb.append(",");
+            }
+            sb.append("}");
+            return;
+        }
+
+        sb.append(cls.getName());
+        if (value instanceof IAlgorithm) {
+            IAlgorithm algorithm = (IAlgorithm) value;
+            sb.append("/").append(algorithm.getName()).append("/").append(algorithm.getCurrentVersion());
+        }
+
+        sb.append("{");
+        for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                // the enclosing instance of inner classes is not part of the function
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.getName().startsWith("this$"))
+                    continue;
+
+                try {
+                    field.setAccessible(true);
+                    sb.append(field.getName()).append("=");
+                    appendFingerprint(sb, field.get(value), depth + 1, visited);
+                    sb.append(",");
+                } catch (IllegalAccessException e) {
+                    // only the field's name is used
+                } catch (SecurityException e) {
+                    // only the field's name is used
+                }
+            }
+        }
+        sb.append("}");
+    }
+
+    private static String sha1(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(text.getBytes("UTF-8"));
+
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return the total size of all segments' entries in bytes, including replaced ones
+     */
+    public long getSize() {
+        synchronized (index) {
+            return currentSize;
+        }
+    }
+
+    public int getEntryCount() {
+        synchronized (index) {
+            return index.size();
+        }
+    }
+
+    public int getSegmentCount() {
+        synchronized (index) {
+            return segments.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "PreprocessedPeakCache{" +
+                "entries=" + getEntryCount() +
+                ", size=" + getSize() +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() +
+                ", evictions=" + getEvictions() +
+                '}';
+    }
+
+    /**
+     * memory mapped segment file
+     */
+    private static final class Segment {
+        private final File file;
+        private final int capacity;
+        private final MappedByteBuffer buffer;
+        /**
+         * keys of the entries written to the segment, including replaced ones
+         */
+        private final List<String> keys = new ArrayList<String>();
+        private int used;
+        private boolean sealed;
+
+        private Segment(File file, int capacity) throws IOException {
+            this.file = file;
+            this.capacity = capacity;
+
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                // the mapping stays valid after the file is closed
+                buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            } finally {
+                randomAccessFile.close();
+            }
+        }
+    }
+
+    private static final class EntryLocation {
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private final int peaksOffset;
+        private final int nPeaks;
+        /**
+         * whether the entry was read since it was written
+         */
+        private boolean read;
+
+        private EntryLocation(Segment segment, int offset, int length, int peaksOffset, int nPeaks) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.peaksOffset = peaksOffset;
+            this.nPeaks = nPeaks;
+        }
+    }
+}
@@ -2,11 +2,13 @@ package uk.ac.ebi.pride.spectracluster.quality;
 
 import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
 import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
-import uk.ac.ebi.pride.spectracluster.util.comparator.PeakIntensityComparator;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * uk.ac.ebi.pride.spectracluster.quality.SignalToNoiseChecker
@@ -49,39 +51,163 @@ public class SignalToNoiseChecker implements IQualityScorer {
      */
     @Override
     public double calculateQualityScore(ISpectrum spectrum) {
-        ISpectrum highestNPeaks = spectrum.getHighestNPeaks(NUMBER_HIGH_PEAKS);
+        List<IPeak> peaks = spectrum.getPeaks();
+        float[] intensities = new float[peaks.size()];
+        for (int i = 0; i < intensities.length; i++) {
+            intensities[i] = peaks.get(i).getIntensity();
+        }
+
+        return calculateQualityScore(intensities);
+    }
 
-        if (highestNPeaks.getPeaksCount() < NUMBER_HIGH_PEAKS)
+    /**
+     * Calculates the signal-to-noise ratio based on the passed peak intensities
+     * in a single pass for the highest peaks and a quickselect for the median.
+     *
+     * @param intensities !null peak intensities in any order - the array is reordered
+     * @return the quality score
+     */
+    public static double calculateQualityScore(float[] intensities) {
+        if (intensities.length < NUMBER_HIGH_PEAKS)
             return 0.0;
-        double totalIntensity = highestNPeaks.getTotalIntensity();
-        double highestPeak = 0;
-        for (IPeak peak : highestNPeaks.getPeaks()) {
-            highestPeak = Math.max(peak.getIntensity(), highestPeak);
-        }
 
-        double meanHigh = (totalIntensity - highestPeak) / (NUMBER_HIGH_PEAKS - 1);
+        // highest peaks in ascending order
+        float[] highestPeaks = new float[NUMBER_HIGH_PEAKS];
+        int nHighestPeaks = 0;
+        for (float intensity : intensities) {
+            if (nHighestPeaks < NUMBER_HIGH_PEAKS) {
+                insertSorted(highestPeaks, nHighestPeaks++, intensity);
+            } else if (intensity > highestPeaks[0]) {
+                // drop the lowest one
+                System.arraycopy(highestPeaks, 1, highestPeaks, 0, NUMBER_HIGH_PEAKS - 1);
+                insertSorted(highestPeaks, NUMBER_HIGH_PEAKS - 1, intensity);
+            }
+        }
 
-        List<IPeak> peaks = new ArrayList<IPeak>(spectrum.getPeaks());
-        Collections.sort(peaks, PeakIntensityComparator.INSTANCE);
+        // ignore the highest peak
+        double totalIntensity = 0;
+        for (int i = 0; i < NUMBER_HIGH_PEAKS - 1; i++) {
+            totalIntensity += highestPeaks[i];
+        }
+        double meanHigh = totalIntensity / (NUMBER_HIGH_PEAKS - 1);
 
         double median;
+        int peakSize = intensities.length;
+        int index2 = peakSize / 2;
+        double intensity2 = select(intensities, index2);
 
-        int peakSize = peaks.size();
         if (peakSize % 2 == 1) {
-            int index = peakSize / 2;
-            IPeak iPeak = peaks.get(index);
-            median = iPeak.getIntensity(); // odd case
-
+            median = intensity2; // odd case
         } else {
-            int index2 = (peakSize / 2);
-            int index1 = index2 - 1;
-            IPeak iPeak1 = peaks.get(index1);
-            IPeak iPeak2 = peaks.get(index2);
-            double intensity1 = iPeak1.getIntensity();
-            double intensity2 = iPeak2.getIntensity();
+            // all values below index2 are smaller or equal - the largest one is the other middle value
+            float intensity1 = intensities[0];
+            for (int i = 1; i < index2; i++) {
+                intensity1 = Math.max(intensity1, intensities[i]);
+            }
             median = (intensity1 + intensity2) / 2; // even case
         }
 
         return meanHigh / median;
     }
+
+    /**
+     * Calculates the quality scores of all passed spectra using the defined number
+     * of threads.
+     *
+     * @param spectra  !null spectra to score
+     * @param nThreads number of threads to use
+     * @return the quality scores in the same order as the passed spectra
+     */
+    public double[] calculateQualityScores(final List<? extends ISpectrum> spectra, int nThreads) {
+        final double[] scores = new double[spectra.size()];
+        if (nThreads < 2 || spectra.size() < 2) {
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = calculateQualityScore(spectra.get(i));
+            }
+            return scores;
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(nThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(nThreads);
+            int chunkSize = (scores.length + nThreads - 1) / nThreads;
+
+            for (int start = 0; start < scores.length; start += chunkSize) {
+                final int first = start;
+                final int last = Math.min(start + chunkSize, scores.length);
+
+                futures.add(executorService.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = first; i < last; i++) {
+                            scores[i] = calculateQualityScore(spectra.get(i));
+                        }
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executorService.shutdown();
+        }
+
+        return scores;
+    }
+
+    /**
+     * Inserts the value into the first size (ascending) sorted positions of the array.
+     */
+    private static void insertSorted(float[] values, int size, float value) {
+        int position = size;
+        while (position > 0 && values[position - 1] > value) {
+            values[position] = values[position - 1];
+            position--;
+        }
+        values[position] = value;
+    }
+
+    /**
+     * Returns the k-th smallest value of the array using quickselect. Afterwards, all values
+     * before k are smaller or equal and all values after k larger or equal.
+     */
+    private static float select(float[] values, int k) {
+        int left = 0;
+        int right = values.length - 1;
+
+        while (left < right) {
+            float pivot = values[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+
+            while (i <= j) {
+                while (values[i] < pivot)
+                    i++;
+                while (values[j] > pivot)
+                    j--;
+                if (i <= j) {
+                    float tmp = values[i];
+                    values[i] = values[j];
+                    values[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j)
+                right = j;
+            else if (k >= i)
+                left = i;
+            else
+                break;
+        }
+
+        return values[k];
+    }
 }
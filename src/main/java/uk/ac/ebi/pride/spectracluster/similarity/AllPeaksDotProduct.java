@@ -193,4 +193,9 @@ public class AllPeaksDotProduct implements ISimilarityChecker {
     public float getFragmentIonTolerance() {
         return 0;
     }
+
+    @Override
+    public AllPeaksDotProduct copy() {
+        return new AllPeaksDotProduct(similarityMZRange);
+    }
 }
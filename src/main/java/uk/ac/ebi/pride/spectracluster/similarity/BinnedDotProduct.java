@@ -0,0 +1,258 @@
+package uk.ac.ebi.pride.spectracluster.similarity;
+
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.consensus.IConsensusSpectrumBuilder;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.util.Defaults;
+import uk.ac.ebi.pride.spectracluster.util.MZIntensityUtilities;
+import uk.ac.ebi.pride.spectracluster.util.binner.IBinner;
+import uk.ac.ebi.pride.spectracluster.util.binner.LinearBinner;
+import uk.ac.ebi.pride.spectracluster.util.tracing.TracePhase;
+import uk.ac.ebi.pride.spectracluster.util.tracing.Tracing;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Approximate version of the FrankEtAlDotProduct intended for fast
+ * screening. Instead of matching the peaks of both spectra, every
+ * spectrum is converted into a BinnedSpectrumVector using bins with
+ * the size of the fragment ion tolerance. The similarity is the dot
+ * product of these vectors.
+ *
+ * Peaks close to a bin boundary may be missed. OverlappingBinnedDotProduct
+ * uses overlapping bins to prevent this.
+ *
+ * The vectors are cached so that a spectrum is only binned once. Spectra are
+ * identified by the object, clusters by their consensus spectrum builder and
+ * its version stamp. Like all similarity checkers, this class is not thread-safe.
+ */
+public class BinnedDotProduct implements ISimilarityChecker {
+    private static final long serialVersionUID = 1L;
+
+    public static final String algorithmName = "Binned Dot Product";
+    public static final String algorithmVersion = "0.1";
+
+    public static final boolean DEFAULT_PEAK_FILTERING = false;
+
+    /**
+     * The minimum number of peaks to use if peak filtering is enabled
+     */
+    public static final int MIN_PEAKS_TO_COMPARE = 20;
+
+    /**
+     * Maximum number of spectra whose vectors are cached
+     */
+    public static final int SPECTRUM_VECTOR_CACHE_SIZE = 1000;
+
+    private float fragmentIonTolerance;
+    private boolean peakFiltering;
+    /**
+     * created again from the fragment ion tolerance after deserialization
+     */
+    private transient IBinner binner;
+
+    /**
+     * least recently used vectors of spectra, the caches are not serialized
+     */
+    private transient Map<SpectrumKey, BinnedSpectrumVector> spectrumVectors;
+    /**
+     * vectors of the clusters' consensus spectra, dropped with the consensus spectrum builder
+     */
+    private transient Map<IConsensusSpectrumBuilder, StampedVector> clusterVectors;
+
+    public BinnedDotProduct() {
+        this(Defaults.getFragmentIonTolerance());
+    }
+
+    public BinnedDotProduct(float fragmentIonTolerance) {
+        this(fragmentIonTolerance, DEFAULT_PEAK_FILTERING);
+    }
+
+    public BinnedDotProduct(float fragmentIonTolerance, boolean peakFiltering) {
+        this.peakFiltering = peakFiltering;
+        setFragmentIonTolerance(fragmentIonTolerance);
+    }
+
+    /**
+     * Creates the binner used to convert spectra into vectors.
+     *
+     * @param fragmentIonTolerance The fragment ion tolerance to use as bin size
+     * @return !null binner
+     */
+    protected IBinner createBinner(float fragmentIonTolerance) {
+        return new LinearBinner(MZIntensityUtilities.HIGHEST_USABLE_MZ, fragmentIonTolerance, 0, true);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        binner = createBinner(fragmentIonTolerance);
+    }
+
+    /**
+     * Returns the binned vector used by this similarity checker for the spectrum.
+     * The vector is only created once for the same spectrum object.
+     *
+     * @param spectrum !null spectrum
+     * @return !null vector
+     */
+    public BinnedSpectrumVector getVector(ISpectrum spectrum) {
+        if (spectrumVectors == null) {
+            spectrumVectors = new LinkedHashMap<SpectrumKey, BinnedSpectrumVector>(16, 0.75F, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<SpectrumKey, BinnedSpectrumVector> eldest) {
+                    return size() > SPECTRUM_VECTOR_CACHE_SIZE;
+                }
+            };
+        }
+
+        SpectrumKey key = new SpectrumKey(spectrum);
+        BinnedSpectrumVector vector = spectrumVectors.get(key);
+        if (vector == null) {
+            vector = BinnedSpectrumVector.fromSpectrum(spectrum, binner);
+            spectrumVectors.put(key, vector);
+        }
+        return vector;
+    }
+
+    /**
+     * Returns the binned vector of the cluster's consensus spectrum. The vector is
+     * only created again once the consensus spectrum changed.
+     *
+     * @param cluster !null cluster
+     * @return !null vector
+     */
+    public BinnedSpectrumVector getVector(ICluster cluster) {
+        IConsensusSpectrumBuilder consensusSpectrumBuilder = cluster.getConsensusSpectrumBuilder();
+        if (consensusSpectrumBuilder == null)
+            return getVector(cluster.getConsensusSpectrum());
+
+        if (clusterVectors == null)
+            clusterVectors = new WeakHashMap<IConsensusSpectrumBuilder, StampedVector>();
+
+        StampedVector stampedVector = clusterVectors.get(consensusSpectrumBuilder);
+        long versionStamp = consensusSpectrumBuilder.getVersionStamp();
+        if (stampedVector == null || stampedVector.versionStamp != versionStamp) {
+            // the consensus spectrum object is replaced on every change and therefore not cached by itself
+            stampedVector = new StampedVector(versionStamp, BinnedSpectrumVector.fromSpectrum(cluster.getConsensusSpectrum(), binner));
+            clusterVectors.put(consensusSpectrumBuilder, stampedVector);
+        }
+        return stampedVector.vector;
+    }
+
+    /**
+     * Assesses the similarity between two spectra that were already converted
+     * using getVector.
+     */
+    public double assessSimilarity(BinnedSpectrumVector vector1, BinnedSpectrumVector vector2) {
+        if (!Tracing.ENABLED)
+            return vector1.dotProduct(vector2);
+
+        long token = Tracing.begin(TracePhase.SIMILARITY_SCORING);
+        try {
+            return vector1.dotProduct(vector2);
+        } finally {
+            Tracing.end(TracePhase.SIMILARITY_SCORING, token);
+        }
+    }
+
+    @Override
+    public double assessSimilarity(ISpectrum spectrum1, ISpectrum spectrum2) {
+        if (peakFiltering) {
+            int nPeaks = Math.max(MIN_PEAKS_TO_COMPARE,
+                    PeakMatchesUtilities.calculateNPeaks(spectrum1.getPrecursorMz(), spectrum2.getPrecursorMz()));
+
+            // the filtered spectra depend on the pair and are not cached
+            return assessSimilarity(BinnedSpectrumVector.fromSpectrum(spectrum1.getHighestNPeaks(nPeaks), binner),
+                    BinnedSpectrumVector.fromSpectrum(spectrum2.getHighestNPeaks(nPeaks), binner));
+        }
+
+        return assessSimilarity(getVector(spectrum1), getVector(spectrum2));
+    }
+
+    /**
+     * The peak matches are not used, only the two spectra.
+     */
+    @Override
+    public double assessSimilarity(IPeakMatches peakMatches) {
+        return assessSimilarity(getVector(peakMatches.getSpectrumOne()), getVector(peakMatches.getSpectrumTwo()));
+    }
+
+    @Override
+    public boolean isPeakFiltering() {
+        return peakFiltering;
+    }
+
+    @Override
+    public void setPeakFiltering(boolean peakFiltering) {
+        this.peakFiltering = peakFiltering;
+    }
+
+    /**
+     * Changing the fragment ion tolerance invalidates all vectors created
+     * before, the cached ones are removed.
+     */
+    @Override
+    public void setFragmentIonTolerance(float fragmentIonTolerance) {
+        this.fragmentIonTolerance = fragmentIonTolerance;
+        this.binner = createBinner(fragmentIonTolerance);
+        spectrumVectors = null;
+        clusterVectors = null;
+    }
+
+    @Override
+    public float getFragmentIonTolerance() {
+        return fragmentIonTolerance;
+    }
+
+    @Override
+    public String getName() {
+        return algorithmName;
+    }
+
+    @Override
+    public String getCurrentVersion() {
+        return algorithmVersion;
+    }
+
+    @Override
+    public BinnedDotProduct copy() {
+        return new BinnedDotProduct(fragmentIonTolerance, peakFiltering);
+    }
+
+    /**
+     * Identifies a spectrum by the object since the spectrum's equals compares all peaks
+     */
+    private static final class SpectrumKey {
+        private final ISpectrum spectrum;
+
+        private SpectrumKey(ISpectrum spectrum) {
+            this.spectrum = spectrum;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SpectrumKey && ((SpectrumKey) o).spectrum == spectrum;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(spectrum);
+        }
+    }
+
+    private static final class StampedVector {
+        private final long versionStamp;
+        private final BinnedSpectrumVector vector;
+
+        private StampedVector(long versionStamp, BinnedSpectrumVector vector) {
+            this.versionStamp = versionStamp;
+            this.vector = vector;
+        }
+    }
+}
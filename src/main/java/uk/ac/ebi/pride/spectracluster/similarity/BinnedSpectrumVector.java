@@ -0,0 +1,167 @@
+package uk.ac.ebi.pride.spectracluster.similarity;
+
+import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.util.binner.IBinner;
+import uk.ac.ebi.pride.spectracluster.util.binner.IWideBinner;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Represents a spectrum as a sparse vector of m/z bins. The bin values are
+ * the spectrum's transformed intensities (1 + ln(I)) summed per bin and
+ * normalized to a unit length. Thereby, the dot product of two vectors
+ * is their cosine similarity.
+ *
+ * A vector should be created once per spectrum and can then be compared
+ * against any number of other vectors created using the same binner.
+ *
+ * @author jg
+ */
+public final class BinnedSpectrumVector {
+    /**
+     * Bin ids in ascending order
+     */
+    private final int[] bins;
+    /**
+     * Normalized values in the order of the bins
+     */
+    private final float[] values;
+
+    private BinnedSpectrumVector(int[] bins, float[] values) {
+        this.bins = bins;
+        this.values = values;
+    }
+
+    /**
+     * Creates the binned representation of the passed spectrum. If an IWideBinner
+     * is passed, peaks are added to all bins they can be assigned to.
+     *
+     * @param spectrum !null spectrum
+     * @param binner   !null binner to use - the same binner must be used for all vectors that are compared
+     * @return !null vector
+     */
+    public static BinnedSpectrumVector fromSpectrum(ISpectrum spectrum, IBinner binner) {
+        List<IPeak> peaks = spectrum.getPeaks();
+        double[] intensities = spectrum.getTransformedIntensities();
+        IWideBinner wideBinner = (binner instanceof IWideBinner) ? (IWideBinner) binner : null;
+
+        int[] bins = new int[wideBinner != null ? 2 * peaks.size() : peaks.size()];
+        double[] values = new double[bins.length];
+        int nValues = 0;
+
+        for (int i = 0; i < intensities.length; i++) {
+            if (intensities[i] == 0)
+                continue;
+            double mz = peaks.get(i).getMz();
+
+            if (wideBinner != null) {
+                for (int bin : wideBinner.asBins(mz)) {
+                    if (bin < 0)
+                        continue;
+                    bins[nValues] = bin;
+                    values[nValues++] = intensities[i];
+                }
+            } else {
+                int bin = binner.asBin(mz);
+                if (bin < 0)
+                    continue;
+                bins[nValues] = bin;
+                values[nValues++] = intensities[i];
+            }
+        }
+
+        // peaks are sorted by m/z, therefore only wide bins may be slightly out of order
+        for (int i = 1; i < nValues; i++) {
+            int bin = bins[i];
+            double value = values[i];
+            int position = i;
+            while (position > 0 && bins[position - 1] > bin) {
+                bins[position] = bins[position - 1];
+                values[position] = values[position - 1];
+                position--;
+            }
+            bins[position] = bin;
+            values[position] = value;
+        }
+
+        // merge identical bins
+        int nBins = 0;
+        for (int i = 0; i < nValues; i++) {
+            if (nBins > 0 && bins[nBins - 1] == bins[i]) {
+                values[nBins - 1] += values[i];
+            } else {
+                bins[nBins] = bins[i];
+                values[nBins++] = values[i];
+            }
+        }
+
+        // normalize to unit length
+        double sumSquares = 0;
+        for (int i = 0; i < nBins; i++) {
+            sumSquares += values[i] * values[i];
+        }
+        double norm = Math.sqrt(sumSquares);
+        if (norm == 0)
+            norm = 1;
+
+        float[] normalizedValues = new float[nBins];
+        for (int i = 0; i < nBins; i++) {
+            normalizedValues[i] = (float) (values[i] / norm);
+        }
+
+        return new BinnedSpectrumVector(Arrays.copyOf(bins, nBins), normalizedValues);
+    }
+
+    /**
+     * Calculates the dot product with the passed vector through a merge over the
+     * sorted bin ids.
+     *
+     * @param other !null vector created using the same binner
+     * @return the dot product - at most 1
+     */
+    public double dotProduct(BinnedSpectrumVector other) {
+        int[] otherBins = other.bins;
+        float[] otherValues = other.values;
+        double dotProduct = 0;
+
+        int index1 = 0, index2 = 0;
+        while (index1 < bins.length && index2 < otherBins.length) {
+            int bin1 = bins[index1];
+            int bin2 = otherBins[index2];
+
+            if (bin1 < bin2) {
+                index1++;
+            } else if (bin1 > bin2) {
+                index2++;
+            } else {
+                dotProduct += values[index1++] * otherValues[index2++];
+            }
+        }
+
+        // fix rounding issue
+        return Math.min(1, dotProduct);
+    }
+
+    /**
+     * @return number of non-empty bins
+     */
+    public int size() {
+        return bins.length;
+    }
+
+    /**
+     * @return the bin ids in ascending order - must not be modified
+     */
+    public int[] getBins() {
+        return bins;
+    }
+
+    /**
+     * @return the normalized values in the order of the bins - must not be modified
+     */
+    public float[] getValues() {
+        return values;
+    }
+}
@@ -3,28 +3,60 @@ package uk.ac.ebi.pride.spectracluster.similarity;
 import org.apache.commons.math3.distribution.ChiSquaredDistribution;
 import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
 import uk.ac.ebi.pride.spectracluster.util.Defaults;
+import uk.ac.ebi.pride.spectracluster.util.tracing.TracePhase;
+import uk.ac.ebi.pride.spectracluster.util.tracing.Tracing;
 
 /**
  * This SimilarityChecker combines the probability of the
  * FisherExactTest and the IntensityRankCorrelation Test
  * using Fisher's method to combine extreme probabilities.
  *
+ * Two versions of the score are available: DENSITY_0_1 (the default)
+ * uses the density of the chi-squared distribution at the combined
+ * statistic, SURVIVAL_FUNCTION_0_2 uses the chi-squared survival function
+ * which is the correct p-value of Fisher's method. The two versions
+ * require different cumulative distribution functions. The one of
+ * SURVIVAL_FUNCTION_0_2 is provisional since it is only based on a
+ * small test set, the version is therefore experimental.
+ *
  * Created by jg on 15.04.15.
  */
 public class CombinedFisherIntensityTest implements ISimilarityChecker {
     public static final String algorithmName = "Combined FisherExact and Intensity rank test";
     public static final String algorithmVersion = "0.1";
 
+    /**
+     * The versions available from this algorithm. They only
+     * differ in the way the combined statistic is converted
+     * into a score.
+     */
+    public enum AlgorithmVersion {
+        DENSITY_0_1("0.1"), SURVIVAL_FUNCTION_0_2("0.2");
+
+        private final String versionString;
+
+        AlgorithmVersion(String versionString) {
+            this.versionString = versionString;
+        }
+
+        public String getVersionString() {
+            return versionString;
+        }
+    }
+
+    public static final AlgorithmVersion DEFAULT_ALGORITHM = AlgorithmVersion.DENSITY_0_1;
+
     /**
      * These classes will be used to calculate the FisherExactTest and
      * IntensityRank probability.
      *
      * In both cases the IPeakMatches version of assessSimilarity
      * is used. Therefore, the fragmentIonTolerance and peakFiltering
-     * do not have to be set.
+     * do not have to be set. The default tolerance is passed so that
+     * they do not depend on the Defaults.
       */
-    protected final FisherExactTest fisherExactTest = new FisherExactTest();
-    protected final IntensityRankCorrelation intensityRankCorrelation = new IntensityRankCorrelation();
+    protected final FisherExactTest fisherExactTest = new FisherExactTest(Defaults.DEFAULT_FRAGMENT_ION_TOLERANCE);
+    protected final IntensityRankCorrelation intensityRankCorrelation = new IntensityRankCorrelation(Defaults.DEFAULT_FRAGMENT_ION_TOLERANCE);
     protected final ChiSquaredDistribution chiSquaredDistribution = new ChiSquaredDistribution(4); // always 4 degrees of freedom
 
     /**
@@ -36,6 +68,8 @@ public class CombinedFisherIntensityTest implements ISimilarityChecker {
 
     private boolean peakFiltering;
 
+    private AlgorithmVersion version = DEFAULT_ALGORITHM;
+
     public CombinedFisherIntensityTest() {
         this(Defaults.getFragmentIonTolerance());
     }
@@ -57,9 +91,24 @@ public class CombinedFisherIntensityTest implements ISimilarityChecker {
 
     @Override
     public double assessSimilarity(IPeakMatches peakMatches) {
+        if (!Tracing.ENABLED)
+            return scoreMatches(peakMatches);
+
+        long token = Tracing.begin(TracePhase.SIMILARITY_SCORING);
+        try {
+            return scoreMatches(peakMatches);
+        } finally {
+            Tracing.end(TracePhase.SIMILARITY_SCORING, token);
+        }
+    }
+
+    private double scoreMatches(IPeakMatches peakMatches) {
         double fisherExactP = fisherExactTest.assessSimilarityAsPValue(peakMatches);
         double intensityRankP = intensityRankCorrelation.assessSimilarityAsPValue(peakMatches);
 
+        if (version == AlgorithmVersion.SURVIVAL_FUNCTION_0_2)
+            return calculateSurvivalScore(Math.log(fisherExactP) + Math.log(intensityRankP));
+
         // combine the p-values using Fisher's method
         double combined = -2 * (Math.log(fisherExactP) + Math.log(intensityRankP));
         double pValue;
@@ -75,6 +124,26 @@ public class CombinedFisherIntensityTest implements ISimilarityChecker {
         return -Math.log(pValue);
     }
 
+    /**
+     * Calculates -ln(p) of Fisher's method for two p-values. The combined statistic
+     * x = -2 * (ln(p1) + ln(p2)) follows a chi-squared distribution with 4 degrees
+     * of freedom whose survival function is exp(-x/2) * (1 + x/2). The score is
+     * therefore x/2 - ln(1 + x/2) which is calculated without ever forming the
+     * p-value so that it does not underflow.
+     *
+     * @param sumLogPValues ln(p1) + ln(p2)
+     * @return -ln of the combined p-value, 0 if both p-values are 1
+     */
+    public static double calculateSurvivalScore(double sumLogPValues) {
+        if (sumLogPValues >= 0)
+            return 0;
+        if (Double.isInfinite(sumLogPValues))
+            return Double.POSITIVE_INFINITY;
+
+        double halfCombined = -sumLogPValues;
+        return halfCombined - Math.log1p(halfCombined);
+    }
+
     @Override
     public boolean isPeakFiltering() {
         return peakFiltering;
@@ -102,6 +171,25 @@ public class CombinedFisherIntensityTest implements ISimilarityChecker {
 
     @Override
     public String getCurrentVersion() {
-        return algorithmVersion;
+        return version.getVersionString();
+    }
+
+    public AlgorithmVersion getVersion() {
+        return version;
+    }
+
+    public void setVersion(AlgorithmVersion version) {
+        this.version = version;
+    }
+
+    /**
+     * The copy uses its own FisherExactTest, IntensityRankCorrelation and
+     * ChiSquaredDistribution.
+     */
+    @Override
+    public CombinedFisherIntensityTest copy() {
+        CombinedFisherIntensityTest copy = new CombinedFisherIntensityTest(fragmentIonTolerance, peakFiltering);
+        copy.setVersion(version);
+        return copy;
     }
 }
@@ -51,4 +51,9 @@ public class FisherExactTest extends HypergeometricScore {
     public String getCurrentVersion() {
         return algorithmVersion;
     }
+
+    @Override
+    public FisherExactTest copy() {
+        return new FisherExactTest(fragmentIonTolerance, isPeakFiltering());
+    }
 }
@@ -1,10 +1,10 @@
 package uk.ac.ebi.pride.spectracluster.similarity;
 
 
-import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
 import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
 import uk.ac.ebi.pride.spectracluster.util.Defaults;
-import uk.ac.ebi.pride.spectracluster.util.Pair;
+import uk.ac.ebi.pride.spectracluster.util.tracing.TracePhase;
+import uk.ac.ebi.pride.spectracluster.util.tracing.Tracing;
 
 
 /**
@@ -18,6 +18,9 @@ import uk.ac.ebi.pride.spectracluster.util.Pair;
  * is the peak's normalized intensity.
  * uk.ac.ebi.pride.spectracluster.similarity.FrankEtAlDotProduct
  *
+ * The matched intensities are gathered into buffers that are
+ * reused between comparisons, use copy() for every thread.
+ *
  * @author jg
  */
 public class FrankEtAlDotProduct implements ISimilarityChecker {
@@ -55,6 +58,12 @@ public class FrankEtAlDotProduct implements ISimilarityChecker {
     private float fragmentIonTolerance;
     private int numberOfPeaksToCompare;
 
+    /**
+     * reused buffers for the intensities of the matched peaks
+     */
+    private double[] matchedIntensities1 = new double[0];
+    private double[] matchedIntensities2 = new double[0];
+
     /**
      * Creates a new instance of the FrankEtAlDotProduct where all parameters
      * are set in the constructor.
@@ -111,14 +120,33 @@ public class FrankEtAlDotProduct implements ISimilarityChecker {
 
     @Override
     public double assessSimilarity(IPeakMatches peakMatches) {
-        double dotProduct = 0;
+        if (!Tracing.ENABLED)
+            return scoreMatches(peakMatches);
+
+        long token = Tracing.begin(TracePhase.SIMILARITY_SCORING);
+        try {
+            return scoreMatches(peakMatches);
+        } finally {
+            Tracing.end(TracePhase.SIMILARITY_SCORING, token);
+        }
+    }
 
-        for (int i = 0; i < peakMatches.getNumberOfSharedPeaks(); i++) {
-            Pair<IPeak, IPeak> matchedPeaks = peakMatches.getPeakPair(i);
+    private double scoreMatches(IPeakMatches peakMatches) {
+        int nMatches = peakMatches.getNumberOfSharedPeaks();
 
-            dotProduct += convertIntensity(matchedPeaks.getFirst()) * convertIntensity(matchedPeaks.getSecond());
+        if (matchedIntensities1.length < nMatches) {
+            matchedIntensities1 = new double[Math.max(nMatches, 2 * matchedIntensities1.length)];
+            matchedIntensities2 = new double[matchedIntensities1.length];
         }
 
+        // gather the pre-computed 1 + ln(I) values of the matched peaks into contiguous arrays
+        gatherIntensities(peakMatches.getSpectrumOne().getTransformedIntensities(),
+                peakMatches.getSharedPeakIndicesFromSpectrumOne(), nMatches, matchedIntensities1);
+        gatherIntensities(peakMatches.getSpectrumTwo().getTransformedIntensities(),
+                peakMatches.getSharedPeakIndicesFromSpectrumTwo(), nMatches, matchedIntensities2);
+
+        double dotProduct = calculateDotProduct(matchedIntensities1, matchedIntensities2, nMatches);
+
         // normalize the dot product
         double sumSquareIntensity1 = peakMatches.getSpectrumOne().getSumSquareIntensity();
         double sumSquareIntensity2 = peakMatches.getSpectrumTwo().getSumSquareIntensity();
@@ -163,15 +191,29 @@ public class FrankEtAlDotProduct implements ISimilarityChecker {
         return assessSimilarity(peakMatches);
     }
 
+    private static void gatherIntensities(double[] intensities, int[] indices, int nMatches, double[] ret) {
+        for (int i = 0; i < nMatches; i++) {
+            ret[i] = intensities[indices[i]];
+        }
+    }
+
     /**
-     * Transforms the intensities to penalize very high peaks.
-     * This function is taken from the spectral-archives algorithm.
+     * Calculates the dot product of the first length values of the two arrays. The
+     * values are summed in order so that the result is identical to the original
+     * implementation, splitting the sum changes the rounding.
+     *
+     * @param values1 !null first vector
+     * @param values2 !null second vector
+     * @param length  number of values to use from both vectors
+     * @return the dot product
      */
-    private double convertIntensity(IPeak p1) {
-        double intensity = p1.getIntensity();
-        if (intensity == 0)
-            return 0;
-        return 1 + Math.log(intensity);
+    public static double calculateDotProduct(double[] values1, double[] values2, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += values1[i] * values2[i];
+        }
+
+        return sum;
     }
 
     protected int computeNumberComparedSpectra(ISpectrum spectrum1, ISpectrum spectrum2) {
@@ -260,4 +302,11 @@ public class FrankEtAlDotProduct implements ISimilarityChecker {
     public float getFragmentIonTolerance() {
         return fragmentIonTolerance;
     }
+
+    @Override
+    public FrankEtAlDotProduct copy() {
+        FrankEtAlDotProduct copy = new FrankEtAlDotProduct(fragmentIonTolerance, numberOfPeaksToCompare, peakFiltering);
+        copy.setVersion(version);
+        return copy;
+    }
 }
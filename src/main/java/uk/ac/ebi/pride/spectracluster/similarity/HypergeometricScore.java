@@ -6,6 +6,8 @@ import org.apache.commons.math3.distribution.HypergeometricDistribution;
 import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
 import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
 import uk.ac.ebi.pride.spectracluster.util.Defaults;
+import uk.ac.ebi.pride.spectracluster.util.tracing.TracePhase;
+import uk.ac.ebi.pride.spectracluster.util.tracing.Tracing;
 
 import java.util.List;
 
@@ -19,7 +21,10 @@ import java.util.List;
 public class HypergeometricScore implements ISimilarityChecker {
     public static final String algorithmName = "Hypergeometric Exact Test";
     public static final String algorithmVersion = "0.1";
-    protected static final RandomEngine randomEngine = RandomEngine.makeDefault();
+    /**
+     * only passed to the distributions, every instance uses its own engine
+     */
+    protected final RandomEngine randomEngine = RandomEngine.makeDefault();
 
     public static final boolean DEFAULT_PEAK_FILTERING = false;
 
@@ -46,6 +51,18 @@ public class HypergeometricScore implements ISimilarityChecker {
 
     @Override
     public double assessSimilarity(IPeakMatches peakMatches) {
+        if (!Tracing.ENABLED)
+            return scoreMatches(peakMatches);
+
+        long token = Tracing.begin(TracePhase.SIMILARITY_SCORING);
+        try {
+            return scoreMatches(peakMatches);
+        } finally {
+            Tracing.end(TracePhase.SIMILARITY_SCORING, token);
+        }
+    }
+
+    protected double scoreMatches(IPeakMatches peakMatches) {
         // if there are no shared peaks, return 0 to indicate that it's random
         if (peakMatches.getNumberOfSharedPeaks() < 1)
             return 1;
@@ -164,4 +181,9 @@ public class HypergeometricScore implements ISimilarityChecker {
     public void setPeakFiltering(boolean peakFiltering) {
         this.peakFiltering = peakFiltering;
     }
+
+    @Override
+    public HypergeometricScore copy() {
+        return new HypergeometricScore(fragmentIonTolerance, peakFiltering);
+    }
 }
@@ -24,7 +24,7 @@ public class HypergeometricScoreDiffPopSize extends HypergeometricScore {
     }
 
     @Override
-    public double assessSimilarity(IPeakMatches peakMatches) {
+    protected double scoreMatches(IPeakMatches peakMatches) {
         // if there are no shared peaks, return 0 to indicate that it's random
         if (peakMatches.getNumberOfSharedPeaks() < 1)
             return 1;
@@ -41,4 +41,9 @@ public class HypergeometricScoreDiffPopSize extends HypergeometricScore {
                 peakMatches.getSpectrumTwo().getPeaksCount(),
                 numberOfBins);
     }
+
+    @Override
+    public HypergeometricScoreDiffPopSize copy() {
+        return new HypergeometricScoreDiffPopSize(fragmentIonTolerance, isPeakFiltering());
+    }
 }
@@ -39,6 +39,22 @@ public interface IPeakMatches {
      */
     int getNumberOfSharedPeaks();
 
+    /**
+     * Get the indices of the shared peaks within spectrum one. The
+     * returned array must not be modified.
+     *
+     * @return an array of peak indices in the order of the matches
+     */
+    int[] getSharedPeakIndicesFromSpectrumOne();
+
+    /**
+     * Get the indices of the shared peaks within spectrum two. The
+     * returned array must not be modified.
+     *
+     * @return an array of peak indices in the order of the matches
+     */
+    int[] getSharedPeakIndicesFromSpectrumTwo();
+
     /**
      * Get a pair of peaks at a given index
      *
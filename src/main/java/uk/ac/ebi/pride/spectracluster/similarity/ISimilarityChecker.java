@@ -9,6 +9,11 @@ import uk.ac.ebi.pride.spectracluster.util.IAlgorithm;
  * check as a double. Higher values mean
  * a higher similarity.
  *
+ * Similarity checkers may keep scratch state between two
+ * comparisons and are therefore not thread-safe. Every
+ * thread has to use its own copy (see copy() and
+ * ThreadLocalSimilarityChecker).
+ *
  * @author jg
  * @author Rui Wang
  */
@@ -53,4 +58,11 @@ public interface ISimilarityChecker extends IAlgorithm {
      * @return The fragment ion tolerance in m/z
      */
     public float getFragmentIonTolerance();
+
+    /**
+     * Creates a new similarity checker with the same settings that does
+     * not share any mutable state with this one.
+     * @return !null independent copy
+     */
+    public ISimilarityChecker copy();
 }
@@ -7,6 +7,8 @@ import org.apache.commons.math3.stat.correlation.KendallsCorrelation;
 import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
 import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
 import uk.ac.ebi.pride.spectracluster.util.Defaults;
+import uk.ac.ebi.pride.spectracluster.util.tracing.TracePhase;
+import uk.ac.ebi.pride.spectracluster.util.tracing.Tracing;
 
 import java.util.List;
 
@@ -26,7 +28,7 @@ public class IntensityRankCorrelation implements ISimilarityChecker {
     protected float fragmentIonTolerance;
     protected boolean peakFiltering;
 
-    private KendallsCorrelation kendallsCorrelation = new KendallsCorrelation();
+    private final KendallsCorrelation kendallsCorrelation = new KendallsCorrelation();
 
     public IntensityRankCorrelation() {
         this(Defaults.getFragmentIonTolerance(), DEFAULT_PEAK_FILTERING);
@@ -76,9 +78,15 @@ public class IntensityRankCorrelation implements ISimilarityChecker {
 
     @Override
     public double assessSimilarity(IPeakMatches peakMatches) {
-        double pValue = assessSimilarityAsPValue(peakMatches);
-
-        return -Math.log(pValue);
+        if (!Tracing.ENABLED)
+            return -Math.log(assessSimilarityAsPValue(peakMatches));
+
+        long token = Tracing.begin(TracePhase.SIMILARITY_SCORING);
+        try {
+            return -Math.log(assessSimilarityAsPValue(peakMatches));
+        } finally {
+            Tracing.end(TracePhase.SIMILARITY_SCORING, token);
+        }
     }
 
     @Override
@@ -127,4 +135,9 @@ public class IntensityRankCorrelation implements ISimilarityChecker {
     public float getFragmentIonTolerance() {
         return fragmentIonTolerance;
     }
+
+    @Override
+    public IntensityRankCorrelation copy() {
+        return new IntensityRankCorrelation(fragmentIonTolerance, peakFiltering);
+    }
 }
@@ -0,0 +1,50 @@
+package uk.ac.ebi.pride.spectracluster.similarity;
+
+import uk.ac.ebi.pride.spectracluster.util.Defaults;
+import uk.ac.ebi.pride.spectracluster.util.MZIntensityUtilities;
+import uk.ac.ebi.pride.spectracluster.util.binner.IBinner;
+import uk.ac.ebi.pride.spectracluster.util.binner.SizedWideBinner;
+
+/**
+ * BinnedDotProduct using overlapping bins. Peaks within half the
+ * fragment ion tolerance of a bin boundary are also added to the
+ * neighbouring bin so that matches across a boundary are not lost.
+ */
+public class OverlappingBinnedDotProduct extends BinnedDotProduct {
+    private static final long serialVersionUID = 1L;
+
+    public static final String algorithmName = "Overlapping Binned Dot Product";
+    public static final String algorithmVersion = "0.1";
+
+    public OverlappingBinnedDotProduct() {
+        this(Defaults.getFragmentIonTolerance());
+    }
+
+    public OverlappingBinnedDotProduct(float fragmentIonTolerance) {
+        this(fragmentIonTolerance, DEFAULT_PEAK_FILTERING);
+    }
+
+    public OverlappingBinnedDotProduct(float fragmentIonTolerance, boolean peakFiltering) {
+        super(fragmentIonTolerance, peakFiltering);
+    }
+
+    @Override
+    protected IBinner createBinner(float fragmentIonTolerance) {
+        return new SizedWideBinner(MZIntensityUtilities.HIGHEST_USABLE_MZ, fragmentIonTolerance, 0, fragmentIonTolerance / 2, true);
+    }
+
+    @Override
+    public String getName() {
+        return algorithmName;
+    }
+
+    @Override
+    public String getCurrentVersion() {
+        return algorithmVersion;
+    }
+
+    @Override
+    public OverlappingBinnedDotProduct copy() {
+        return new OverlappingBinnedDotProduct(getFragmentIonTolerance(), isPeakFiltering());
+    }
+}
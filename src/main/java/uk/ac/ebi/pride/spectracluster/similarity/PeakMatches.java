@@ -18,8 +18,8 @@ import java.util.List;
 public class PeakMatches implements IPeakMatches{
     private final ISpectrum spectrum1;
     private final ISpectrum spectrum2;
-    private final List<Integer> sharedPeakIndecesSpec1;
-    private final List<Integer> sharedPeakIndecesSpec2;
+    private final int[] sharedPeakIndecesSpec1;
+    private final int[] sharedPeakIndecesSpec2;
 
     private List<IPeak> sharedPeaksSpec1 = null;
     private List<IPeak> sharedPeaksSpec2 = null;
@@ -28,8 +28,19 @@ public class PeakMatches implements IPeakMatches{
                        ISpectrum spectrum2,
                        List<Integer> sharedPeakIndecesSpec1,
                        List<Integer> sharedPeakIndecesSpec2) {
+        this(spectrum1, spectrum2, toArray(sharedPeakIndecesSpec1), toArray(sharedPeakIndecesSpec2));
+    }
+
+    /**
+     * Creates a new PeakMatches object based on primitive index arrays. The arrays
+     * are used directly and must not be changed afterwards.
+     */
+    public PeakMatches(ISpectrum spectrum1,
+                       ISpectrum spectrum2,
+                       int[] sharedPeakIndecesSpec1,
+                       int[] sharedPeakIndecesSpec2) {
         // make sure the number of indices have the same length
-        if (sharedPeakIndecesSpec1.size() != sharedPeakIndecesSpec2.size())
+        if (sharedPeakIndecesSpec1.length != sharedPeakIndecesSpec2.length)
             throw new IllegalStateException("SharedPeakIndices must be of same size for both spectra");
 
         this.spectrum1 = spectrum1;
@@ -38,15 +49,23 @@ public class PeakMatches implements IPeakMatches{
         this.sharedPeakIndecesSpec2 = sharedPeakIndecesSpec2;
     }
 
+    private static int[] toArray(List<Integer> indices) {
+        int[] ret = new int[indices.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = indices.get(i);
+        }
+        return ret;
+    }
+
     /**
      * Returns the shared peaks from spectrum 1
      * @return
      */
     public List<IPeak> getSharedPeaksFromSpectrumOne() {
         if (sharedPeaksSpec1 == null) {
-            sharedPeaksSpec1 = new ArrayList<IPeak>();
+            sharedPeaksSpec1 = new ArrayList<IPeak>(sharedPeakIndecesSpec1.length);
 
-            for (Integer aSharedPeakIndecesSpec1 : sharedPeakIndecesSpec1) {
+            for (int aSharedPeakIndecesSpec1 : sharedPeakIndecesSpec1) {
                 IPeak sharedPeaks = spectrum1.getPeaks().get(aSharedPeakIndecesSpec1);
                 sharedPeaksSpec1.add(sharedPeaks);
             }
@@ -61,9 +80,9 @@ public class PeakMatches implements IPeakMatches{
      */
     public List<IPeak> getSharedPeaksFromSpectrumTwo() {
         if (sharedPeaksSpec2 == null) {
-            sharedPeaksSpec2 = new ArrayList<IPeak>();
+            sharedPeaksSpec2 = new ArrayList<IPeak>(sharedPeakIndecesSpec2.length);
 
-            for (Integer aSharedPeakIndecesSpec2 : sharedPeakIndecesSpec2) {
+            for (int aSharedPeakIndecesSpec2 : sharedPeakIndecesSpec2) {
                 IPeak sharedPeak = spectrum2.getPeaks().get(aSharedPeakIndecesSpec2);
                 sharedPeaksSpec2.add(sharedPeak);
             }
@@ -77,7 +96,25 @@ public class PeakMatches implements IPeakMatches{
      * @return
      */
     public int getNumberOfSharedPeaks() {
-        return sharedPeakIndecesSpec1.size();
+        return sharedPeakIndecesSpec1.length;
+    }
+
+    /**
+     * Returns the indices of the shared peaks in spectrum 1. The
+     * returned array must not be modified.
+     * @return
+     */
+    public int[] getSharedPeakIndicesFromSpectrumOne() {
+        return sharedPeakIndecesSpec1;
+    }
+
+    /**
+     * Returns the indices of the shared peaks in spectrum 2. The
+     * returned array must not be modified.
+     * @return
+     */
+    public int[] getSharedPeakIndicesFromSpectrumTwo() {
+        return sharedPeakIndecesSpec2;
     }
 
     /**
@@ -90,11 +127,11 @@ public class PeakMatches implements IPeakMatches{
     public Pair<IPeak, IPeak> getPeakPair(int nIndex) {
         if (nIndex < 0)
             throw new IndexOutOfBoundsException("PeakPair index must be greater than 0");
-        if (nIndex >= sharedPeakIndecesSpec1.size())
-            throw new IndexOutOfBoundsException("Request PeakPair with index '" + nIndex + "' from " + sharedPeakIndecesSpec1.size() + " matches");
+        if (nIndex >= sharedPeakIndecesSpec1.length)
+            throw new IndexOutOfBoundsException("Request PeakPair with index '" + nIndex + "' from " + sharedPeakIndecesSpec1.length + " matches");
 
-        return new Pair<IPeak, IPeak>(spectrum1.getPeaks().get(sharedPeakIndecesSpec1.get(nIndex)),
-                                      spectrum2.getPeaks().get(sharedPeakIndecesSpec2.get(nIndex)));
+        return new Pair<IPeak, IPeak>(spectrum1.getPeaks().get(sharedPeakIndecesSpec1[nIndex]),
+                                      spectrum2.getPeaks().get(sharedPeakIndecesSpec2[nIndex]));
     }
 
     public ISpectrum getSpectrumOne() {
@@ -3,8 +3,11 @@ package uk.ac.ebi.pride.spectracluster.similarity;
 import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
 import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
 import uk.ac.ebi.pride.spectracluster.spectrum.Peak;
+import uk.ac.ebi.pride.spectracluster.util.tracing.TracePhase;
+import uk.ac.ebi.pride.spectracluster.util.tracing.Tracing;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -48,7 +51,7 @@ public final class PeakMatchesUtilities {
     }
 
     public static IPeakMatches getSharedPeaksAsMatches(ISpectrum spectrum1, ISpectrum spectrum2, float mzTolerance) {
-        List<Integer>[] sharedPeakIndices = getSharedPeaks(spectrum1, spectrum2, mzTolerance);
+        int[][] sharedPeakIndices = getSharedPeakIndices(spectrum1, spectrum2, mzTolerance);
         return new PeakMatches(spectrum1, spectrum2, sharedPeakIndices[0], sharedPeakIndices[1]);
     }
 
@@ -63,18 +66,60 @@ public final class PeakMatchesUtilities {
      * corresponding indices of spectrum 2.
      */
     public static List<Integer>[] getSharedPeaks(ISpectrum spectrum1, ISpectrum spectrum2, float mzTolerance) {
-        List<IPeak> peaks1 = spectrum1.getPeaks();
-        List<IPeak> peaks2 = spectrum2.getPeaks();
+        int[][] sharedPeakIndices = getSharedPeakIndices(spectrum1, spectrum2, mzTolerance);
 
-        List<Integer> sharedPeaksIndexes1 = new ArrayList<Integer>();
-        List<Integer> sharedPeaksIndexes2 = new ArrayList<Integer>();
+        List<Integer> sharedPeaksIndexes1 = new ArrayList<Integer>(sharedPeakIndices[0].length);
+        List<Integer> sharedPeaksIndexes2 = new ArrayList<Integer>(sharedPeakIndices[1].length);
+
+        for (int i = 0; i < sharedPeakIndices[0].length; i++) {
+            sharedPeaksIndexes1.add(sharedPeakIndices[0][i]);
+            sharedPeaksIndexes2.add(sharedPeakIndices[1][i]);
+        }
+
+        List<Integer>[] result = new List[2];
+        result[0] = sharedPeaksIndexes1;
+        result[1] = sharedPeaksIndexes2;
+
+        return result;
+    }
+
+    /**
+     * Finds the peaks shared between two spectra as primitive index arrays. Matches
+     * are identical to getSharedPeaks.
+     *
+     * @param spectrum1   The first spectrum to match the peaks from.
+     * @param spectrum2   The second spectrum to match the peaks from.
+     * @param mzTolerance Peak tolerance for matching in m/z
+     * @return Array of size 2. First array contains the peak indexes of spectrum 1, the second one the
+     * corresponding indices of spectrum 2.
+     */
+    public static int[][] getSharedPeakIndices(ISpectrum spectrum1, ISpectrum spectrum2, float mzTolerance) {
+        if (!Tracing.ENABLED)
+            return findSharedPeakIndices(spectrum1, spectrum2, mzTolerance);
+
+        long token = Tracing.begin(TracePhase.PEAK_MATCHING);
+        try {
+            return findSharedPeakIndices(spectrum1, spectrum2, mzTolerance);
+        } finally {
+            Tracing.end(TracePhase.PEAK_MATCHING, token);
+        }
+    }
+
+    private static int[][] findSharedPeakIndices(ISpectrum spectrum1, ISpectrum spectrum2, float mzTolerance) {
+        float[] peaks1 = getMzValues(spectrum1.getPeaks());
+        float[] peaks2 = getMzValues(spectrum2.getPeaks());
+
+        int maxMatches = Math.min(peaks1.length, peaks2.length);
+        int[] sharedPeaksIndexes1 = new int[maxMatches];
+        int[] sharedPeaksIndexes2 = new int[maxMatches];
+        int nMatches = 0;
 
         // upper and lower bound
         int indexSpec1 = 0, indexSpec2 = 0;
 
-        while (indexSpec1 < peaks1.size() && indexSpec2 < peaks2.size()) {
-            float mz1 = peaks1.get(indexSpec1).getMz();
-            float mz2 = peaks2.get(indexSpec2).getMz();
+        while (indexSpec1 < peaks1.length && indexSpec2 < peaks2.length) {
+            float mz1 = peaks1[indexSpec1];
+            float mz2 = peaks2[indexSpec2];
             float difference = Math.abs(mz1 - mz2);
 
             if (difference > mzTolerance) {
@@ -87,18 +132,18 @@ public final class PeakMatchesUtilities {
             // a potential match was found
             else {
 
-                float differenceNextSpec1Spec2 = (indexSpec1 < peaks1.size() - 1 && indexSpec2 < peaks2.size() - 1) ?
-                        Math.abs(peaks1.get(indexSpec1 + 1).getMz() - peaks2.get(indexSpec2 + 1).getMz()) :
+                float differenceNextSpec1Spec2 = (indexSpec1 < peaks1.length - 1 && indexSpec2 < peaks2.length - 1) ?
+                        Math.abs(peaks1[indexSpec1 + 1] - peaks2[indexSpec2 + 1]) :
                         Float.MAX_VALUE;
 
                 // if the next two peaks are also a match, just match the current two
                 if (differenceNextSpec1Spec2 > mzTolerance) {
-                    float differenceNextSpec1 = (indexSpec1 < peaks1.size() - 1) ?
-                            Math.abs(peaks1.get(indexSpec1 + 1).getMz() - mz2) :
+                    float differenceNextSpec1 = (indexSpec1 < peaks1.length - 1) ?
+                            Math.abs(peaks1[indexSpec1 + 1] - mz2) :
                             Float.MAX_VALUE;
 
-                    float differenceNextSpec2 = (indexSpec2 < peaks2.size() - 1) ?
-                            Math.abs(peaks2.get(indexSpec2 + 1).getMz() - mz1) :
+                    float differenceNextSpec2 = (indexSpec2 < peaks2.length - 1) ?
+                            Math.abs(peaks2[indexSpec2 + 1] - mz1) :
                             Float.MAX_VALUE;
 
                     // using next peak in spec 1 is the best match
@@ -111,21 +156,30 @@ public final class PeakMatchesUtilities {
                     }
                 }
 
-                sharedPeaksIndexes1.add(indexSpec1);
-                sharedPeaksIndexes2.add(indexSpec2);
+                sharedPeaksIndexes1[nMatches] = indexSpec1;
+                sharedPeaksIndexes2[nMatches] = indexSpec2;
+                nMatches++;
 
                 indexSpec1++;
                 indexSpec2++;
             }
         }
 
-        List<Integer>[] result = new List[2];
-        result[0] = sharedPeaksIndexes1;
-        result[1] = sharedPeaksIndexes2;
+        int[][] result = new int[2][];
+        result[0] = Arrays.copyOf(sharedPeaksIndexes1, nMatches);
+        result[1] = Arrays.copyOf(sharedPeaksIndexes2, nMatches);
 
         return result;
     }
 
+    private static float[] getMzValues(List<IPeak> peaks) {
+        float[] mzValues = new float[peaks.size()];
+        for (int i = 0; i < mzValues.length; i++) {
+            mzValues[i] = peaks.get(i).getMz();
+        }
+        return mzValues;
+    }
+
     /**
      * This function replicates the behaviour of the previous peak matching function used
      * in the FrankEtAlDotProduct class. It is focused on finding an optimal match. Thereby
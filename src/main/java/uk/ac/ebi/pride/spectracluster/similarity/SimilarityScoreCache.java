@@ -0,0 +1,224 @@
+package uk.ac.ebi.pride.spectracluster.similarity;
+
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.consensus.IConsensusSpectrumBuilder;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.similarity.SimilarityScoreCache
+ * Bounded in memory cache of similarity scores so that reclustering passes do
+ * not compare pairs again that did not change since the last pass. Clusters
+ * are identified by their id and the version stamp of their consensus
+ * spectrum builder (see IConsensusSpectrumBuilder.getVersionStamp), spectra
+ * by their id. Spectrum ids must therefore be unique within the clustered input.
+ *
+ * The scores are only valid for the similarity checker and the peak filtering
+ * they were calculated with, engines using different settings must not share
+ * a cache. The order of the passed clusters does not matter since the scores
+ * are expected to be symmetric, once the maximum
+ * size is reached the least recently used pairs are removed.
+ *
+ * The cache may be used by several threads.
+ *
+ * @author jg
+ */
+public class SimilarityScoreCache {
+    public static final int DEFAULT_MAXIMUM_SIZE = 100000;
+
+    /**
+     * version stamp used for single spectra which never change
+     */
+    private static final long SPECTRUM_STAMP = -1;
+
+    private final int maximumSize;
+    /**
+     * pair to score in order of use, guarded by itself
+     */
+    private final LinkedHashMap<PairKey, Double> scores;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SimilarityScoreCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize maximum number of cached pairs
+     */
+    public SimilarityScoreCache(final int maximumSize) {
+        if (maximumSize < 1)
+            throw new IllegalArgumentException("Maximum size must be positive");
+        this.maximumSize = maximumSize;
+        this.scores = new LinkedHashMap<PairKey, Double>(16, 0.75F, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PairKey, Double> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * @return the cached score of the clusters' consensus spectra, null if the pair is not cached
+     *         or one of the clusters changed since it was scored
+     */
+    public Double get(ICluster cluster1, ICluster cluster2) {
+        return get(buildKey(cluster1, cluster2));
+    }
+
+    /**
+     * @return the cached score of the cluster's consensus spectrum and the spectrum, null if the
+     *         pair is not cached or the cluster changed since it was scored
+     */
+    public Double get(ICluster cluster, ISpectrum spectrum) {
+        return get(buildKey(cluster, spectrum));
+    }
+
+    /**
+     * Stores the score of the clusters' current consensus spectra
+     */
+    public void put(ICluster cluster1, ICluster cluster2, double score) {
+        put(buildKey(cluster1, cluster2), score);
+    }
+
+    /**
+     * Stores the score of the cluster's current consensus spectrum and the spectrum
+     */
+    public void put(ICluster cluster, ISpectrum spectrum, double score) {
+        put(buildKey(cluster, spectrum), score);
+    }
+
+    private Double get(PairKey key) {
+        Double score = null;
+        if (key != null) {
+            synchronized (scores) {
+                score = scores.get(key);
+            }
+        }
+
+        if (score == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+        return score;
+    }
+
+    private void put(PairKey key, double score) {
+        if (key == null)
+            return;
+        synchronized (scores) {
+            scores.put(key, score);
+        }
+    }
+
+    /**
+     * The cluster with the smaller version stamp always comes first so that both orders
+     * of the clusters share one key.
+     *
+     * @return null if the cluster has no consensus spectrum builder and can therefore not be cached
+     */
+    private static PairKey buildKey(ICluster cluster1, ICluster cluster2) {
+        IConsensusSpectrumBuilder builder1 = cluster1.getConsensusSpectrumBuilder();
+        IConsensusSpectrumBuilder builder2 = cluster2.getConsensusSpectrumBuilder();
+        if (builder1 == null || builder2 == null)
+            return null;
+
+        long stamp1 = builder1.getVersionStamp();
+        long stamp2 = builder2.getVersionStamp();
+        // copies of a cluster share the builder and are ordered by their id
+        if (stamp1 > stamp2 || (stamp1 == stamp2 && compareIds(cluster1.getId(), cluster2.getId()) > 0))
+            return new PairKey(cluster2.getId(), stamp2, cluster1.getId(), stamp1);
+        return new PairKey(cluster1.getId(), stamp1, cluster2.getId(), stamp2);
+    }
+
+    private static int compareIds(String id1, String id2) {
+        if (id1 == null)
+            return (id2 == null) ? 0 : -1;
+        if (id2 == null)
+            return 1;
+        return id1.compareTo(id2);
+    }
+
+    /**
+     * Spectra always come second, their stamp never matches the one of a cluster.
+     */
+    private static PairKey buildKey(ICluster cluster, ISpectrum spectrum) {
+        IConsensusSpectrumBuilder builder = cluster.getConsensusSpectrumBuilder();
+        if (builder == null || spectrum.getId() == null)
+            return null;
+        return new PairKey(cluster.getId(), builder.getVersionStamp(), spectrum.getId(), SPECTRUM_STAMP);
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public int size() {
+        synchronized (scores) {
+            return scores.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Removes all cached scores, for example after the similarity checker's settings changed
+     */
+    public void clear() {
+        synchronized (scores) {
+            scores.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SimilarityScoreCache: " + size() + " pairs, " + getHits() + " hits, " + getMisses() + " misses";
+    }
+
+    private static final class PairKey {
+        private final String id1;
+        private final long stamp1;
+        private final String id2;
+        private final long stamp2;
+
+        private PairKey(String id1, long stamp1, String id2, long stamp2) {
+            this.id1 = id1;
+            this.stamp1 = stamp1;
+            this.id2 = id2;
+            this.stamp2 = stamp2;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof PairKey))
+                return false;
+            PairKey other = (PairKey) o;
+            return stamp1 == other.stamp1 && stamp2 == other.stamp2 &&
+                    (id1 == null ? other.id1 == null : id1.equals(other.id1)) &&
+                    (id2 == null ? other.id2 == null : id2.equals(other.id2));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = id1 != null ? id1.hashCode() : 0;
+            result = 31 * result + (int) (stamp1 ^ (stamp1 >>> 32));
+            result = 31 * result + (id2 != null ? id2.hashCode() : 0);
+            result = 31 * result + (int) (stamp2 ^ (stamp2 >>> 32));
+            return result;
+        }
+    }
+}
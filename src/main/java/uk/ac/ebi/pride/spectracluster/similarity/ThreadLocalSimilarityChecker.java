@@ -0,0 +1,114 @@
+package uk.ac.ebi.pride.spectracluster.similarity;
+
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.similarity.ThreadLocalSimilarityChecker
+ * ISimilarityChecker that may be shared between threads. Every thread uses
+ * its own copy of the wrapped checker which is created on first use. Changed
+ * settings are passed to the threads' copies before their next comparison.
+ * Only the wrapped checker is serialized.
+ *
+ * @author jg
+ */
+public class ThreadLocalSimilarityChecker implements ISimilarityChecker {
+    private static final long serialVersionUID = 1L;
+
+    private final ISimilarityChecker prototype;
+    private final transient ThreadLocal<ThreadCopy> threadCopies = new ThreadLocal<ThreadCopy>();
+    /**
+     * incremented whenever the prototype's settings change
+     */
+    private volatile int settingsVersion;
+
+    /**
+     * @param prototype the checker to copy, it is copied itself so later changes
+     *                  to the passed instance have no effect
+     */
+    public ThreadLocalSimilarityChecker(ISimilarityChecker prototype) {
+        if (prototype == null)
+            throw new IllegalArgumentException("Prototype similarity checker must not be null");
+        this.prototype = prototype.copy();
+    }
+
+    /**
+     * @return !null the copy of the wrapped checker confined to the calling thread
+     */
+    public ISimilarityChecker forThread() {
+        ThreadCopy threadCopy = threadCopies.get();
+        int currentVersion = settingsVersion;
+        if (threadCopy == null || threadCopy.settingsVersion != currentVersion) {
+            threadCopy = new ThreadCopy(copyPrototype(), currentVersion);
+            threadCopies.set(threadCopy);
+        }
+        return threadCopy.checker;
+    }
+
+    private synchronized ISimilarityChecker copyPrototype() {
+        return prototype.copy();
+    }
+
+    @Override
+    public double assessSimilarity(ISpectrum spectrum1, ISpectrum spectrum2) {
+        return forThread().assessSimilarity(spectrum1, spectrum2);
+    }
+
+    @Override
+    public double assessSimilarity(IPeakMatches peakMatches) {
+        return forThread().assessSimilarity(peakMatches);
+    }
+
+    @Override
+    public synchronized boolean isPeakFiltering() {
+        return prototype.isPeakFiltering();
+    }
+
+    @Override
+    public synchronized void setPeakFiltering(boolean peakFiltering) {
+        prototype.setPeakFiltering(peakFiltering);
+        settingsVersion++;
+    }
+
+    @Override
+    public synchronized void setFragmentIonTolerance(float fragmentIonTolerance) {
+        prototype.setFragmentIonTolerance(fragmentIonTolerance);
+        settingsVersion++;
+    }
+
+    @Override
+    public synchronized float getFragmentIonTolerance() {
+        return prototype.getFragmentIonTolerance();
+    }
+
+    @Override
+    public synchronized ThreadLocalSimilarityChecker copy() {
+        return new ThreadLocalSimilarityChecker(prototype);
+    }
+
+    /**
+     * the thread copies are not serialized, a deserialized instance starts without them
+     */
+    private Object readResolve() {
+        return new ThreadLocalSimilarityChecker(prototype);
+    }
+
+    @Override
+    public String getName() {
+        return prototype.getName();
+    }
+
+    @Override
+    public String getCurrentVersion() {
+        return prototype.getCurrentVersion();
+    }
+
+    private static class ThreadCopy {
+        private final ISimilarityChecker checker;
+        private final int settingsVersion;
+
+        private ThreadCopy(ISimilarityChecker checker, int settingsVersion) {
+            this.checker = checker;
+            this.settingsVersion = settingsVersion;
+        }
+    }
+}
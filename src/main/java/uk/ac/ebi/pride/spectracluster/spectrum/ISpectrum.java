@@ -43,6 +43,13 @@ public interface ISpectrum extends ISpectrumQuality, Equivalent<ISpectrum>, Comp
      */
     public double getSumSquareIntensity();
 
+    /**
+     * return the transformed peak intensities (1 + ln(I), 0 for I = 0)
+     * as used by the dot product in the same order as the peaks. The
+     * returned array must not be modified.
+     */
+    public double[] getTransformedIntensities();
+
     /**
      * return unmodifiable peaks sorted by MZ
      *
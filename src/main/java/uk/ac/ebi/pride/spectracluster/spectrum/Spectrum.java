@@ -27,6 +27,8 @@ public class Spectrum implements ISpectrum {
 
     private double totalIntensity;
     private double sumSquareIntensity;
+    // intensities transformed by convertIntensity in the order of the peaks
+    private double[] transformedIntensities;
 
     private final IQualityScorer qualityScorer;
     private double qualityMeasure = BAD_QUALITY_MEASURE;
@@ -116,12 +118,16 @@ public class Spectrum implements ISpectrum {
     protected void calculateIntensities() {
         double totalIntensityX = 0;
         double sumSquareIntensityX = 0;
-        for (IPeak peak : peaks) {
+        double[] transformedIntensitiesX = new double[peaks.size()];
+        for (int i = 0; i < transformedIntensitiesX.length; i++) {
+            IPeak peak = peaks.get(i);
             double intensity = peak.getIntensity();
             totalIntensityX += intensity;
             double ji = convertIntensity(peak);
+            transformedIntensitiesX[i] = ji;
             sumSquareIntensityX += ji * ji;
         }
+        transformedIntensities = transformedIntensitiesX;
         totalIntensity = totalIntensityX;
         sumSquareIntensity = sumSquareIntensityX;
     }
@@ -159,6 +165,17 @@ public class Spectrum implements ISpectrum {
         return sumSquareIntensity;
     }
 
+    /**
+     * return the intensities transformed by convertIntensity - these are
+     * calculated together with the sum of squares
+     *
+     * @return internal array - must not be modified
+     */
+    @Override
+    public double[] getTransformedIntensities() {
+        return transformedIntensities;
+    }
+
     /**
      * return an unmodifiable version of the internal list
      *
@@ -23,9 +23,15 @@
  */
 package uk.ac.ebi.pride.spectracluster.util;
 
+import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
+import uk.ac.ebi.pride.spectracluster.spectrum.Peak;
+
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
@@ -75,80 +81,186 @@ public class Base64Util {
      * @return ArrayList&lt;double&gt; with extracted values.
      */
     public static List<Double> decode(boolean doublePrecision, boolean bigEndian, boolean zLibCompression, String dataString) {
-		/*
-		 * Decode the data and put it into byte array
-		 */
-        byte[] dataByteArray = Base64Coder.decode(dataString.toCharArray());
-        if (zLibCompression) {
-            // Decompress the bytes
-            Inflater decompresser = new Inflater();
-            decompresser.setInput(dataByteArray, 0, dataByteArray.length);
-            byte[] uncompressedByteArray = new byte[3 * dataByteArray.length];
-            int uncompressedArrayLength = 0;
-            try {
-                uncompressedArrayLength = decompresser.inflate(uncompressedByteArray);
-            } catch (DataFormatException e) {
-                throw new IllegalStateException("DataFormatException when decompressing byte array", e);
-            }
-            decompresser.end();
-            // Use uncompressed byte array
-            dataByteArray = new byte[uncompressedArrayLength];
-            System.arraycopy(uncompressedByteArray, 0, dataByteArray, 0, uncompressedArrayLength);
+        double[] values = decodeDoubles(doublePrecision, bigEndian, zLibCompression, dataString);
+        List<Double> resultArray = new ArrayList<Double>(values.length);
+        for (double value : values) {
+            resultArray.add(value);
         }
-        ByteBuffer dataByteBuffer = ByteBuffer.wrap(dataByteArray);
-		/*
-		 * Get size of result list from
-		 * byte array size and precision.
-		 */
-        int arraySize = dataByteArray.length;
-        int bytesPerValue = 4;
-        if (doublePrecision) {
-			/*
-			 * Precision == "64"
-			 */
-            bytesPerValue = 8;
+        return resultArray;
+    }
+
+    /**
+     * Decodes Base64 coded data into a new float array. Double precision
+     * values are converted to single precision.
+     *
+     * @param doublePrecision boolean flag, true if precision == "64".
+     * @param bigEndian       boolean flag indicating endian type.
+     * @param zLibCompression boolean flag indicating zLib compression.
+     * @param dataString      String with Base64 coded data.
+     * @return float array with the extracted values.
+     */
+    public static float[] decodeFloats(boolean doublePrecision, boolean bigEndian, boolean zLibCompression, String dataString) {
+        ByteBuffer dataByteBuffer = decodeToBuffer(bigEndian, zLibCompression, dataString);
+        float[] values = new float[getValueCount(doublePrecision, dataByteBuffer)];
+        readValues(doublePrecision, dataByteBuffer, values, 0);
+        return values;
+    }
+
+    /**
+     * Decodes Base64 coded data into a new double array.
+     *
+     * @param doublePrecision boolean flag, true if precision == "64".
+     * @param bigEndian       boolean flag indicating endian type.
+     * @param zLibCompression boolean flag indicating zLib compression.
+     * @param dataString      String with Base64 coded data.
+     * @return double array with the extracted values.
+     */
+    public static double[] decodeDoubles(boolean doublePrecision, boolean bigEndian, boolean zLibCompression, String dataString) {
+        ByteBuffer dataByteBuffer = decodeToBuffer(bigEndian, zLibCompression, dataString);
+        double[] values = new double[getValueCount(doublePrecision, dataByteBuffer)];
+        readValues(doublePrecision, dataByteBuffer, values, 0);
+        return values;
+    }
+
+    /**
+     * Decodes Base64 coded data into the passed array. This allows callers
+     * to reuse their buffers across spectra.
+     *
+     * @param doublePrecision boolean flag, true if precision == "64".
+     * @param bigEndian       boolean flag indicating endian type.
+     * @param zLibCompression boolean flag indicating zLib compression.
+     * @param dataString      String with Base64 coded data.
+     * @param target          array to store the values in.
+     * @param offset          index of the first value in the target array.
+     * @return number of values written.
+     * @throws IllegalArgumentException if the target array is too small
+     */
+    public static int decode(boolean doublePrecision, boolean bigEndian, boolean zLibCompression, String dataString, float[] target, int offset) {
+        return readValues(doublePrecision, decodeToBuffer(bigEndian, zLibCompression, dataString), target, offset);
+    }
+
+    /**
+     * @see #decode(boolean, boolean, boolean, String, float[], int)
+     */
+    public static int decode(boolean doublePrecision, boolean bigEndian, boolean zLibCompression, String dataString, double[] target, int offset) {
+        return readValues(doublePrecision, decodeToBuffer(bigEndian, zLibCompression, dataString), target, offset);
+    }
+
+    /**
+     * Decodes Base64 coded m/z and intensity arrays into peaks without boxing
+     * the single values.
+     *
+     * @param doublePrecision boolean flag, true if precision == "64".
+     * @param bigEndian       boolean flag indicating endian type.
+     * @param zLibCompression boolean flag indicating zLib compression.
+     * @param mzData          String with the Base64 coded m/z values.
+     * @param intensityData   String with the Base64 coded intensities.
+     * @return !null list of peaks in the encoded order.
+     */
+    public static List<IPeak> decodePeaks(boolean doublePrecision, boolean bigEndian, boolean zLibCompression, String mzData, String intensityData) {
+        float[] mzValues = decodeFloats(doublePrecision, bigEndian, zLibCompression, mzData);
+        float[] intensities = decodeFloats(doublePrecision, bigEndian, zLibCompression, intensityData);
+        if (mzValues.length != intensities.length)
+            throw new IllegalArgumentException("Different number of m/z values (" + mzValues.length + ") and intensities (" + intensities.length + ")");
+
+        List<IPeak> peaks = new ArrayList<IPeak>(mzValues.length);
+        for (int i = 0; i < mzValues.length; i++) {
+            peaks.add(new Peak(mzValues[i], intensities[i]));
         }
-        int dataLength = arraySize / bytesPerValue;
-		/*
-		 * Create result arrayList
-		 */
-        List<Double> resultArray = new ArrayList<Double>(1);
-		/*
-		 * Java works with big endian by default.
-		 * If the data is little endian, the
-		 * byte order is changed.
-		 *
-		 * This configuration influences how data
-		 * is retrieved using methods like
-		 * getFloat() and getDouble(),
-		 */
-        if (!bigEndian) {
+        return peaks;
+    }
+
+    private static ByteBuffer decodeToBuffer(boolean bigEndian, boolean zLibCompression, String dataString) {
+        byte[] dataByteArray = Base64Coder.decode(dataString.toCharArray());
+        ByteBuffer dataByteBuffer;
+        if (zLibCompression)
+            dataByteBuffer = inflate(dataByteArray);
+        else
+            dataByteBuffer = ByteBuffer.wrap(dataByteArray);
+
+        /*
+         * Java works with big endian by default.
+         * The order is inherited by the float and
+         * double views of the buffer.
+         */
+        if (!bigEndian)
             dataByteBuffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        return dataByteBuffer;
+    }
+
+    /**
+     * Inflates zLib compressed data. The output buffer grows as needed so
+     * that large payloads are not truncated.
+     *
+     * @param compressed the compressed data
+     * @return buffer wrapping the uncompressed data
+     */
+    private static ByteBuffer inflate(byte[] compressed) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed, 0, compressed.length);
+            byte[] uncompressed = new byte[Math.max(3 * compressed.length, 64)];
+            int length = 0;
+
+            while (!inflater.finished()) {
+                if (length == uncompressed.length)
+                    uncompressed = Arrays.copyOf(uncompressed, 2 * uncompressed.length);
+
+                int inflated = inflater.inflate(uncompressed, length, uncompressed.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new IllegalStateException("Incomplete zLib compressed data");
+                length += inflated;
+            }
+
+            return ByteBuffer.wrap(uncompressed, 0, length);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("DataFormatException when decompressing byte array", e);
+        } finally {
+            inflater.end();
         }
-		/*
-		 * Put the data into the result list
-		 */
+    }
+
+    private static int getValueCount(boolean doublePrecision, ByteBuffer dataByteBuffer) {
+        int bytesPerValue = doublePrecision ? 8 : 4;
+        return dataByteBuffer.remaining() / bytesPerValue;
+    }
+
+    private static void checkTarget(int targetLength, int offset, int nValues) {
+        if (offset < 0 || targetLength - offset < nValues)
+            throw new IllegalArgumentException("Target array of length " + targetLength + " cannot hold " + nValues + " values at offset " + offset);
+    }
+
+    private static int readValues(boolean doublePrecision, ByteBuffer dataByteBuffer, float[] target, int offset) {
+        int nValues = getValueCount(doublePrecision, dataByteBuffer);
+        checkTarget(target.length, offset, nValues);
+
         if (!doublePrecision) {
-			/*
-			 * Precision == "32"
-			 */
-            for (int i = 0; i < dataLength; i++) {
-                float value = dataByteBuffer.getFloat();
-                resultArray.add(i, new Float(value).doubleValue());
+            dataByteBuffer.asFloatBuffer().get(target, offset, nValues);
+        } else {
+            DoubleBuffer values = dataByteBuffer.asDoubleBuffer();
+            for (int i = 0; i < nValues; i++) {
+                target[offset + i] = (float) values.get(i);
             }
+        }
+
+        return nValues;
+    }
+
+    private static int readValues(boolean doublePrecision, ByteBuffer dataByteBuffer, double[] target, int offset) {
+        int nValues = getValueCount(doublePrecision, dataByteBuffer);
+        checkTarget(target.length, offset, nValues);
+
+        if (doublePrecision) {
+            dataByteBuffer.asDoubleBuffer().get(target, offset, nValues);
         } else {
-			/*
-			 * Precision == "64"
-			 */
-            for (int i = 0; i < dataLength; i++) {
-                double value = dataByteBuffer.getDouble();
-                resultArray.add(i, value);
+            FloatBuffer values = dataByteBuffer.asFloatBuffer();
+            for (int i = 0; i < nValues; i++) {
+                target[offset + i] = values.get(i);
             }
         }
-		/*
-		 * Return result as list
-		 */
-        return resultArray;
+
+        return nValues;
     }
 
 
@@ -230,4 +342,52 @@ public class Base64Util {
         return new String(dataCharArray);
     }
 
+    /**
+     * Encodes float values as Base64 coded data without boxing them.
+     *
+     * @param doublePrecision boolean flag, true if precision == "64".
+     * @param bigEndian       boolean flag indicating endian type.
+     * @param values          the values to encode.
+     * @param offset          index of the first value to encode.
+     * @param length          number of values to encode.
+     * @return String with encoded values.
+     */
+    public static String encode(boolean doublePrecision, boolean bigEndian, float[] values, int offset, int length) {
+        ByteBuffer dataByteBuffer = createEncodeBuffer(doublePrecision, bigEndian, length);
+        if (!doublePrecision) {
+            dataByteBuffer.asFloatBuffer().put(values, offset, length);
+        } else {
+            DoubleBuffer doubleBuffer = dataByteBuffer.asDoubleBuffer();
+            for (int i = 0; i < length; i++) {
+                doubleBuffer.put(values[offset + i]);
+            }
+        }
+        return new String(Base64Coder.encode(dataByteBuffer.array()));
+    }
+
+    /**
+     * Encodes double values as Base64 coded data without boxing them.
+     *
+     * @see #encode(boolean, boolean, float[], int, int)
+     */
+    public static String encode(boolean doublePrecision, boolean bigEndian, double[] values, int offset, int length) {
+        ByteBuffer dataByteBuffer = createEncodeBuffer(doublePrecision, bigEndian, length);
+        if (doublePrecision) {
+            dataByteBuffer.asDoubleBuffer().put(values, offset, length);
+        } else {
+            FloatBuffer floatBuffer = dataByteBuffer.asFloatBuffer();
+            for (int i = 0; i < length; i++) {
+                floatBuffer.put((float) values[offset + i]);
+            }
+        }
+        return new String(Base64Coder.encode(dataByteBuffer.array()));
+    }
+
+    private static ByteBuffer createEncodeBuffer(boolean doublePrecision, boolean bigEndian, int nValues) {
+        int bytesPerValue = doublePrecision ? 8 : 4;
+        ByteBuffer dataByteBuffer = ByteBuffer.wrap(new byte[bytesPerValue * nValues]);
+        if (!bigEndian)
+            dataByteBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        return dataByteBuffer;
+    }
 }
@@ -2,12 +2,16 @@ package uk.ac.ebi.pride.spectracluster.util;
 
 import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
 import uk.ac.ebi.pride.spectracluster.cluster.SpectralCluster;
+import uk.ac.ebi.pride.spectracluster.engine.IEngineMetrics;
 import uk.ac.ebi.pride.spectracluster.similarity.ISimilarityChecker;
+import uk.ac.ebi.pride.spectracluster.similarity.SimilarityScoreCache;
+import uk.ac.ebi.pride.spectracluster.similarity.ThreadLocalSimilarityChecker;
 import uk.ac.ebi.pride.spectracluster.spectrum.*;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.*;
 
 
 /**
@@ -80,12 +84,25 @@ public final class ClusterUtilities {
      * @return !null Cluster
      */
     public static List<ICluster> findNoneFittingSpectra(ICluster cluster, ISimilarityChecker similarityChecker, double threshold) {
+        return findNoneFittingSpectra(cluster, similarityChecker, threshold, null, null);
+    }
+
+    /**
+     * findNoneFittingSpectra reusing the scores of earlier passes for clusters that did not change
+     *
+     * @param scoreCache cache of the similarity scores, null to always compare the spectra
+     * @param metrics    metrics to report the cache hits and misses to, may be null
+     * @return !null Cluster
+     */
+    public static List<ICluster> findNoneFittingSpectra(ICluster cluster, ISimilarityChecker similarityChecker, double threshold,
+                                                        @Nullable SimilarityScoreCache scoreCache, @Nullable IEngineMetrics metrics) {
         List<ICluster> noneFittingSpectra = new ArrayList<ICluster>();
 
         if (cluster.getClusteredSpectra().size() > 1) {
+            // the consensus spectrum does not change while the spectra are scored
+            final ISpectrum consensusSpectrum = cluster.getConsensusSpectrum();
             for (ISpectrum spectrum : cluster.getClusteredSpectra()) {
-                final ISpectrum consensusSpectrum = cluster.getConsensusSpectrum();
-                final double similarityScore = similarityChecker.assessSimilarity(consensusSpectrum, spectrum);
+                final double similarityScore = assessSimilarity(cluster, consensusSpectrum, spectrum, similarityChecker, scoreCache, metrics);
 
                 if (similarityScore < threshold) {
                     noneFittingSpectra.add(ClusterUtilities.asCluster(spectrum));
@@ -96,6 +113,90 @@ public final class ClusterUtilities {
         return noneFittingSpectra;
     }
 
+    private static double assessSimilarity(ICluster cluster, ISpectrum consensusSpectrum, ISpectrum spectrum, ISimilarityChecker similarityChecker,
+                                           SimilarityScoreCache scoreCache, IEngineMetrics metrics) {
+        if (scoreCache == null)
+            return similarityChecker.assessSimilarity(consensusSpectrum, spectrum);
+
+        Double cachedScore = scoreCache.get(cluster, spectrum);
+        if (cachedScore != null) {
+            if (metrics != null)
+                metrics.similarityCacheHit();
+            return cachedScore;
+        }
+
+        double similarityScore = similarityChecker.assessSimilarity(consensusSpectrum, spectrum);
+        scoreCache.put(cluster, spectrum, similarityScore);
+        if (metrics != null)
+            metrics.similarityCacheMiss();
+        return similarityScore;
+    }
+
+    /**
+     * Runs findNoneFittingSpectra for every passed cluster. The clusters are independent
+     * and are therefore processed in parallel. Every cluster is only processed by one thread
+     * and the clusters must not share spectra.
+     *
+     * @param clusters          clusters to check
+     * @param similarityChecker the similarity checker to use - every thread uses its own copy
+     * @param threshold         similarity threshold below which spectra do not fit
+     * @param nThreads          number of threads to use
+     * @return !null list holding the none fitting spectra of every cluster in the order of the passed clusters
+     */
+    public static List<List<ICluster>> findNoneFittingSpectra(final List<ICluster> clusters, ISimilarityChecker similarityChecker,
+                                                              final double threshold, int nThreads) {
+        return findNoneFittingSpectra(clusters, similarityChecker, threshold, nThreads, null, null);
+    }
+
+    /**
+     * Runs findNoneFittingSpectra for every passed cluster in parallel reusing the scores of
+     * earlier passes for clusters that did not change.
+     *
+     * @param scoreCache cache of the similarity scores shared by all threads, null to always compare the spectra
+     * @param metrics    metrics to report the cache hits and misses to, may be null
+     * @return !null list holding the none fitting spectra of every cluster in the order of the passed clusters
+     */
+    public static List<List<ICluster>> findNoneFittingSpectra(final List<ICluster> clusters, ISimilarityChecker similarityChecker,
+                                                              final double threshold, int nThreads,
+                                                              @Nullable final SimilarityScoreCache scoreCache,
+                                                              @Nullable final IEngineMetrics metrics) {
+        List<List<ICluster>> noneFittingSpectra = new ArrayList<List<ICluster>>(clusters.size());
+        if (nThreads < 2 || clusters.size() < 2) {
+            for (ICluster cluster : clusters) {
+                noneFittingSpectra.add(findNoneFittingSpectra(cluster, similarityChecker, threshold, scoreCache, metrics));
+            }
+            return noneFittingSpectra;
+        }
+
+        final ISimilarityChecker threadLocalChecker = new ThreadLocalSimilarityChecker(similarityChecker);
+        ExecutorService executorService = Executors.newFixedThreadPool(nThreads);
+        try {
+            List<Future<List<ICluster>>> futures = new ArrayList<Future<List<ICluster>>>(clusters.size());
+            for (final ICluster cluster : clusters) {
+                futures.add(executorService.submit(new Callable<List<ICluster>>() {
+                    @Override
+                    public List<ICluster> call() throws Exception {
+                        return findNoneFittingSpectra(cluster, threadLocalChecker, threshold, scoreCache, metrics);
+                    }
+                }));
+            }
+
+            // collect the results in the original order
+            for (Future<List<ICluster>> future : futures) {
+                noneFittingSpectra.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executorService.shutdown();
+        }
+
+        return noneFittingSpectra;
+    }
+
     /**
      * allow nonfitting spectra to leave and retuen a list of clusters to write out
      *
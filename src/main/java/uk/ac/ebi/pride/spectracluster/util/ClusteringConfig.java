@@ -0,0 +1,375 @@
+package uk.ac.ebi.pride.spectracluster.util;
+
+import uk.ac.ebi.pride.spectracluster.cdf.CumulativeDistributionFunction;
+import uk.ac.ebi.pride.spectracluster.cdf.CumulativeDistributionFunctionFactory;
+import uk.ac.ebi.pride.spectracluster.consensus.ConcensusSpectrumBuilderFactory;
+import uk.ac.ebi.pride.spectracluster.consensus.ConsensusSpectrum;
+import uk.ac.ebi.pride.spectracluster.consensus.GreedyConsensusSpectrum;
+import uk.ac.ebi.pride.spectracluster.consensus.IConsensusSpectrumBuilder;
+import uk.ac.ebi.pride.spectracluster.normalizer.IIntensityNormalizer;
+import uk.ac.ebi.pride.spectracluster.normalizer.TotalIntensityNormalizer;
+import uk.ac.ebi.pride.spectracluster.quality.IQualityScorer;
+import uk.ac.ebi.pride.spectracluster.quality.SignalToNoiseChecker;
+import uk.ac.ebi.pride.spectracluster.similarity.CombinedFisherIntensityTest;
+import uk.ac.ebi.pride.spectracluster.similarity.ISimilarityChecker;
+import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.util.comparator.ClusterComparator;
+import uk.ac.ebi.pride.spectracluster.util.function.Functions;
+import uk.ac.ebi.pride.spectracluster.util.function.IFunction;
+import uk.ac.ebi.pride.spectracluster.util.function.peak.FractionTICPeakFunction;
+import uk.ac.ebi.pride.spectracluster.util.function.spectrum.HighestNSpectrumPeaksFunction;
+import uk.ac.ebi.pride.spectracluster.util.function.spectrum.RemoveImpossiblyHighPeaksFunction;
+import uk.ac.ebi.pride.spectracluster.util.function.spectrum.RemovePrecursorPeaksFunction;
+
+import java.util.List;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.util.ClusteringConfig
+ * Immutable set of all clustering parameters. Engines, consensus spectrum
+ * factories and parsers that are created from a ClusteringConfig only use
+ * its values, so several differently configured clustering jobs can run
+ * in the same JVM. The static Defaults are backed by a ClusteringConfig,
+ * Defaults.getConfig() returns a snapshot of the current defaults.
+ *
+ * Instances are created through the Builder:
+ * <pre>
+ * ClusteringConfig config = new ClusteringConfig.Builder()
+ *         .setFragmentIonTolerance(0.2F)
+ *         .setSimilarityThreshold(0.99)
+ *         .build();
+ * </pre>
+ *
+ * @author jg
+ */
+public final class ClusteringConfig {
+    private final double similarityThreshold;
+    private final double retainThreshold;
+    private final float fragmentIonTolerance;
+    private final float precursorIonTolerance;
+    private final int numberComparedPeaks;
+    private final int largeBinningRegion;
+    private final int majorPeakCount;
+    private final int numberReclusteringPasses;
+    private final int minNumberComparisons;
+    private final ISimilarityChecker similarityChecker;
+    private final ClusterComparator spectrumComparator;
+    private final IQualityScorer qualityScorer;
+    private final IFunction<ISpectrum, ISpectrum> peakFilter;
+    private final IFunction<List<IPeak>, List<IPeak>> comparisonPeakFilter;
+    private final ConcensusSpectrumBuilderFactory consensusFactory;
+    private final IIntensityNormalizer intensityNormalizer;
+    private final CumulativeDistributionFunction cumulativeDistributionFunction;
+
+    private ClusteringConfig(Builder builder) {
+        this.similarityThreshold = builder.similarityThreshold;
+        this.retainThreshold = builder.retainThreshold;
+        this.fragmentIonTolerance = builder.fragmentIonTolerance;
+        this.precursorIonTolerance = builder.precursorIonTolerance;
+        this.numberComparedPeaks = builder.numberComparedPeaks;
+        this.largeBinningRegion = builder.largeBinningRegion;
+        this.majorPeakCount = builder.majorPeakCount;
+        this.numberReclusteringPasses = builder.numberReclusteringPasses;
+        this.minNumberComparisons = builder.minNumberComparisons;
+        this.spectrumComparator = builder.spectrumComparator;
+        this.qualityScorer = builder.qualityScorer;
+        this.comparisonPeakFilter = builder.comparisonPeakFilter;
+        this.consensusFactory = builder.consensusFactory;
+        this.intensityNormalizer = builder.intensityNormalizer;
+        this.cumulativeDistributionFunction = builder.cumulativeDistributionFunction;
+
+        // the default checker and peak filter use the configured fragment tolerance
+        this.similarityChecker = (builder.similarityChecker != null) ?
+                builder.similarityChecker : new CombinedFisherIntensityTest(fragmentIonTolerance);
+        this.peakFilter = (builder.peakFilter != null) ?
+                builder.peakFilter : buildDefaultPeakFilter(fragmentIonTolerance);
+    }
+
+    private static IFunction<ISpectrum, ISpectrum> buildDefaultPeakFilter(float fragmentIonTolerance) {
+        return Functions.join(new RemoveImpossiblyHighPeaksFunction(),
+                Functions.join(new RemovePrecursorPeaksFunction(fragmentIonTolerance),
+                        new HighestNSpectrumPeaksFunction(150)));
+    }
+
+    /**
+     * The returned builder keeps the similarity checker and peak filter, even if
+     * its fragment tolerance is changed.
+     *
+     * @return a builder initialised with this configuration's values
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    public double getSimilarityThreshold() {
+        return similarityThreshold;
+    }
+
+    public double getRetainThreshold() {
+        return retainThreshold;
+    }
+
+    public float getFragmentIonTolerance() {
+        return fragmentIonTolerance;
+    }
+
+    /**
+     * @return the precursor tolerance used as window size by the incremental engines
+     */
+    public float getPrecursorIonTolerance() {
+        return precursorIonTolerance;
+    }
+
+    public int getNumberComparedPeaks() {
+        return numberComparedPeaks;
+    }
+
+    public int getLargeBinningRegion() {
+        return largeBinningRegion;
+    }
+
+    public int getMajorPeakCount() {
+        return majorPeakCount;
+    }
+
+    public int getNumberReclusteringPasses() {
+        return numberReclusteringPasses;
+    }
+
+    public int getMinNumberComparisons() {
+        return minNumberComparisons;
+    }
+
+    public ISimilarityChecker getSimilarityChecker() {
+        return similarityChecker;
+    }
+
+    public ClusterComparator getSpectrumComparator() {
+        return spectrumComparator;
+    }
+
+    public IQualityScorer getQualityScorer() {
+        return qualityScorer;
+    }
+
+    public IFunction<ISpectrum, ISpectrum> getPeakFilter() {
+        return peakFilter;
+    }
+
+    public IFunction<List<IPeak>, List<IPeak>> getComparisonPeakFilter() {
+        return comparisonPeakFilter;
+    }
+
+    public ConcensusSpectrumBuilderFactory getConsensusFactory() {
+        return consensusFactory;
+    }
+
+    public IConsensusSpectrumBuilder getConsensusSpectrumBuilder() {
+        return consensusFactory.getConsensusSpectrumBuilder();
+    }
+
+    /**
+     * @return factory of the consensus spectra used by greedy clusters, using this
+     * configuration's fragment tolerance and quality scorer
+     */
+    public GreedyConsensusSpectrum.ConsensusSpectrumFactory getGreedyConsensusSpectrumFactory() {
+        return GreedyConsensusSpectrum.buildFactory(fragmentIonTolerance, qualityScorer);
+    }
+
+    public IIntensityNormalizer getIntensityNormalizer() {
+        return intensityNormalizer;
+    }
+
+    /**
+     * @return the configured cumulative distribution function, null if the function
+     * matching the similarity checker should be loaded from the resources
+     */
+    public CumulativeDistributionFunction getCumulativeDistributionFunction() {
+        return cumulativeDistributionFunction;
+    }
+
+    /**
+     * @return the configured cumulative distribution function or the one matching the
+     * similarity checker
+     * @throws IllegalStateException if no function is configured and none exists for the checker
+     */
+    public CumulativeDistributionFunction loadCumulativeDistributionFunction() {
+        if (cumulativeDistributionFunction != null)
+            return cumulativeDistributionFunction;
+
+        try {
+            return CumulativeDistributionFunctionFactory.getCumulativeDistributionFunctionForSimilarityChecker(similarityChecker);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ClusteringConfig{" +
+                "similarityThreshold=" + similarityThreshold +
+                ", retainThreshold=" + retainThreshold +
+                ", fragmentIonTolerance=" + fragmentIonTolerance +
+                ", precursorIonTolerance=" + precursorIonTolerance +
+                ", numberComparedPeaks=" + numberComparedPeaks +
+                ", minNumberComparisons=" + minNumberComparisons +
+                ", similarityChecker=" + similarityChecker.getClass().getSimpleName() +
+                ", qualityScorer=" + qualityScorer.getClass().getSimpleName() +
+                '}';
+    }
+
+    /**
+     * Collects the values of a ClusteringConfig. Values that are not set use the
+     * defaults defined in Defaults. If no similarity checker or peak filter is set,
+     * the default ones are created using the builder's fragment tolerance.
+     */
+    public static class Builder {
+        private double similarityThreshold = Defaults.DEFAULT_SIMILARITY_THRESHOLD;
+        private double retainThreshold = Defaults.DEFAULT_RETAIN_THRESHOLD;
+        private float fragmentIonTolerance = Defaults.DEFAULT_FRAGMENT_ION_TOLERANCE;
+        private float precursorIonTolerance = Defaults.DEFAULT_PRECURSOR_ION_TOLERANCE;
+        private int numberComparedPeaks = Defaults.DEFAULT_NUMBER_COMPARED_PEAKS;
+        private int largeBinningRegion = Defaults.DEFAULT_LARGE_BINNING_REGION;
+        private int majorPeakCount = Defaults.DEFAULT_MAJOR_PEAKS;
+        private int numberReclusteringPasses = Defaults.DEFAULT_NUMBER_RECLUSTERING_PASSES;
+        private int minNumberComparisons = Defaults.DEFAULT_MIN_NUMBER_COMPARISONS;
+        private ISimilarityChecker similarityChecker;
+        private ClusterComparator spectrumComparator = ClusterComparator.INSTANCE;
+        private IQualityScorer qualityScorer = new SignalToNoiseChecker();
+        private IFunction<ISpectrum, ISpectrum> peakFilter;
+        private IFunction<List<IPeak>, List<IPeak>> comparisonPeakFilter = new FractionTICPeakFunction(0.5F, 20);
+        private ConcensusSpectrumBuilderFactory consensusFactory = ConsensusSpectrum.FACTORY;
+        private IIntensityNormalizer intensityNormalizer = TotalIntensityNormalizer.DEFAULT;
+        private CumulativeDistributionFunction cumulativeDistributionFunction;
+
+        public Builder() {
+        }
+
+        private Builder(ClusteringConfig config) {
+            this.similarityThreshold = config.similarityThreshold;
+            this.retainThreshold = config.retainThreshold;
+            this.fragmentIonTolerance = config.fragmentIonTolerance;
+            this.precursorIonTolerance = config.precursorIonTolerance;
+            this.numberComparedPeaks = config.numberComparedPeaks;
+            this.largeBinningRegion = config.largeBinningRegion;
+            this.majorPeakCount = config.majorPeakCount;
+            this.numberReclusteringPasses = config.numberReclusteringPasses;
+            this.minNumberComparisons = config.minNumberComparisons;
+            this.similarityChecker = config.similarityChecker;
+            this.spectrumComparator = config.spectrumComparator;
+            this.qualityScorer = config.qualityScorer;
+            this.peakFilter = config.peakFilter;
+            this.comparisonPeakFilter = config.comparisonPeakFilter;
+            this.consensusFactory = config.consensusFactory;
+            this.intensityNormalizer = config.intensityNormalizer;
+            this.cumulativeDistributionFunction = config.cumulativeDistributionFunction;
+        }
+
+        public Builder setSimilarityThreshold(double similarityThreshold) {
+            this.similarityThreshold = similarityThreshold;
+            return this;
+        }
+
+        public Builder setRetainThreshold(double retainThreshold) {
+            this.retainThreshold = retainThreshold;
+            return this;
+        }
+
+        public Builder setFragmentIonTolerance(float fragmentIonTolerance) {
+            this.fragmentIonTolerance = fragmentIonTolerance;
+            return this;
+        }
+
+        public Builder setPrecursorIonTolerance(float precursorIonTolerance) {
+            this.precursorIonTolerance = precursorIonTolerance;
+            return this;
+        }
+
+        public Builder setNumberComparedPeaks(int numberComparedPeaks) {
+            this.numberComparedPeaks = numberComparedPeaks;
+            return this;
+        }
+
+        public Builder setLargeBinningRegion(int largeBinningRegion) {
+            this.largeBinningRegion = largeBinningRegion;
+            return this;
+        }
+
+        public Builder setMajorPeakCount(int majorPeakCount) {
+            this.majorPeakCount = majorPeakCount;
+            return this;
+        }
+
+        public Builder setNumberReclusteringPasses(int numberReclusteringPasses) {
+            this.numberReclusteringPasses = numberReclusteringPasses;
+            return this;
+        }
+
+        public Builder setMinNumberComparisons(int minNumberComparisons) {
+            this.minNumberComparisons = minNumberComparisons;
+            return this;
+        }
+
+        /**
+         * @param similarityChecker the checker to use, null to use a CombinedFisherIntensityTest
+         *                          with the configured fragment tolerance
+         */
+        public Builder setSimilarityChecker(ISimilarityChecker similarityChecker) {
+            this.similarityChecker = similarityChecker;
+            return this;
+        }
+
+        public Builder setSpectrumComparator(ClusterComparator spectrumComparator) {
+            this.spectrumComparator = notNull(spectrumComparator);
+            return this;
+        }
+
+        public Builder setQualityScorer(IQualityScorer qualityScorer) {
+            this.qualityScorer = notNull(qualityScorer);
+            return this;
+        }
+
+        /**
+         * @param peakFilter the filter to use, null to use the default filter with the
+         *                   configured fragment tolerance
+         */
+        public Builder setPeakFilter(IFunction<ISpectrum, ISpectrum> peakFilter) {
+            this.peakFilter = peakFilter;
+            return this;
+        }
+
+        public Builder setComparisonPeakFilter(IFunction<List<IPeak>, List<IPeak>> comparisonPeakFilter) {
+            this.comparisonPeakFilter = notNull(comparisonPeakFilter);
+            return this;
+        }
+
+        public Builder setConsensusFactory(ConcensusSpectrumBuilderFactory consensusFactory) {
+            this.consensusFactory = notNull(consensusFactory);
+            return this;
+        }
+
+        public Builder setIntensityNormalizer(IIntensityNormalizer intensityNormalizer) {
+            this.intensityNormalizer = notNull(intensityNormalizer);
+            return this;
+        }
+
+        /**
+         * @param cumulativeDistributionFunction the function to use, null to load the one
+         *                                       matching the similarity checker
+         */
+        public Builder setCumulativeDistributionFunction(CumulativeDistributionFunction cumulativeDistributionFunction) {
+            this.cumulativeDistributionFunction = cumulativeDistributionFunction;
+            return this;
+        }
+
+        private static <T> T notNull(T value) {
+            if (value == null)
+                throw new IllegalArgumentException("Value must not be null");
+            return value;
+        }
+
+        public ClusteringConfig build() {
+            return new ClusteringConfig(this);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package uk.ac.ebi.pride.spectracluster.util;
+
+import java.util.*;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.util.ComparisonMatchHeap
+ * Keeps the N best comparison matches of a cluster. The matches are stored
+ * in a fixed-capacity min-heap over parallel similarity and id arrays so
+ * that adding a match does not allocate any objects and only takes
+ * O(log N). The ids are additionally counted in an open addressing hash
+ * table over two more fixed arrays to check whether a cluster is part of
+ * the best matches without scanning them.
+ *
+ * ComparisonMatch objects are only created when the matches are requested
+ * as a list.
+ *
+ * @author jg
+ */
+public class ComparisonMatchHeap {
+    private final float[] similarities;
+    private final String[] ids;
+    private int size;
+    /**
+     * linear probing table of the stored ids and the number of times every id is
+     * stored in the heap, at most half of the slots are used
+     */
+    private final String[] countedIds;
+    private final int[] idCounts;
+    /**
+     * null marks empty slots, matches without an id are counted separately
+     */
+    private int nullIdCount;
+    /**
+     * sorted view of the matches, null if it has to be rebuilt
+     */
+    private List<ComparisonMatch> comparisonMatches;
+
+    public ComparisonMatchHeap(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive");
+
+        this.similarities = new float[capacity];
+        this.ids = new String[capacity];
+
+        int tableSize = Integer.highestOneBit(capacity) * 4;
+        this.countedIds = new String[tableSize];
+        this.idCounts = new int[tableSize];
+    }
+
+    /**
+     * Creates a copy of the passed heap.
+     *
+     * @param copied the heap to copy
+     */
+    public ComparisonMatchHeap(ComparisonMatchHeap copied) {
+        this.similarities = copied.similarities.clone();
+        this.ids = copied.ids.clone();
+        this.size = copied.size;
+        this.countedIds = copied.countedIds.clone();
+        this.idCounts = copied.idCounts.clone();
+        this.nullIdCount = copied.nullIdCount;
+        this.comparisonMatches = copied.comparisonMatches;
+    }
+
+    /**
+     * Adds a match if the heap is not full yet or if the match is at least as
+     * good as the currently worst match, which is then removed.
+     *
+     * @param id         id of the cluster the comparison was performed with
+     * @param similarity the comparison's similarity
+     * @return true if the match was stored
+     */
+    public boolean offer(String id, float similarity) {
+        if (size == similarities.length) {
+            if (similarity < similarities[0])
+                return false;
+
+            removeId(ids[0]);
+            ids[0] = id;
+            similarities[0] = similarity;
+            siftDown(0);
+        }
+        else {
+            ids[size] = id;
+            similarities[size] = similarity;
+            siftUp(size);
+            size++;
+        }
+
+        if (id == null) {
+            nullIdCount++;
+        }
+        else {
+            int slot = findSlot(id);
+            countedIds[slot] = id;
+            idCounts[slot]++;
+        }
+        comparisonMatches = null;
+
+        return true;
+    }
+
+    /**
+     * Adds all passed matches, only the best ones are kept if they exceed the capacity.
+     *
+     * @param matches the matches to add
+     */
+    public void addAll(Collection<ComparisonMatch> matches) {
+        for (ComparisonMatch match : matches) {
+            offer(match.getSpectrumId(), match.getSimilarity());
+        }
+    }
+
+    /**
+     * @param id the cluster's id
+     * @return whether a match with the passed cluster is stored
+     */
+    public boolean contains(String id) {
+        if (id == null)
+            return nullIdCount > 0;
+        return countedIds[findSlot(id)] != null;
+    }
+
+    /**
+     * @return the similarity of the worst stored match, 0 if the heap is empty
+     */
+    public float getLowestSimilarity() {
+        if (size == 0)
+            return 0;
+        return similarities[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return similarities.length;
+    }
+
+    public boolean isFull() {
+        return size == similarities.length;
+    }
+
+    public void clear() {
+        Arrays.fill(ids, 0, size, null);
+        size = 0;
+        Arrays.fill(countedIds, null);
+        Arrays.fill(idCounts, 0);
+        nullIdCount = 0;
+        comparisonMatches = null;
+    }
+
+    /**
+     * @return !null unmodifiable list of the stored matches sorted from the lowest to the highest similarity
+     */
+    public List<ComparisonMatch> asList() {
+        if (comparisonMatches == null) {
+            List<ComparisonMatch> matches = new ArrayList<ComparisonMatch>(size);
+            for (int i = 0; i < size; i++) {
+                matches.add(new ComparisonMatch(ids[i], similarities[i]));
+            }
+            Collections.sort(matches);
+            comparisonMatches = Collections.unmodifiableList(matches);
+        }
+
+        return comparisonMatches;
+    }
+
+    /**
+     * @return the slot of the id in the table or the empty slot it belongs into
+     */
+    private int findSlot(String id) {
+        int mask = countedIds.length - 1;
+        int slot = hashSlot(id);
+        while (countedIds[slot] != null && !countedIds[slot].equals(id)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int hashSlot(String id) {
+        int hash = id.hashCode();
+        hash ^= (hash >>> 16);
+        return hash & (countedIds.length - 1);
+    }
+
+    private void removeId(String id) {
+        if (id == null) {
+            nullIdCount--;
+            return;
+        }
+
+        int slot = findSlot(id);
+        if (countedIds[slot] == null)
+            return;
+        if (--idCounts[slot] > 0)
+            return;
+
+        // shift the following entries back so that no probe sequence is interrupted
+        int mask = countedIds.length - 1;
+        int emptySlot = slot;
+        int current = (slot + 1) & mask;
+        while (countedIds[current] != null) {
+            int home = hashSlot(countedIds[current]);
+            // move the entry if its home slot is not between the empty slot and its position
+            if (((current - home) & mask) >= ((current - emptySlot) & mask)) {
+                countedIds[emptySlot] = countedIds[current];
+                idCounts[emptySlot] = idCounts[current];
+                emptySlot = current;
+            }
+            current = (current + 1) & mask;
+        }
+        countedIds[emptySlot] = null;
+        idCounts[emptySlot] = 0;
+    }
+
+    private void siftUp(int index) {
+        float similarity = similarities[index];
+        String id = ids[index];
+
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (similarities[parent] <= similarity)
+                break;
+            similarities[index] = similarities[parent];
+            ids[index] = ids[parent];
+            index = parent;
+        }
+
+        similarities[index] = similarity;
+        ids[index] = id;
+    }
+
+    private void siftDown(int index) {
+        float similarity = similarities[index];
+        String id = ids[index];
+        int half = size >>> 1;
+
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && similarities[right] < similarities[child])
+                child = right;
+            if (similarity <= similarities[child])
+                break;
+            similarities[index] = similarities[child];
+            ids[index] = ids[child];
+            index = child;
+        }
+
+        similarities[index] = similarity;
+        ids[index] = id;
+    }
+}
@@ -2,33 +2,29 @@ package uk.ac.ebi.pride.spectracluster.util;
 
 import uk.ac.ebi.pride.spectracluster.cdf.CumulativeDistributionFunction;
 import uk.ac.ebi.pride.spectracluster.consensus.ConcensusSpectrumBuilderFactory;
-import uk.ac.ebi.pride.spectracluster.consensus.ConsensusSpectrum;
 import uk.ac.ebi.pride.spectracluster.consensus.IConsensusSpectrumBuilder;
 import uk.ac.ebi.pride.spectracluster.engine.EngineFactories;
 import uk.ac.ebi.pride.spectracluster.engine.IClusteringEngine;
 import uk.ac.ebi.pride.spectracluster.normalizer.IIntensityNormalizer;
-import uk.ac.ebi.pride.spectracluster.normalizer.TotalIntensityNormalizer;
 import uk.ac.ebi.pride.spectracluster.quality.IQualityScorer;
-import uk.ac.ebi.pride.spectracluster.quality.SignalToNoiseChecker;
-import uk.ac.ebi.pride.spectracluster.similarity.CombinedFisherIntensityTest;
 import uk.ac.ebi.pride.spectracluster.similarity.FrankEtAlDotProduct;
 import uk.ac.ebi.pride.spectracluster.similarity.ISimilarityChecker;
 import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
 import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
 import uk.ac.ebi.pride.spectracluster.util.comparator.ClusterComparator;
-import uk.ac.ebi.pride.spectracluster.util.function.Functions;
 import uk.ac.ebi.pride.spectracluster.util.function.IFunction;
 import uk.ac.ebi.pride.spectracluster.util.function.peak.BinnedHighestNPeakFunction;
-import uk.ac.ebi.pride.spectracluster.util.function.peak.FractionTICPeakFunction;
 import uk.ac.ebi.pride.spectracluster.util.function.peak.NullPeakFunction;
-import uk.ac.ebi.pride.spectracluster.util.function.spectrum.HighestNSpectrumPeaksFunction;
-import uk.ac.ebi.pride.spectracluster.util.function.spectrum.RemoveImpossiblyHighPeaksFunction;
-import uk.ac.ebi.pride.spectracluster.util.function.spectrum.RemovePrecursorPeaksFunction;
 
 import java.util.List;
 
 /**
  * uk.ac.ebi.pride.spectracluster.util.Defaults
+ * Static access to the default clustering parameters. The values are held in
+ * an immutable ClusteringConfig, every setter replaces it with an updated
+ * copy. Engines, factories and parsers created from a ClusteringConfig
+ * (f.e. a snapshot returned by getConfig) are not affected by later changes
+ * of the Defaults.
  *
  * @author Steve Lewis
  */
@@ -77,86 +73,98 @@ public class Defaults {
      */
     public static final CumulativeDistributionFunction DEFAULT_CUMULATIVE_DISTRIBUTION_FUNCTION = null;
 
-    private static double similarityThreshold = DEFAULT_SIMILARITY_THRESHOLD;
+    public static final int DEFAULT_MAJOR_PEAKS = 5;
 
-    private static int largeBinningRegion = DEFAULT_LARGE_BINNING_REGION;
+    private static volatile ClusteringConfig config = new ClusteringConfig.Builder().build();
 
-    private static int numberComparedPeaks = DEFAULT_NUMBER_COMPARED_PEAKS;
-
-    private static float fragmentIonTolerance = DEFAULT_FRAGMENT_ION_TOLERANCE;
-
-    private static double retainThreshold = DEFAULT_RETAIN_THRESHOLD;
-
-    private static int numberReclusteringPasses = DEFAULT_NUMBER_RECLUSTERING_PASSES;
-
-    private static final int DEFAULT_MAJOR_PEAKS = 5;
-
-    private static int majorPeakCount = DEFAULT_MAJOR_PEAKS;
-
-    private static float defaultPrecursorIonTolerance = DEFAULT_PRECURSOR_ION_TOLERANCE;
+    /**
+     * @return !null snapshot of the current defaults
+     */
+    public static ClusteringConfig getConfig() {
+        return config;
+    }
 
-    private static int minNumberComparisons = DEFAULT_MIN_NUMBER_COMPARISONS;
+    /**
+     * Replaces all defaults.
+     *
+     * @param config !null the new defaults
+     */
+    public static synchronized void setConfig(ClusteringConfig config) {
+        if (config == null)
+            throw new IllegalArgumentException("Config must not be null");
+        Defaults.config = config;
+    }
 
-    private static CumulativeDistributionFunction cumulativeDistributionFunction = DEFAULT_CUMULATIVE_DISTRIBUTION_FUNCTION;
+    /**
+     * @return a builder initialised with the current defaults, used by the setters
+     */
+    private static ClusteringConfig.Builder edit() {
+        return config.toBuilder();
+    }
 
     public static int getMajorPeakCount() {
-        return majorPeakCount;
+        return config.getMajorPeakCount();
     }
 
-    public static void setMajorPeakCount(int majorPeakCount) {
-        Defaults.majorPeakCount = majorPeakCount;
+    public static synchronized void setMajorPeakCount(int majorPeakCount) {
+        config = edit().setMajorPeakCount(majorPeakCount).build();
     }
 
     public static double getSimilarityThreshold() {
-        return similarityThreshold;
+        return config.getSimilarityThreshold();
     }
 
     public static int getLargeBinningRegion() {
-        return largeBinningRegion;
+        return config.getLargeBinningRegion();
     }
 
     public static int getNumberComparedPeaks() {
-        return numberComparedPeaks;
+        return config.getNumberComparedPeaks();
     }
 
     public static float getFragmentIonTolerance() {
-        return fragmentIonTolerance;
+        return config.getFragmentIonTolerance();
     }
 
     public static double getRetainThreshold() {
-        return retainThreshold;
+        return config.getRetainThreshold();
     }
 
-    public static void setSimilarityThreshold(double similarityThreshold) {
-        Defaults.similarityThreshold = similarityThreshold;
+    public static synchronized void setSimilarityThreshold(double similarityThreshold) {
+        config = edit().setSimilarityThreshold(similarityThreshold).build();
     }
 
-    public static void setLargeBinningRegion(int largeBinningRegion) {
-        Defaults.largeBinningRegion = largeBinningRegion;
+    public static synchronized void setLargeBinningRegion(int largeBinningRegion) {
+        config = edit().setLargeBinningRegion(largeBinningRegion).build();
     }
 
-    public static void setNumberComparedPeaks(int numberComparedPeaks) {
-        Defaults.numberComparedPeaks = numberComparedPeaks;
+    public static synchronized void setNumberComparedPeaks(int numberComparedPeaks) {
+        config = edit().setNumberComparedPeaks(numberComparedPeaks).build();
     }
 
-    public static void setFragmentIonTolerance(float fragmentIonTolerance) {
-        Defaults.fragmentIonTolerance = fragmentIonTolerance;
+    /**
+     * Changes the fragment tolerance. The default similarity checker and peak filter
+     * keep the tolerance they were created with.
+     * @param fragmentIonTolerance
+     */
+    public static synchronized void setFragmentIonTolerance(float fragmentIonTolerance) {
+        config = edit().setFragmentIonTolerance(fragmentIonTolerance).build();
     }
 
     public static float getDefaultPrecursorIonTolerance() {
-        return defaultPrecursorIonTolerance;
+        return config.getPrecursorIonTolerance();
     }
 
-    public static void setDefaultPrecursorIonTolerance(float defaultPrecursorIonTolerance) {
-        Defaults.defaultPrecursorIonTolerance = defaultPrecursorIonTolerance;
+    public static synchronized void setDefaultPrecursorIonTolerance(float defaultPrecursorIonTolerance) {
+        config = edit().setPrecursorIonTolerance(defaultPrecursorIonTolerance).build();
     }
 
     public static int getMinNumberComparisons() {
-        return minNumberComparisons;
+        return config.getMinNumberComparisons();
     }
 
-    public static void setMinNumberComparisons(int minNumberComparisons) {
-        Defaults.minNumberComparisons = minNumberComparisons;
+    public static synchronized void setMinNumberComparisons(int minNumberComparisons) {
+        config = edit().setMinNumberComparisons(minNumberComparisons).build();
     }
 
     /**
@@ -164,20 +172,18 @@ public class Defaults {
      * spectra are removed from a cluster.
      * @param retainThreshold
      */
-    public static void setRetainThreshold(double retainThreshold) {
-        Defaults.retainThreshold = retainThreshold;
+    public static synchronized void setRetainThreshold(double retainThreshold) {
+        config = edit().setRetainThreshold(retainThreshold).build();
     }
 
     public static int getNumberReclusteringPasses() {
-        return numberReclusteringPasses;
+        return config.getNumberReclusteringPasses();
     }
 
-    public static void setNumberReclusteringPasses(final int pNumberReclusteringPasses) {
-        numberReclusteringPasses = pNumberReclusteringPasses;
+    public static synchronized void setNumberReclusteringPasses(final int pNumberReclusteringPasses) {
+        config = edit().setNumberReclusteringPasses(pNumberReclusteringPasses).build();
     }
 
-    private static IConsensusSpectrumBuilder defaultConsensusSpectrumBuilder = null;
-
     /**
       * filter sees that we dont pass more then MaximialPeakFilter.DEFAULT_MAX_PEAKS peaks (100)
       */
@@ -185,43 +191,35 @@ public class Defaults {
      // public static IPeakFilter defaultPeakFilter = new MaximialPeakFilter(MaximialPeakFilter.DEFAULT_MAX_PEAKS); jg - this setting was active until 16-Dec-2014
     //private static IFunction<List<IPeak>, List<IPeak>> defaultPeakFilter = new BinnedHighestNPeakFunction(20, 100, 50); // keep 20 peaks per 100 m/z with a 50 m/z overlap
      // peak filtering is not needed in GreedyClustering
-     private static IFunction<ISpectrum, ISpectrum> defaultPeakFilter =
-            Functions.join(         new RemoveImpossiblyHighPeaksFunction(),
-                    Functions.join( new RemovePrecursorPeaksFunction(fragmentIonTolerance),
-                                    new HighestNSpectrumPeaksFunction(150)));
-
+     // the default filter removes impossibly high peaks and precursor peaks and keeps the 150 highest peaks (see ClusteringConfig)
      public static IFunction<ISpectrum, ISpectrum> getDefaultPeakFilter() {
-         return defaultPeakFilter;
+         return config.getPeakFilter();
      }
 
-     public static void setDefaultPeakFilter(IFunction<ISpectrum, ISpectrum> defaultPeakFilter) {
-         Defaults.defaultPeakFilter = defaultPeakFilter;
+     public static synchronized void setDefaultPeakFilter(IFunction<ISpectrum, ISpectrum> defaultPeakFilter) {
+         config = edit().setPeakFilter(defaultPeakFilter).build();
      }
 
     /**
      * default filter to use before comparing two spectra
      */
-    private static IFunction<List<IPeak>, List<IPeak>> defaultComparisonPeakFilter = new FractionTICPeakFunction(0.5F, 20);
-
     public static IFunction<List<IPeak>, List<IPeak>> getDefaultComparisonPeakFilter() {
-        return defaultComparisonPeakFilter;
+        return config.getComparisonPeakFilter();
     }
 
-    public static void setDefaultComparisonPeakFilter(IFunction<List<IPeak>, List<IPeak>> defaultComparisonPeakFilter) {
-        Defaults.defaultComparisonPeakFilter = defaultComparisonPeakFilter;
+    public static synchronized void setDefaultComparisonPeakFilter(IFunction<List<IPeak>, List<IPeak>> defaultComparisonPeakFilter) {
+        config = edit().setComparisonPeakFilter(defaultComparisonPeakFilter).build();
     }
 
     /**
      * filter to use a consensus spectrum
      */
-    private static ConcensusSpectrumBuilderFactory consensusFactory =  ConsensusSpectrum.FACTORY;
-
     public static ConcensusSpectrumBuilderFactory getConsensusFactory() {
-        return consensusFactory;
+        return config.getConsensusFactory();
     }
 
-    public static void setConsensusFactory(ConcensusSpectrumBuilderFactory consensusFactory) {
-        Defaults.consensusFactory = consensusFactory;
+    public static synchronized void setConsensusFactory(ConcensusSpectrumBuilderFactory consensusFactory) {
+        config = edit().setConsensusFactory(consensusFactory).build();
     }
 
     /**
@@ -230,40 +228,36 @@ public class Defaults {
      * @return
      */
     public static IConsensusSpectrumBuilder getDefaultConsensusSpectrumBuilder() {
-        return consensusFactory.getConsensusSpectrumBuilder();
+        return config.getConsensusSpectrumBuilder();
     }
 
 
     //private static ISimilarityChecker defaultSimilarityChecker = new FrankEtAlDotProduct(getFragmentIonTolerance(), getNumberComparedPeaks());
     //private static ISimilarityChecker defaultSimilarityChecker = new FisherExactTest((float) getFragmentIonTolerance());
-    private static ISimilarityChecker defaultSimilarityChecker = new CombinedFisherIntensityTest((float) getFragmentIonTolerance());
-
+    // the default checker is a CombinedFisherIntensityTest (see ClusteringConfig)
+    // the instance is shared, use copy() or a ThreadLocalSimilarityChecker when using it in several threads
     public static ISimilarityChecker getDefaultSimilarityChecker() {
-        return defaultSimilarityChecker;
+        return config.getSimilarityChecker();
     }
 
-    public static void setDefaultSimilarityChecker(ISimilarityChecker defaultSimilarityChecker) {
-        Defaults.defaultSimilarityChecker = defaultSimilarityChecker;
+    public static synchronized void setDefaultSimilarityChecker(ISimilarityChecker defaultSimilarityChecker) {
+        config = edit().setSimilarityChecker(defaultSimilarityChecker).build();
     }
 
-    private static IQualityScorer defaultQualityScorer = new SignalToNoiseChecker();
-
     public static IQualityScorer getDefaultQualityScorer() {
-        return defaultQualityScorer;
+        return config.getQualityScorer();
     }
 
-    public static void setDefaultQualityScorer(IQualityScorer defaultQualityScorer) {
-        Defaults.defaultQualityScorer = defaultQualityScorer;
+    public static synchronized void setDefaultQualityScorer(IQualityScorer defaultQualityScorer) {
+        config = edit().setQualityScorer(defaultQualityScorer).build();
     }
 
-    private static ClusterComparator defaultSpectrumComparator = ClusterComparator.INSTANCE;
-
     public static ClusterComparator getDefaultSpectrumComparator() {
-        return defaultSpectrumComparator;
+        return config.getSpectrumComparator();
     }
 
-    public static void setDefaultSpectrumComparator(ClusterComparator dc) {
-        defaultSpectrumComparator = dc;
+    public static synchronized void setDefaultSpectrumComparator(ClusterComparator dc) {
+        config = edit().setSpectrumComparator(dc).build();
     }
 
      public static IClusteringEngine getDefaultClusteringEngine() {
@@ -278,14 +272,12 @@ public class Defaults {
     /**
      * Default intensity normalizer
      */
-    private static IIntensityNormalizer defaultIntensityNormalizer = TotalIntensityNormalizer.DEFAULT;
-
     public static IIntensityNormalizer getDefaultIntensityNormalizer() {
-        return defaultIntensityNormalizer;
+        return config.getIntensityNormalizer();
     }
 
-    public static void setDefaultIntensityNormalizer(IIntensityNormalizer defaultIntensityNormalizer) {
-        Defaults.defaultIntensityNormalizer = defaultIntensityNormalizer;
+    public static synchronized void setDefaultIntensityNormalizer(IIntensityNormalizer defaultIntensityNormalizer) {
+        config = edit().setIntensityNormalizer(defaultIntensityNormalizer).build();
     }
 
     /**
@@ -296,7 +288,7 @@ public class Defaults {
      * @return
      */
     public static CumulativeDistributionFunction getCumulativeDistributionFunction() {
-        return cumulativeDistributionFunction;
+        return config.getCumulativeDistributionFunction();
     }
 
     /**
@@ -305,7 +297,7 @@ public class Defaults {
      * matching resources.
      * @param cumulativeDistributionFunction
      */
-    public static void setCumulativeDistributionFunction(CumulativeDistributionFunction cumulativeDistributionFunction) {
-        Defaults.cumulativeDistributionFunction = cumulativeDistributionFunction;
+    public static synchronized void setCumulativeDistributionFunction(CumulativeDistributionFunction cumulativeDistributionFunction) {
+        config = edit().setCumulativeDistributionFunction(cumulativeDistributionFunction).build();
     }
 }
@@ -0,0 +1,118 @@
+package uk.ac.ebi.pride.spectracluster.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.util.Log2Histogram
+ * Thread-safe histogram of non-negative values (typically durations in nanoseconds)
+ * using power of two buckets. Bucket i holds all values v with 2^i <= v < 2^(i+1),
+ * bucket 0 also holds 0. Recording a value only requires two atomic increments
+ * and one atomic add.
+ *
+ * @author jg
+ */
+public class Log2Histogram {
+    public static final int NUMBER_BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUMBER_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+
+    /**
+     * Records the passed value, negative values are recorded as 0.
+     *
+     * @param value the value to record
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+
+        buckets.incrementAndGet(getBucket(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+    }
+
+    /**
+     * @param value non-negative value
+     * @return the bucket the value is stored in
+     */
+    public static int getBucket(long value) {
+        if (value <= 0)
+            return 0;
+        return 63 - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * @param bucket the bucket's index
+     * @return the lowest value stored in the bucket
+     */
+    public static long getBucketLowerBound(int bucket) {
+        if (bucket == 0)
+            return 0;
+        return 1L << bucket;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * @return copy of the current bucket counts
+     */
+    public long[] getBuckets() {
+        long[] ret = new long[NUMBER_BUCKETS];
+        for (int i = 0; i < NUMBER_BUCKETS; i++) {
+            ret[i] = buckets.get(i);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the lower bound of the bucket that contains the passed quantile. The
+     * result therefore underestimates the real value by at most a factor of 2.
+     *
+     * @param quantile quantile between 0 and 1
+     * @return the lower bound of the bucket containing the quantile, 0 if nothing was recorded
+     */
+    public long getQuantile(double quantile) {
+        return getQuantile(getBuckets(), quantile);
+    }
+
+    /**
+     * @see #getQuantile(double)
+     */
+    public static long getQuantile(long[] buckets, double quantile) {
+        long nValues = 0;
+        for (long bucketCount : buckets) {
+            nValues += bucketCount;
+        }
+        if (nValues == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(quantile * nValues);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank && buckets[i] > 0)
+                return getBucketLowerBound(i);
+        }
+
+        return getBucketLowerBound(buckets.length - 1);
+    }
+
+    /**
+     * Resets all counts. Values that are recorded concurrently may get lost.
+     */
+    public void reset() {
+        for (int i = 0; i < NUMBER_BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+    }
+}
@@ -1,17 +1,22 @@
 package uk.ac.ebi.pride.spectracluster.util.function.peak;
 
 import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
-import uk.ac.ebi.pride.spectracluster.spectrum.Peak;
 import uk.ac.ebi.pride.spectracluster.util.MZIntensityUtilities;
 import uk.ac.ebi.pride.spectracluster.util.comparator.PeakIntensityComparator;
 import uk.ac.ebi.pride.spectracluster.util.function.IFunction;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 /**
  * Return the highest peaks in bin size bins using overlapping bins -
  * default bin size is 100
  *
+ * Bins are only processed from the first peak onwards and the highest peaks per
+ * bin are found using a bounded heap. The returned peaks are the original peak
+ * objects in their original (m/z) order.
+ *
  * @author Steve Lewis
  * @author Rui Wang
  * @version $Id$
@@ -68,86 +73,131 @@ public class BinnedHighestNPeakFunction implements IFunction<List<IPeak>, List<I
 
     @Override
     public List<IPeak> apply(List<IPeak> originalPeaks) {
-        Set<IPeak> retained = new HashSet<IPeak>();
+        final int nPeaks = originalPeaks.size();
+        if (nPeaks == 0)
+            return new ArrayList<IPeak>();
+
+        // copy the values into primitive arrays once - this also verifies the m/z order
+        final float[] mz = new float[nPeaks];
+        final float[] intensities = new float[nPeaks];
+        for (int i = 0; i < nPeaks; i++) {
+            IPeak peak = originalPeaks.get(i);
+            mz[i] = peak.getMz();
+            intensities[i] = peak.getIntensity();
+
+            // only throw an exception if the difference is large enough
+            if (i > 0 && mz[i - 1] - mz[i] > 1.2 * MZIntensityUtilities.SMALL_MZ_DIFFERENCE)
+                throw new IllegalStateException("Peaks are NOT Sorted by MZ");
+        }
+
+        final int binStep = binSize - binOverlap;
+        final boolean[] retained = new boolean[nPeaks];
+        final int[] heap = new int[Math.max(1, maxPeaks)];
+        int nRetained = 0;
+
+        // start at the first bin that can contain the first peak instead of MINIMUM_BINNED_MZ
+        int bin = getFirstBinContaining(mz[0], binStep);
         int startPeak = 0;
-        for (double binBottom = MINIMUM_BINNED_MZ; binBottom < MAXIMUM_BINNED_MZ - binSize; binBottom += (binSize - binOverlap)) {
-            startPeak = handleBin(originalPeaks, startPeak, retained, binBottom);
-            if (startPeak > originalPeaks.size())
+
+        while (true) {
+            double binBottom = MINIMUM_BINNED_MZ + (double) bin * binStep;
+            if (binBottom >= MAXIMUM_BINNED_MZ - binSize)
                 break;
+
+            // peaks below this bin cannot be part of any later bin
+            while (startPeak < nPeaks && mz[startPeak] < binBottom)
+                startPeak++;
+            if (startPeak >= nPeaks)
+                break;
+
+            double binEnd = binBottom + binSize;
+
+            // empty bin - jump straight to the first bin containing the next peak
+            if (mz[startPeak] > binEnd) {
+                bin = Math.max(bin + 1, getFirstBinContaining(mz[startPeak], binStep));
+                continue;
+            }
+
+            // keep the highest peaks of the bin in a bounded min-heap (the weakest retained peak on top)
+            int heapSize = 0;
+            for (int i = startPeak; i < nPeaks && mz[i] <= binEnd; i++) {
+                if (heapSize < heap.length) {
+                    heap[heapSize] = i;
+                    siftUp(heap, heapSize, intensities);
+                    heapSize++;
+                }
+                // on equal intensities the peak with the lower m/z is kept
+                else if (intensities[i] > intensities[heap[0]]) {
+                    heap[0] = i;
+                    siftDown(heap, heapSize, intensities);
+                }
+            }
+
+            for (int i = 0; i < heapSize; i++) {
+                if (!retained[heap[i]]) {
+                    retained[heap[i]] = true;
+                    nRetained++;
+                }
+            }
+
+            bin++;
         }
 
-        // make a sorted list
-        List<IPeak> ret = new ArrayList<IPeak>();
-        for (IPeak iPeak : retained) {
-            ret.add(new Peak(iPeak));
+        // the original order is kept so the result remains sorted by m/z
+        List<IPeak> ret = new ArrayList<IPeak>(nRetained);
+        for (int i = 0; i < nPeaks; i++) {
+            if (retained[i])
+                ret.add(originalPeaks.get(i));
         }
 
         return ret;
     }
 
     /**
-     * we generate
-     *
-     * @param allpeaks
-     * @param startpeak
-     * @param retained
-     * @param binBottom
-     * @return
+     * Returns the index of the first bin whose (inclusive) upper bound is not below the passed m/z.
+     * The returned bin may be one too early due to rounding which only results in an empty bin.
      */
-    protected int handleBin(List<IPeak> allpeaks, int startpeak, Set<IPeak> retained, double binBottom) {
-        int startIndexNextBin = startpeak; // the index of the next bin's peak
-        double binEnd = binBottom + binSize; // end of this bin
-        double nextBinStartMZ = binEnd - binOverlap; // start of next bin
-
-        // get all peaks within the current bin
-        int index = startpeak;
-        IPeak currentPeak = null;
-        List<IPeak> byIntensity = new ArrayList<IPeak>();
-
-        for (; index < allpeaks.size(); index++) {
-            IPeak nextPeak = allpeaks.get(index);
-
-            // make sure the peaks are sorted according to m/z
-            if(currentPeak != null)  {
-                if(currentPeak.getMz() > nextPeak.getMz())  {   // out of order
-                    // only throw an exception if the difference is large enough
-                    if(Math.abs(currentPeak.getMz() - nextPeak.getMz()) > 1.2 * MZIntensityUtilities.SMALL_MZ_DIFFERENCE )
-                        throw new IllegalStateException("Peaks are NOT Sorted by MZ");
-                }
-            }
-
-            // store all peaks that belong to this bin
-            currentPeak = nextPeak;
-            final float currentPeakMz = currentPeak.getMz();
-            // ignore if it's before this bin
-            if (currentPeakMz < binBottom)
-                continue;
-            // store all peaks that could belong to the next bin - iteratively building up to the right index
-            if (currentPeakMz < nextBinStartMZ)
-                startIndexNextBin = index;
-            // done with this bin if we are above the end
-            if (currentPeakMz > binEnd)
-                break;
+    private int getFirstBinContaining(float mz, int binStep) {
+        int bin = (int) Math.floor((mz - MINIMUM_BINNED_MZ - binSize) / binStep);
+        return Math.max(0, bin);
+    }
 
-            byIntensity.add(currentPeak); // accumulate
-        }
+    /**
+     * Returns true if the peak at index a ranks below the one at index b. Peaks with
+     * equal intensity are ranked by their position so that the lower m/z wins.
+     */
+    private static boolean isWeaker(int a, int b, float[] intensities) {
+        if (intensities[a] != intensities[b])
+            return intensities[a] < intensities[b];
 
-        // now sort highest intensity first
-        Collections.sort(byIntensity, INTENSITY_COMPARATOR);
-        // add highest maxPeaks to retained
-        int numberAdded = 0;
-        for (IPeak iPeak : byIntensity) {
-            retained.add(iPeak);
+        return a > b;
+    }
 
-            if (++numberAdded >= maxPeaks)
+    private static void siftUp(int[] heap, int position, float[] intensities) {
+        int value = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!isWeaker(value, heap[parent], intensities))
                 break;
+            heap[position] = heap[parent];
+            position = parent;
         }
+        heap[position] = value;
+    }
 
-        // finished all peaks - lets quit;
-        if (startIndexNextBin >= allpeaks.size())
-            return Integer.MAX_VALUE;
-
-
-        return startIndexNextBin;
+    private static void siftDown(int[] heap, int size, float[] intensities) {
+        int value = heap[0];
+        int position = 0;
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && isWeaker(heap[child + 1], heap[child], intensities))
+                child++;
+            if (!isWeaker(heap[child], value, intensities))
+                break;
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = value;
     }
 }
@@ -0,0 +1,69 @@
+package uk.ac.ebi.pride.spectracluster.util.function.spectrum;
+
+import uk.ac.ebi.pride.spectracluster.io.PreprocessedPeakCache;
+import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.spectrum.Spectrum;
+import uk.ac.ebi.pride.spectracluster.util.function.IFunction;
+
+import java.util.List;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.util.function.spectrum.CachedSpectrumFunction
+ * Applies a preprocessing function (f.e. Defaults.getDefaultPeakFilter()) only
+ * to spectra whose result is not yet stored in the PreprocessedPeakCache. The
+ * cached peaks are used for all other spectra. Spectra without an id are always
+ * processed.
+ *
+ * @author jg
+ */
+public class CachedSpectrumFunction implements IFunction<ISpectrum, ISpectrum> {
+    private final IFunction<ISpectrum, ISpectrum> function;
+    private final PreprocessedPeakCache cache;
+    private final String fingerprint;
+
+    /**
+     * The fingerprint is created from the function itself.
+     *
+     * @param function the preprocessing function
+     * @param cache    cache to store the preprocessed peaks in
+     */
+    public CachedSpectrumFunction(IFunction<ISpectrum, ISpectrum> function, PreprocessedPeakCache cache) {
+        this(function, cache, PreprocessedPeakCache.fingerprint(function));
+    }
+
+    /**
+     * @param function    the preprocessing function
+     * @param cache       cache to store the preprocessed peaks in
+     * @param fingerprint fingerprint of the function, see PreprocessedPeakCache.fingerprint
+     */
+    public CachedSpectrumFunction(IFunction<ISpectrum, ISpectrum> function, PreprocessedPeakCache cache, String fingerprint) {
+        this.function = function;
+        this.cache = cache;
+        this.fingerprint = fingerprint;
+    }
+
+    @Override
+    public ISpectrum apply(ISpectrum o) {
+        String id = o.getId();
+        if (id == null)
+            return function.apply(o);
+
+        List<IPeak> cachedPeaks = cache.get(id, fingerprint);
+        if (cachedPeaks != null)
+            return new Spectrum(o, cachedPeaks, true);
+
+        ISpectrum processed = function.apply(o);
+        if (processed != null)
+            cache.put(id, fingerprint, processed.getPeaks());
+        return processed;
+    }
+
+    public PreprocessedPeakCache getCache() {
+        return cache;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+}
@@ -0,0 +1,41 @@
+package uk.ac.ebi.pride.spectracluster.util.predicate.cluster_comparison;
+
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.similarity.BinnedDotProduct;
+import uk.ac.ebi.pride.spectracluster.util.predicate.IComparisonPredicate;
+import uk.ac.ebi.pride.spectracluster.util.predicate.spectrum_comparison.BinnedSimilarityPredicate;
+
+/**
+ * Applies the BinnedSimilarityPredicate to the clusters' consensus spectra.
+ * The clusters' vectors are cached by the BinnedDotProduct until their
+ * consensus spectrum changes.
+ */
+public class ClusterBinnedSimilarityPredicate implements IComparisonPredicate<ICluster> {
+    private final BinnedDotProduct binnedDotProduct;
+    private final double minSimilarity;
+
+    public ClusterBinnedSimilarityPredicate() {
+        this(BinnedSimilarityPredicate.DEFAULT_MIN_SIMILARITY);
+    }
+
+    public ClusterBinnedSimilarityPredicate(double minSimilarity) {
+        this(new BinnedDotProduct(), minSimilarity);
+    }
+
+    public ClusterBinnedSimilarityPredicate(BinnedDotProduct binnedDotProduct, double minSimilarity) {
+        this.binnedDotProduct = binnedDotProduct;
+        this.minSimilarity = minSimilarity;
+    }
+
+    @Override
+    public boolean apply(ICluster o1, ICluster o2) {
+        double similarity;
+        // filtered spectra depend on the pair and cannot be cached
+        if (binnedDotProduct.isPeakFiltering())
+            similarity = binnedDotProduct.assessSimilarity(o1.getConsensusSpectrum(), o2.getConsensusSpectrum());
+        else
+            similarity = binnedDotProduct.assessSimilarity(binnedDotProduct.getVector(o1), binnedDotProduct.getVector(o2));
+
+        return similarity >= minSimilarity;
+    }
+}
@@ -0,0 +1,36 @@
+package uk.ac.ebi.pride.spectracluster.util.predicate.spectrum_comparison;
+
+import uk.ac.ebi.pride.spectracluster.similarity.BinnedDotProduct;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.util.predicate.IComparisonPredicate;
+
+/**
+ * Only accepts spectra whose BinnedDotProduct reaches the set
+ * minimum similarity. This can be used as a cheap pre-screen
+ * in front of a more expensive similarity checker like the
+ * CombinedFisherIntensityTest.
+ */
+public class BinnedSimilarityPredicate implements IComparisonPredicate<ISpectrum> {
+    public static final double DEFAULT_MIN_SIMILARITY = 0.1;
+
+    private final BinnedDotProduct binnedDotProduct;
+    private final double minSimilarity;
+
+    public BinnedSimilarityPredicate(BinnedDotProduct binnedDotProduct, double minSimilarity) {
+        this.binnedDotProduct = binnedDotProduct;
+        this.minSimilarity = minSimilarity;
+    }
+
+    public BinnedSimilarityPredicate(double minSimilarity) {
+        this(new BinnedDotProduct(), minSimilarity);
+    }
+
+    public BinnedSimilarityPredicate() {
+        this(DEFAULT_MIN_SIMILARITY);
+    }
+
+    @Override
+    public boolean apply(ISpectrum o1, ISpectrum o2) {
+        return binnedDotProduct.assessSimilarity(o1, o2) >= minSimilarity;
+    }
+}
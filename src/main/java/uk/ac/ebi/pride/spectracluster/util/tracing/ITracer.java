@@ -0,0 +1,35 @@
+package uk.ac.ebi.pride.spectracluster.util.tracing;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.util.tracing.ITracer
+ * Receives the events of the tracing probes. Implementations must be thread-safe
+ * since probes are called from all clustering threads.
+ *
+ * A probe calls begin before and end after the traced phase. The value returned
+ * by begin is passed unchanged to end, this allows implementations to only
+ * sample some calls (f.e. by returning a negative value) without allocating
+ * any objects.
+ *
+ * Implementations are set through Tracing.setTracer or by passing the class name
+ * as the system property spectracluster.tracer. They therefore require a public
+ * no-argument constructor.
+ *
+ * @author jg
+ */
+public interface ITracer {
+    /**
+     * Called before the phase is executed.
+     *
+     * @param phase the traced phase
+     * @return a token that is passed to end
+     */
+    public long begin(TracePhase phase);
+
+    /**
+     * Called after the phase was executed.
+     *
+     * @param phase the traced phase
+     * @param token the value returned by the matching begin call
+     */
+    public void end(TracePhase phase, long token);
+}
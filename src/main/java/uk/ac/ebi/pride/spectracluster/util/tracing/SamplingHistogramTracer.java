@@ -0,0 +1,104 @@
+package uk.ac.ebi.pride.spectracluster.util.tracing;
+
+import uk.ac.ebi.pride.spectracluster.util.Log2Histogram;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.util.tracing.SamplingHistogramTracer
+ * Times every n-th call of a phase and records the duration in a Log2Histogram.
+ * Calls that are not sampled only cost one atomic increment, System.nanoTime
+ * is not called for them.
+ *
+ * The sample interval defaults to the system property
+ * spectracluster.tracing.sampleInterval or DEFAULT_SAMPLE_INTERVAL.
+ *
+ * @author jg
+ */
+public class SamplingHistogramTracer implements ITracer {
+    public static final String SAMPLE_INTERVAL_PROPERTY = "spectracluster.tracing.sampleInterval";
+    public static final int DEFAULT_SAMPLE_INTERVAL = 16;
+
+    private static final long NOT_SAMPLED = -1;
+
+    private final int sampleInterval;
+    private final AtomicLongArray calls = new AtomicLongArray(TracePhase.values().length);
+    private final Log2Histogram[] histograms = new Log2Histogram[TracePhase.values().length];
+
+    public SamplingHistogramTracer() {
+        this(Integer.getInteger(SAMPLE_INTERVAL_PROPERTY, DEFAULT_SAMPLE_INTERVAL));
+    }
+
+    /**
+     * @param sampleInterval only every sampleInterval-th call is timed, 1 to time all calls
+     */
+    public SamplingHistogramTracer(int sampleInterval) {
+        if (sampleInterval < 1)
+            throw new IllegalArgumentException("Sample interval must be positive");
+        this.sampleInterval = sampleInterval;
+
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Log2Histogram();
+        }
+    }
+
+    @Override
+    public long begin(TracePhase phase) {
+        long call = calls.getAndIncrement(phase.ordinal());
+        if (call % sampleInterval != 0)
+            return NOT_SAMPLED;
+        return System.nanoTime();
+    }
+
+    @Override
+    public void end(TracePhase phase, long token) {
+        if (token == NOT_SAMPLED)
+            return;
+        histograms[phase.ordinal()].record(System.nanoTime() - token);
+    }
+
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * @param phase the phase
+     * @return total number of calls including the ones that were not sampled
+     */
+    public long getCalls(TracePhase phase) {
+        return calls.get(phase.ordinal());
+    }
+
+    /**
+     * @param phase the phase
+     * @return histogram of the sampled durations in nanoseconds
+     */
+    public Log2Histogram getHistogram(TracePhase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    public void reset() {
+        for (int i = 0; i < histograms.length; i++) {
+            calls.set(i, 0);
+            histograms[i].reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (TracePhase phase : TracePhase.values()) {
+            Log2Histogram histogram = getHistogram(phase);
+            if (histogram.getCount() == 0)
+                continue;
+
+            sb.append(phase).append(": calls=").append(getCalls(phase));
+            sb.append(", sampled=").append(histogram.getCount());
+            sb.append(", mean_nanos=").append(histogram.getTotal() / histogram.getCount());
+            sb.append(", p50_nanos=").append(histogram.getQuantile(0.5));
+            sb.append(", p99_nanos=").append(histogram.getQuantile(0.99));
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,34 @@
+package uk.ac.ebi.pride.spectracluster.util.tracing;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.util.tracing.TracePhase
+ * The hot-path phases that are surrounded by tracing probes.
+ *
+ * @author jg
+ */
+public enum TracePhase {
+    /**
+     * PeakMatchesUtilities.getSharedPeakIndices
+     */
+    PEAK_MATCHING,
+    /**
+     * ISimilarityChecker.assessSimilarity(IPeakMatches) - excludes the peak matching
+     */
+    SIMILARITY_SCORING,
+    /**
+     * adding spectra to a GreedyConsensusSpectrum
+     */
+    CONSENSUS_UPDATE,
+    /**
+     * regenerating the consensus spectrum of a GreedyConsensusSpectrum
+     */
+    CONSENSUS_GENERATION,
+    /**
+     * parsing a single MGF scan
+     */
+    MGF_PARSING,
+    /**
+     * parsing a single cluster including its spectra
+     */
+    CLUSTER_PARSING
+}
@@ -0,0 +1,76 @@
+package uk.ac.ebi.pride.spectracluster.util.tracing;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.util.tracing.Tracing
+ * Entry point for the tracing probes. Tracing is switched on by starting
+ * the JVM with -Dspectracluster.tracing=true. Since ENABLED is a static
+ * final constant the JIT removes all probes if tracing is off, so no
+ * rebuild is required to profile a live run.
+ *
+ * Probes follow the pattern
+ * <pre>
+ * if (!Tracing.ENABLED)
+ *     return findSharedPeakIndices(...);
+ *
+ * long token = Tracing.begin(TracePhase.PEAK_MATCHING);
+ * try {
+ *     return findSharedPeakIndices(...);
+ * } finally {
+ *     Tracing.end(TracePhase.PEAK_MATCHING, token);
+ * }
+ * </pre>
+ * so that a phase that throws is still recorded.
+ *
+ * By default a SamplingHistogramTracer is used, a different ITracer can be
+ * set through the system property spectracluster.tracer or setTracer.
+ *
+ * @author jg
+ */
+public final class Tracing {
+    public static final String ENABLED_PROPERTY = "spectracluster.tracing";
+    public static final String TRACER_PROPERTY = "spectracluster.tracer";
+
+    public static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    private static volatile ITracer tracer = createDefaultTracer();
+
+    private Tracing() {
+
+    }
+
+    private static ITracer createDefaultTracer() {
+        String tracerClass = System.getProperty(TRACER_PROPERTY);
+        if (tracerClass == null)
+            return new SamplingHistogramTracer();
+
+        try {
+            // the constructor's exceptions are wrapped in an InvocationTargetException unlike with Class.newInstance
+            return (ITracer) Class.forName(tracerClass).getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to create tracer " + tracerClass, e);
+        }
+    }
+
+    public static ITracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Replaces the current tracer. This only has an effect if tracing is ENABLED.
+     *
+     * @param tracer !null tracer
+     */
+    public static void setTracer(ITracer tracer) {
+        if (tracer == null)
+            throw new IllegalArgumentException("Tracer must not be null");
+        Tracing.tracer = tracer;
+    }
+
+    public static long begin(TracePhase phase) {
+        return tracer.begin(phase);
+    }
+
+    public static void end(TracePhase phase, long token) {
+        tracer.end(phase, token);
+    }
+}
@@ -0,0 +1,97 @@
+package uk.ac.ebi.pride.spectracluster.cdf;
+
+import org.junit.Assert;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.engine.GreedyIncrementalClusteringEngine;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.spectrum.KnownProperties;
+import uk.ac.ebi.pride.spectracluster.util.ClusterUtilities;
+import uk.ac.ebi.pride.spectracluster.util.ClusteringTestUtilities;
+
+import java.util.*;
+
+public class CumulativeDistributionFunctionBuilderTest {
+    @Test
+    public void testHistogram() throws Exception {
+        CumulativeDistributionFunctionBuilder builder = new CumulativeDistributionFunctionBuilder(0.5, 2, 4);
+        Assert.assertEquals(4, builder.getBinCount());
+
+        builder.addComparison("PEPA", "PEPB", 0.2);
+        builder.addComparison("PEPA", "PEPB", 0.5);
+        builder.addComparison("PEPA", "PEPC", 1.2);
+        builder.addComparison("PEPA", "PEPC", 10);
+        builder.addComparison("PEPA", "PEPA", 1.7);
+        builder.addComparison("PEPA", null, 1.7);
+
+        Assert.assertArrayEquals(new long[]{2, 0, 1, 1}, builder.getHistogram());
+        Assert.assertEquals(4, builder.getDifferentPeptideComparisons());
+        Assert.assertEquals(1, builder.getSamePeptideComparisons());
+        Assert.assertEquals(1, builder.getUnannotatedComparisons());
+
+        String tsv = builder.toTsv();
+        String[] lines = tsv.split("\n");
+        Assert.assertEquals(5, lines.length);
+        Assert.assertEquals(CumulativeDistributionFunction.HEADER_LINE, lines[0]);
+        Assert.assertEquals("0.5\t2\t2\t0.5\t4", lines[1]);
+        Assert.assertEquals("2\t1\t4\t1.0\t4", lines[4]);
+
+        CumulativeDistributionFunction parsed = CumulativeDistributionFunction.fromString(tsv);
+        CumulativeDistributionFunction built = builder.buildCumulativeDistributionFunction();
+        for (double score = 0; score <= 2; score += 0.25) {
+            Assert.assertEquals(parsed.getCdfForThreshold(score), built.getCdfForThreshold(score), 0);
+        }
+        Assert.assertEquals(1, built.getCdfForThreshold(2), 0);
+    }
+
+    @Test
+    public void testConcurrentComparisons() throws Exception {
+        final CumulativeDistributionFunctionBuilder builder = new CumulativeDistributionFunctionBuilder(0.01, 1, 3);
+        final int nComparisons = 10000;
+        Thread[] threads = new Thread[8];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int n = 0; n < nComparisons; n++) {
+                        builder.addComparison("PEPA", (n % 2 == 0) ? "PEPB" : "PEPA", (n % 100) / 100.0);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(threads.length * nComparisons / 2, builder.getDifferentPeptideComparisons());
+        Assert.assertEquals(threads.length * nComparisons / 2, builder.getSamePeptideComparisons());
+    }
+
+    @Test
+    public void testEngineComparisons() throws Exception {
+        List<ISpectrum> testSpectra = ClusteringTestUtilities.readSpectraSortedByPrecursorMz();
+
+        // annotate all but the first spectrum
+        for (int i = 1; i < testSpectra.size(); i++) {
+            testSpectra.get(i).setProperty(KnownProperties.IDENTIFIED_PEPTIDE_KEY, "PEPTIDE" + (i % 3));
+        }
+
+        GreedyIncrementalClusteringEngine engine = ClusteringTestUtilities.createGreedyTestEngine();
+        CumulativeDistributionFunctionBuilder builder = new CumulativeDistributionFunctionBuilder(0.5, 200);
+        engine.setCumulativeDistributionFunctionBuilder(builder);
+
+        for (ISpectrum spectrum : testSpectra) {
+            engine.addClusterIncremental(ClusterUtilities.asCluster(spectrum));
+        }
+
+        long nComparisons = engine.getMetrics().getSnapshot().getComparisons();
+        Assert.assertTrue(nComparisons > 0);
+        Assert.assertEquals(nComparisons, builder.getDifferentPeptideComparisons() +
+                builder.getSamePeptideComparisons() + builder.getUnannotatedComparisons());
+        Assert.assertTrue(builder.getDifferentPeptideComparisons() > 0);
+
+        CumulativeDistributionFunction cdf = CumulativeDistributionFunction.fromString(builder.toTsv());
+        Assert.assertEquals(1, cdf.getCdfForThreshold(200), 0);
+    }
+}
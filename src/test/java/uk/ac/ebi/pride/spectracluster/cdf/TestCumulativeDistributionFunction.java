@@ -2,8 +2,10 @@ package uk.ac.ebi.pride.spectracluster.cdf;
 
 import org.junit.Assert;
 import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.similarity.BinnedDotProduct;
 import uk.ac.ebi.pride.spectracluster.similarity.CombinedFisherIntensityTest;
 import uk.ac.ebi.pride.spectracluster.similarity.FrankEtAlDotProduct;
+import uk.ac.ebi.pride.spectracluster.similarity.OverlappingBinnedDotProduct;
 
 /**
  * Created by jg on 05.05.15.
@@ -24,6 +26,23 @@ public class TestCumulativeDistributionFunction {
         Assert.assertFalse(cumulativeDistributionFunction.isSaveMatch(30, 4000, 0.01));
     }
 
+    @Test
+    public void testCombinedSurvivalCdf() throws Exception {
+        CombinedFisherIntensityTest similarityChecker = new CombinedFisherIntensityTest();
+        CumulativeDistributionFunction densityCdf =
+                CumulativeDistributionFunctionFactory.getCumulativeDistributionFunctionForSimilarityChecker(similarityChecker);
+        Assert.assertEquals(1.143539215064937E-5, densityCdf.probability(60, 4), 0);
+
+        similarityChecker.setVersion(CombinedFisherIntensityTest.AlgorithmVersion.SURVIVAL_FUNCTION_0_2);
+        CumulativeDistributionFunction survivalCdf =
+                CumulativeDistributionFunctionFactory.getCumulativeDistributionFunctionForSimilarityChecker(similarityChecker);
+
+        Assert.assertTrue(survivalCdf.probability(2, 1) > survivalCdf.probability(10, 1));
+        Assert.assertEquals(0, survivalCdf.probability(100, 4), 0);
+        Assert.assertTrue(survivalCdf.isSaveMatch(100, 4, 0.01));
+        Assert.assertFalse(survivalCdf.isSaveMatch(2, 4, 0.01));
+    }
+
     @Test
     public void testDotCDf() throws Exception {
         CumulativeDistributionFunction cdf = CumulativeDistributionFunctionFactory.getCumulativeDistributionFunctionForSimilarityMetric(FrankEtAlDotProduct.class);
@@ -36,4 +55,19 @@ public class TestCumulativeDistributionFunction {
         Assert.assertEquals(0.0, cdf.probability(1.1, 10), 0.001);
         Assert.assertEquals(0.0011151285305012193, cdf.probability(0.44, 10), 0.001);
     }
+
+    @Test
+    public void testBinnedCdf() throws Exception {
+        CumulativeDistributionFunction cdf = CumulativeDistributionFunctionFactory.getCumulativeDistributionFunctionForSimilarityMetric(BinnedDotProduct.class);
+
+        Assert.assertEquals(0.3467099995289906, cdf.probability(0.1, 1), 0.001);
+        Assert.assertTrue(cdf.probability(0.1, 10) > cdf.probability(0.3, 10));
+        Assert.assertEquals(0.0, cdf.probability(0.8, 10), 0.001);
+        Assert.assertTrue(cdf.isSaveMatch(0.8, 4, 0.01));
+        Assert.assertFalse(cdf.isSaveMatch(0.1, 4, 0.01));
+
+        // both binned metrics share the function
+        CumulativeDistributionFunction overlappingCdf = CumulativeDistributionFunctionFactory.getCumulativeDistributionFunctionForSimilarityChecker(new OverlappingBinnedDotProduct());
+        Assert.assertEquals(cdf.probability(0.3, 10), overlappingCdf.probability(0.3, 10), 0);
+    }
 }
@@ -81,4 +81,44 @@ public class ConsensusSpectrumBuilderTests {
 
         Assert.assertTrue(dotProduct >= 0.8);
     }
+
+    @Test
+    public void testBatchedRemoveSpectra() {
+        // stay below ConsensusSpectrum.SIZE_TO_ADD_EVERY_TIME so that all peaks are added immediately
+        List<ISpectrum> spectra = ClusteringTestUtilities.readISpectraFromResource().subList(0, 60);
+        List<ISpectrum> retained = spectra.subList(0, 30);
+        List<ISpectrum> removed = spectra.subList(30, 60);
+
+        IConsensusSpectrumBuilder expectedBuilder = ConsensusSpectrum.buildFactory().getConsensusSpectrumBuilder();
+        IConsensusSpectrumBuilder batchedBuilder = ConsensusSpectrum.buildFactory().getConsensusSpectrumBuilder();
+        IConsensusSpectrumBuilder singleBuilder = ConsensusSpectrum.buildFactory().getConsensusSpectrumBuilder();
+
+        for (ISpectrum s : retained) {
+            expectedBuilder.addSpectra(s);
+            batchedBuilder.addSpectra(s);
+            singleBuilder.addSpectra(s);
+        }
+        for (ISpectrum s : removed) {
+            batchedBuilder.addSpectra(s);
+            singleBuilder.addSpectra(s);
+        }
+
+        batchedBuilder.removeSpectra(removed.toArray(new ISpectrum[removed.size()]));
+        for (ISpectrum s : removed)
+            singleBuilder.removeSpectra(s);
+
+        ISpectrum expectedSpec = expectedBuilder.getConsensusSpectrum();
+        ISpectrum batchedSpec = batchedBuilder.getConsensusSpectrum();
+        ISpectrum singleSpec = singleBuilder.getConsensusSpectrum();
+
+        Assert.assertEquals(retained.size(), batchedBuilder.getSpectraCount());
+        Assert.assertEquals(expectedSpec.getPeaksCount(), batchedSpec.getPeaksCount());
+        Assert.assertEquals(expectedSpec.getPeaksCount(), singleSpec.getPeaksCount());
+
+        // removing the spectra at once or one by one leads to the same consensus spectrum
+        Assert.assertTrue(ClusteringTestUtilities.areNewPeakListsEquivalent(singleSpec.getPeaks(), batchedSpec.getPeaks(), false));
+
+        ISimilarityChecker similarityChecker = new FrankEtAlDotProduct(0.1F, 15, true);
+        Assert.assertEquals(1, similarityChecker.assessSimilarity(expectedSpec, batchedSpec), 0.0001);
+    }
 }
@@ -34,6 +34,7 @@ public class JohannesConsensusSpectrum implements IConsensusSpectrumBuilder {
     private final String id;
     protected int nSpectra = 0;
     protected boolean isDirty = false;
+    private long versionStamp = ConsensusVersionStamps.next();
     protected float averagePrecursorMz = 0;
     protected float sumPrecursorMz = 0;
     protected float averagePrecursorIntens = 0;
@@ -257,6 +258,14 @@ public class JohannesConsensusSpectrum implements IConsensusSpectrumBuilder {
 
     protected void setIsDirty(boolean isDirty) {
         this.isDirty = isDirty;
+        // every change of the consensus spectrum marks it as dirty
+        if (isDirty)
+            versionStamp = ConsensusVersionStamps.next();
+    }
+
+    @Override
+    public long getVersionStamp() {
+        return versionStamp;
     }
 
     /**
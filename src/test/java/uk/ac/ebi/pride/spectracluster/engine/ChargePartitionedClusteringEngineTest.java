@@ -0,0 +1,96 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.similarity.CombinedFisherIntensityTest;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.util.ClusterUtilities;
+import uk.ac.ebi.pride.spectracluster.util.ClusteringTestUtilities;
+import uk.ac.ebi.pride.spectracluster.util.Defaults;
+import uk.ac.ebi.pride.spectracluster.util.IDefaultingFactory;
+import uk.ac.ebi.pride.spectracluster.util.function.peak.FractionTICPeakFunction;
+
+import java.util.*;
+
+public class ChargePartitionedClusteringEngineTest {
+    private static final float WINDOW_SIZE = 4F;
+
+    private List<ISpectrum> testSpectra;
+    private IDefaultingFactory<IIncrementalClusteringEngine> engineFactory;
+
+    @Before
+    public void setUp() {
+        testSpectra = ClusteringTestUtilities.readSpectraSortedByPrecursorMz();
+
+        engineFactory = EngineFactories.buildGreedyIncrementalClusteringEngineFactory(new CombinedFisherIntensityTest(0.5F),
+                Defaults.getDefaultSpectrumComparator(), 0.95, WINDOW_SIZE, new FractionTICPeakFunction(0.5F, 20), null);
+    }
+
+    @Test
+    public void testPartitionedClustering() {
+        ChargePartitionedClusteringEngine engine = new ChargePartitionedClusteringEngine(engineFactory, WINDOW_SIZE, 5);
+        List<ICluster> clusters = new ArrayList<ICluster>();
+        for (ISpectrum spectrum : testSpectra) {
+            clusters.addAll(engine.addClusterIncremental(ClusterUtilities.asCluster(spectrum)));
+        }
+        clusters.addAll(engine.getClusters());
+        engine.shutdown();
+
+        // the returned clusters are in m/z order
+        for (int i = 1; i < clusters.size(); i++) {
+            Assert.assertTrue(clusters.get(i - 1).getPrecursorMz() <= clusters.get(i).getPrecursorMz());
+        }
+
+        // every charge state is clustered separately
+        Map<Integer, IIncrementalClusteringEngine> chargeEngines = new HashMap<Integer, IIncrementalClusteringEngine>();
+        List<ICluster> expectedClusters = new ArrayList<ICluster>();
+        for (ISpectrum spectrum : testSpectra) {
+            IIncrementalClusteringEngine chargeEngine = chargeEngines.get(spectrum.getPrecursorCharge());
+            if (chargeEngine == null) {
+                chargeEngine = engineFactory.buildInstance();
+                chargeEngines.put(spectrum.getPrecursorCharge(), chargeEngine);
+            }
+            expectedClusters.addAll(chargeEngine.addClusterIncremental(ClusterUtilities.asCluster(spectrum)));
+        }
+        for (IIncrementalClusteringEngine chargeEngine : chargeEngines.values()) {
+            expectedClusters.addAll(chargeEngine.getClusters());
+        }
+
+        Assert.assertEquals(chargeEngines.size(), engine.getPartitionCount());
+        Assert.assertEquals(ClusteringTestUtilities.getSortedClusterDescriptions(expectedClusters, false),
+                ClusteringTestUtilities.getSortedClusterDescriptions(clusters, false));
+    }
+
+    @Test
+    public void testChargeGroups() {
+        Set<Integer> charges = new HashSet<Integer>();
+        for (ISpectrum spectrum : testSpectra) {
+            charges.add(spectrum.getPrecursorCharge());
+        }
+        int[] allCharges = new int[charges.size()];
+        int index = 0;
+        for (int charge : charges) {
+            allCharges[index++] = charge;
+        }
+
+        // a single group must give the same result as a single engine
+        ChargePartitionedClusteringEngine engine = new ChargePartitionedClusteringEngine(engineFactory, WINDOW_SIZE,
+                ChargePartitionedClusteringEngine.DEFAULT_MAX_QUEUED_CLUSTERS, allCharges);
+        IIncrementalClusteringEngine singleEngine = engineFactory.buildInstance();
+        List<ICluster> clusters = new ArrayList<ICluster>();
+        List<ICluster> expectedClusters = new ArrayList<ICluster>();
+        for (ISpectrum spectrum : testSpectra) {
+            clusters.addAll(engine.addClusterIncremental(ClusterUtilities.asCluster(spectrum)));
+            expectedClusters.addAll(singleEngine.addClusterIncremental(ClusterUtilities.asCluster(spectrum)));
+        }
+        clusters.addAll(engine.getClusters());
+        expectedClusters.addAll(singleEngine.getClusters());
+        engine.shutdown();
+
+        Assert.assertEquals(1, engine.getPartitionCount());
+        Assert.assertEquals(ClusteringTestUtilities.getSortedClusterDescriptions(expectedClusters, false),
+                ClusteringTestUtilities.getSortedClusterDescriptions(clusters, false));
+    }
+}
@@ -0,0 +1,86 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.util.ClusterUtilities;
+import uk.ac.ebi.pride.spectracluster.util.ClusteringTestUtilities;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.*;
+
+public class ClusteringCheckpointerTest {
+    private List<ISpectrum> testSpectra;
+    private File checkpointFile;
+
+    @Before
+    public void setUp() throws Exception {
+        testSpectra = ClusteringTestUtilities.readSpectraSortedByPrecursorMz();
+
+        checkpointFile = File.createTempFile("clustering", ".checkpoint");
+    }
+
+    @After
+    public void tearDown() {
+        checkpointFile.delete();
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        // the reference run without interruption
+        List<ICluster> expectedClusters = new ArrayList<ICluster>();
+        GreedyIncrementalClusteringEngine referenceEngine = ClusteringTestUtilities.createGreedyTestEngine();
+        for (ISpectrum spectrum : testSpectra) {
+            expectedClusters.addAll(referenceEngine.addClusterIncremental(ClusterUtilities.asCluster(spectrum)));
+        }
+        expectedClusters.addAll(referenceEngine.getClusters());
+
+        // a run that stops after half of the spectra
+        List<ICluster> output = new ArrayList<ICluster>();
+        GreedyIncrementalClusteringEngine failingEngine = ClusteringTestUtilities.createGreedyTestEngine();
+        ClusteringCheckpointer checkpointer = new ClusteringCheckpointer(failingEngine, checkpointFile, 0.5);
+        for (int i = 0; i < testSpectra.size() / 2; i++) {
+            output.addAll(failingEngine.addClusterIncremental(ClusterUtilities.asCluster(testSpectra.get(i))));
+            checkpointer.checkpointIfDue(i + 1, output.size());
+        }
+        Assert.assertTrue(checkpointer.getCheckpointCount() > 1);
+
+        // simulate a partially written checkpoint
+        RandomAccessFile file = new RandomAccessFile(checkpointFile, "rw");
+        long validLength = file.length();
+        file.seek(validLength);
+        file.writeInt(0x43484b50);
+        file.writeInt(1000);
+        file.close();
+
+        GreedyIncrementalClusteringEngine resumedEngine = ClusteringTestUtilities.createGreedyTestEngine();
+        ClusteringCheckpointer resumedCheckpointer = new ClusteringCheckpointer(resumedEngine, checkpointFile, 0.5);
+        ClusteringCheckpoint checkpoint = resumedCheckpointer.resume();
+        Assert.assertNotNull(checkpoint);
+        Assert.assertEquals(validLength, checkpointFile.length());
+        Assert.assertTrue(resumedEngine.size() > 0);
+        Assert.assertEquals(checkpoint.getClusters().size(), resumedEngine.size());
+        Assert.assertTrue(checkpoint.getInputOffset() <= testSpectra.size() / 2);
+
+        output = output.subList(0, (int) checkpoint.getOutputOffset());
+        for (int i = (int) checkpoint.getInputOffset(); i < testSpectra.size(); i++) {
+            output.addAll(resumedEngine.addClusterIncremental(ClusterUtilities.asCluster(testSpectra.get(i))));
+            resumedCheckpointer.checkpointIfDue(i + 1, output.size());
+        }
+        output.addAll(resumedEngine.getClusters());
+
+        Assert.assertEquals(ClusteringTestUtilities.getSortedClusterDescriptions(expectedClusters, true),
+                ClusteringTestUtilities.getSortedClusterDescriptions(output, true));
+    }
+
+    @Test
+    public void testResumeWithoutCheckpoint() throws Exception {
+        checkpointFile.delete();
+        ClusteringCheckpointer checkpointer = new ClusteringCheckpointer(ClusteringTestUtilities.createGreedyTestEngine(), checkpointFile);
+        Assert.assertNull(checkpointer.resume());
+    }
+}
@@ -0,0 +1,138 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.similarity.FrankEtAlDotProduct;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.spectrum.Spectrum;
+import uk.ac.ebi.pride.spectracluster.util.ClusterUtilities;
+import uk.ac.ebi.pride.spectracluster.util.ClusteringTestUtilities;
+import uk.ac.ebi.pride.spectracluster.util.Defaults;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ClusteringEngineTest {
+    private List<ISpectrum> spectra;
+
+    @Before
+    public void setUp() {
+        spectra = ClusteringTestUtilities.readISpectraFromResource();
+    }
+
+    @Test
+    public void testMergeIdenticalSpectra() {
+        ClusteringEngine engine = createEngine();
+        ISpectrum spectrum = spectra.get(0);
+
+        for (int i = 0; i < 2; i++) {
+            ISpectrum copy = new Spectrum("copy" + i, spectrum.getPrecursorCharge(), spectrum.getPrecursorMz() + i * 0.1F,
+                    Defaults.getDefaultQualityScorer(), spectrum.getPeaks());
+            engine.internalGetClusters().add(ClusterUtilities.asCluster(copy));
+        }
+
+        Assert.assertTrue(engine.mergeAllClusters());
+        List<ICluster> clusters = engine.getClusters();
+        Assert.assertEquals(1, clusters.size());
+        Assert.assertEquals(2, clusters.get(0).getClusteredSpectraCount());
+    }
+
+    @Test
+    public void testPrecursorTolerance() {
+        ClusteringEngine engine = createEngine();
+        ISpectrum spectrum = spectra.get(0);
+
+        for (int i = 0; i < 3; i++) {
+            ISpectrum copy = new Spectrum("copy" + i, spectrum.getPrecursorCharge(), spectrum.getPrecursorMz() + i * 10,
+                    Defaults.getDefaultQualityScorer(), spectrum.getPeaks());
+            engine.internalGetClusters().add(ClusterUtilities.asCluster(copy));
+        }
+
+        Assert.assertFalse(engine.mergeAllClusters());
+        Assert.assertEquals(3, engine.getClusters().size());
+    }
+
+    @Test
+    public void testDeterministic() {
+        ClusteringEngine firstEngine = mergeTestSpectra();
+        ClusteringEngine secondEngine = mergeTestSpectra();
+
+        Assert.assertEquals(getClusterSizes(firstEngine), getClusterSizes(secondEngine));
+    }
+
+    @Test
+    public void testNoMergeablePairsLeft() {
+        ClusteringEngine engine = mergeTestSpectra();
+        FrankEtAlDotProduct similarityChecker = new FrankEtAlDotProduct(0.5F);
+        List<ICluster> clusters = engine.getClusters();
+
+        for (int i = 0; i < clusters.size(); i++) {
+            for (int j = i + 1; j < clusters.size(); j++) {
+                double similarity = similarityChecker.assessSimilarity(clusters.get(i).getConsensusSpectrum(), clusters.get(j).getConsensusSpectrum());
+                Assert.assertTrue(similarity < 0.7);
+            }
+        }
+    }
+
+    @Test
+    public void testParallelDemerge() {
+        ClusteringEngine sequentialEngine = createDemergeEngine();
+        ClusteringEngine parallelEngine = createDemergeEngine();
+        parallelEngine.setDemergeThreads(4);
+
+        Assert.assertTrue(sequentialEngine.demergeNoneFittingSpectra());
+        Assert.assertTrue(parallelEngine.demergeNoneFittingSpectra());
+
+        Assert.assertEquals(getSpectrumIds(sequentialEngine.internalGetClusters()), getSpectrumIds(parallelEngine.internalGetClusters()));
+        Assert.assertEquals(getSpectrumIds(sequentialEngine.getClustersToAdd()), getSpectrumIds(parallelEngine.getClustersToAdd()));
+    }
+
+    /**
+     * creates an engine with clusters of 10 unrelated spectra each
+     */
+    private ClusteringEngine createDemergeEngine() {
+        ClusteringEngine engine = createEngine();
+
+        for (int start = 0; start + 10 <= spectra.size(); start += 10) {
+            ICluster cluster = ClusterUtilities.asCluster(spectra.get(start));
+            for (int i = start + 1; i < start + 10; i++) {
+                cluster.addSpectra(spectra.get(i));
+            }
+            engine.internalGetClusters().add(cluster);
+        }
+
+        return engine;
+    }
+
+    private static List<String> getSpectrumIds(List<ICluster> clusters) {
+        List<String> ids = new ArrayList<String>();
+        for (ICluster cluster : clusters) {
+            ids.add(cluster.getSpectralId());
+        }
+        return ids;
+    }
+
+    private ClusteringEngine mergeTestSpectra() {
+        ClusteringEngine engine = new ClusteringEngine(new FrankEtAlDotProduct(0.5F), Defaults.getDefaultSpectrumComparator(), 0.7, 0.6, 1000);
+        for (ISpectrum spectrum : spectra) {
+            engine.internalGetClusters().add(ClusterUtilities.asCluster(spectrum));
+        }
+        engine.mergeAllClusters();
+
+        return engine;
+    }
+
+    private static List<Integer> getClusterSizes(ClusteringEngine engine) {
+        List<Integer> sizes = new ArrayList<Integer>();
+        for (ICluster cluster : engine.getClusters()) {
+            sizes.add(cluster.getClusteredSpectraCount());
+        }
+        return sizes;
+    }
+
+    private static ClusteringEngine createEngine() {
+        return new ClusteringEngine(new FrankEtAlDotProduct(0.5F), Defaults.getDefaultSpectrumComparator(), 0.99, 0.6, 2);
+    }
+}
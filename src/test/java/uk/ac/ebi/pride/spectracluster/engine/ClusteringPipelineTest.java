@@ -0,0 +1,104 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.io.MGFSpectrumAppender;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.util.ClusterCreateListener;
+import uk.ac.ebi.pride.spectracluster.util.ClusterUtilities;
+import uk.ac.ebi.pride.spectracluster.util.ClusteringTestUtilities;
+import uk.ac.ebi.pride.spectracluster.util.Defaults;
+
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.util.*;
+
+public class ClusteringPipelineTest {
+    private List<ISpectrum> testSpectra;
+
+    @Before
+    public void setUp() {
+        testSpectra = ClusteringTestUtilities.readSpectraSortedByPrecursorMz();
+    }
+
+    @Test
+    public void testSpectraPipeline() {
+        CollectingListener listener = new CollectingListener();
+        ClusteringPipeline pipeline = new ClusteringPipeline(ClusteringTestUtilities.createGreedyTestEngine(), Defaults.getDefaultPeakFilter(), 4, 5);
+        pipeline.process(testSpectra, listener);
+
+        Assert.assertEquals(1, listener.nStarted);
+        Assert.assertEquals(1, listener.nFinished);
+        Assert.assertEquals(getSequentialResult(), ClusteringTestUtilities.getClusterDescriptions(listener.clusters, false));
+
+        List<PipelineStageMetrics> metrics = pipeline.getStageMetrics();
+        Assert.assertEquals(4, metrics.size());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(testSpectra.size(), metrics.get(i).getProcessedItems());
+        }
+        Assert.assertEquals(listener.clusters.size(), metrics.get(3).getProcessedItems());
+        Assert.assertTrue(metrics.get(1).getMaximumQueueDepth() <= 5);
+    }
+
+    @Test
+    public void testMGFPipeline() {
+        StringBuilder mgf = new StringBuilder();
+        for (ISpectrum spectrum : testSpectra) {
+            MGFSpectrumAppender.INSTANCE.appendSpectrum(mgf, spectrum);
+        }
+
+        CollectingListener listener = new CollectingListener();
+        ClusteringPipeline pipeline = new ClusteringPipeline(ClusteringTestUtilities.createGreedyTestEngine(), Defaults.getDefaultPeakFilter(), 3, 10);
+        pipeline.process(new LineNumberReader(new StringReader(mgf.toString())), listener);
+
+        Assert.assertEquals(getSequentialResult(), ClusteringTestUtilities.getClusterDescriptions(listener.clusters, false));
+    }
+
+    @Test
+    public void testUnsortedInput() {
+        List<ISpectrum> unsortedSpectra = new ArrayList<ISpectrum>(testSpectra);
+        Collections.reverse(unsortedSpectra);
+
+        try {
+            new ClusteringPipeline(ClusteringTestUtilities.createGreedyTestEngine()).process(unsortedSpectra, new CollectingListener());
+            Assert.fail("Unsorted input must fail");
+        } catch (IllegalStateException e) {
+            // expected, the engine requires ascending m/z values
+        }
+    }
+
+    private List<String> getSequentialResult() {
+        GreedyIncrementalClusteringEngine engine = ClusteringTestUtilities.createGreedyTestEngine();
+        List<ICluster> clusters = new ArrayList<ICluster>();
+        for (ISpectrum spectrum : testSpectra) {
+            ISpectrum filteredSpectrum = Defaults.getDefaultPeakFilter().apply(spectrum);
+            clusters.addAll(engine.addClusterIncremental(ClusterUtilities.asCluster(filteredSpectrum)));
+        }
+        clusters.addAll(engine.getClusters());
+
+        return ClusteringTestUtilities.getClusterDescriptions(clusters, false);
+    }
+
+    private static class CollectingListener implements ClusterCreateListener {
+        private final List<ICluster> clusters = new ArrayList<ICluster>();
+        private int nStarted;
+        private int nFinished;
+
+        @Override
+        public void onClusterStarted(Object... otherData) {
+            nStarted++;
+        }
+
+        @Override
+        public void onClusterCreate(ICluster cluster, Object... otherData) {
+            clusters.add(cluster);
+        }
+
+        @Override
+        public void onClusterCreateFinished(Object... otherData) {
+            nFinished++;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.util.ClusterUtilities;
+import uk.ac.ebi.pride.spectracluster.util.ClusteringTestUtilities;
+import uk.ac.ebi.pride.spectracluster.util.Log2Histogram;
+
+import java.util.List;
+import java.util.Map;
+
+public class EngineMetricsTest {
+    private List<ISpectrum> testSpectra;
+
+    @Before
+    public void setUp() {
+        testSpectra = ClusteringTestUtilities.readSpectraSortedByPrecursorMz();
+    }
+
+    @Test
+    public void testGreedyEngineMetrics() {
+        GreedyIncrementalClusteringEngine engine = ClusteringTestUtilities.createGreedyTestEngine();
+
+        for (ISpectrum spectrum : testSpectra) {
+            engine.addClusterIncremental(ClusterUtilities.asCluster(spectrum));
+        }
+
+        EngineMetricsSnapshot snapshot = engine.getMetrics().getSnapshot();
+        Assert.assertEquals(testSpectra.size(), snapshot.getAddedClusters());
+        // every added cluster is either merged or creates a new cluster
+        Assert.assertEquals(snapshot.getAddedClusters(), snapshot.getAcceptedMerges() + snapshot.getCreatedClusters());
+        Assert.assertEquals(engine.getClusters().size(), snapshot.getCreatedClusters());
+        Assert.assertEquals(engine.size(), snapshot.getWindowSize());
+        Assert.assertTrue(snapshot.getMaximumWindowSize() >= snapshot.getWindowSize());
+        Assert.assertTrue(snapshot.getComparisons() > 0);
+        Assert.assertEquals(snapshot.getComparisons(), snapshot.getComparisonTiming().getCount());
+        Assert.assertEquals(snapshot.getAddedClusters(), snapshot.getConsensusUpdateTiming().getCount());
+
+        Map<String, Long> values = snapshot.asMap();
+        Assert.assertEquals(snapshot.getAcceptedMerges(), (long) values.get("accepted_merges"));
+
+        engine.getMetrics().reset();
+        Assert.assertEquals(0, engine.getMetrics().getSnapshot().getComparisons());
+    }
+
+    @Test
+    public void testHistogramQuantiles() {
+        Log2Histogram histogram = new Log2Histogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(100);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(5000);
+        }
+
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(59000, histogram.getTotal());
+        Assert.assertEquals(64, histogram.getQuantile(0.5));
+        Assert.assertEquals(4096, histogram.getQuantile(0.99));
+        Assert.assertEquals(0, new Log2Histogram().getQuantile(0.5));
+    }
+}
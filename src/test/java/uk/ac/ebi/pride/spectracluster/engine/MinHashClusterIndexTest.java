@@ -0,0 +1,84 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.util.ClusterUtilities;
+import uk.ac.ebi.pride.spectracluster.util.ClusteringTestUtilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+public class MinHashClusterIndexTest {
+    private List<ISpectrum> testSpectra;
+
+    @Before
+    public void setUp() {
+        testSpectra = ClusteringTestUtilities.readSpectraSortedByPrecursorMz();
+    }
+
+    @Test
+    public void testAddAndRemove() {
+        MinHashClusterIndex index = new MinHashClusterIndex();
+        List<ICluster> clusters = new ArrayList<ICluster>();
+
+        for (ISpectrum spectrum : testSpectra) {
+            ICluster cluster = ClusterUtilities.asCluster(spectrum);
+            clusters.add(cluster);
+            index.add(cluster);
+        }
+        Assert.assertEquals(clusters.size(), index.size());
+
+        // a cluster with the same spectrum is always a candidate
+        ICluster query = ClusterUtilities.asCluster(testSpectra.get(0));
+        Set<ICluster> candidates = index.getCandidates(query);
+        Assert.assertTrue(candidates.contains(clusters.get(0)));
+
+        // indexed clusters are not returned as their own candidate
+        Assert.assertFalse(index.getCandidates(clusters.get(0)).contains(clusters.get(0)));
+
+        index.remove(clusters.get(0));
+        Assert.assertEquals(clusters.size() - 1, index.size());
+        Assert.assertFalse(index.getCandidates(query).contains(clusters.get(0)));
+
+        index.clear();
+        Assert.assertEquals(0, index.size());
+        Assert.assertTrue(index.getCandidates(query).isEmpty());
+    }
+
+    @Test
+    public void testSignature() {
+        MinHashClusterIndex index = new MinHashClusterIndex(4, 3);
+
+        long[] signature1 = index.calculateSignature(new int[]{200, 300, 400});
+        long[] signature2 = index.calculateSignature(new int[]{400, 200, 300});
+        Assert.assertEquals(12, signature1.length);
+        Assert.assertArrayEquals(signature1, signature2);
+    }
+
+    @Test
+    public void testEngineRecall() {
+        GreedyIncrementalClusteringEngine indexEngine = ClusteringTestUtilities.createGreedyTestEngine();
+        GreedyIncrementalClusteringEngine measuringEngine = ClusteringTestUtilities.createGreedyTestEngine();
+        indexEngine.setCandidateIndex(new MinHashClusterIndex(), false);
+        measuringEngine.setCandidateIndex(new MinHashClusterIndex(), true);
+
+        for (ISpectrum spectrum : testSpectra) {
+            indexEngine.addClusterIncremental(ClusterUtilities.asCluster(spectrum));
+            measuringEngine.addClusterIncremental(ClusterUtilities.asCluster(spectrum));
+        }
+
+        // measuring the recall must not change the result
+        Assert.assertEquals(indexEngine.getClusters().size(), measuringEngine.getClusters().size());
+        Assert.assertEquals(indexEngine.size(), indexEngine.getCandidateIndex().size());
+
+        CandidateRecallStatistics statistics = measuringEngine.getCandidateRecallStatistics();
+        Assert.assertEquals(testSpectra.size() - 1, statistics.getQueries());
+        Assert.assertTrue(statistics.getBruteForceMatches() > 0);
+        Assert.assertTrue(statistics.getRecall() > 0 && statistics.getRecall() <= 1);
+        Assert.assertTrue(statistics.getCandidateFraction() <= 1);
+    }
+}
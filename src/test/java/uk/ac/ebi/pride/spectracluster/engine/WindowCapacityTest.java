@@ -0,0 +1,105 @@
+package uk.ac.ebi.pride.spectracluster.engine;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.spectrum.Spectrum;
+import uk.ac.ebi.pride.spectracluster.util.ClusterUtilities;
+import uk.ac.ebi.pride.spectracluster.util.ClusteringTestUtilities;
+import uk.ac.ebi.pride.spectracluster.util.Defaults;
+
+import java.util.List;
+
+public class WindowCapacityTest {
+    private List<ISpectrum> testSpectra;
+
+    @Before
+    public void setUp() {
+        testSpectra = ClusteringTestUtilities.readSpectraSortedByPrecursorMz();
+    }
+
+    @Test
+    public void testUncappedWindow() {
+        GreedyIncrementalClusteringEngine engine = ClusteringTestUtilities.createGreedyTestEngine();
+        int nSpectra = clusterAll(engine, Integer.MAX_VALUE, Long.MAX_VALUE);
+
+        Assert.assertEquals(testSpectra.size(), nSpectra);
+        Assert.assertEquals(0, engine.getWindowCapacityStatistics().getAddedClusters());
+        Assert.assertEquals(0, engine.getMetrics().getSnapshot().getCapacityEvictedClusters());
+    }
+
+    @Test
+    public void testMaximumWindowClusters() {
+        for (GreedyIncrementalClusteringEngine.CapacityEvictionPolicy policy : GreedyIncrementalClusteringEngine.CapacityEvictionPolicy.values()) {
+            GreedyIncrementalClusteringEngine engine = ClusteringTestUtilities.createGreedyTestEngine();
+            engine.setMaximumWindowClusters(5);
+            engine.setCapacityEvictionPolicy(policy);
+
+            // no spectrum may get lost through the evictions
+            int nSpectra = clusterAll(engine, 5, Long.MAX_VALUE);
+            Assert.assertEquals(testSpectra.size(), nSpectra);
+
+            WindowCapacityStatistics statistics = engine.getWindowCapacityStatistics();
+            Assert.assertEquals(testSpectra.size(), statistics.getAddedClusters());
+            Assert.assertTrue(statistics.getEvictedClusters() > 0);
+            Assert.assertTrue(statistics.getMissedComparisons() >= statistics.getAffectedAdditions());
+            Assert.assertTrue(statistics.getAffectedAdditions() > 0);
+            Assert.assertEquals(statistics.getEvictedClusters(), engine.getMetrics().getSnapshot().getCapacityEvictedClusters());
+        }
+    }
+
+    @Test
+    public void testMaximumWindowMemory() {
+        GreedyIncrementalClusteringEngine engine = ClusteringTestUtilities.createGreedyTestEngine();
+        long maximumMemory = 20000;
+        engine.setMaximumWindowMemory(maximumMemory);
+
+        int nSpectra = clusterAll(engine, Integer.MAX_VALUE, maximumMemory);
+        Assert.assertEquals(testSpectra.size(), nSpectra);
+        Assert.assertTrue(engine.getWindowCapacityStatistics().getEvictedClusters() > 0);
+    }
+
+    @Test
+    public void testRunningWindowMemory() {
+        GreedyIncrementalClusteringEngine engine = ClusteringTestUtilities.createGreedyTestEngine();
+        clusterAll(engine, Integer.MAX_VALUE, Long.MAX_VALUE);
+        Assert.assertTrue(engine.estimateWindowMemory() > 0);
+
+        // a spectrum outside the window removes all clusters, only its own memory must remain
+        ISpectrum lastSpectrum = testSpectra.get(testSpectra.size() - 1);
+        ISpectrum distantSpectrum = new Spectrum(lastSpectrum.getId(), lastSpectrum.getPrecursorCharge(), lastSpectrum.getPrecursorMz() + 100,
+                Defaults.getDefaultQualityScorer(), lastSpectrum.getPeaks());
+        engine.addClusterIncremental(ClusterUtilities.asCluster(distantSpectrum));
+
+        GreedyIncrementalClusteringEngine singleClusterEngine = ClusteringTestUtilities.createGreedyTestEngine();
+        singleClusterEngine.addClusterIncremental(ClusterUtilities.asCluster(distantSpectrum));
+        Assert.assertEquals(1, engine.size());
+        Assert.assertEquals(singleClusterEngine.estimateWindowMemory(), engine.estimateWindowMemory());
+    }
+
+    /**
+     * Adds all test spectra and checks the window's limits after every addition.
+     *
+     * @return the number of spectra in all returned and remaining clusters
+     */
+    private int clusterAll(GreedyIncrementalClusteringEngine engine, int maximumClusters, long maximumMemory) {
+        int nSpectra = 0;
+
+        for (ISpectrum spectrum : testSpectra) {
+            for (ICluster evictedCluster : engine.addClusterIncremental(ClusterUtilities.asCluster(spectrum))) {
+                nSpectra += evictedCluster.getClusteredSpectraCount();
+            }
+
+            Assert.assertTrue(engine.size() <= maximumClusters);
+            Assert.assertTrue(engine.size() == 1 || engine.estimateWindowMemory() <= maximumMemory);
+        }
+
+        for (ICluster cluster : engine.getClusters()) {
+            nSpectra += cluster.getClusteredSpectraCount();
+        }
+
+        return nSpectra;
+    }
+}
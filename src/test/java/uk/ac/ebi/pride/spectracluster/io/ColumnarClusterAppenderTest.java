@@ -0,0 +1,156 @@
+package uk.ac.ebi.pride.spectracluster.io;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.spectrum.KnownProperties;
+import uk.ac.ebi.pride.spectracluster.util.ClusterUtilities;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.*;
+
+public class ColumnarClusterAppenderTest {
+    private List<ICluster> clusters;
+    private File outputFile;
+
+    @Before
+    public void setUp() throws Exception {
+        File testFile = new File(ColumnarClusterAppenderTest.class.getClassLoader().getResource("spectra_400.0_4.0.mgf").toURI());
+        List<ISpectrum> testSpectra = new ArrayList<ISpectrum>();
+        Collections.addAll(testSpectra, ParserUtilities.readMGFScans(testFile));
+        Collections.sort(testSpectra, new Comparator<ISpectrum>() {
+            @Override
+            public int compare(ISpectrum o1, ISpectrum o2) {
+                return Float.compare(o1.getPrecursorMz(), o2.getPrecursorMz());
+            }
+        });
+
+        // one cluster per spectrum, every third cluster also contains the next spectrum
+        clusters = new ArrayList<ICluster>();
+        for (int i = 0; i < testSpectra.size(); i++) {
+            ICluster cluster = ClusterUtilities.asCluster(testSpectra.get(i));
+            if (i % 3 == 0 && i + 1 < testSpectra.size()) {
+                cluster.addSpectra(testSpectra.get(i + 1));
+                cluster.setProperty(KnownProperties.PEPTIDE_PURITY_STRING, "PEPTIDE:" + i);
+            }
+            clusters.add(cluster);
+        }
+
+        outputFile = File.createTempFile("clusters", ".col");
+    }
+
+    @After
+    public void tearDown() {
+        outputFile.delete();
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        writeClusters(7);
+
+        ColumnarClusterReader reader = new ColumnarClusterReader(outputFile);
+        try {
+            Assert.assertEquals((clusters.size() + 6) / 7, reader.getChunks().size());
+
+            List<ColumnarClusterReader.Chunk> chunks = reader.readChunks(-Float.MAX_VALUE, Float.MAX_VALUE);
+            int clusterIndex = 0;
+            for (ColumnarClusterReader.Chunk chunk : chunks) {
+                for (int row = 0; row < chunk.getRowCount(); row++) {
+                    ICluster cluster = clusters.get(clusterIndex++);
+                    Assert.assertEquals(cluster.getId(), chunk.getIds()[row]);
+                    Assert.assertEquals(cluster.getPrecursorMz(), chunk.getPrecursorMzs()[row], 0);
+                    Assert.assertEquals(cluster.getPrecursorCharge(), chunk.getCharges()[row]);
+                    Assert.assertEquals(cluster.getClusteredSpectraCount(), chunk.getSizes()[row]);
+                    Assert.assertEquals(cluster.getProperty(KnownProperties.PEPTIDE_PURITY_STRING), chunk.getPurities()[row]);
+
+                    List<IPeak> peaks = cluster.getConsensusSpectrum().getPeaks();
+                    float[] mzValues = chunk.getConsensusMzs(row);
+                    float[] intensities = chunk.getConsensusIntensities(row);
+                    Assert.assertEquals(peaks.size(), mzValues.length);
+                    for (int i = 0; i < peaks.size(); i++) {
+                        Assert.assertEquals(peaks.get(i).getMz(), mzValues[i], 0);
+                        Assert.assertEquals(peaks.get(i).getIntensity(), intensities[i], 0);
+                    }
+
+                    Assert.assertEquals(cluster.getClusteredSpectraCount(), chunk.getMemberIds(row).length);
+                    Assert.assertEquals(cluster.getClusteredSpectra().get(0).getId(), chunk.getMemberIds(row)[0]);
+                }
+            }
+            Assert.assertEquals(clusters.size(), clusterIndex);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testProjectionAndSkipping() throws Exception {
+        writeClusters(10);
+
+        ColumnarClusterReader fullReader = new ColumnarClusterReader(outputFile);
+        ColumnarClusterReader projectingReader = new ColumnarClusterReader(outputFile);
+        try {
+            List<ColumnarClusterReader.ChunkMetadata> allChunks = fullReader.getChunks();
+            ColumnarClusterReader.ChunkMetadata firstChunk = allChunks.get(0);
+            float maxMz = firstChunk.getMaxMz();
+
+            fullReader.readChunks(-Float.MAX_VALUE, Float.MAX_VALUE);
+            List<ColumnarClusterReader.Chunk> chunks = projectingReader.readChunks(-Float.MAX_VALUE, maxMz,
+                    ClusterColumn.PRECURSOR_MZ, ClusterColumn.SIZE);
+
+            // clusters are written in m/z order, only the chunks up to maxMz must be read
+            Assert.assertTrue(chunks.size() < allChunks.size());
+            Assert.assertTrue(projectingReader.getBytesRead() < fullReader.getBytesRead());
+
+            ColumnarClusterReader.Chunk chunk = chunks.get(0);
+            Assert.assertTrue(chunk.hasColumn(ClusterColumn.SIZE));
+            Assert.assertFalse(chunk.hasColumn(ClusterColumn.ID));
+            Assert.assertEquals(firstChunk.getMinMz(), min(chunk.getPrecursorMzs()), 0);
+            try {
+                chunk.getIds();
+                Assert.fail("Column was not read");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        } finally {
+            fullReader.close();
+            projectingReader.close();
+        }
+    }
+
+    private void writeClusters(int chunkSize) throws Exception {
+        // sort by m/z so that the chunks' m/z ranges do not overlap
+        Collections.sort(clusters, new Comparator<ICluster>() {
+            @Override
+            public int compare(ICluster o1, ICluster o2) {
+                return Float.compare(o1.getPrecursorMz(), o2.getPrecursorMz());
+            }
+        });
+
+        OutputStream out = new FileOutputStream(outputFile);
+        try {
+            ColumnarClusterAppender appender = new ColumnarClusterAppender(out, chunkSize);
+            ClusterAppenderListener listener = new ClusterAppenderListener(null, appender);
+            listener.onClusterStarted();
+            for (ICluster cluster : clusters) {
+                listener.onClusterCreate(cluster);
+            }
+            listener.onClusterCreateFinished();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static float min(float[] values) {
+        float min = Float.MAX_VALUE;
+        for (float value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+}
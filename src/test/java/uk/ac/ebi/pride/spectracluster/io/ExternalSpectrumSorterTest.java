@@ -0,0 +1,91 @@
+package uk.ac.ebi.pride.spectracluster.io;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ExternalSpectrumSorterTest {
+    private List<ISpectrum> testSpectra;
+    private File tempDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        File testFile = new File(ExternalSpectrumSorterTest.class.getClassLoader().getResource("spectra_400.0_4.0.mgf").toURI());
+        testSpectra = new ArrayList<ISpectrum>();
+        for (ISpectrum spectrum : new MGFSpectrumIterable(testFile)) {
+            testSpectra.add(spectrum);
+        }
+
+        tempDirectory = File.createTempFile("sorter", "");
+        tempDirectory.delete();
+        tempDirectory.mkdir();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : tempDirectory.listFiles()) {
+            file.delete();
+        }
+        tempDirectory.delete();
+    }
+
+    @Test
+    public void testExternalSort() throws Exception {
+        // a small budget and fan-in force several runs and merge passes
+        ExternalSpectrumSorter sorter = new ExternalSpectrumSorter(tempDirectory, 50000, 3, ExternalSpectrumSorter.CHARGE_MZ_COMPARATOR);
+        ExternalSpectrumSorter.SortedSpectrumIterator iterator = sorter.sort(testSpectra);
+        Assert.assertTrue(tempDirectory.listFiles().length > 1);
+
+        List<ISpectrum> sortedSpectra = new ArrayList<ISpectrum>();
+        while (iterator.hasNext()) {
+            sortedSpectra.add(iterator.next());
+        }
+
+        List<ISpectrum> expectedSpectra = new ArrayList<ISpectrum>(testSpectra);
+        Collections.sort(expectedSpectra, ExternalSpectrumSorter.CHARGE_MZ_COMPARATOR);
+
+        Assert.assertEquals(expectedSpectra.size(), sortedSpectra.size());
+        for (int i = 0; i < expectedSpectra.size(); i++) {
+            Assert.assertEquals(expectedSpectra.get(i).getId(), sortedSpectra.get(i).getId());
+            Assert.assertEquals(expectedSpectra.get(i).getPeaks(), sortedSpectra.get(i).getPeaks());
+        }
+
+        // the runs are removed once all spectra were read
+        Assert.assertEquals(0, tempDirectory.listFiles().length);
+    }
+
+    @Test
+    public void testInMemorySort() throws Exception {
+        ExternalSpectrumSorter sorter = new ExternalSpectrumSorter(tempDirectory, ExternalSpectrumSorter.DEFAULT_MEMORY_BUDGET);
+        ExternalSpectrumSorter.SortedSpectrumIterator iterator = sorter.sort(testSpectra);
+        Assert.assertEquals(0, tempDirectory.listFiles().length);
+
+        ISpectrum lastSpectrum = null;
+        int nSpectra = 0;
+        while (iterator.hasNext()) {
+            ISpectrum spectrum = iterator.next();
+            if (lastSpectrum != null)
+                Assert.assertTrue(ExternalSpectrumSorter.CHARGE_MZ_COMPARATOR.compare(lastSpectrum, spectrum) <= 0);
+            lastSpectrum = spectrum;
+            nSpectra++;
+        }
+        Assert.assertEquals(testSpectra.size(), nSpectra);
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        ExternalSpectrumSorter sorter = new ExternalSpectrumSorter(tempDirectory, 50000);
+        ExternalSpectrumSorter.SortedSpectrumIterator iterator = sorter.sort(testSpectra);
+        iterator.next();
+        iterator.close();
+
+        Assert.assertEquals(0, tempDirectory.listFiles().length);
+    }
+}
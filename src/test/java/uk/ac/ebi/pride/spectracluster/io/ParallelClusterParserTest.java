@@ -0,0 +1,129 @@
+package uk.ac.ebi.pride.spectracluster.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.cluster.GreedySpectralCluster;
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.util.ClusterUtilities;
+import uk.ac.ebi.pride.spectracluster.util.ComparisonMatch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ParallelClusterParserTest {
+    @Test
+    public void testSameResultAsSequentialParser() throws Exception {
+        File clusterFile = File.createTempFile("clusters", ParserUtilities.CGF_EXTENSION);
+        try {
+            FileWriter writer = new FileWriter(clusterFile);
+            ISpectrum[] spectra = readTestSpectra();
+            for (int i = 0; i + 2 < spectra.length; i += 3) {
+                ICluster cluster = ClusterUtilities.asCluster(spectra[i]);
+                cluster.addSpectra(spectra[i + 1], spectra[i + 2]);
+                CGFClusterAppender.INSTANCE.appendCluster(writer, cluster);
+            }
+            writer.close();
+
+            ICluster[] expectedClusters = ParserUtilities.readSpectralCluster(clusterFile);
+            // small ranges to create many splits
+            ParallelClusterParser parser = new ParallelClusterParser(4, 5000, Charset.forName("UTF-8"));
+            List<ICluster> clusters = parser.parse(clusterFile);
+
+            assertSameClusters(expectedClusters, clusters);
+        } finally {
+            clusterFile.delete();
+        }
+    }
+
+    @Test
+    public void testRangeBoundaries() throws Exception {
+        File testFile = new File(ParallelClusterParserTest.class.getClassLoader().getResource("spectra_400.0_4.0.cgf").toURI());
+        ParallelClusterParser parser = new ParallelClusterParser(2, 10000, Charset.forName("UTF-8"));
+
+        FileInputStream inputStream = new FileInputStream(testFile);
+        try {
+            byte[] content = new byte[(int) testFile.length()];
+            Assert.assertEquals(content.length, inputStream.read(content));
+
+            long[] boundaries = parser.findRangeBoundaries(inputStream.getChannel());
+            Assert.assertTrue(boundaries.length > 2);
+            Assert.assertEquals(0, boundaries[0]);
+            Assert.assertEquals(testFile.length(), boundaries[boundaries.length - 1]);
+
+            for (int i = 1; i < boundaries.length - 1; i++) {
+                Assert.assertTrue(boundaries[i] > boundaries[i - 1]);
+                String line = new String(content, (int) boundaries[i], ParserUtilities.BEGIN_CLUSTER.length(), "UTF-8");
+                Assert.assertEquals(ParserUtilities.BEGIN_CLUSTER, line);
+                Assert.assertEquals('\n', content[(int) boundaries[i] - 1]);
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @Test
+    public void testGreedyClusters() throws Exception {
+        ISpectrum[] spectra = readTestSpectra();
+
+        // greedy clusters store a consensus spectrum, properties and comparison matches
+        File clusterFile = File.createTempFile("clusters", ParserUtilities.CGF_EXTENSION);
+        try {
+            FileWriter writer = new FileWriter(clusterFile);
+            for (int i = 0; i + 1 < spectra.length; i += 2) {
+                GreedySpectralCluster cluster = new GreedySpectralCluster("cluster" + i);
+                cluster.addSpectra(spectra[i], spectra[i + 1]);
+                cluster.setProperty("key", "value" + i);
+                cluster.saveComparisonResult("other" + i, 0.5F);
+                cluster.saveComparisonResult("another" + i, 0.75F);
+                CGFClusterAppender.INSTANCE.appendCluster(writer, cluster);
+            }
+            writer.close();
+
+            ICluster[] expectedClusters = ParserUtilities.readSpectralCluster(clusterFile);
+            List<ICluster> clusters = new ParallelClusterParser(3, 20000, Charset.forName("UTF-8")).parse(clusterFile);
+            assertSameClusters(expectedClusters, clusters);
+
+            ICluster cluster = clusters.get(1);
+            Assert.assertEquals("value2", cluster.getProperty("key"));
+            List<ComparisonMatch> matches = cluster.getComparisonMatches();
+            Assert.assertEquals(2, matches.size());
+            Assert.assertEquals("another2", matches.get(1).getSpectrumId());
+            Assert.assertEquals(0.75F, matches.get(1).getSimilarity(), 0);
+        } finally {
+            clusterFile.delete();
+        }
+    }
+
+    private static ISpectrum[] readTestSpectra() throws Exception {
+        File testFile = new File(ParallelClusterParserTest.class.getClassLoader().getResource("spectra_400.0_4.0.mgf").toURI());
+        return ParserUtilities.readMGFScans(testFile);
+    }
+
+    private static void assertSameClusters(ICluster[] expectedClusters, List<ICluster> clusters) {
+        Assert.assertTrue(expectedClusters.length > 0);
+        Assert.assertEquals(expectedClusters.length, clusters.size());
+
+        for (int i = 0; i < expectedClusters.length; i++) {
+            ICluster expected = expectedClusters[i];
+            ICluster cluster = clusters.get(i);
+
+            Assert.assertEquals(expected.getId(), cluster.getId());
+            Assert.assertEquals(expected.getPrecursorMz(), cluster.getPrecursorMz(), 0);
+            Assert.assertEquals(expected.getClusteredSpectraCount(), cluster.getClusteredSpectraCount());
+            Assert.assertEquals(getSpectrumIds(expected), getSpectrumIds(cluster));
+            Assert.assertEquals(expected.getConsensusSpectrum().getPeaksCount(), cluster.getConsensusSpectrum().getPeaksCount());
+        }
+    }
+
+    private static List<String> getSpectrumIds(ICluster cluster) {
+        List<String> ids = new ArrayList<String>(cluster.getSpectralIds());
+        Collections.sort(ids);
+        return ids;
+    }
+}
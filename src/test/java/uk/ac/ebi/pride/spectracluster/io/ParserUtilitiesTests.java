@@ -73,6 +73,29 @@ public class ParserUtilitiesTests {
             ParserUtilities.guaranteeMGFParse(is);
         }
 
+    /**
+     * single values followed by whitespace are skipped, trailing whitespace after a peak is ignored
+     */
+    @Test
+    public void testPeakLinesWithTrailingWhitespace() throws Exception {
+        String mgf = "BEGIN IONS\n" +
+                "TITLE=id=trailing\n" +
+                "PEPMASS=453.6444091796875\n" +
+                "CHARGE=2.0+\n" +
+                "101.065\t214.700\n" +
+                "112.067 \n" +
+                "113.065\t\n" +
+                "114.087 4044.000 \n" +
+                "115.084\t4962.000\t1\n" +
+                "END IONS\n";
+
+        ISpectrum spectrum = parseFromString(mgf);
+        Assert.assertNotNull(spectrum);
+        assertEquals(3, spectrum.getPeaksCount());
+        assertEquals(114.087, spectrum.getPeaks().get(1).getMz(), 0.001);
+        assertEquals(4044, spectrum.getPeaks().get(1).getIntensity(), 0.001);
+    }
+
     public static final String SUSPECT_MGF =
             "BEGIN IONS\n" +
                     "TITLE=id=PRD000721;PRIDE_Exp_Complete_Ac_25054.xml;spectrum=3327\n" +
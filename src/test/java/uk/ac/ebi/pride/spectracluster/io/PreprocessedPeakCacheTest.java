@@ -0,0 +1,173 @@
+package uk.ac.ebi.pride.spectracluster.io;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.normalizer.TotalIntensityNormalizer;
+import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.util.ClusteringTestUtilities;
+import uk.ac.ebi.pride.spectracluster.util.function.Functions;
+import uk.ac.ebi.pride.spectracluster.util.function.IFunction;
+import uk.ac.ebi.pride.spectracluster.util.function.peak.FractionTICPeakFunction;
+import uk.ac.ebi.pride.spectracluster.util.function.spectrum.CachedSpectrumFunction;
+import uk.ac.ebi.pride.spectracluster.util.function.spectrum.HighestNSpectrumPeaksFunction;
+import uk.ac.ebi.pride.spectracluster.util.function.spectrum.RemoveImpossiblyHighPeaksFunction;
+
+import java.io.File;
+import java.util.List;
+
+public class PreprocessedPeakCacheTest {
+    private ISpectrum[] spectra;
+    private File cacheDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        spectra = ClusteringTestUtilities.readConsensusSpectralItems().toArray(new ISpectrum[0]);
+
+        cacheDirectory = File.createTempFile("peakcache", "");
+        cacheDirectory.delete();
+    }
+
+    @After
+    public void tearDown() {
+        delete(cacheDirectory);
+    }
+
+    @Test
+    public void testCachedFunction() throws Exception {
+        IFunction<ISpectrum, ISpectrum> filter = createFilter(50);
+        PreprocessedPeakCache cache = new PreprocessedPeakCache(cacheDirectory);
+        CachedSpectrumFunction cachedFilter = new CachedSpectrumFunction(filter, cache);
+
+        for (ISpectrum spectrum : spectra) {
+            cachedFilter.apply(spectrum);
+        }
+        Assert.assertEquals(spectra.length, cache.getMisses());
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(spectra.length, cache.getEntryCount());
+
+        // a new cache on the same directory reuses the entries
+        PreprocessedPeakCache reopenedCache = new PreprocessedPeakCache(cacheDirectory);
+        CachedSpectrumFunction reopenedFilter = new CachedSpectrumFunction(createFilter(50), reopenedCache);
+        Assert.assertEquals(cachedFilter.getFingerprint(), reopenedFilter.getFingerprint());
+
+        for (ISpectrum spectrum : spectra) {
+            ISpectrum expected = filter.apply(spectrum);
+            ISpectrum cached = reopenedFilter.apply(spectrum);
+
+            Assert.assertEquals(expected.getId(), cached.getId());
+            Assert.assertEquals(expected.getPrecursorMz(), cached.getPrecursorMz(), 0);
+            List<IPeak> expectedPeaks = expected.getPeaks();
+            List<IPeak> cachedPeaks = cached.getPeaks();
+            Assert.assertEquals(expectedPeaks.size(), cachedPeaks.size());
+            for (int i = 0; i < expectedPeaks.size(); i++) {
+                Assert.assertEquals(expectedPeaks.get(i).getMz(), cachedPeaks.get(i).getMz(), 0);
+                Assert.assertEquals(expectedPeaks.get(i).getIntensity(), cachedPeaks.get(i).getIntensity(), 0);
+            }
+        }
+        Assert.assertEquals(spectra.length, reopenedCache.getHits());
+        Assert.assertEquals(0, reopenedCache.getMisses());
+
+        // a different chain does not use the entries
+        CachedSpectrumFunction otherFilter = new CachedSpectrumFunction(createFilter(20), reopenedCache);
+        otherFilter.apply(spectra[0]);
+        Assert.assertEquals(1, reopenedCache.getMisses());
+    }
+
+    @Test
+    public void testSegments() {
+        IFunction<ISpectrum, ISpectrum> filter = createFilter(50);
+        String fingerprint = PreprocessedPeakCache.fingerprint(filter);
+        PreprocessedPeakCache cache = new PreprocessedPeakCache(cacheDirectory);
+
+        for (ISpectrum spectrum : spectra) {
+            cache.put(spectrum.getId(), fingerprint, filter.apply(spectrum).getPeaks());
+        }
+        // all entries share one segment file
+        Assert.assertEquals(1, cache.getSegmentCount());
+        Assert.assertEquals(1, cacheDirectory.list().length);
+
+        // replaced entries are found by a reopened cache
+        String id = spectra[0].getId();
+        List<IPeak> replacingPeaks = createFilter(5).apply(spectra[0]).getPeaks();
+        cache.put(id, fingerprint, replacingPeaks);
+        Assert.assertEquals(spectra.length, cache.getEntryCount());
+
+        PreprocessedPeakCache reopenedCache = new PreprocessedPeakCache(cacheDirectory);
+        Assert.assertEquals(spectra.length, reopenedCache.getEntryCount());
+        Assert.assertEquals(cache.getSize(), reopenedCache.getSize());
+        List<IPeak> cachedPeaks = reopenedCache.get(id, fingerprint);
+        Assert.assertEquals(replacingPeaks.size(), cachedPeaks.size());
+        for (int i = 0; i < replacingPeaks.size(); i++) {
+            Assert.assertEquals(replacingPeaks.get(i).getMz(), cachedPeaks.get(i).getMz(), 0);
+        }
+
+        // new entries go to a new segment
+        reopenedCache.put(spectra[1].getId(), fingerprint, replacingPeaks);
+        Assert.assertEquals(2, reopenedCache.getSegmentCount());
+    }
+
+    @Test
+    public void testFingerprint() {
+        Assert.assertEquals(PreprocessedPeakCache.fingerprint(createFilter(50), new TotalIntensityNormalizer(), new FractionTICPeakFunction(0.5F, 20)),
+                PreprocessedPeakCache.fingerprint(createFilter(50), new TotalIntensityNormalizer(), new FractionTICPeakFunction(0.5F, 20)));
+
+        Assert.assertFalse(PreprocessedPeakCache.fingerprint(createFilter(50)).equals(PreprocessedPeakCache.fingerprint(createFilter(51))));
+        Assert.assertFalse(PreprocessedPeakCache.fingerprint(new TotalIntensityNormalizer(1000)).equals(
+                PreprocessedPeakCache.fingerprint(new TotalIntensityNormalizer(500))));
+        Assert.assertFalse(PreprocessedPeakCache.fingerprint(new FractionTICPeakFunction(0.5F, 20)).equals(
+                PreprocessedPeakCache.fingerprint(new FractionTICPeakFunction(0.5F, 10))));
+    }
+
+    @Test
+    public void testEviction() {
+        IFunction<ISpectrum, ISpectrum> filter = createFilter(50);
+        String fingerprint = PreprocessedPeakCache.fingerprint(filter);
+        long maximumSize = 20000;
+        PreprocessedPeakCache cache = new PreprocessedPeakCache(cacheDirectory, maximumSize);
+
+        for (ISpectrum spectrum : spectra) {
+            cache.put(spectrum.getId(), fingerprint, filter.apply(spectrum).getPeaks());
+            Assert.assertTrue(cache.getSize() <= maximumSize);
+        }
+        Assert.assertTrue(cache.getEvictions() > 0);
+        Assert.assertEquals(spectra.length, cache.getEvictions() + cache.getEntryCount());
+
+        // the last entry is kept, the first one was evicted
+        Assert.assertNotNull(cache.get(spectra[spectra.length - 1].getId(), fingerprint));
+        Assert.assertNull(cache.get(spectra[0].getId(), fingerprint));
+
+        // reading an entry marks it as used
+        ISpectrum leastRecentlyStored = null;
+        for (ISpectrum spectrum : spectra) {
+            if (cache.get(spectrum.getId(), fingerprint) != null) {
+                leastRecentlyStored = spectrum;
+                break;
+            }
+        }
+        Assert.assertNotNull(leastRecentlyStored);
+        cache.put(spectra[0].getId(), fingerprint, filter.apply(spectra[0]).getPeaks());
+        Assert.assertNotNull(cache.get(leastRecentlyStored.getId(), fingerprint));
+
+        cache.clear();
+        Assert.assertEquals(0, cache.getEntryCount());
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertNull(cache.get(spectra[spectra.length - 1].getId(), fingerprint));
+    }
+
+    private static IFunction<ISpectrum, ISpectrum> createFilter(int maxPeaks) {
+        return Functions.join(new RemoveImpossiblyHighPeaksFunction(), new HighestNSpectrumPeaksFunction(maxPeaks));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
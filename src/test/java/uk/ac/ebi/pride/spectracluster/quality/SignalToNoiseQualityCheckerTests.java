@@ -34,4 +34,28 @@ public class SignalToNoiseQualityCheckerTests {
             Assert.assertEquals(score, originalScore, 0.1);
         }
     }
+
+    @Test
+    public void testBatchQualityScores() throws Exception {
+        SignalToNoiseChecker checker = new SignalToNoiseChecker();
+        double[] scores = checker.calculateQualityScores(peptideSpectrumMatches, 4);
+
+        Assert.assertEquals(peptideSpectrumMatches.size(), scores.length);
+        for (int i = 0; i < scores.length; i++) {
+            double originalScore = originalQualityScorer.calculateQualityScore(peptideSpectrumMatches.get(i));
+            Assert.assertEquals(originalScore, scores[i], 0.1);
+        }
+    }
+
+    @Test
+    public void testMedian() throws Exception {
+        // highest peaks 2 - 6: 9, 8, 7, 6, 5 => mean 7
+        float[] evenIntensities = {1, 9, 5, 10, 2, 8, 3, 7, 4, 6};
+        Assert.assertEquals(7 / 5.5, SignalToNoiseChecker.calculateQualityScore(evenIntensities), 0.0001);
+
+        float[] oddIntensities = {1, 9, 5, 10, 2, 8, 3, 7, 6};
+        Assert.assertEquals(7 / 6.0, SignalToNoiseChecker.calculateQualityScore(oddIntensities), 0.0001);
+
+        Assert.assertEquals(0.0, SignalToNoiseChecker.calculateQualityScore(new float[]{1, 2, 3}));
+    }
 }
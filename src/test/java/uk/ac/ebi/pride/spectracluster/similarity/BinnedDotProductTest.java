@@ -0,0 +1,155 @@
+package uk.ac.ebi.pride.spectracluster.similarity;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.cdf.CumulativeDistributionFunctionFactory;
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.engine.GreedyIncrementalClusteringEngine;
+import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.spectrum.Peak;
+import uk.ac.ebi.pride.spectracluster.spectrum.Spectrum;
+import uk.ac.ebi.pride.spectracluster.util.ClusterUtilities;
+import uk.ac.ebi.pride.spectracluster.util.ClusteringTestUtilities;
+import uk.ac.ebi.pride.spectracluster.util.Defaults;
+import uk.ac.ebi.pride.spectracluster.util.function.peak.FractionTICPeakFunction;
+import uk.ac.ebi.pride.spectracluster.util.predicate.cluster_comparison.ClusterBinnedSimilarityPredicate;
+import uk.ac.ebi.pride.spectracluster.util.predicate.spectrum_comparison.BinnedSimilarityPredicate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BinnedDotProductTest {
+    private List<ISpectrum> spectra;
+
+    @Before
+    public void setUp() {
+        spectra = ClusteringTestUtilities.readISpectraFromResource();
+    }
+
+    @Test
+    public void testIdenticalSpectra() {
+        BinnedDotProduct binnedDotProduct = new BinnedDotProduct(0.5F);
+        OverlappingBinnedDotProduct overlappingBinnedDotProduct = new OverlappingBinnedDotProduct(0.5F);
+
+        for (ISpectrum spectrum : spectra) {
+            Assert.assertEquals(1.0, binnedDotProduct.assessSimilarity(spectrum, spectrum), 0.0001);
+            Assert.assertEquals(1.0, overlappingBinnedDotProduct.assessSimilarity(spectrum, spectrum), 0.0001);
+        }
+    }
+
+    @Test
+    public void testBinBoundary() {
+        List<IPeak> peaks1 = new ArrayList<IPeak>();
+        peaks1.add(new Peak(200.45F, 10));
+        peaks1.add(new Peak(300.2F, 10));
+        List<IPeak> peaks2 = new ArrayList<IPeak>();
+        peaks2.add(new Peak(200.55F, 10));
+        peaks2.add(new Peak(300.2F, 10));
+
+        ISpectrum spectrum1 = new Spectrum("1", 2, 400, Defaults.getDefaultQualityScorer(), peaks1);
+        ISpectrum spectrum2 = new Spectrum("2", 2, 400, Defaults.getDefaultQualityScorer(), peaks2);
+
+        // the first peaks fall into different bins
+        Assert.assertEquals(0.5, new BinnedDotProduct(0.5F).assessSimilarity(spectrum1, spectrum2), 0.0001);
+        Assert.assertEquals(1.0, new OverlappingBinnedDotProduct(0.5F).assessSimilarity(spectrum1, spectrum2), 0.0001);
+    }
+
+    @Test
+    public void testVectors() {
+        BinnedDotProduct binnedDotProduct = new BinnedDotProduct(0.5F);
+
+        for (int i = 0; i < spectra.size() - 1; i++) {
+            BinnedSpectrumVector vector1 = binnedDotProduct.getVector(spectra.get(i));
+            BinnedSpectrumVector vector2 = binnedDotProduct.getVector(spectra.get(i + 1));
+
+            double similarity = binnedDotProduct.assessSimilarity(vector1, vector2);
+            Assert.assertEquals(binnedDotProduct.assessSimilarity(spectra.get(i), spectra.get(i + 1)), similarity, 0.000001);
+            Assert.assertEquals(similarity, vector2.dotProduct(vector1), 0.000001);
+
+            int[] bins = vector1.getBins();
+            for (int j = 1; j < bins.length; j++)
+                Assert.assertTrue(bins[j - 1] < bins[j]);
+        }
+    }
+
+    @Test
+    public void testCachedVectors() {
+        BinnedDotProduct binnedDotProduct = new BinnedDotProduct(0.5F);
+        ISpectrum spectrum = spectra.get(0);
+
+        BinnedSpectrumVector vector = binnedDotProduct.getVector(spectrum);
+        Assert.assertSame(vector, binnedDotProduct.getVector(spectrum));
+        Assert.assertEquals(new BinnedDotProduct(0.5F).getVector(spectrum).dotProduct(vector), 1.0, 0.0001);
+
+        // a new tolerance requires new vectors
+        binnedDotProduct.setFragmentIonTolerance(1F);
+        Assert.assertNotSame(vector, binnedDotProduct.getVector(spectrum));
+    }
+
+    @Test
+    public void testClusterVectors() {
+        BinnedDotProduct binnedDotProduct = new BinnedDotProduct(0.5F);
+        ICluster cluster = ClusterUtilities.asCluster(spectra.get(0));
+
+        BinnedSpectrumVector vector = binnedDotProduct.getVector(cluster);
+        Assert.assertSame(vector, binnedDotProduct.getVector(cluster));
+
+        // the vector follows the consensus spectrum
+        cluster.addSpectra(spectra.get(1));
+        BinnedSpectrumVector changedVector = binnedDotProduct.getVector(cluster);
+        Assert.assertNotSame(vector, changedVector);
+        Assert.assertEquals(1.0, changedVector.dotProduct(new BinnedDotProduct(0.5F).getVector(cluster.getConsensusSpectrum())), 0.0001);
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        BinnedDotProduct binnedDotProduct = new OverlappingBinnedDotProduct(0.5F);
+        double expected = binnedDotProduct.assessSimilarity(spectra.get(0), spectra.get(1));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(binnedDotProduct);
+        out.close();
+        BinnedDotProduct deserialized = (BinnedDotProduct) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        Assert.assertEquals(OverlappingBinnedDotProduct.class, deserialized.getClass());
+        Assert.assertEquals(expected, deserialized.assessSimilarity(spectra.get(0), spectra.get(1)), 0);
+    }
+
+    @Test
+    public void testPredicate() {
+        BinnedSimilarityPredicate predicate = new BinnedSimilarityPredicate(new BinnedDotProduct(0.5F), 0.99);
+
+        Assert.assertTrue(predicate.apply(spectra.get(0), spectra.get(0)));
+        Assert.assertFalse(predicate.apply(spectra.get(0), spectra.get(1)));
+
+        ClusterBinnedSimilarityPredicate clusterPredicate = new ClusterBinnedSimilarityPredicate(new BinnedDotProduct(0.5F), 0.99);
+        ICluster cluster1 = ClusterUtilities.asCluster(spectra.get(0));
+        ICluster cluster2 = ClusterUtilities.asCluster(spectra.get(1));
+        Assert.assertTrue(clusterPredicate.apply(cluster1, cluster1));
+        Assert.assertFalse(clusterPredicate.apply(cluster1, cluster2));
+    }
+
+    /**
+     * The greedy engine loads the binned metrics' CDF when it is created
+     */
+    @Test
+    public void testGreedyEngine() throws Exception {
+        for (ISimilarityChecker similarityChecker : new ISimilarityChecker[]{new BinnedDotProduct(), new OverlappingBinnedDotProduct()}) {
+            Assert.assertNotNull(CumulativeDistributionFunctionFactory.getCumulativeDistributionFunctionForSimilarityChecker(similarityChecker));
+
+            GreedyIncrementalClusteringEngine engine = new GreedyIncrementalClusteringEngine(similarityChecker,
+                    Defaults.getDefaultSpectrumComparator(), 4F, 0.95, new FractionTICPeakFunction(0.5F, 20));
+            for (ISpectrum spectrum : ClusteringTestUtilities.readSpectraSortedByPrecursorMz()) {
+                engine.addClusterIncremental(ClusterUtilities.asCluster(spectrum));
+            }
+            Assert.assertFalse(engine.getClusters().isEmpty());
+        }
+    }
+}
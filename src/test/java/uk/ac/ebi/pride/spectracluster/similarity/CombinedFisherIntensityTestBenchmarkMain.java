@@ -0,0 +1,90 @@
+package uk.ac.ebi.pride.spectracluster.similarity;
+
+import uk.ac.ebi.pride.spectracluster.io.ParserUtilities;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * uk.ac.ebi.pride.spectracluster.similarity.CombinedFisherIntensityTestBenchmarkMain
+ * Times the scoring versions of the CombinedFisherIntensityTest over all pairs of
+ * the spectra in an mgf file. Without an argument the test spectra are used.
+ * This is a test main, the unit tests only check the scores.
+ *
+ * @author jg
+ */
+public class CombinedFisherIntensityTestBenchmarkMain {
+    public static final int WARMUP_ROUNDS = 5;
+    public static final int TIMED_ROUNDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        File spectrumFile;
+        if (args.length > 0) {
+            spectrumFile = new File(args[0]);
+        }
+        else {
+            spectrumFile = new File(CombinedFisherIntensityTestBenchmarkMain.class.getClassLoader().getResource("spectra_400.0_4.0.mgf").toURI());
+        }
+
+        ISpectrum[] spectra = ParserUtilities.readMGFScans(spectrumFile);
+        List<IPeakMatches> peakMatches = new ArrayList<IPeakMatches>();
+        for (int i = 0; i < spectra.length; i++) {
+            for (int j = i + 1; j < spectra.length; j++) {
+                peakMatches.add(PeakMatchesUtilities.getSharedPeaksAsMatches(spectra[i], spectra[j], 0.5F, false));
+            }
+        }
+        System.out.println("Scoring " + peakMatches.size() + " pairs of " + spectrumFile.getName());
+
+        CombinedFisherIntensityTest densityChecker = new CombinedFisherIntensityTest(0.5F);
+        densityChecker.setVersion(CombinedFisherIntensityTest.AlgorithmVersion.DENSITY_0_1);
+        CombinedFisherIntensityTest survivalChecker = new CombinedFisherIntensityTest(0.5F);
+        survivalChecker.setVersion(CombinedFisherIntensityTest.AlgorithmVersion.SURVIVAL_FUNCTION_0_2);
+
+        // warm up both versions before any of them is timed
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            scoreAll(densityChecker, peakMatches);
+            scoreAll(survivalChecker, peakMatches);
+        }
+
+        long densityNanos = 0;
+        long survivalNanos = 0;
+        // alternate the versions so that both are equally affected by the state of the JVM
+        for (int round = 0; round < TIMED_ROUNDS; round++) {
+            densityNanos += timeScoring(densityChecker, peakMatches);
+            survivalNanos += timeScoring(survivalChecker, peakMatches);
+        }
+
+        report(densityChecker, densityNanos, peakMatches.size());
+        report(survivalChecker, survivalNanos, peakMatches.size());
+    }
+
+    private static long timeScoring(ISimilarityChecker similarityChecker, List<IPeakMatches> peakMatches) {
+        long start = System.nanoTime();
+        double sum = scoreAll(similarityChecker, peakMatches);
+        long nanos = System.nanoTime() - start;
+
+        // use the scores so that the scoring cannot be optimized away
+        if (sum == Double.MIN_VALUE)
+            System.out.println(sum);
+
+        return nanos;
+    }
+
+    private static double scoreAll(ISimilarityChecker similarityChecker, List<IPeakMatches> peakMatches) {
+        double sum = 0;
+        for (IPeakMatches peakMatch : peakMatches) {
+            double score = similarityChecker.assessSimilarity(peakMatch);
+            if (!Double.isNaN(score) && !Double.isInfinite(score))
+                sum += score;
+        }
+        return sum;
+    }
+
+    private static void report(CombinedFisherIntensityTest similarityChecker, long nanos, int nPairs) {
+        double millis = nanos / 1000000.0 / TIMED_ROUNDS;
+        System.out.println(String.format("%s: %.2f ms per round, %.1f ns per pair",
+                similarityChecker.getVersion(), millis, (double) nanos / TIMED_ROUNDS / nPairs));
+    }
+}
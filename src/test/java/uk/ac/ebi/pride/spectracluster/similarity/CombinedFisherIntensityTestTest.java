@@ -0,0 +1,86 @@
+package uk.ac.ebi.pride.spectracluster.similarity;
+
+import org.apache.commons.math3.distribution.ChiSquaredDistribution;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.io.ParserUtilities;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CombinedFisherIntensityTestTest {
+    private List<IPeakMatches> peakMatches;
+
+    @Before
+    public void setUp() throws Exception {
+        File testFile = new File(CombinedFisherIntensityTestTest.class.getClassLoader().getResource("spectra_400.0_4.0.mgf").toURI());
+        ISpectrum[] spectra = ParserUtilities.readMGFScans(testFile);
+
+        peakMatches = new ArrayList<IPeakMatches>();
+        for (int i = 0; i < spectra.length; i++) {
+            for (int j = i + 1; j < spectra.length; j++) {
+                peakMatches.add(PeakMatchesUtilities.getSharedPeaksAsMatches(spectra[i], spectra[j], 0.5F, false));
+            }
+        }
+    }
+
+    @Test
+    public void testSurvivalScore() {
+        ChiSquaredDistribution chiSquaredDistribution = new ChiSquaredDistribution(4);
+
+        for (double sumLogPValues = -0.1; sumLogPValues > -15; sumLogPValues -= 0.7) {
+            double expected = -Math.log(1 - chiSquaredDistribution.cumulativeProbability(-2 * sumLogPValues));
+            Assert.assertEquals(expected, CombinedFisherIntensityTest.calculateSurvivalScore(sumLogPValues), 1E-6);
+        }
+
+        Assert.assertEquals(0, CombinedFisherIntensityTest.calculateSurvivalScore(0), 0);
+        Assert.assertTrue(Double.isInfinite(CombinedFisherIntensityTest.calculateSurvivalScore(Double.NEGATIVE_INFINITY)));
+
+        // the p-value itself underflows but the score is still defined
+        Assert.assertEquals(0, Math.exp(-800) * (1 + 800), 0);
+        Assert.assertEquals(800 - Math.log(801), CombinedFisherIntensityTest.calculateSurvivalScore(-800), 1E-9);
+    }
+
+    @Test
+    public void testVersions() {
+        CombinedFisherIntensityTest similarityChecker = new CombinedFisherIntensityTest(0.5F);
+        Assert.assertEquals(CombinedFisherIntensityTest.DEFAULT_ALGORITHM, similarityChecker.getVersion());
+        Assert.assertEquals("0.1", similarityChecker.getCurrentVersion());
+
+        similarityChecker.setVersion(CombinedFisherIntensityTest.AlgorithmVersion.SURVIVAL_FUNCTION_0_2);
+        Assert.assertEquals("0.2", similarityChecker.getCurrentVersion());
+        Assert.assertEquals(CombinedFisherIntensityTest.AlgorithmVersion.SURVIVAL_FUNCTION_0_2, similarityChecker.copy().getVersion());
+    }
+
+    @Test
+    public void testVersionScores() {
+        CombinedFisherIntensityTest densityChecker = new CombinedFisherIntensityTest(0.5F);
+        CombinedFisherIntensityTest survivalChecker = new CombinedFisherIntensityTest(0.5F);
+        survivalChecker.setVersion(CombinedFisherIntensityTest.AlgorithmVersion.SURVIVAL_FUNCTION_0_2);
+
+        double[] densityScores = scoreAll(densityChecker);
+        double[] survivalScores = scoreAll(survivalChecker);
+
+        for (int i = 0; i < peakMatches.size(); i++) {
+            // undefined p-values lead to undefined scores in both versions
+            Assert.assertEquals(Double.isNaN(densityScores[i]), Double.isNaN(survivalScores[i]));
+            if (Double.isNaN(survivalScores[i]))
+                continue;
+            Assert.assertTrue(survivalScores[i] >= 0);
+            // the density at the combined statistic is always below the survival function for 4 df and x > 0
+            if (densityScores[i] > 0 && !Double.isInfinite(densityScores[i]))
+                Assert.assertTrue(survivalScores[i] <= densityScores[i] + 1E-9);
+        }
+    }
+
+    private double[] scoreAll(ISimilarityChecker similarityChecker) {
+        double[] scores = new double[peakMatches.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = similarityChecker.assessSimilarity(peakMatches.get(i));
+        }
+        return scores;
+    }
+}
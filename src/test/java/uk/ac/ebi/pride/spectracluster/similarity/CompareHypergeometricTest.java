@@ -34,7 +34,7 @@ public class CompareHypergeometricTest {
         NormalDistribution correlationDistribution = new NormalDistribution(0, sd);
         double probability1 = correlationDistribution.cumulativeProbability(correlation);
 
-        Normal normal = new Normal(0, sd, FisherExactTest.randomEngine);
+        Normal normal = new Normal(0, sd, new FisherExactTest().randomEngine);
         double probability2 = normal.cdf(correlation);
 
         Assert.assertEquals(probability1, probability2, 0.000001);
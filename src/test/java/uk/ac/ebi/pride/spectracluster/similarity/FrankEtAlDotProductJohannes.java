@@ -312,4 +312,12 @@ public class FrankEtAlDotProductJohannes implements ISimilarityChecker {
     public float getFragmentIonTolerance() {
         return 0;
     }
+
+    @Override
+    public FrankEtAlDotProductJohannes copy() {
+        FrankEtAlDotProductJohannes copy = new FrankEtAlDotProductJohannes();
+        copy.mzRange = mzRange;
+        copy.version = version;
+        return copy;
+    }
 }
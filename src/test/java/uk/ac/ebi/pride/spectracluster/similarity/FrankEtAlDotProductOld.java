@@ -302,4 +302,12 @@ public class FrankEtAlDotProductOld implements ISimilarityChecker {
     public float getFragmentIonTolerance() {
         return 0;
     }
+
+    @Override
+    public FrankEtAlDotProductOld copy() {
+        FrankEtAlDotProductOld copy = new FrankEtAlDotProductOld();
+        copy.mzRange = mzRange;
+        copy.version = version;
+        return copy;
+    }
 }
@@ -0,0 +1,80 @@
+package uk.ac.ebi.pride.spectracluster.similarity;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.util.ClusteringTestUtilities;
+import uk.ac.ebi.pride.spectracluster.util.Pair;
+
+import java.util.List;
+
+/**
+ * Compares the FrankEtAlDotProduct using the pre-computed intensities against
+ * the calculation based on the matched peak pairs.
+ */
+public class FrankEtAlDotProductTest {
+    private List<ISpectrum> spectra;
+
+    @Before
+    public void setUp() {
+        spectra = ClusteringTestUtilities.readISpectraFromResource();
+    }
+
+    @Test
+    public void testSameResultAsPeakPairs() {
+        FrankEtAlDotProduct dotProduct = new FrankEtAlDotProduct(0.5F);
+
+        for (int i = 0; i < spectra.size() - 1; i++) {
+            IPeakMatches peakMatches = PeakMatchesUtilities.getSharedPeaksAsMatches(spectra.get(i), spectra.get(i + 1), 0.5F);
+
+            Assert.assertEquals(peakPairDotProduct(peakMatches), dotProduct.assessSimilarity(peakMatches), 0.0000001);
+        }
+    }
+
+    @Test
+    public void testSharedPeakIndices() {
+        for (int i = 0; i < spectra.size() - 1; i++) {
+            List<Integer>[] sharedPeaks = PeakMatchesUtilities.getSharedPeaks(spectra.get(i), spectra.get(i + 1), 0.5F);
+            int[][] sharedPeakIndices = PeakMatchesUtilities.getSharedPeakIndices(spectra.get(i), spectra.get(i + 1), 0.5F);
+
+            Assert.assertEquals(sharedPeaks[0].size(), sharedPeakIndices[0].length);
+            for (int j = 0; j < sharedPeakIndices[0].length; j++) {
+                Assert.assertEquals((int) sharedPeaks[0].get(j), sharedPeakIndices[0][j]);
+                Assert.assertEquals((int) sharedPeaks[1].get(j), sharedPeakIndices[1][j]);
+            }
+        }
+    }
+
+    @Test
+    public void testCalculateDotProduct() {
+        double[] values1 = {1, 2, 3, 4, 5, 6, 7};
+        double[] values2 = {7, 6, 5, 4, 3, 2, 1};
+
+        Assert.assertEquals(84.0, FrankEtAlDotProduct.calculateDotProduct(values1, values2, 7));
+        Assert.assertEquals(50.0, FrankEtAlDotProduct.calculateDotProduct(values1, values2, 4));
+        Assert.assertEquals(0.0, FrankEtAlDotProduct.calculateDotProduct(values1, values2, 0));
+    }
+
+    private static double peakPairDotProduct(IPeakMatches peakMatches) {
+        double dotProduct = 0;
+
+        for (int i = 0; i < peakMatches.getNumberOfSharedPeaks(); i++) {
+            Pair<IPeak, IPeak> matchedPeaks = peakMatches.getPeakPair(i);
+            dotProduct += convertIntensity(matchedPeaks.getFirst()) * convertIntensity(matchedPeaks.getSecond());
+        }
+
+        double denom = Math.sqrt(peakMatches.getSpectrumOne().getSumSquareIntensity() * peakMatches.getSpectrumTwo().getSumSquareIntensity());
+        if (denom == 0)
+            return 0;
+
+        return Math.min(1, dotProduct / denom);
+    }
+
+    private static double convertIntensity(IPeak peak) {
+        if (peak.getIntensity() == 0)
+            return 0;
+        return 1 + Math.log(peak.getIntensity());
+    }
+}
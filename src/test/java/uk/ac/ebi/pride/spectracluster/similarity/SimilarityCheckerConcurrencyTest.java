@@ -0,0 +1,170 @@
+package uk.ac.ebi.pride.spectracluster.similarity;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.io.ParserUtilities;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Compares the results of similarity checkers shared between many threads
+ * with the results of a single thread.
+ */
+public class SimilarityCheckerConcurrencyTest {
+    private static final int N_THREADS = 8;
+    private static final int N_REPEATS = 2;
+
+    private List<ISpectrum> spectra;
+
+    @Before
+    public void setUp() throws Exception {
+        File testFile = new File(SimilarityCheckerConcurrencyTest.class.getClassLoader().getResource("spectra_400.0_4.0.mgf").toURI());
+        spectra = new ArrayList<ISpectrum>();
+        for (ISpectrum spectrum : ParserUtilities.readMGFScans(testFile)) {
+            spectra.add(spectrum);
+            if (spectra.size() == 30)
+                break;
+        }
+    }
+
+    @Test
+    public void testThreadLocalCheckers() throws Exception {
+        ISimilarityChecker[] checkers = {
+                new FrankEtAlDotProduct(0.5F, 15, true),
+                new CombinedFisherIntensityTest(0.5F),
+                new FisherExactTest(0.5F),
+                new HypergeometricScore(0.5F),
+                new HypergeometricScoreDiffPopSize(0.5F),
+                new IntensityRankCorrelation(0.5F),
+                new BinnedDotProduct(0.5F),
+                new OverlappingBinnedDotProduct(0.5F)
+        };
+
+        for (ISimilarityChecker checker : checkers) {
+            assertThreadSafe(new ThreadLocalSimilarityChecker(checker), checker.copy());
+        }
+    }
+
+    @Test
+    public void testCopy() {
+        FrankEtAlDotProduct checker = new FrankEtAlDotProduct(0.3F, 20, true);
+        checker.setVersion(FrankEtAlDotProduct.AlgorithmVersion.JPR_2008);
+
+        FrankEtAlDotProduct copy = checker.copy();
+        Assert.assertNotSame(checker, copy);
+        Assert.assertEquals(checker.getFragmentIonTolerance(), copy.getFragmentIonTolerance(), 0);
+        Assert.assertEquals(checker.isPeakFiltering(), copy.isPeakFiltering());
+        Assert.assertEquals(checker.getVersion(), copy.getVersion());
+        Assert.assertEquals(checker.assessSimilarity(spectra.get(0), spectra.get(1)), copy.assessSimilarity(spectra.get(0), spectra.get(1)), 0);
+
+        Assert.assertEquals(OverlappingBinnedDotProduct.class, new OverlappingBinnedDotProduct(0.3F).copy().getClass());
+        Assert.assertEquals(FisherExactTest.class, new FisherExactTest(0.3F).copy().getClass());
+    }
+
+    @Test
+    public void testChangedSettings() throws Exception {
+        final ThreadLocalSimilarityChecker checker = new ThreadLocalSimilarityChecker(new FrankEtAlDotProduct(0.5F));
+        final ISpectrum spectrum1 = spectra.get(0);
+        final ISpectrum spectrum2 = spectra.get(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Callable<Double> assess = new Callable<Double>() {
+                @Override
+                public Double call() throws Exception {
+                    return checker.assessSimilarity(spectrum1, spectrum2);
+                }
+            };
+            Assert.assertEquals(new FrankEtAlDotProduct(0.5F).assessSimilarity(spectrum1, spectrum2), executor.submit(assess).get(), 0);
+
+            // the thread's existing copy must pick up the new tolerance
+            checker.setFragmentIonTolerance(0.05F);
+            Assert.assertEquals(0.05F, checker.getFragmentIonTolerance(), 0);
+            Assert.assertEquals(new FrankEtAlDotProduct(0.05F).assessSimilarity(spectrum1, spectrum2), executor.submit(assess).get(), 0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        ISimilarityChecker[] checkers = {
+                new ThreadLocalSimilarityChecker(new FrankEtAlDotProduct(0.5F)),
+                new ThreadLocalSimilarityChecker(new BinnedDotProduct(0.5F))
+        };
+
+        for (ISimilarityChecker checker : checkers) {
+            // creates the thread's copy and the binned vectors
+            double expected = checker.assessSimilarity(spectra.get(0), spectra.get(1));
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(checker);
+            out.close();
+            ISimilarityChecker deserialized = (ISimilarityChecker) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+            Assert.assertEquals(expected, deserialized.assessSimilarity(spectra.get(0), spectra.get(1)), 0);
+        }
+    }
+
+    /**
+     * Compares all pairs of spectra using the shared checker from N_THREADS threads at the
+     * same time, every thread using a different order, and compares the scores with
+     * the ones of the reference checker in a single thread.
+     */
+    private void assertThreadSafe(final ISimilarityChecker sharedChecker, ISimilarityChecker referenceChecker) throws Exception {
+        final int nSpectra = spectra.size();
+        final double[] expected = new double[nSpectra * nSpectra];
+        for (int i = 0; i < nSpectra; i++) {
+            for (int j = 0; j < nSpectra; j++) {
+                expected[i * nSpectra + j] = referenceChecker.assessSimilarity(spectra.get(i), spectra.get(j));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(N_THREADS);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<double[]>> results = new ArrayList<Future<double[]>>();
+
+            for (int t = 0; t < N_THREADS; t++) {
+                final int offset = t * nSpectra / N_THREADS;
+                results.add(executor.submit(new Callable<double[]>() {
+                    @Override
+                    public double[] call() throws Exception {
+                        start.await();
+                        double[] scores = new double[nSpectra * nSpectra];
+                        for (int repeat = 0; repeat < N_REPEATS; repeat++) {
+                            for (int n = 0; n < nSpectra; n++) {
+                                int i = (n + offset) % nSpectra;
+                                for (int j = 0; j < nSpectra; j++) {
+                                    scores[i * nSpectra + j] = sharedChecker.assessSimilarity(spectra.get(i), spectra.get(j));
+                                }
+                            }
+                        }
+                        return scores;
+                    }
+                }));
+            }
+            start.countDown();
+
+            for (Future<double[]> result : results) {
+                double[] scores = result.get(60, TimeUnit.SECONDS);
+                for (int i = 0; i < expected.length; i++) {
+                    Assert.assertEquals(sharedChecker.getName() + " differs for pair " + i,
+                            0, Double.compare(expected[i], scores[i]));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
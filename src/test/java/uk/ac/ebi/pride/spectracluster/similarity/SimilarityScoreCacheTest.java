@@ -0,0 +1,228 @@
+package uk.ac.ebi.pride.spectracluster.similarity;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.cluster.GreedySpectralCluster;
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.consensus.IConsensusSpectrumBuilder;
+import uk.ac.ebi.pride.spectracluster.engine.ClusteringEngine;
+import uk.ac.ebi.pride.spectracluster.engine.EngineMetricsSnapshot;
+import uk.ac.ebi.pride.spectracluster.engine.GreedyIncrementalClusteringEngine;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.util.ClusterUtilities;
+import uk.ac.ebi.pride.spectracluster.util.ClusteringConfig;
+import uk.ac.ebi.pride.spectracluster.util.ClusteringTestUtilities;
+import uk.ac.ebi.pride.spectracluster.util.Defaults;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+public class SimilarityScoreCacheTest {
+    private static final int MAXIMUM_ITERATIONS = 5;
+    private static final int GREEDY_PASSES = 3;
+
+    private ClusteringConfig originalDefaults;
+    private List<ISpectrum> spectra;
+
+    @Before
+    public void setUp() {
+        // other tests may leave changed defaults which make the engines' results vary between runs
+        originalDefaults = Defaults.getConfig();
+        Defaults.setConfig(new ClusteringConfig.Builder().build());
+
+        spectra = ClusteringTestUtilities.readISpectraFromResource();
+    }
+
+    @After
+    public void tearDown() {
+        Defaults.setConfig(originalDefaults);
+    }
+
+    @Test
+    public void testVersionStamps() {
+        ICluster cluster = ClusterUtilities.asCluster(spectra.get(0));
+        IConsensusSpectrumBuilder builder = cluster.getConsensusSpectrumBuilder();
+        long stamp = builder.getVersionStamp();
+
+        // reading the consensus spectrum does not change it
+        cluster.getConsensusSpectrum();
+        Assert.assertEquals(stamp, builder.getVersionStamp());
+
+        cluster.addSpectra(spectra.get(1));
+        long addedStamp = builder.getVersionStamp();
+        Assert.assertTrue(addedStamp > stamp);
+
+        cluster.removeSpectra(spectra.get(1));
+        Assert.assertTrue(builder.getVersionStamp() > addedStamp);
+
+        // stamps are unique across builders
+        Assert.assertTrue(ClusterUtilities.asCluster(spectra.get(0)).getConsensusSpectrumBuilder().getVersionStamp() > builder.getVersionStamp());
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        SimilarityScoreCache cache = new SimilarityScoreCache();
+        ICluster cluster1 = ClusterUtilities.asCluster(spectra.get(0));
+        ICluster cluster2 = ClusterUtilities.asCluster(spectra.get(1));
+        ISpectrum spectrum = spectra.get(2);
+
+        Assert.assertNull(cache.get(cluster1, cluster2));
+        cache.put(cluster1, cluster2, 0.5);
+        cache.put(cluster1, spectrum, 0.25);
+        Assert.assertEquals(0.5, cache.get(cluster1, cluster2), 0);
+        Assert.assertEquals(0.25, cache.get(cluster1, spectrum), 0);
+        // the order of the clusters does not matter
+        Assert.assertEquals(0.5, cache.get(cluster2, cluster1), 0);
+        cache.put(cluster2, cluster1, 0.75);
+        Assert.assertEquals(0.75, cache.get(cluster1, cluster2), 0);
+        Assert.assertEquals(2, cache.size());
+
+        // changed clusters are scored again
+        cluster1.addSpectra(spectra.get(3));
+        Assert.assertNull(cache.get(cluster1, cluster2));
+        Assert.assertNull(cache.get(cluster1, spectrum));
+
+        Assert.assertEquals(4, cache.getHits());
+        Assert.assertEquals(3, cache.getMisses());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEviction() {
+        SimilarityScoreCache cache = new SimilarityScoreCache(2);
+        ICluster cluster = ClusterUtilities.asCluster(spectra.get(0));
+
+        cache.put(cluster, spectra.get(1), 1);
+        cache.put(cluster, spectra.get(2), 2);
+        // the first pair is now the most recently used one
+        Assert.assertEquals(1, cache.get(cluster, spectra.get(1)), 0);
+        cache.put(cluster, spectra.get(3), 3);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNull(cache.get(cluster, spectra.get(2)));
+        Assert.assertEquals(1, cache.get(cluster, spectra.get(1)), 0);
+        Assert.assertEquals(3, cache.get(cluster, spectra.get(3)), 0);
+    }
+
+    @Test
+    public void testClusteringEngineWithCache() {
+        ClusteringEngine uncachedEngine = createEngine();
+        ClusteringEngine cachedEngine = createEngine();
+        SimilarityScoreCache cache = new SimilarityScoreCache();
+        cachedEngine.setSimilarityScoreCache(cache);
+
+        List<String> expected = cluster(uncachedEngine);
+        List<String> result = cluster(cachedEngine);
+
+        // the cache must not change the result
+        Assert.assertEquals(expected, result);
+
+        EngineMetricsSnapshot uncachedMetrics = uncachedEngine.getMetrics().getSnapshot();
+        EngineMetricsSnapshot cachedMetrics = cachedEngine.getMetrics().getSnapshot();
+        Assert.assertEquals(0, uncachedMetrics.getSimilarityCacheHits());
+        Assert.assertTrue(cachedMetrics.getSimilarityCacheHits() > 0);
+        Assert.assertTrue(cachedMetrics.getComparisons() < uncachedMetrics.getComparisons());
+        Assert.assertEquals(cache.getHits(), cachedMetrics.getSimilarityCacheHits());
+        Assert.assertEquals(cache.getMisses(), cachedMetrics.getSimilarityCacheMisses());
+        Assert.assertEquals(cachedMetrics.getSimilarityCacheHits(), (long) cachedMetrics.asMap().get("similarity_cache_hits"));
+    }
+
+    @Test
+    public void testGreedyReclusteringWithCache() {
+        List<String> expected = clusterRepeatedly(null, GREEDY_PASSES, false);
+        SimilarityScoreCache cache = new SimilarityScoreCache();
+        List<String> result = clusterRepeatedly(cache, GREEDY_PASSES, false);
+
+        Assert.assertEquals(expected, result);
+        Assert.assertTrue(cache.getHits() > 0);
+    }
+
+    /**
+     * If GreedySpectralClusters are passed to the first pass its scores are already reused
+     * by the second one.
+     */
+    @Test
+    public void testSecondGreedyPassHits() {
+        SimilarityScoreCache cache = new SimilarityScoreCache();
+        clusterRepeatedly(cache, 1, true);
+        Assert.assertEquals(0, cache.getHits());
+
+        List<String> expected = clusterRepeatedly(null, 2, true);
+        cache.clear();
+        List<String> result = clusterRepeatedly(cache, 2, true);
+
+        Assert.assertEquals(expected, result);
+        Assert.assertTrue(cache.getHits() > 0);
+    }
+
+    /**
+     * Clusters the spectra in a first pass and the resulting clusters again in the following
+     * ones. Scores can only be reused once the passed clusters are GreedySpectralClusters.
+     *
+     * @param greedyInput whether the spectra are passed to the first pass as GreedySpectralClusters
+     * @return the spectral ids of the last pass' clusters
+     */
+    private List<String> clusterRepeatedly(SimilarityScoreCache cache, int nPasses, boolean greedyInput) {
+        List<ICluster> clusters = new ArrayList<ICluster>();
+        for (ISpectrum spectrum : spectra) {
+            ICluster cluster = ClusterUtilities.asCluster(spectrum);
+            clusters.add(greedyInput ? new GreedySpectralCluster(cluster) : cluster);
+        }
+
+        for (int pass = 0; pass < nPasses; pass++) {
+            GreedyIncrementalClusteringEngine engine = ClusteringTestUtilities.createGreedyTestEngine();
+            engine.setSimilarityScoreCache(cache);
+
+            Collections.sort(clusters, new Comparator<ICluster>() {
+                @Override
+                public int compare(ICluster o1, ICluster o2) {
+                    return Float.compare(o1.getPrecursorMz(), o2.getPrecursorMz());
+                }
+            });
+            List<ICluster> passResult = new ArrayList<ICluster>();
+            for (ICluster cluster : clusters) {
+                passResult.addAll(engine.addClusterIncremental(cluster));
+            }
+            passResult.addAll(engine.getClusters());
+            clusters = passResult;
+        }
+
+        List<String> ids = new ArrayList<String>();
+        for (ICluster cluster : clusters) {
+            ids.add(cluster.getSpectralId());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * @return the sorted spectral ids of the resulting clusters
+     */
+    private List<String> cluster(ClusteringEngine engine) {
+        for (ISpectrum spectrum : spectra) {
+            engine.addClusters(ClusterUtilities.asCluster(spectrum));
+        }
+        for (int i = 0; i < MAXIMUM_ITERATIONS; i++) {
+            if (!engine.processClusters())
+                break;
+        }
+
+        List<String> ids = new ArrayList<String>();
+        for (ICluster cluster : engine.getClusters()) {
+            ids.add(cluster.getSpectralId());
+        }
+        // clusters with the same precursor m/z are not returned in a fixed order
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private static ClusteringEngine createEngine() {
+        return new ClusteringEngine(new FrankEtAlDotProduct(0.5F), Defaults.getDefaultSpectrumComparator(), 0.7, 0.6, 2);
+    }
+}
@@ -0,0 +1,92 @@
+package uk.ac.ebi.pride.spectracluster.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.zip.Deflater;
+
+public class Base64UtilTest {
+    private static final float[] VALUES = {100.5F, 200.25F, 0F, 1234.125F, 0.001F};
+
+    @Test
+    public void testRoundTrip() {
+        for (boolean doublePrecision : new boolean[]{true, false}) {
+            for (boolean bigEndian : new boolean[]{true, false}) {
+                String encoded = Base64Util.encode(doublePrecision, bigEndian, VALUES, 0, VALUES.length);
+
+                Assert.assertArrayEquals(VALUES, Base64Util.decodeFloats(doublePrecision, bigEndian, false, encoded), 0);
+
+                double[] doubles = Base64Util.decodeDoubles(doublePrecision, bigEndian, false, encoded);
+                List<Double> boxed = Base64Util.decode(doublePrecision, bigEndian, encoded);
+                Assert.assertEquals(VALUES.length, boxed.size());
+                for (int i = 0; i < VALUES.length; i++) {
+                    Assert.assertEquals(VALUES[i], doubles[i], 0);
+                    Assert.assertEquals(VALUES[i], boxed.get(i), 0);
+                }
+
+                double[] doubleValues = new double[VALUES.length];
+                for (int i = 0; i < VALUES.length; i++) {
+                    doubleValues[i] = VALUES[i];
+                }
+                Assert.assertEquals(encoded, Base64Util.encode(doublePrecision, bigEndian, doubleValues, 0, doubleValues.length));
+            }
+        }
+    }
+
+    @Test
+    public void testDecodeIntoTarget() {
+        String encoded = Base64Util.encode(false, false, VALUES, 0, VALUES.length);
+        float[] target = new float[VALUES.length + 2];
+
+        Assert.assertEquals(VALUES.length, Base64Util.decode(false, false, false, encoded, target, 2));
+        for (int i = 0; i < VALUES.length; i++) {
+            Assert.assertEquals(VALUES[i], target[i + 2], 0);
+        }
+
+        try {
+            Base64Util.decode(false, false, false, encoded, target, 3);
+            Assert.fail("Target array too small");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testHighlyCompressedData() {
+        // compresses far better than 1:3 which the original buffer size assumed
+        double[] values = new double[10000];
+        values[values.length - 1] = 42;
+
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asDoubleBuffer().put(values);
+        Deflater deflater = new Deflater();
+        deflater.setInput(buffer.array());
+        deflater.finish();
+        byte[] compressed = new byte[buffer.capacity()];
+        int compressedLength = deflater.deflate(compressed);
+        deflater.end();
+        byte[] trimmed = new byte[compressedLength];
+        System.arraycopy(compressed, 0, trimmed, 0, compressedLength);
+
+        String encoded = new String(Base64Coder.encode(trimmed));
+        Assert.assertArrayEquals(values, Base64Util.decodeDoubles(true, false, true, encoded), 0);
+    }
+
+    @Test
+    public void testDecodePeaks() {
+        float[] intensities = {1, 2, 3, 4, 5};
+        List<IPeak> peaks = Base64Util.decodePeaks(false, true, false,
+                Base64Util.encode(false, true, VALUES, 0, VALUES.length),
+                Base64Util.encode(false, true, intensities, 0, intensities.length));
+
+        Assert.assertEquals(VALUES.length, peaks.size());
+        for (int i = 0; i < VALUES.length; i++) {
+            Assert.assertEquals(VALUES[i], peaks.get(i).getMz(), 0);
+            Assert.assertEquals(intensities[i], peaks.get(i).getIntensity(), 0);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package uk.ac.ebi.pride.spectracluster.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
+import uk.ac.ebi.pride.spectracluster.engine.EngineFactories;
+import uk.ac.ebi.pride.spectracluster.engine.GreedyIncrementalClusteringEngine;
+import uk.ac.ebi.pride.spectracluster.engine.IIncrementalClusteringEngine;
+import uk.ac.ebi.pride.spectracluster.io.MGFSpectrumAppender;
+import uk.ac.ebi.pride.spectracluster.io.ParserUtilities;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.util.function.spectrum.HighestNSpectrumPeaksFunction;
+
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ClusteringConfigTest {
+    private ClusteringConfig originalDefaults;
+    private List<ISpectrum> testSpectra;
+
+    @Before
+    public void setUp() {
+        originalDefaults = Defaults.getConfig();
+
+        testSpectra = ClusteringTestUtilities.readSpectraSortedByPrecursorMz();
+    }
+
+    @After
+    public void tearDown() {
+        Defaults.setConfig(originalDefaults);
+    }
+
+    @Test
+    public void testDefaultsFacade() {
+        ClusteringConfig snapshot = Defaults.getConfig();
+        double threshold = snapshot.getSimilarityThreshold();
+
+        Defaults.setSimilarityThreshold(threshold / 2);
+        Defaults.setFragmentIonTolerance(0.1F);
+
+        Assert.assertEquals(threshold / 2, Defaults.getSimilarityThreshold(), 0);
+        Assert.assertEquals(0.1F, Defaults.getFragmentIonTolerance(), 0);
+        // the snapshot is not changed
+        Assert.assertEquals(threshold, snapshot.getSimilarityThreshold(), 0);
+        Assert.assertEquals(Defaults.DEFAULT_FRAGMENT_ION_TOLERANCE, snapshot.getFragmentIonTolerance(), 0);
+        // the checker is kept when only the tolerance changes
+        Assert.assertSame(snapshot.getSimilarityChecker(), Defaults.getDefaultSimilarityChecker());
+
+        ClusteringConfig config = snapshot.toBuilder().setMinNumberComparisons(100).build();
+        Assert.assertEquals(100, config.getMinNumberComparisons());
+        Assert.assertEquals(snapshot.getSimilarityThreshold(), config.getSimilarityThreshold(), 0);
+        Assert.assertEquals(Defaults.DEFAULT_MIN_NUMBER_COMPARISONS, snapshot.getMinNumberComparisons());
+
+        Defaults.setConfig(config);
+        Assert.assertEquals(100, Defaults.getMinNumberComparisons());
+    }
+
+    @Test
+    public void testParserConfig() throws Exception {
+        StringBuilder mgf = new StringBuilder();
+        ISpectrum spectrum = testSpectra.get(0);
+        MGFSpectrumAppender.INSTANCE.appendSpectrum(mgf, spectrum);
+
+        ClusteringConfig config = new ClusteringConfig.Builder()
+                .setPeakFilter(new HighestNSpectrumPeaksFunction(10))
+                .build();
+        ISpectrum parsed = ParserUtilities.readMGFScan(new LineNumberReader(new StringReader(mgf.toString())), null, config);
+
+        Assert.assertTrue(spectrum.getPeaksCount() > 10);
+        Assert.assertEquals(10, parsed.getPeaksCount());
+    }
+
+    @Test
+    public void testConcurrentEngines() throws Exception {
+        final ClusteringConfig strictConfig = new ClusteringConfig.Builder()
+                .setSimilarityThreshold(0.99)
+                .setPrecursorIonTolerance(4F)
+                .build();
+        final ClusteringConfig lenientConfig = new ClusteringConfig.Builder()
+                .setSimilarityThreshold(0.8)
+                .setFragmentIonTolerance(1F)
+                .setPrecursorIonTolerance(4F)
+                .build();
+
+        List<Integer> expectedStrict = cluster(new GreedyIncrementalClusteringEngine(strictConfig));
+        List<Integer> expectedLenient = cluster(EngineFactories.buildGreedyIncrementalClusteringEngineFactory(lenientConfig, null).buildInstance());
+        Assert.assertFalse(expectedStrict.equals(expectedLenient));
+
+        final AtomicReference<List<Integer>> strictResult = new AtomicReference<List<Integer>>();
+        final AtomicReference<List<Integer>> lenientResult = new AtomicReference<List<Integer>>();
+        Thread strictThread = new Thread() {
+            @Override
+            public void run() {
+                strictResult.set(cluster(new GreedyIncrementalClusteringEngine(strictConfig)));
+            }
+        };
+        Thread lenientThread = new Thread() {
+            @Override
+            public void run() {
+                lenientResult.set(cluster(new GreedyIncrementalClusteringEngine(lenientConfig)));
+            }
+        };
+        strictThread.start();
+        lenientThread.start();
+
+        // changing the defaults must not affect the running engines
+        while (strictThread.isAlive() || lenientThread.isAlive()) {
+            Defaults.setFragmentIonTolerance(5F);
+            Defaults.setSimilarityThreshold(0.1);
+            Defaults.setConfig(originalDefaults);
+            Thread.yield();
+        }
+        strictThread.join();
+        lenientThread.join();
+
+        Assert.assertEquals(expectedStrict, strictResult.get());
+        Assert.assertEquals(expectedLenient, lenientResult.get());
+    }
+
+    /**
+     * @return the sorted sizes of all created clusters
+     */
+    private List<Integer> cluster(IIncrementalClusteringEngine engine) {
+        List<Integer> sizes = new ArrayList<Integer>();
+        for (ISpectrum spectrum : testSpectra) {
+            for (ICluster cluster : engine.addClusterIncremental(ClusterUtilities.asCluster(spectrum))) {
+                sizes.add(cluster.getClusteredSpectraCount());
+            }
+        }
+        for (ICluster cluster : engine.getClusters()) {
+            sizes.add(cluster.getClusteredSpectraCount());
+        }
+        Collections.sort(sizes);
+        return sizes;
+    }
+}
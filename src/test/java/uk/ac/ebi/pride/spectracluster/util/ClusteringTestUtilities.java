@@ -5,10 +5,13 @@ import uk.ac.ebi.pride.spectracluster.cluster.FrankEtAClusterEngineTest;
 import uk.ac.ebi.pride.spectracluster.cluster.ICluster;
 import uk.ac.ebi.pride.spectracluster.cluster.SpectralCluster;
 import uk.ac.ebi.pride.spectracluster.consensus.IConsensusSpectrumBuilder;
+import uk.ac.ebi.pride.spectracluster.engine.GreedyIncrementalClusteringEngine;
 import uk.ac.ebi.pride.spectracluster.io.ParserUtilities;
+import uk.ac.ebi.pride.spectracluster.similarity.CombinedFisherIntensityTest;
 import uk.ac.ebi.pride.spectracluster.similarity.ISimilarityChecker;
 import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
 import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.util.function.peak.FractionTICPeakFunction;
 import uk.ac.ebi.pride.tools.pride_spectra_clustering.impl.Adapters;
 
 import java.io.File;
@@ -20,6 +23,7 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -35,6 +39,66 @@ public class ClusteringTestUtilities {
     public static final String SAMPLE_CGF_FILE = "uk/ac/ebi/pride/spectracluster/io/spectra_400.0_4.0.cgf";
     public static final String SAMPLE_SECOND_CGF_FILE = "uk/ac/ebi/pride/spectracluster/io/ClusterBin0400.cgf";
 
+    public static final Comparator<ISpectrum> PRECURSOR_MZ_COMPARATOR = new Comparator<ISpectrum>() {
+        @Override
+        public int compare(ISpectrum o1, ISpectrum o2) {
+            return Float.compare(o1.getPrecursorMz(), o2.getPrecursorMz());
+        }
+    };
+
+    /**
+     * read the sample mgf as a modifiable list of spectra sorted by precursor m/z,
+     * the order the incremental clustering engines require
+     *
+     * @return
+     */
+    public static List<ISpectrum> readSpectraSortedByPrecursorMz() {
+        List<ISpectrum> spectra = new ArrayList<ISpectrum>(readConsensusSpectralItems());
+        Collections.sort(spectra, PRECURSOR_MZ_COMPARATOR);
+        return spectra;
+    }
+
+    /**
+     * create the GreedyIncrementalClusteringEngine shared by the engine tests: CombinedFisherIntensityTest,
+     * a window of 4 m/z, a clustering precision of 0.95 and the FractionTICPeakFunction
+     *
+     * @return
+     */
+    public static GreedyIncrementalClusteringEngine createGreedyTestEngine() {
+        return new GreedyIncrementalClusteringEngine(new CombinedFisherIntensityTest(0.5F),
+                Defaults.getDefaultSpectrumComparator(), 4F, 0.95, new FractionTICPeakFunction(0.5F, 20));
+    }
+
+    /**
+     * describe every cluster by its sorted spectrum ids, in the order of the passed clusters
+     *
+     * @param includeComparisonMatches whether the number of the cluster's comparison matches is added
+     * @return
+     */
+    public static List<String> getClusterDescriptions(List<ICluster> clusters, boolean includeComparisonMatches) {
+        List<String> descriptions = new ArrayList<String>();
+        for (ICluster cluster : clusters) {
+            List<String> spectrumIds = new ArrayList<String>(cluster.getSpectralIds());
+            Collections.sort(spectrumIds);
+            if (includeComparisonMatches)
+                descriptions.add(spectrumIds + " " + cluster.getComparisonMatches().size());
+            else
+                descriptions.add(spectrumIds.toString());
+        }
+        return descriptions;
+    }
+
+    /**
+     * same as getClusterDescriptions but sorted so that the order of the clusters does not matter
+     *
+     * @return
+     */
+    public static List<String> getSortedClusterDescriptions(List<ICluster> clusters, boolean includeComparisonMatches) {
+        List<String> descriptions = getClusterDescriptions(clusters, includeComparisonMatches);
+        Collections.sort(descriptions);
+        return descriptions;
+    }
+
     /**
      * read a resource mgf as a list of spectra
      *
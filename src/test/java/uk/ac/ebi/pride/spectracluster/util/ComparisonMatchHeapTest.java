@@ -0,0 +1,89 @@
+package uk.ac.ebi.pride.spectracluster.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class ComparisonMatchHeapTest {
+    @Test
+    public void testKeepsBestMatches() {
+        Random random = new Random(42);
+        ComparisonMatchHeap heap = new ComparisonMatchHeap(30);
+        List<Float> allSimilarities = new ArrayList<Float>();
+
+        for (int i = 0; i < 1000; i++) {
+            float similarity = random.nextInt(200) / 10F; // produces ties
+            heap.offer(String.valueOf(i), similarity);
+            allSimilarities.add(similarity);
+        }
+
+        Collections.sort(allSimilarities);
+        List<Float> expectedSimilarities = allSimilarities.subList(allSimilarities.size() - 30, allSimilarities.size());
+
+        List<ComparisonMatch> matches = heap.asList();
+        Assert.assertEquals(30, matches.size());
+        for (int i = 0; i < matches.size(); i++) {
+            Assert.assertEquals(expectedSimilarities.get(i), matches.get(i).getSimilarity(), 0);
+            Assert.assertTrue(heap.contains(matches.get(i).getSpectrumId()));
+        }
+        Assert.assertEquals(expectedSimilarities.get(0), heap.getLowestSimilarity(), 0);
+    }
+
+    /**
+     * Reused ids are added and removed many times to check the id table against the stored matches
+     */
+    @Test
+    public void testRepeatedIds() {
+        Random random = new Random(7);
+        ComparisonMatchHeap heap = new ComparisonMatchHeap(8);
+
+        for (int i = 0; i < 5000; i++) {
+            String id = (random.nextInt(50) == 0) ? null : "cluster" + random.nextInt(40);
+            heap.offer(id, random.nextFloat());
+
+            Set<String> storedIds = new HashSet<String>();
+            for (ComparisonMatch match : heap.asList()) {
+                storedIds.add(match.getSpectrumId());
+            }
+            Assert.assertEquals(storedIds.contains(null), heap.contains(null));
+            for (int j = 0; j < 40; j++) {
+                Assert.assertEquals(storedIds.contains("cluster" + j), heap.contains("cluster" + j));
+            }
+        }
+    }
+
+    @Test
+    public void testMembership() {
+        ComparisonMatchHeap heap = new ComparisonMatchHeap(3);
+        heap.offer("a", 1);
+        heap.offer("b", 2);
+        heap.offer("b", 3);
+        Assert.assertTrue(heap.isFull());
+        Assert.assertTrue(heap.contains("a"));
+
+        // worse matches are rejected once the heap is full
+        Assert.assertFalse(heap.offer("c", 0.5F));
+        Assert.assertFalse(heap.contains("c"));
+
+        // the lowest match is replaced, "b" is still stored once
+        Assert.assertTrue(heap.offer("c", 4));
+        Assert.assertFalse(heap.contains("a"));
+        Assert.assertTrue(heap.offer("d", 5));
+        Assert.assertTrue(heap.contains("b"));
+        Assert.assertTrue(heap.offer("e", 6));
+        Assert.assertFalse(heap.contains("b"));
+
+        ComparisonMatchHeap copy = new ComparisonMatchHeap(heap);
+        heap.clear();
+        Assert.assertEquals(0, heap.size());
+        Assert.assertFalse(heap.contains("e"));
+        Assert.assertTrue(copy.contains("e"));
+        Assert.assertEquals(4, copy.getLowestSimilarity(), 0);
+    }
+}
@@ -0,0 +1,83 @@
+package uk.ac.ebi.pride.spectracluster.util.function.peak;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import uk.ac.ebi.pride.spectracluster.spectrum.IPeak;
+import uk.ac.ebi.pride.spectracluster.spectrum.ISpectrum;
+import uk.ac.ebi.pride.spectracluster.spectrum.Peak;
+import uk.ac.ebi.pride.spectracluster.util.ClusteringTestUtilities;
+import uk.ac.ebi.pride.spectracluster.util.comparator.PeakIntensityComparator;
+
+import java.util.*;
+
+/**
+ * Compares the BinnedHighestNPeakFunction against the original implementation
+ * that sorted every bin by intensity.
+ */
+public class BinnedHighestNPeakFunctionTest {
+    @Test
+    public void testSameResultAsOriginal() {
+        List<ISpectrum> spectra = ClusteringTestUtilities.readISpectraFromResource();
+        int[][] settings = {{8, 100, 50}, {5, 100, 0}, {20, 100, 50}, {1, 50, 10}};
+
+        for (int[] setting : settings) {
+            BinnedHighestNPeakFunction function = new BinnedHighestNPeakFunction(setting[0], setting[1], setting[2]);
+
+            for (ISpectrum spectrum : spectra) {
+                List<IPeak> peaks = spectrum.getPeaks();
+                List<IPeak> filteredPeaks = function.apply(peaks);
+
+                Assert.assertEquals(originalFilter(peaks, setting[0], setting[1], setting[2]), new HashSet<IPeak>(filteredPeaks));
+            }
+        }
+    }
+
+    @Test
+    public void testResultSortedByMz() {
+        BinnedHighestNPeakFunction function = new BinnedHighestNPeakFunction(2, 100, 0);
+        List<IPeak> peaks = new ArrayList<IPeak>();
+        peaks.add(new Peak(150F, 10F));
+        peaks.add(new Peak(160F, 30F));
+        peaks.add(new Peak(170F, 20F));
+        peaks.add(new Peak(180F, 20F));
+        peaks.add(new Peak(1550F, 5F));
+
+        List<IPeak> filteredPeaks = function.apply(peaks);
+
+        Assert.assertEquals(3, filteredPeaks.size());
+        Assert.assertEquals(160F, filteredPeaks.get(0).getMz());
+        // equal intensities keep the lower m/z
+        Assert.assertEquals(170F, filteredPeaks.get(1).getMz());
+        Assert.assertEquals(1550F, filteredPeaks.get(2).getMz());
+    }
+
+    @Test
+    public void testEmptyPeakList() {
+        Assert.assertEquals(0, new BinnedHighestNPeakFunction().apply(new ArrayList<IPeak>()).size());
+    }
+
+    /**
+     * The original implementation iterating over all bins starting at 0 m/z
+     */
+    private static Set<IPeak> originalFilter(List<IPeak> peaks, int maxPeaks, int binSize, int binOverlap) {
+        Set<IPeak> retained = new HashSet<IPeak>();
+
+        for (double binBottom = BinnedHighestNPeakFunction.MINIMUM_BINNED_MZ; binBottom < BinnedHighestNPeakFunction.MAXIMUM_BINNED_MZ - binSize; binBottom += (binSize - binOverlap)) {
+            List<IPeak> byIntensity = new ArrayList<IPeak>();
+
+            for (IPeak peak : peaks) {
+                if (peak.getMz() < binBottom)
+                    continue;
+                if (peak.getMz() > binBottom + binSize)
+                    break;
+                byIntensity.add(peak);
+            }
+
+            Collections.sort(byIntensity, PeakIntensityComparator.INSTANCE);
+            for (int i = 0; i < byIntensity.size() && i < maxPeaks; i++)
+                retained.add(byIntensity.get(i));
+        }
+
+        return retained;
+    }
+}
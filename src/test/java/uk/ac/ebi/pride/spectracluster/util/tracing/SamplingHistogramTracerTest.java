@@ -0,0 +1,42 @@
+package uk.ac.ebi.pride.spectracluster.util.tracing;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SamplingHistogramTracerTest {
+    @Test
+    public void testSampling() {
+        SamplingHistogramTracer tracer = new SamplingHistogramTracer(4);
+
+        for (int i = 0; i < 10; i++) {
+            long token = tracer.begin(TracePhase.PEAK_MATCHING);
+            tracer.end(TracePhase.PEAK_MATCHING, token);
+        }
+
+        Assert.assertEquals(10, tracer.getCalls(TracePhase.PEAK_MATCHING));
+        // calls 0, 4 and 8 are sampled
+        Assert.assertEquals(3, tracer.getHistogram(TracePhase.PEAK_MATCHING).getCount());
+        Assert.assertEquals(0, tracer.getCalls(TracePhase.SIMILARITY_SCORING));
+        Assert.assertTrue(tracer.toString().startsWith("PEAK_MATCHING: calls=10, sampled=3"));
+
+        tracer.reset();
+        Assert.assertEquals(0, tracer.getCalls(TracePhase.PEAK_MATCHING));
+        Assert.assertEquals(0, tracer.getHistogram(TracePhase.PEAK_MATCHING).getCount());
+    }
+
+    @Test
+    public void testSetTracer() {
+        ITracer previous = Tracing.getTracer();
+        SamplingHistogramTracer tracer = new SamplingHistogramTracer(1);
+
+        try {
+            Tracing.setTracer(tracer);
+            long token = Tracing.begin(TracePhase.MGF_PARSING);
+            Tracing.end(TracePhase.MGF_PARSING, token);
+
+            Assert.assertEquals(1, tracer.getHistogram(TracePhase.MGF_PARSING).getCount());
+        } finally {
+            Tracing.setTracer(previous);
+        }
+    }
+}